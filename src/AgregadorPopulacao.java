@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Reúne as séries de população de várias réplicas de uma simulação e calcula,
+ * para cada espécie e cada passo, a média e quantis entre as réplicas.
+ * * Os valores das réplicas não são guardados: cada par (espécie, passo) tem um
+ * histograma de faixas fixas e a soma dos valores, de modo que a memória não
+ * depende do número de réplicas. As faixas são exatas abaixo de
+ * 2 * {@value #SUBFAIXAS}; acima disso, cada potência de 2 é dividida em
+ * {@value #SUBFAIXAS} faixas, e a largura de uma faixa é no máximo 1/{@value #SUBFAIXAS}
+ * do valor. Os quantis são estimados supondo os valores de uma faixa espalhados
+ * igualmente por ela; a média é exata. Como o histograma não depende da ordem em que
+ * os valores chegam (ao contrário de estimadores como o P²), o resultado é o mesmo
+ * com qualquer número de threads.
+ * * Os contadores são atômicos, de modo que várias réplicas podem registrar valores
+ * ao mesmo tempo sem travas; os resultados devem ser lidos depois que todas
+ * terminarem (ver {@link EnsembleSimulacoes#executar(int, int, long)}).
+ *
+ * @version 1.0
+ */
+public class AgregadorPopulacao
+{
+    // Espécies acompanhadas, na ordem das colunas do CSV.
+    private static final Especie[] ESPECIES = Especie.values();
+
+    // Log2 do número de faixas em que cada potência de 2 é dividida.
+    private static final int SUBFAIXAS_LOG = 4;
+    static final int SUBFAIXAS = 1 << SUBFAIXAS_LOG;
+
+    private final int replicas;
+    private final int passos;
+
+    // Maior valor distinguido; valores acima dele contam como ele.
+    private final int maximo;
+
+    // Número de faixas de cada histograma.
+    private final int faixas;
+
+    // contagens[código da espécie][passo * faixas + faixa]
+    private final AtomicIntegerArray[] contagens;
+
+    // somas[código da espécie][passo]
+    private final AtomicLongArray[] somas;
+
+    /**
+     * Cria um agregador para um número fixo de réplicas e passos, sem limite para
+     * a população de uma espécie.
+     * * @param replicas O número de réplicas.
+     * @param passos O número de passos de cada réplica (o passo 0 também é registrado).
+     */
+    public AgregadorPopulacao(int replicas, int passos)
+    {
+        this(replicas, passos, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Cria um agregador para um número fixo de réplicas e passos.
+     * * @param replicas O número de réplicas.
+     * @param passos O número de passos de cada réplica (o passo 0 também é registrado).
+     * @param maximo A maior população possível de uma espécie (ex: o número de
+     * células do campo); define o número de faixas dos histogramas.
+     */
+    public AgregadorPopulacao(int replicas, int passos, int maximo)
+    {
+        if(replicas < 0 || passos < 0 || maximo < 0) {
+            throw new IllegalArgumentException("Réplicas, passos e máximo não podem ser negativos.");
+        }
+        this.replicas = replicas;
+        this.passos = passos;
+        this.maximo = maximo;
+        faixas = faixa(maximo) + 1;
+        contagens = new AtomicIntegerArray[ESPECIES.length + 1];
+        somas = new AtomicLongArray[ESPECIES.length + 1];
+        for(Especie especie : ESPECIES) {
+            contagens[especie.getCodigo()] = new AtomicIntegerArray(Math.multiplyExact(passos + 1, faixas));
+            somas[especie.getCodigo()] = new AtomicLongArray(passos + 1);
+        }
+    }
+
+    /**
+     * Registra as contagens de uma réplica em um passo. Cada réplica deve registrar
+     * cada passo uma única vez.
+     * * @param replica O índice da réplica.
+     * @param passo O número do passo.
+     * @param contagens A população de cada espécie, indexada pelo código da espécie.
+     */
+    public void registrar(int replica, int passo, int[] contagens)
+    {
+        if(replica < 0 || replica >= replicas) {
+            throw new IndexOutOfBoundsException("Réplica inexistente: " + replica);
+        }
+        for(Especie especie : ESPECIES) {
+            int valor = Math.max(0, Math.min(maximo, contagens[especie.getCodigo()]));
+            this.contagens[especie.getCodigo()].incrementAndGet(passo * faixas + faixa(valor));
+            somas[especie.getCodigo()].addAndGet(passo, contagens[especie.getCodigo()]);
+        }
+    }
+
+    /**
+     * @return O número de réplicas.
+     */
+    public int getReplicas()
+    {
+        return replicas;
+    }
+
+    /**
+     * @return O número de passos de cada réplica.
+     */
+    public int getPassos()
+    {
+        return passos;
+    }
+
+    /**
+     * Retorna a população média de uma espécie em um passo.
+     * * @param especie A espécie.
+     * @param passo O passo.
+     * @return A média entre as réplicas.
+     */
+    public double media(Especie especie, int passo)
+    {
+        return (double) somas[especie.getCodigo()].get(passo) / replicas;
+    }
+
+    /**
+     * Retorna uma estimativa de um quantil da população de uma espécie em um passo,
+     * interpolando linearmente entre as réplicas ordenadas (exata para valores
+     * abaixo de 2 * SUBFAIXAS).
+     * * @param especie A espécie.
+     * @param passo O passo.
+     * @param q O quantil, entre 0 e 1 (ex: 0.05, 0.5, 0.95).
+     * @return O valor do quantil.
+     */
+    public double quantil(Especie especie, int passo, double q)
+    {
+        AtomicIntegerArray histograma = contagens[especie.getCodigo()];
+        int base = passo * faixas;
+        long total = 0;
+        for(int f = 0; f < faixas; f++) {
+            total += histograma.get(base + f);
+        }
+        if(total == 0) {
+            return 0;
+        }
+        double posicao = q * (total - 1);
+        long abaixo = (long) Math.floor(posicao);
+        long acima = Math.min(abaixo + 1, total - 1);
+        double fracao = posicao - abaixo;
+        double valorAbaixo = valorNaPosicao(histograma, base, abaixo);
+        double valorAcima = valorNaPosicao(histograma, base, acima);
+        return valorAbaixo + fracao * (valorAcima - valorAbaixo);
+    }
+
+    /**
+     * Escreve uma tabela CSV com, para cada passo e espécie, a média e os quantis pedidos.
+     * * @param saida O destino do texto.
+     * @param quantis Os quantis a incluir, entre 0 e 1.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    public void escreverCsv(Appendable saida, double... quantis) throws IOException
+    {
+        saida.append("passo,especie,media");
+        for(double q : quantis) {
+            saida.append(",q").append(String.valueOf(q));
+        }
+        saida.append('\n');
+
+        for(int passo = 0; passo <= passos; passo++) {
+            for(Especie especie : ESPECIES) {
+                saida.append(String.valueOf(passo)).append(',').append(especie.name())
+                     .append(',').append(String.valueOf(media(especie, passo)));
+                for(double q : quantis) {
+                    saida.append(',').append(String.valueOf(quantil(especie, passo, q)));
+                }
+                saida.append('\n');
+            }
+        }
+    }
+
+    /**
+     * Estima o valor na posição i (a partir de 0) da ordem crescente dos valores
+     * de um histograma, supondo os k valores de uma faixa espalhados igualmente
+     * entre o primeiro e o último valor dela.
+     */
+    private double valorNaPosicao(AtomicIntegerArray histograma, int base, long i)
+    {
+        long antes = 0;
+        for(int f = 0; f < faixas; f++) {
+            int k = histograma.get(base + f);
+            if(i < antes + k) {
+                long inicio = inicioFaixa(f);
+                long largura = larguraFaixa(f);
+                if(k == 1) {
+                    return inicio + (largura - 1) / 2.0;
+                }
+                return inicio + (i - antes) * (largura - 1.0) / (k - 1);
+            }
+            antes += k;
+        }
+        return maximo;
+    }
+
+    /**
+     * @return A faixa de um valor não negativo.
+     */
+    static int faixa(int valor)
+    {
+        if(valor < 2 * SUBFAIXAS) {
+            return valor;
+        }
+        int deslocamento = 31 - Integer.numberOfLeadingZeros(valor) - SUBFAIXAS_LOG;
+        return (deslocamento + 1) * SUBFAIXAS + (valor >>> deslocamento) - SUBFAIXAS;
+    }
+
+    /**
+     * @return O primeiro valor de uma faixa.
+     */
+    static long inicioFaixa(int faixa)
+    {
+        if(faixa < 2 * SUBFAIXAS) {
+            return faixa;
+        }
+        return (long) (faixa % SUBFAIXAS + SUBFAIXAS) << (faixa / SUBFAIXAS - 1);
+    }
+
+    /**
+     * @return O número de valores de uma faixa.
+     */
+    static long larguraFaixa(int faixa)
+    {
+        return faixa < 2 * SUBFAIXAS ? 1 : 1L << (faixa / SUBFAIXAS - 1);
+    }
+}
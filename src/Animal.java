@@ -9,9 +9,6 @@ import java.util.Random;
  */
 public abstract class Animal implements Ator
 {
-    // O gerador de números aleatórios compartilhado por todos os animais.
-    protected static final Random rand = new Random();
-    
     protected int age;
     protected boolean alive;
     protected Location location;
@@ -28,7 +25,7 @@ public abstract class Animal implements Ator
         age = 0;
         alive = true;
         if(randomAge) {
-            age = rand.nextInt(getMaxAge());
+            age = rand().nextInt(getMaxAge());
         }
     }
     
@@ -60,6 +57,7 @@ public abstract class Animal implements Ator
             }
             else {
                 // Não pode se mover (superlotação)
+                updatedField.notificarSuperlotacao(this);
                 setDead();
             }
         }
@@ -75,6 +73,16 @@ public abstract class Animal implements Ator
         return alive;
     }
 
+    /**
+     * Retorna a localização do animal no campo.
+     * * @return A localização atual.
+     */
+    @Override
+    public Location getLocation()
+    {
+        return location;
+    }
+
     /**
      * Define a localização do animal no campo.
      * * @param location A nova localização (objeto Location).
@@ -141,6 +149,45 @@ public abstract class Animal implements Ator
         }
     }
 
+    /**
+     * Escolhe um passo em direção a um alvo distante: a célula adjacente livre e
+     * habitável que mais reduz a distância até ele (em empate, a mais próxima em
+     * linha reta; depois, a primeira em ordem de leitura).
+     * * @param alvo A posição do alvo.
+     * @param updatedField O campo atualizado (para verificar disponibilidade).
+     * @return A célula escolhida, ou null se nenhuma célula livre aproxima o animal do alvo.
+     */
+    protected Location aproximar(Location alvo, Field updatedField)
+    {
+        int distancia = Math.max(Math.abs(alvo.getRow() - location.getRow()),
+                                 Math.abs(alvo.getCol() - location.getCol()));
+        Location melhor = null;
+        int melhorDistancia = distancia;
+        int melhorReta = Integer.MAX_VALUE;
+        for(int dr = -1; dr <= 1; dr++) {
+            for(int dc = -1; dc <= 1; dc++) {
+                int row = location.getRow() + dr;
+                int col = location.getCol() + dc;
+                if((dr == 0 && dc == 0) || row < 0 || row >= updatedField.getDepth()
+                        || col < 0 || col >= updatedField.getWidth()) {
+                    continue;
+                }
+                int linhas = Math.abs(alvo.getRow() - row);
+                int colunas = Math.abs(alvo.getCol() - col);
+                int nova = Math.max(linhas, colunas);
+                int reta = linhas * linhas + colunas * colunas;
+                if((nova < melhorDistancia || (nova == melhorDistancia && melhor != null && reta < melhorReta))
+                        && updatedField.getObjectAt(row, col) == null
+                        && updatedField.getTerrenoAt(row, col).ehHabitavel(this)) {
+                    melhor = new Location(row, col);
+                    melhorDistancia = nova;
+                    melhorReta = reta;
+                }
+            }
+        }
+        return melhor;
+    }
+
     /**
      * Calcula o número de nascimentos baseado na probabilidade de reprodução.
      * @return O número de nascimentos (pode ser zero).
@@ -148,8 +195,8 @@ public abstract class Animal implements Ator
     protected int breed()
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= getBreedingProbability()) {
-            births = rand.nextInt(getMaxLitterSize()) + 1;
+        if(canBreed() && rand().nextDouble() <= getBreedingProbability()) {
+            births = rand().nextInt(getMaxLitterSize()) + 1;
         }
         return births;
     }
@@ -163,6 +210,42 @@ public abstract class Animal implements Ator
         return age >= getBreedingAge();
     }
 
+    /**
+     * Retorna a idade atual do animal.
+     * @return A idade em passos.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * Define a idade do animal (usado ao restaurar um checkpoint).
+     * @param age A idade em passos.
+     */
+    void setAge(int age)
+    {
+        this.age = age;
+    }
+
+    /**
+     * Retorna o gerador de números aleatórios da simulação em execução.
+     * * @return O gerador do contexto ativo.
+     */
+    protected static Random rand()
+    {
+        return ContextoSimulacao.random();
+    }
+
+    /**
+     * Retorna os parâmetros da simulação em execução.
+     * * @return Os parâmetros do contexto ativo.
+     */
+    protected static Parametros parametros()
+    {
+        return ContextoSimulacao.atual().getParametros();
+    }
+
     // --- Métodos Abstratos (Devem ser implementados pelas subclasses) ---
       
     /**
@@ -200,6 +283,17 @@ public abstract class Animal implements Ator
      * pode ter uma implementação vazia.
      */
     protected abstract void incrementHunger();
+
+    /**
+     * @return O nível de fome atual (passos restantes até morrer de fome).
+     */
+    abstract int getFoodLevel();
+
+    /**
+     * Define o nível de fome (usado ao restaurar um checkpoint).
+     * @param foodLevel O novo nível de fome.
+     */
+    abstract void setFoodLevel(int foodLevel);
     
     /**
      * Encontra uma nova localização para o animal se mover.
@@ -23,6 +23,12 @@ public interface Ator {
      */
     boolean isAlive();
     
+    /**
+     * Retorna a localização atual do ator no campo.
+     * @return A localização, ou null se o ator ainda não foi posicionado.
+     */
+    Location getLocation();
+
     /**
      * Define a localização atual do ator no campo.
      * @param location A nova localização.
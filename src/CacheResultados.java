@@ -0,0 +1,109 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache em disco dos resultados de uma varredura de parâmetros. Cada execução
+ * concluída é acrescentada como uma linha de texto a um único arquivo; ao abrir,
+ * o arquivo inteiro é carregado em memória. A chave descreve tudo o que determina
+ * o resultado (parâmetros, semente, mapa e critérios de parada), de modo que uma
+ * varredura repetida só simula as combinações que ainda não estão no arquivo.
+ * * Formato de cada linha (separada por tabulações):
+ * <pre>
+ *   chave, passo final, motivo, população por espécie (separada por vírgulas)
+ * </pre>
+ * Linhas incompletas (de uma gravação interrompida) são ignoradas.
+ *
+ * @version 1.0
+ */
+public class CacheResultados
+{
+    private final Path arquivo;
+    private final Map<String, String[]> entradas = new HashMap<>();
+
+    /**
+     * Abre o cache, carregando as entradas existentes.
+     * * @param arquivo O arquivo do cache (criado na primeira gravação).
+     * @throws IOException Se o arquivo existir e não puder ser lido.
+     */
+    public CacheResultados(Path arquivo) throws IOException
+    {
+        this.arquivo = arquivo;
+        if(Files.exists(arquivo)) {
+            try(BufferedReader br = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+                String linha;
+                while((linha = br.readLine()) != null) {
+                    String[] campos = linha.split("\t");
+                    if(campos.length == 4) {
+                        entradas.put(campos[0], campos);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Procura o resultado de uma execução.
+     * * @param chave A chave da execução.
+     * @param parametros Os parâmetros da execução.
+     * @param semente A semente da execução.
+     * @return O resultado guardado, ou null se a execução não estiver no cache.
+     */
+    public synchronized ResultadoExecucao buscar(String chave, Parametros parametros, long semente)
+    {
+        String[] campos = entradas.get(chave);
+        if(campos == null) {
+            return null;
+        }
+        try {
+            String[] valores = campos[3].split(",");
+            int[] populacao = new int[valores.length];
+            for(int i = 0; i < valores.length; i++) {
+                populacao[i] = Integer.parseInt(valores[i]);
+            }
+            return new ResultadoExecucao(parametros, semente, Integer.parseInt(campos[1]),
+                                         ResultadoExecucao.Motivo.valueOf(campos[2]), populacao, true);
+        }
+        catch(IllegalArgumentException e) {
+            return null; // Entrada corrompida: a execução é refeita
+        }
+    }
+
+    /**
+     * Acrescenta o resultado de uma execução ao arquivo.
+     * * @param chave A chave da execução.
+     * @param resultado O resultado.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    public synchronized void guardar(String chave, ResultadoExecucao resultado) throws IOException
+    {
+        StringBuilder populacao = new StringBuilder();
+        Especie[] especies = Especie.values();
+        populacao.append(0); // Código VAZIO
+        for(int codigo = 1; codigo <= especies.length; codigo++) {
+            populacao.append(',').append(resultado.getPopulacao(Especie.doCodigo(codigo)));
+        }
+        String[] campos = {chave, String.valueOf(resultado.getPassos()),
+                           resultado.getMotivo().name(), populacao.toString()};
+        try(BufferedWriter bw = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            bw.write(String.join("\t", campos));
+            bw.newLine();
+        }
+        entradas.put(chave, campos);
+    }
+
+    /**
+     * @return O número de execuções no cache.
+     */
+    public synchronized int tamanho()
+    {
+        return entradas.size();
+    }
+}
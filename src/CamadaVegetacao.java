@@ -0,0 +1,683 @@
+import java.awt.Color;
+
+/**
+ * Camada opcional de vegetação armazenada como grade de valores primitivos.
+ * Em vez de manter um objeto Flor ou VitoriaRegia por célula, esta camada guarda
+ * o tipo da planta em um {@code byte[]} e a idade em um {@code short[]} por linha.
+ * As células são identificadas pelo índice linha * largura + coluna.
+ * * O avanço de um passo reproduz as regras das plantas como um autômato celular:
+ * a planta envelhece, morre ao ultrapassar a idade máxima e, com uma probabilidade
+ * fixa, espalha-se para uma célula adjacente do terreno compatível (Grama para a
+ * Flor, Água para a Vitória-Régia).
+ * * Os sorteios usam um hash do par (passo, célula) em vez de um gerador sequencial,
+ * de modo que o resultado independe da ordem em que as linhas são percorridas.
+ * Por isso o modo em blocos e o modo escalar produzem exatamente o mesmo estado.
+ * O modo em blocos percorre cada linha inteira em laços sem desvios que dependam
+ * dos dados (máscaras e tabelas por tipo em vez de ifs); ele não é vetorizado:
+ * o compilador JIT do JDK 17 não vetoriza laços que misturam byte e short, e a
+ * Vector API ({@code jdk.incubator.vector}) exigiria --add-modules em toda
+ * compilação e execução do projeto. O ganho vem de não haver desvios mal previstos.
+ * * Uma cópia ({@link #copiar()}) compartilha as linhas com a original; cada camada
+ * copia uma linha só antes de escrever nela pela primeira vez, e as linhas vazias
+ * compartilhadas nem são percorridas no avanço.
+ * * A camada é ativada por {@link Simulator#setCamadaVegetacao(boolean)}: na janela,
+ * pela caixa "Vegetação em camada"; sem interface, pela opção "camada" de
+ * {@link Principal} ou por {@link EnsembleSimulacoes#setCamadaVegetacao(boolean)}.
+ *
+ * @version 1.0
+ */
+public class CamadaVegetacao
+{
+    // Códigos de tipo armazenados na grade.
+    public static final byte VAZIO = 0;
+    public static final byte FLOR = 1;
+    public static final byte VITORIA_REGIA = 2;
+
+    // Códigos de terreno compatível usados para o espalhamento.
+    private static final byte TERRENO_OUTRO = 0;
+    private static final byte TERRENO_GRAMA = 1;
+    private static final byte TERRENO_AGUA = 2;
+
+    // Deslocamentos (linha, coluna) das oito direções vizinhas.
+    private static final int[] DIR_LINHA = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DIR_COLUNA = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final int depth, width;
+
+    // Idade máxima e limiar de espalhamento (em 24 bits) indexados pelo código do tipo.
+    // Os arrays são substituídos, nunca alterados, por setParametros.
+    private short[] idadeMaxima;
+    private int[] limiarEspalhamento;
+
+    // Tipo da planta em cada célula (VAZIO, FLOR ou VITORIA_REGIA), por linha.
+    private final byte[][] tipo;
+
+    // Idade da planta em cada célula (irrelevante quando a célula está vazia), por linha.
+    private final short[][] idade;
+
+    // Linhas de tipo e idade ainda compartilhadas com outra camada (ver copiar).
+    private final boolean[] compartilhada;
+
+    // Tipo de terreno de cada célula, resumido ao que importa para o espalhamento.
+    private byte[] terreno;
+
+    // Indica que o resumo de terreno ainda é compartilhado com outra camada.
+    private boolean terrenoCompartilhado;
+
+    // Buffer de trabalho de uma linha (sorteios), reaproveitado a cada passo.
+    private final int[] sorteioLinha;
+
+    // Número de plantas vivas de cada tipo, indexado pelo código (VAZIO fica em 0);
+    // recalculado no avanço e ajustado a cada planta colocada ou removida.
+    private final int[] populacao;
+
+    // Células que decidiram se espalhar neste passo (índices), preenchidas na fase 1.
+    private int[] espalhando;
+    private int totalEspalhando;
+
+    // Semente da sequência de sorteios e número de passos já avançados.
+    private long semente;
+    private long passo;
+
+    // Se true, usa os laços em blocos; se false, usa a implementação escalar de referência.
+    private boolean modoBlocos;
+
+    /**
+     * Cria uma camada vazia para um campo com as dimensões dadas.
+     * * @param depth A profundidade do campo.
+     * @param width A largura do campo.
+     * @param terrenos A matriz de terrenos, usada para saber onde cada planta pode crescer.
+     * @param semente A semente dos sorteios de espalhamento.
+     */
+    public CamadaVegetacao(int depth, int width, Terreno[][] terrenos, long semente)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.tipo = new byte[depth][width];
+        this.idade = new short[depth][width];
+        this.compartilhada = new boolean[depth];
+        this.terreno = new byte[depth * width];
+        this.sorteioLinha = new int[width];
+        this.populacao = new int[3];
+        this.espalhando = new int[Math.max(16, width)];
+        this.semente = semente;
+        this.modoBlocos = true;
+        setParametros(Parametros.PADRAO);
+        atualizarTerreno(terrenos);
+    }
+
+    /**
+     * Cria uma cópia independente desta camada (mesmas plantas, idades e sorteios).
+     * Nenhuma célula é copiada aqui: as linhas e o resumo de terreno passam a ser
+     * compartilhados e são copiados por quem for escrever neles.
+     * * @return A cópia.
+     */
+    public CamadaVegetacao copiar()
+    {
+        return new CamadaVegetacao(this);
+    }
+
+    /**
+     * Construtor de cópia usado por {@link #copiar()}.
+     */
+    private CamadaVegetacao(CamadaVegetacao outra)
+    {
+        this.depth = outra.depth;
+        this.width = outra.width;
+        java.util.Arrays.fill(outra.compartilhada, true);
+        outra.terrenoCompartilhado = true;
+        this.tipo = outra.tipo.clone();
+        this.idade = outra.idade.clone();
+        this.compartilhada = outra.compartilhada.clone();
+        this.terreno = outra.terreno;
+        this.terrenoCompartilhado = true;
+        this.sorteioLinha = new int[width];
+        this.populacao = outra.populacao.clone();
+        this.espalhando = new int[outra.espalhando.length];
+        this.semente = outra.semente;
+        this.passo = outra.passo;
+        this.modoBlocos = outra.modoBlocos;
+        this.idadeMaxima = outra.idadeMaxima;
+        this.limiarEspalhamento = outra.limiarEspalhamento;
+    }
+
+    /**
+     * Define as idades máximas e probabilidades de espalhamento das plantas.
+     * * @param parametros Os parâmetros da simulação.
+     */
+    public void setParametros(Parametros parametros)
+    {
+        idadeMaxima = new short[] {
+            Short.MAX_VALUE,
+            (short) Math.min(Short.MAX_VALUE, parametros.getInt(Parametro.FLOR_IDADE_MAXIMA)),
+            (short) Math.min(Short.MAX_VALUE, parametros.getInt(Parametro.VITORIA_REGIA_IDADE_MAXIMA))
+        };
+        limiarEspalhamento = new int[] {
+            0,
+            limiar(parametros.get(Parametro.FLOR_PROBABILIDADE_ESPALHAMENTO)),
+            limiar(parametros.get(Parametro.VITORIA_REGIA_PROBABILIDADE_ESPALHAMENTO))
+        };
+    }
+
+    /**
+     * Recalcula o resumo de terreno a partir da matriz de terrenos.
+     * Deve ser chamado sempre que o mapa for recarregado.
+     * * @param terrenos A matriz de terrenos atual.
+     */
+    public void atualizarTerreno(Terreno[][] terrenos)
+    {
+        atualizarTerreno(terrenos, 0, 0, depth - 1, width - 1);
+    }
+
+    /**
+     * Recalcula o resumo de terreno só em um retângulo (o terreno mudou ali).
+     * As plantas que ficarem em terreno incompatível não são removidas aqui
+     * (ver {@link #compativel(int, int)}).
+     * * @param terrenos A matriz de terrenos atual.
+     * @param linha0 A primeira linha.
+     * @param coluna0 A primeira coluna.
+     * @param linha1 A última linha (incluída).
+     * @param coluna1 A última coluna (incluída).
+     */
+    public void atualizarTerreno(Terreno[][] terrenos, int linha0, int coluna0, int linha1, int coluna1)
+    {
+        if(terrenoCompartilhado) {
+            terreno = terreno.clone();
+            terrenoCompartilhado = false;
+        }
+        for(int row = linha0; row <= linha1; row++) {
+            for(int col = coluna0; col <= coluna1; col++) {
+                Terreno t = terrenos[row][col];
+                byte codigo = TERRENO_OUTRO;
+                if(t instanceof Grama) {
+                    codigo = TERRENO_GRAMA;
+                }
+                else if(t instanceof Agua) {
+                    codigo = TERRENO_AGUA;
+                }
+                terreno[row * width + col] = codigo;
+            }
+        }
+    }
+
+    /**
+     * Remove todas as plantas e reinicia a contagem de passos.
+     */
+    public void clear()
+    {
+        for(int row = 0; row < depth; row++) {
+            if(compartilhada[row]) {
+                tipo[row] = new byte[width];
+                idade[row] = new short[width];
+                compartilhada[row] = false;
+            }
+            else {
+                java.util.Arrays.fill(tipo[row], VAZIO);
+                java.util.Arrays.fill(idade[row], (short) 0);
+            }
+        }
+        java.util.Arrays.fill(populacao, 0);
+        passo = 0;
+    }
+
+    /**
+     * Passa a usar cópias próprias dos arrays de uma linha, se eles ainda são
+     * compartilhados, antes de uma escrita.
+     * * @param row A linha.
+     */
+    private void escrever(int row)
+    {
+        if(compartilhada[row]) {
+            tipo[row] = tipo[row].clone();
+            idade[row] = idade[row].clone();
+            compartilhada[row] = false;
+        }
+    }
+
+    /**
+     * @return true se a linha não tem nenhuma planta.
+     */
+    private boolean vazia(int row)
+    {
+        byte[] tipos = tipo[row];
+        for(int col = 0; col < width; col++) {
+            if(tipos[col] != VAZIO) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Planta uma flor ou vitória-régia com idade zero, se o terreno permitir.
+     * * @param tipoPlanta FLOR ou VITORIA_REGIA.
+     * @param row A linha.
+     * @param col A coluna.
+     * @return true se a planta foi colocada.
+     */
+    public boolean plantar(byte tipoPlanta, int row, int col)
+    {
+        if(tipo[row][col] != VAZIO || terreno[row * width + col] != tipoPlanta) {
+            return false;
+        }
+        escrever(row);
+        tipo[row][col] = tipoPlanta;
+        idade[row][col] = 0;
+        populacao[tipoPlanta]++;
+        return true;
+    }
+
+    /**
+     * Verifica se há uma flor viva na posição.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return true se houver uma flor.
+     */
+    public boolean temFlor(int row, int col)
+    {
+        return tipo[row][col] == FLOR;
+    }
+
+    /**
+     * Remove a planta da posição (ela foi comida).
+     * * @param row A linha.
+     * @param col A coluna.
+     */
+    public void comer(int row, int col)
+    {
+        remover(row, col);
+    }
+
+    /**
+     * Remove a planta da posição, de qualquer tipo (edição do operador).
+     * * @param row A linha.
+     * @param col A coluna.
+     */
+    public void remover(int row, int col)
+    {
+        if(tipo[row][col] != VAZIO) {
+            escrever(row);
+            populacao[tipo[row][col]]--;
+            tipo[row][col] = VAZIO;
+        }
+    }
+
+    /**
+     * Verifica se a planta da posição (se houver) está no terreno compatível.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return false se houver uma planta em terreno onde ela não cresce.
+     */
+    public boolean compativel(int row, int col)
+    {
+        byte t = tipo[row][col];
+        return t == VAZIO || terreno[row * width + col] == t;
+    }
+
+    /**
+     * Retorna o código do tipo de planta na posição.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return VAZIO, FLOR ou VITORIA_REGIA.
+     */
+    public byte getTipo(int row, int col)
+    {
+        return tipo[row][col];
+    }
+
+    /**
+     * Retorna a idade da planta na posição.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return A idade em passos (sem significado se a célula estiver vazia).
+     */
+    public int getIdade(int row, int col)
+    {
+        return idade[row][col];
+    }
+
+    /**
+     * Retorna a cor da planta na posição, ou null se não houver planta.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return A cor da espécie da planta, ou null.
+     */
+    public Color getCor(int row, int col)
+    {
+        switch(tipo[row][col]) {
+            case FLOR:
+                return Flor.COR;
+            case VITORIA_REGIA:
+                return VitoriaRegia.COR;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Retorna o número de plantas vivas de um tipo, mantido a cada mudança (não
+     * percorre a grade).
+     * * @param tipoPlanta FLOR ou VITORIA_REGIA.
+     * @return O número de células com esse tipo.
+     */
+    public int contar(byte tipoPlanta)
+    {
+        return populacao[tipoPlanta];
+    }
+
+    /**
+     * Recalcula as contagens de {@link #contar(byte)} percorrendo a grade; usado
+     * depois que as linhas foram preenchidas diretamente (ver {@link #tiposDaLinha(int)}).
+     */
+    void recontar()
+    {
+        java.util.Arrays.fill(populacao, 0);
+        for(byte[] tipos : tipo) {
+            for(int col = 0; col < width; col++) {
+                populacao[tipos[col]]++;
+            }
+        }
+        populacao[VAZIO] = 0;
+    }
+
+    /**
+     * @return A semente dos sorteios de espalhamento.
+     */
+    long getSemente()
+    {
+        return semente;
+    }
+
+    /**
+     * @return O número de passos já avançados (entra no cálculo dos sorteios).
+     */
+    long getPasso()
+    {
+        return passo;
+    }
+
+    /**
+     * Define o número de passos já avançados (usado ao restaurar um checkpoint).
+     * * @param passo O número de passos.
+     */
+    void setPasso(long passo)
+    {
+        this.passo = passo;
+    }
+
+    /**
+     * Retorna o array interno de tipos de uma linha (uso interno do pacote). Ele
+     * pode ser compartilhado com uma cópia da camada e só pode ser alterado em uma
+     * camada recém-criada, seguido de {@link #recontar()}.
+     * * @param row A linha.
+     * @return Os tipos das células da linha.
+     */
+    byte[] tiposDaLinha(int row)
+    {
+        return tipo[row];
+    }
+
+    /**
+     * Retorna o array interno de idades de uma linha (uso interno do pacote), com
+     * as mesmas restrições de {@link #tiposDaLinha(int)}.
+     * * @param row A linha.
+     * @return As idades das células da linha.
+     */
+    short[] idadesDaLinha(int row)
+    {
+        return idade[row];
+    }
+
+    /**
+     * Escolhe entre o modo em blocos (laços sem desvios sobre linhas inteiras) e o
+     * modo escalar. Os dois modos produzem resultados idênticos.
+     * * @param modoBlocos true para o modo em blocos.
+     */
+    public void setModoBlocos(boolean modoBlocos)
+    {
+        this.modoBlocos = modoBlocos;
+    }
+
+    /**
+     * Avança a camada em um passo da simulação.
+     * Fase 1: cada linha é envelhecida, as plantas velhas morrem e as sobreviventes
+     * sorteiam se vão se espalhar. Fase 2: os espalhamentos são aplicados em ordem
+     * de índice, e as plantas novas só envelhecem a partir do próximo passo
+     * (como acontece com os atores recém-nascidos).
+     */
+    public void avancar()
+    {
+        avancar(null, null);
+    }
+
+    /**
+     * Avança a camada em um passo e, no mesmo percurso das linhas, soma 1 à
+     * ocupação de cada célula com uma planta sobrevivente (ver {@link MapaOcupacao})
+     * e conta as plantas de cada bloco de células (ver {@link PiramideDensidade}).
+     * * @param ocupacao Contagens por célula indexadas pelo código do tipo
+     * (ocupacao[FLOR], ocupacao[VITORIA_REGIA]), ou null para não contar.
+     * @param densidade Contagens zeradas por bloco de 2^LADO_LOG x 2^LADO_LOG células,
+     * indexadas pelo código do tipo, ou null para não contar.
+     */
+    void avancar(int[][] ocupacao, int[][] densidade)
+    {
+        passo++;
+        totalEspalhando = 0;
+        populacao[FLOR] = 0;
+        populacao[VITORIA_REGIA] = 0;
+        for(int row = 0; row < depth; row++) {
+            if(compartilhada[row]) {
+                if(vazia(row)) {
+                    continue; // Nada envelhece, morre, se espalha ou é contado
+                }
+                escrever(row);
+            }
+            if(modoBlocos) {
+                avancarLinhaEmBlocos(row, ocupacao);
+            }
+            else {
+                avancarLinhaEscalar(row, ocupacao);
+            }
+            if(densidade != null) {
+                contarBlocos(row, densidade);
+            }
+        }
+        aplicarEspalhamentos(densidade);
+    }
+
+    /**
+     * Soma as plantas de uma linha (já avançada) aos blocos que a contêm.
+     * * @param row A linha.
+     * @param densidade As contagens por bloco.
+     */
+    private void contarBlocos(int row, int[][] densidade)
+    {
+        byte[] tipos = tipo[row];
+        int[] flor = densidade[FLOR];
+        int[] vitoriaRegia = densidade[VITORIA_REGIA];
+        int linhaBlocos = (row >> PiramideDensidade.LADO_LOG) * (((width - 1) >> PiramideDensidade.LADO_LOG) + 1);
+        for(int col = 0; col < width; col++) {
+            int t = tipos[col];
+            int b = linhaBlocos + (col >> PiramideDensidade.LADO_LOG);
+            flor[b] += ((t ^ FLOR) - 1) >>> 31;
+            vitoriaRegia[b] += ((t ^ VITORIA_REGIA) - 1) >>> 31;
+        }
+    }
+
+    /**
+     * Avança uma linha com laços simples e sem desvios sobre os arrays primitivos.
+     * Os parâmetros de cada tipo vêm de tabelas de três posições (sempre no cache),
+     * e as células que vão se espalhar são acrescentadas sempre, avançando o total só
+     * quando sorteadas, de modo que o custo não depende da fração sorteada.
+     * * @param row A linha a avançar.
+     * @param ocupacao As contagens de ocupação, ou null.
+     */
+    private void avancarLinhaEmBlocos(int row, int[][] ocupacao)
+    {
+        int base = row * width;
+        byte[] tipos = tipo[row];
+        short[] idades = idade[row];
+        short[] maximo = idadeMaxima;
+        int[] limiar = limiarEspalhamento;
+
+        // Envelhece as células ocupadas e mata as que passaram da idade máxima
+        // (a das vazias é Short.MAX_VALUE, então continuam vazias).
+        for(int col = 0; col < width; col++) {
+            int t = tipos[col];
+            int novaIdade = idades[col] + ((-t) >>> 31);
+            idades[col] = (short) novaIdade;
+            int passou = (maximo[t] - novaIdade) >>> 31;
+            tipos[col] = (byte) (t & (passou - 1));
+        }
+
+        // Conta as sobreviventes: (t ^ tipo) - 1 é negativo apenas quando t == tipo.
+        if(ocupacao != null) {
+            int[] flor = ocupacao[FLOR];
+            int[] vitoriaRegia = ocupacao[VITORIA_REGIA];
+            for(int col = 0; col < width; col++) {
+                int t = tipos[col];
+                flor[base + col] += ((t ^ FLOR) - 1) >>> 31;
+                vitoriaRegia[base + col] += ((t ^ VITORIA_REGIA) - 1) >>> 31;
+            }
+        }
+
+        // Sorteia o espalhamento de todas as células de uma vez.
+        for(int col = 0; col < width; col++) {
+            sorteioLinha[col] = sorteio(base + col);
+        }
+
+        // Registra as sobreviventes cujo sorteio ficou abaixo do limiar da espécie
+        // (0 nas vazias; o sorteio e o limiar têm 24 bits, então a diferença não transborda).
+        if(espalhando.length - totalEspalhando < width) {
+            espalhando = java.util.Arrays.copyOf(espalhando, Math.max(espalhando.length * 2, totalEspalhando + width));
+        }
+        // No mesmo laço, conta as sobreviventes de cada tipo.
+        int total = totalEspalhando;
+        int vivas = 0;
+        int flores = 0;
+        for(int col = 0; col < width; col++) {
+            int t = tipos[col];
+            espalhando[total] = base + col;
+            total += (sorteioLinha[col] - limiar[t]) >>> 31;
+            vivas += (-t) >>> 31;
+            flores += ((t ^ FLOR) - 1) >>> 31;
+        }
+        totalEspalhando = total;
+        populacao[FLOR] += flores;
+        populacao[VITORIA_REGIA] += vivas - flores;
+    }
+
+    /**
+     * Implementação escalar de referência: uma célula por vez, com as mesmas regras
+     * do método {@link Vegetacao#acao}.
+     * * @param row A linha a avançar.
+     * @param ocupacao As contagens de ocupação, ou null.
+     */
+    private void avancarLinhaEscalar(int row, int[][] ocupacao)
+    {
+        int base = row * width;
+        byte[] tipos = tipo[row];
+        short[] idades = idade[row];
+        for(int col = 0; col < width; col++) {
+            int i = base + col;
+            if(tipos[col] == VAZIO) {
+                continue;
+            }
+            idades[col]++;
+            if(idades[col] > idadeMaxima[tipos[col]]) {
+                tipos[col] = VAZIO;
+                continue;
+            }
+            populacao[tipos[col]]++;
+            if(ocupacao != null) {
+                ocupacao[tipos[col]][i]++;
+            }
+            if(sorteio(i) < limiarEspalhamento[tipos[col]]) {
+                registrarEspalhamento(i);
+            }
+        }
+    }
+
+    /**
+     * Guarda o índice de uma célula que vai tentar se espalhar neste passo.
+     * * @param i O índice da célula.
+     */
+    private void registrarEspalhamento(int i)
+    {
+        if(totalEspalhando == espalhando.length) {
+            espalhando = java.util.Arrays.copyOf(espalhando, espalhando.length * 2);
+        }
+        espalhando[totalEspalhando++] = i;
+    }
+
+    /**
+     * Aplica os espalhamentos sorteados na fase 1.
+     * Cada planta tenta as oito direções a partir de uma direção sorteada e ocupa a
+     * primeira célula vizinha vazia do terreno compatível. As plantas nascidas neste
+     * passo ocupam a célula, impedindo outro espalhamento para ela.
+     * * @param densidade As contagens por bloco, ou null.
+     */
+    private void aplicarEspalhamentos(int[][] densidade)
+    {
+        for(int k = 0; k < totalEspalhando; k++) {
+            int i = espalhando[k];
+            int row = i / width;
+            int col = i - row * width;
+            byte t = tipo[row][col];
+            int inicio = (int) (misturar(semente ^ ~passo, i) & 7);
+            for(int d = 0; d < 8; d++) {
+                int dir = (inicio + d) & 7;
+                int r = row + DIR_LINHA[dir];
+                int c = col + DIR_COLUNA[dir];
+                if(r < 0 || r >= depth || c < 0 || c >= width) {
+                    continue;
+                }
+                if(tipo[r][c] == VAZIO && terreno[r * width + c] == t) {
+                    escrever(r);
+                    tipo[r][c] = t;
+                    idade[r][c] = 0;
+                    populacao[t]++;
+                    if(densidade != null) {
+                        densidade[t][(r >> PiramideDensidade.LADO_LOG) * (((width - 1) >> PiramideDensidade.LADO_LOG) + 1)
+                                     + (c >> PiramideDensidade.LADO_LOG)]++;
+                    }
+                    break; // Espalha apenas uma vez
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorteio de 24 bits para a célula no passo atual.
+     * * @param i O índice da célula.
+     * @return Um valor uniforme entre 0 e 2^24 - 1.
+     */
+    private int sorteio(int i)
+    {
+        return (int) (misturar(semente ^ passo, i) >>> 40);
+    }
+
+    /**
+     * Função de mistura (finalizador do SplitMix64) aplicada ao par (chave, índice).
+     * * @param chave A chave do passo.
+     * @param i O índice da célula.
+     * @return 64 bits pseudoaleatórios.
+     */
+    private static long misturar(long chave, int i)
+    {
+        long z = chave * 0x9E3779B97F4A7C15L + i * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Converte uma probabilidade em um limiar de 24 bits comparável ao sorteio.
+     * * @param probabilidade A probabilidade entre 0 e 1.
+     * @return O limiar correspondente.
+     */
+    private static int limiar(double probabilidade)
+    {
+        return (int) Math.round(probabilidade * (1 << 24));
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Uma conexão entre o coordenador e um trabalhador da execução distribuída em
+ * faixas ({@link CoordenadorFaixas}, {@link TrabalhadorFaixa}), sobre um socket
+ * de domínio Unix, com o protocolo binário compacto das duas pontas.
+ * * Cada mensagem é um int tamanho seguido de tantos bytes, o primeiro sendo o tipo
+ * (little-endian). Mensagens de um passo, na ordem:
+ * <pre>
+ *   INICIO   (coord.)  int índice, int faixas, int depth, int width, int linha0,
+ *                      int linha1, long semente, short n, n bytes UTF-8 do mapa
+ *   ESTADO   (trab.)   int população por código de espécie (ESPECIES),
+ *                      borda de cima, borda de baixo
+ *   PASSO    (coord.)  halo de cima, halo de baixo
+ *   SAIDAS   (trab.)   int n, n x (byte lado, int k)            presas comidas no halo
+ *                      int n, n x (byte lado, ator)             atores que cruzaram a borda
+ *   TROCA    (coord.)  int n, n x (byte lado, int k)            atores da borda comidos
+ *                      int n, n x ator                          atores que chegaram
+ *   FIM      (coord.)
+ * </pre>
+ * Uma borda (ou halo) é int n, n x (int coluna, byte espécie): os atores vivos de
+ * uma linha, na ordem das colunas; o k de uma presa é a sua posição na borda
+ * enviada. Um ator é byte espécie, int idade, int fome, int linha, int coluna, com
+ * a linha no campo inteiro. O lado (CIMA ou BAIXO) é sempre o da faixa do
+ * trabalhador que envia ou recebe a mensagem.
+ * O trabalhador responde ESTADO ao INICIO e a cada TROCA.
+ *
+ * @version 1.0
+ */
+class CanalFaixa
+{
+    // Tipos de mensagem.
+    static final byte INICIO = 1;
+    static final byte ESTADO = 2;
+    static final byte PASSO = 3;
+    static final byte SAIDAS = 4;
+    static final byte TROCA = 5;
+    static final byte FIM = 6;
+
+    // Os lados de uma faixa.
+    static final byte CIMA = 0;
+    static final byte BAIXO = 1;
+
+    // Número de posições do vetor de população (índice = código da espécie).
+    static final int ESPECIES = Especie.values().length + 1;
+
+    private final SocketChannel canal;
+    private ByteBuffer saida = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer entrada = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer tamanho = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Cria a conexão sobre um canal já conectado.
+     * * @param canal O canal.
+     */
+    CanalFaixa(SocketChannel canal)
+    {
+        this.canal = canal;
+    }
+
+    /**
+     * Começa uma mensagem.
+     * * @param tipo O tipo da mensagem.
+     * @return O buffer onde o conteúdo deve ser escrito (ver {@link #reservar(int)}).
+     */
+    ByteBuffer comecar(byte tipo)
+    {
+        saida.clear();
+        saida.putInt(0).put(tipo);
+        return saida;
+    }
+
+    /**
+     * Garante espaço para mais bytes na mensagem sendo montada.
+     * * @param bytes O número de bytes.
+     * @return O buffer da mensagem (pode ter sido trocado por um maior).
+     */
+    ByteBuffer reservar(int bytes)
+    {
+        if(saida.remaining() < bytes) {
+            ByteBuffer maior = ByteBuffer.allocate(Math.max(saida.capacity() * 2, saida.position() + bytes))
+                                         .order(ByteOrder.LITTLE_ENDIAN);
+            saida.flip();
+            maior.put(saida);
+            saida = maior;
+        }
+        return saida;
+    }
+
+    /**
+     * Envia a mensagem montada.
+     * * @throws IOException Se a conexão falhar.
+     */
+    void enviar() throws IOException
+    {
+        saida.putInt(0, saida.position() - 4);
+        saida.flip();
+        while(saida.hasRemaining()) {
+            canal.write(saida);
+        }
+    }
+
+    /**
+     * Recebe a próxima mensagem, que deve ser do tipo esperado.
+     * * @param tipo O tipo esperado.
+     * @return O conteúdo da mensagem, posicionado depois do tipo.
+     * @throws IOException Se a conexão falhar ou a mensagem for de outro tipo.
+     */
+    ByteBuffer receber(byte tipo) throws IOException
+    {
+        ByteBuffer mensagem = receber();
+        byte recebido = mensagem.get();
+        if(recebido != tipo) {
+            throw new IOException("Mensagem inesperada: " + recebido + " (esperada " + tipo + ")");
+        }
+        return mensagem;
+    }
+
+    /**
+     * Recebe a próxima mensagem, de qualquer tipo. O buffer é reaproveitado na
+     * próxima chamada.
+     * * @return A mensagem, posicionada no byte de tipo.
+     * @throws IOException Se a conexão falhar.
+     */
+    ByteBuffer receber() throws IOException
+    {
+        tamanho.clear();
+        lerTudo(tamanho);
+        int n = tamanho.getInt(0);
+        if(n < 1) {
+            throw new IOException("Mensagem inválida de " + n + " bytes");
+        }
+        if(entrada.capacity() < n) {
+            entrada = ByteBuffer.allocate(Math.max(n, entrada.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        entrada.clear().limit(n);
+        lerTudo(entrada);
+        entrada.flip();
+        return entrada;
+    }
+
+    /**
+     * Fecha a conexão.
+     * * @throws IOException Se ocorrer um erro ao fechar.
+     */
+    void fechar() throws IOException
+    {
+        canal.close();
+    }
+
+    /**
+     * Lê do canal até encher o buffer.
+     */
+    private void lerTudo(ByteBuffer destino) throws IOException
+    {
+        while(destino.hasRemaining()) {
+            if(canal.read(destino) < 0) {
+                throw new EOFException("Conexão encerrada pela outra ponta");
+            }
+        }
+    }
+
+    /**
+     * Acrescenta bytes já codificados (ex: uma borda guardada) à mensagem sendo montada.
+     * * @param dados Os bytes.
+     */
+    void escrever(byte[] dados)
+    {
+        reservar(dados.length).put(dados);
+    }
+
+    /**
+     * Copia uma borda de uma mensagem recebida, já codificada, para ser repassada depois.
+     * * @param origem A mensagem recebida, posicionada na borda.
+     * @return Os bytes da borda.
+     */
+    static byte[] lerBorda(ByteBuffer origem)
+    {
+        byte[] borda = new byte[4 + origem.getInt(origem.position()) * 5];
+        origem.get(borda);
+        return borda;
+    }
+
+    /**
+     * Escreve os dados de um ator na mensagem sendo montada.
+     * * @param ator O ator.
+     * @param linha A linha do ator no campo inteiro.
+     */
+    void escreverAtor(Ator ator, int linha)
+    {
+        int idade = 0;
+        int fome = 0;
+        if(ator instanceof Animal) {
+            idade = ((Animal) ator).getAge();
+            fome = ((Animal) ator).getFoodLevel();
+        }
+        else if(ator instanceof Vegetacao) {
+            idade = ((Vegetacao) ator).getAge();
+        }
+        reservar(17).put(Especie.codigoDe(ator)).putInt(idade).putInt(fome)
+                    .putInt(linha).putInt(ator.getLocation().getCol());
+    }
+
+    /**
+     * Lê os dados de um ator e reconstrói o objeto.
+     * * @param origem A mensagem recebida, posicionada no ator.
+     * @return O ator, com a localização no campo inteiro.
+     * @throws IOException Se a espécie for inválida.
+     */
+    static Ator lerAtor(ByteBuffer origem) throws IOException
+    {
+        Especie especie = Especie.doCodigo(origem.get());
+        if(especie == null) {
+            throw new IOException("Espécie inválida na mensagem");
+        }
+        int idade = origem.getInt();
+        int fome = origem.getInt();
+        Location onde = new Location(origem.getInt(), origem.getInt());
+        Ator ator = especie.criar();
+        if(ator instanceof Animal) {
+            ((Animal) ator).setAge(idade);
+            ((Animal) ator).setFoodLevel(fome);
+        }
+        else {
+            ((Vegetacao) ator).setAge(idade);
+        }
+        ator.setLocation(onde);
+        return ator;
+    }
+}
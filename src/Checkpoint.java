@@ -0,0 +1,400 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Grava e restaura o estado completo de uma simulação em um formato binário compacto.
+ * O arquivo guarda tudo o que é necessário para continuar a execução exatamente
+ * do mesmo ponto: passo, terreno, camada de vegetação, cada ator (espécie, idade,
+ * fome, localização, vivo/morto, se está no campo) e o estado do gerador aleatório.
+ * * Formato (little-endian), versão 1:
+ * <pre>
+ *   int   MAGICO ("ECO1")     short VERSAO
+ *   int   depth, width, step  long  estado do gerador
+ *   byte  código do terreno por célula (depth * width)
+ *   byte  tem vegetação; se 1: long semente, long passo,
+ *         byte tipo por célula, short idade por célula
+ *   int   número de atores; para cada ator, na ordem da lista:
+ *         byte espécie, byte flags (1 = vivo, 2 = no campo),
+ *         int idade, int fome, int linha, int coluna (-1 se sem localização)
+ * </pre>
+ * A escrita e a leitura usam um único buffer direto sobre um {@link FileChannel},
+ * sem criar objetos por ator além dos próprios atores restaurados.
+ * * A gravação é durável: o estado é escrito em um arquivo temporário, sincronizado
+ * com o disco e renomeado atomicamente sobre o destino. Quando {@link #salvar}
+ * retorna, o checkpoint sobrevive a uma queda, e o diário pode apagar os segmentos
+ * anteriores; se a queda vier antes, o checkpoint anterior continua intacto.
+ *
+ * @version 1.0
+ */
+public class Checkpoint
+{
+    // Identificador do formato ("ECO1") e versão atual.
+    private static final int MAGICO = 0x45434F31;
+    private static final short VERSAO = 1;
+
+    // Bits do campo de flags de cada ator.
+    private static final int FLAG_VIVO = 1;
+    private static final int FLAG_NO_CAMPO = 2;
+
+    // Tamanho do registro de um ator em bytes.
+    private static final int TAMANHO_ATOR = 2 + 4 * 4;
+
+    // Tamanho do buffer de E/S.
+    private static final int TAMANHO_BUFFER = 1 << 20;
+
+    /**
+     * Grava o estado da simulação no arquivo fornecido, de forma durável (ver acima).
+     * Deve ser chamado entre passos (nunca durante simulateOneStep).
+     * * @param sim A simulação a ser salva.
+     * @param arquivo O arquivo de destino (substituído se existir).
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    public static void salvar(Simulator sim, Path arquivo) throws IOException
+    {
+        Path absoluto = arquivo.toAbsolutePath();
+        Path temporario = absoluto.resolveSibling(absoluto.getFileName() + ".tmp");
+        try {
+            gravar(sim, temporario);
+            Files.move(temporario, absoluto, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(temporario);
+        }
+        sincronizarDiretorio(absoluto.getParent());
+    }
+
+    /**
+     * Escreve o estado no arquivo e o sincroniza com o disco.
+     */
+    private static void gravar(Simulator sim, Path arquivo) throws IOException
+    {
+        Field field = sim.getField();
+        int depth = field.getDepth();
+        int width = field.getWidth();
+        Terreno[][] terrenos = sim.getTerrenos();
+        CamadaVegetacao vegetacao = sim.getCamadaVegetacao();
+        List<Ator> atores = sim.getAtores();
+
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(TAMANHO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+
+            buf.putInt(MAGICO);
+            buf.putShort(VERSAO);
+            buf.putInt(depth);
+            buf.putInt(width);
+            buf.putInt(sim.getStep());
+            buf.putLong(sim.getContexto().getGerador().getEstado());
+
+            for(int row = 0; row < depth; row++) {
+                for(int i = 0; i < width; i += TAMANHO_BUFFER) {
+                    int n = Math.min(TAMANHO_BUFFER, width - i);
+                    garantir(canal, buf, n);
+                    for(int col = i; col < i + n; col++) {
+                        buf.put((byte) Simulator.codigoDoTerreno(terrenos[row][col]));
+                    }
+                }
+            }
+
+            garantir(canal, buf, 1 + 16);
+            if(vegetacao == null) {
+                buf.put((byte) 0);
+            }
+            else {
+                buf.put((byte) 1);
+                buf.putLong(vegetacao.getSemente());
+                buf.putLong(vegetacao.getPasso());
+                for(int row = 0; row < depth; row++) {
+                    byte[] tipos = vegetacao.tiposDaLinha(row);
+                    for(int i = 0; i < width; i += TAMANHO_BUFFER) {
+                        int n = Math.min(TAMANHO_BUFFER, width - i);
+                        garantir(canal, buf, n);
+                        buf.put(tipos, i, n);
+                    }
+                }
+                for(int row = 0; row < depth; row++) {
+                    short[] idades = vegetacao.idadesDaLinha(row);
+                    for(int col = 0; col < width; col++) {
+                        garantir(canal, buf, 2);
+                        buf.putShort(idades[col]);
+                    }
+                }
+            }
+
+            garantir(canal, buf, 4);
+            buf.putInt(atores.size());
+            for(Ator ator : atores) {
+                garantir(canal, buf, TAMANHO_ATOR);
+                escreverAtor(buf, ator, field);
+            }
+
+            descarregar(canal, buf);
+            canal.force(true);
+        }
+    }
+
+    /**
+     * Sincroniza a entrada de diretório criada pela renomeação. Em sistemas que não
+     * permitem abrir um diretório como canal, a renomeação fica a cargo do sistema.
+     */
+    private static void sincronizarDiretorio(Path diretorio) throws IOException
+    {
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        }
+        catch(UnsupportedOperationException | AccessDeniedException e) {
+            // Windows: diretórios não podem ser abertos para sincronização
+        }
+    }
+
+    /**
+     * Restaura no simulador o estado gravado no arquivo.
+     * O arquivo é lido e validado por inteiro antes que o simulador seja alterado.
+     * * @param sim O simulador que receberá o estado (com as mesmas dimensões do arquivo).
+     * @param arquivo O arquivo de checkpoint.
+     * @throws IOException Se o arquivo não puder ser lido ou for incompatível.
+     */
+    public static void restaurar(Simulator sim, Path arquivo) throws IOException
+    {
+        Field field = sim.getField();
+        int depth = field.getDepth();
+        int width = field.getWidth();
+
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(TAMANHO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            buf.limit(0);
+
+            exigir(canal, buf, 4 + 2 + 12 + 8);
+            if(buf.getInt() != MAGICO) {
+                throw new IOException("Arquivo não é um checkpoint do simulador: " + arquivo);
+            }
+            short versao = buf.getShort();
+            if(versao != VERSAO) {
+                throw new IOException("Versão de checkpoint não suportada: " + versao);
+            }
+            int depthArquivo = buf.getInt();
+            int widthArquivo = buf.getInt();
+            if(depthArquivo != depth || widthArquivo != width) {
+                throw new IOException("Checkpoint de " + depthArquivo + "x" + widthArquivo
+                                      + " não cabe em um campo de " + depth + "x" + width);
+            }
+            int step = buf.getInt();
+            long estadoGerador = buf.getLong();
+
+            Terreno[][] lidos = new Terreno[depth][width];
+            for(int row = 0; row < depth; row++) {
+                for(int i = 0; i < width; ) {
+                    exigir(canal, buf, 1);
+                    int n = Math.min(buf.remaining(), width - i);
+                    for(int col = i; col < i + n; col++) {
+                        Terreno terreno = Simulator.terrenoDoCodigo(buf.get());
+                        if(terreno == null) {
+                            throw new IOException("Código de terreno inválido em " + row + "," + col);
+                        }
+                        lidos[row][col] = terreno;
+                    }
+                    i += n;
+                }
+            }
+
+            exigir(canal, buf, 1);
+            CamadaVegetacao vegetacao = null;
+            if(buf.get() != 0) {
+                exigir(canal, buf, 16);
+                vegetacao = new CamadaVegetacao(depth, width, lidos, buf.getLong());
+                vegetacao.setPasso(buf.getLong());
+                for(int row = 0; row < depth; row++) {
+                    byte[] tipos = vegetacao.tiposDaLinha(row);
+                    for(int i = 0; i < width; ) {
+                        exigir(canal, buf, 1);
+                        int n = Math.min(buf.remaining(), width - i);
+                        buf.get(tipos, i, n);
+                        for(int col = i; col < i + n; col++) {
+                            if(tipos[col] < CamadaVegetacao.VAZIO || tipos[col] > CamadaVegetacao.VITORIA_REGIA) {
+                                throw new IOException("Tipo de planta inválido em " + row + "," + col);
+                            }
+                        }
+                        i += n;
+                    }
+                }
+                for(int row = 0; row < depth; row++) {
+                    short[] idades = vegetacao.idadesDaLinha(row);
+                    for(int col = 0; col < width; col++) {
+                        exigir(canal, buf, 2);
+                        idades[col] = buf.getShort();
+                    }
+                }
+                vegetacao.recontar();
+            }
+
+            exigir(canal, buf, 4);
+            int total = buf.getInt();
+            List<Ator> restaurados = new ArrayList<>(total);
+            List<Ator> noCampo = new ArrayList<>(total);
+            for(int i = 0; i < total; i++) {
+                exigir(canal, buf, TAMANHO_ATOR);
+                restaurados.add(lerAtor(buf, depth, width, noCampo));
+            }
+
+            // Tudo foi lido com sucesso: aplica o estado ao simulador.
+            sim.garantirEstadoProprio();
+            field = sim.getField();
+            Terreno[][] terrenos = sim.getTerrenos();
+            for(int row = 0; row < depth; row++) {
+                System.arraycopy(lidos[row], 0, terrenos[row], 0, width);
+            }
+            List<Ator> atores = sim.getAtores();
+            atores.clear();
+            atores.addAll(restaurados);
+            field.clear();
+            for(Ator ator : noCampo) {
+                field.place(ator, ator.getLocation());
+            }
+            for(Ator ator : restaurados) {
+                if(ator.isAlive() && ator.getLocation() != null && field.getObjectAt(ator.getLocation()) != ator) {
+                    field.cobrir(ator);
+                }
+            }
+            sim.getContexto().getGerador().setEstado(estadoGerador);
+            sim.restaurarEstado(step, vegetacao);
+        }
+    }
+
+    /**
+     * Escreve o registro de um ator no buffer.
+     * * @param buf O buffer de saída (com espaço garantido).
+     * @param ator O ator.
+     * @param field O campo atual, para saber se o ator ocupa sua posição.
+     */
+    private static void escreverAtor(ByteBuffer buf, Ator ator, Field field)
+    {
+        Location loc = ator.getLocation();
+        int flags = 0;
+        if(ator.isAlive()) {
+            flags |= FLAG_VIVO;
+        }
+        if(loc != null && field.getObjectAt(loc) == ator) {
+            flags |= FLAG_NO_CAMPO;
+        }
+
+        int idade = 0;
+        int fome = 0;
+        if(ator instanceof Animal) {
+            idade = ((Animal) ator).getAge();
+            fome = ((Animal) ator).getFoodLevel();
+        }
+        else if(ator instanceof Vegetacao) {
+            idade = ((Vegetacao) ator).getAge();
+        }
+
+        buf.put(Especie.codigoDe(ator));
+        buf.put((byte) flags);
+        buf.putInt(idade);
+        buf.putInt(fome);
+        buf.putInt(loc == null ? -1 : loc.getRow());
+        buf.putInt(loc == null ? -1 : loc.getCol());
+    }
+
+    /**
+     * Lê o registro de um ator do buffer e reconstrói o objeto.
+     * * @param buf O buffer de entrada (com o registro completo disponível).
+     * @param depth A profundidade do campo, para validar a localização.
+     * @param width A largura do campo, para validar a localização.
+     * @param noCampo Lista onde o ator é incluído se ocupava sua posição no campo.
+     * @return O ator reconstruído.
+     * @throws IOException Se o registro for inválido.
+     */
+    private static Ator lerAtor(ByteBuffer buf, int depth, int width, List<Ator> noCampo)
+        throws IOException
+    {
+        Especie especie = Especie.doCodigo(buf.get());
+        if(especie == null) {
+            throw new IOException("Espécie inválida no checkpoint");
+        }
+        int flags = buf.get();
+        int idade = buf.getInt();
+        int fome = buf.getInt();
+        int row = buf.getInt();
+        int col = buf.getInt();
+
+        Ator ator = especie.criar();
+        if(ator instanceof Animal) {
+            Animal animal = (Animal) ator;
+            animal.setAge(idade);
+            animal.setFoodLevel(fome);
+            if((flags & FLAG_VIVO) == 0) {
+                animal.setDead();
+            }
+        }
+        else {
+            Vegetacao planta = (Vegetacao) ator;
+            planta.setAge(idade);
+            if((flags & FLAG_VIVO) == 0) {
+                planta.setDead();
+            }
+        }
+        if(row >= 0) {
+            if(row >= depth || col < 0 || col >= width) {
+                throw new IOException("Localização fora do campo no checkpoint: " + row + "," + col);
+            }
+            ator.setLocation(new Location(row, col));
+            if((flags & FLAG_NO_CAMPO) != 0) {
+                noCampo.add(ator);
+            }
+        }
+        return ator;
+    }
+
+    /**
+     * Garante que o buffer de saída tenha espaço para n bytes, gravando-o se necessário.
+     */
+    private static void garantir(FileChannel canal, ByteBuffer buf, int n) throws IOException
+    {
+        if(buf.remaining() < n) {
+            descarregar(canal, buf);
+        }
+    }
+
+    /**
+     * Grava todo o conteúdo pendente do buffer de saída no canal.
+     */
+    private static void descarregar(FileChannel canal, ByteBuffer buf) throws IOException
+    {
+        buf.flip();
+        while(buf.hasRemaining()) {
+            canal.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Garante que o buffer de entrada tenha pelo menos n bytes disponíveis, lendo do canal.
+     * n não pode passar da capacidade do buffer (dados maiores são lidos em partes).
+     * @throws IOException Se o arquivo terminar antes.
+     */
+    private static void exigir(FileChannel canal, ByteBuffer buf, int n) throws IOException
+    {
+        if(buf.remaining() >= n) {
+            return;
+        }
+        if(n > buf.capacity()) {
+            throw new IllegalArgumentException("Leitura maior que o buffer: " + n);
+        }
+        buf.compact();
+        while(buf.position() < n) {
+            if(canal.read(buf) < 0) {
+                throw new IOException("Checkpoint truncado");
+            }
+        }
+        buf.flip();
+    }
+}
@@ -0,0 +1,214 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Uma edição do mundo feita pelo operador com a simulação em andamento: colocar
+ * um indivíduo em uma célula, apagar uma região retangular ou mudar o terreno de
+ * uma região retangular.
+ * * Os comandos são imutáveis e podem ser criados em qualquer thread; a simulação
+ * os recebe por {@link Simulator#editar(ComandoEdicao)} e os aplica entre dois
+ * passos. Cada comando aplicado é gravado no {@link DiarioPassos}, para que a
+ * recuperação repita as edições no mesmo ponto da execução.
+ *
+ * @version 1.0
+ */
+public final class ComandoEdicao
+{
+    /**
+     * Os tipos de edição.
+     */
+    public enum Tipo
+    {
+        /** Coloca um indivíduo de uma espécie em uma célula vazia e habitável. */
+        COLOCAR,
+        /** Remove os atores e as plantas da camada de vegetação de um retângulo. */
+        APAGAR,
+        /** Muda o terreno de um retângulo e despeja quem não puder mais ficar nele. */
+        TERRENO
+    }
+
+    // Tamanho de um comando codificado, em bytes.
+    static final int TAMANHO = 18;
+
+    private final Tipo tipo;
+    private final Especie especie;
+    private final Terreno terreno;
+    private final int linha0, coluna0, linha1, coluna1;
+
+    /**
+     * Cria um comando (use as fábricas estáticas).
+     */
+    private ComandoEdicao(Tipo tipo, Especie especie, Terreno terreno, int linha0, int coluna0,
+                          int linha1, int coluna1)
+    {
+        this.tipo = tipo;
+        this.especie = especie;
+        this.terreno = terreno;
+        this.linha0 = Math.min(linha0, linha1);
+        this.coluna0 = Math.min(coluna0, coluna1);
+        this.linha1 = Math.max(linha0, linha1);
+        this.coluna1 = Math.max(coluna0, coluna1);
+    }
+
+    /**
+     * Cria um comando que coloca um recém-nascido da espécie na célula, se ela estiver
+     * vazia e o terreno permitir. Com a camada de vegetação, flores e vitórias-régias
+     * são plantadas na camada.
+     * * @param especie A espécie.
+     * @param row A linha.
+     * @param col A coluna.
+     * @return O comando.
+     */
+    public static ComandoEdicao colocar(Especie especie, int row, int col)
+    {
+        if(especie == null) {
+            throw new IllegalArgumentException("A espécie não pode ser nula.");
+        }
+        return new ComandoEdicao(Tipo.COLOCAR, especie, null, row, col, row, col);
+    }
+
+    /**
+     * Cria um comando que apaga os atores e as plantas de um retângulo (os cantos
+     * podem ser dados em qualquer ordem; os dois estão incluídos).
+     * * @param linha0 A linha de um canto.
+     * @param coluna0 A coluna de um canto.
+     * @param linha1 A linha do canto oposto.
+     * @param coluna1 A coluna do canto oposto.
+     * @return O comando.
+     */
+    public static ComandoEdicao apagar(int linha0, int coluna0, int linha1, int coluna1)
+    {
+        return new ComandoEdicao(Tipo.APAGAR, null, null, linha0, coluna0, linha1, coluna1);
+    }
+
+    /**
+     * Cria um comando que muda o terreno de um retângulo (os cantos podem ser dados
+     * em qualquer ordem; os dois estão incluídos). Quem não puder ficar no terreno
+     * novo é despejado: um animal vai para a primeira célula vizinha livre e
+     * habitável, na ordem de leitura (linha de cima para baixo, coluna da esquerda
+     * para a direita), ou morre se não houver nenhuma; uma planta morre; uma planta
+     * da camada de vegetação é removida.
+     * * @param terreno O terreno novo (Grama, Agua ou Pedra).
+     * @param linha0 A linha de um canto.
+     * @param coluna0 A coluna de um canto.
+     * @param linha1 A linha do canto oposto.
+     * @param coluna1 A coluna do canto oposto.
+     * @return O comando.
+     */
+    public static ComandoEdicao terreno(Terreno terreno, int linha0, int coluna0, int linha1, int coluna1)
+    {
+        int codigo = terreno == null ? -1 : Simulator.codigoDoTerreno(terreno);
+        if(codigo < 0) {
+            throw new IllegalArgumentException("Terreno desconhecido: " + terreno);
+        }
+        return new ComandoEdicao(Tipo.TERRENO, null, Simulator.terrenoDoCodigo(codigo),
+                                 linha0, coluna0, linha1, coluna1);
+    }
+
+    /**
+     * @return O tipo da edição.
+     */
+    public Tipo getTipo()
+    {
+        return tipo;
+    }
+
+    /**
+     * @return A espécie colocada, ou null se o comando não coloca um indivíduo.
+     */
+    public Especie getEspecie()
+    {
+        return especie;
+    }
+
+    /**
+     * @return O terreno novo, ou null se o comando não muda o terreno.
+     */
+    public Terreno getTerreno()
+    {
+        return terreno;
+    }
+
+    /**
+     * @return A primeira linha da região.
+     */
+    public int getLinha0()
+    {
+        return linha0;
+    }
+
+    /**
+     * @return A primeira coluna da região.
+     */
+    public int getColuna0()
+    {
+        return coluna0;
+    }
+
+    /**
+     * @return A última linha da região (incluída).
+     */
+    public int getLinha1()
+    {
+        return linha1;
+    }
+
+    /**
+     * @return A última coluna da região (incluída).
+     */
+    public int getColuna1()
+    {
+        return coluna1;
+    }
+
+    /**
+     * Codifica o comando em {@value #TAMANHO} bytes: byte tipo, byte espécie (VAZIO se
+     * não houver; o código do terreno no comando TERRENO) e os quatro limites da região.
+     * * @param destino O buffer de destino.
+     */
+    void gravar(ByteBuffer destino)
+    {
+        byte codigo;
+        if(terreno != null) {
+            codigo = (byte) Simulator.codigoDoTerreno(terreno);
+        }
+        else {
+            codigo = especie == null ? Especie.VAZIO : especie.getCodigo();
+        }
+        destino.put((byte) tipo.ordinal()).put(codigo);
+        destino.putInt(linha0).putInt(coluna0).putInt(linha1).putInt(coluna1);
+    }
+
+    /**
+     * Decodifica um comando gravado por {@link #gravar(ByteBuffer)}.
+     * * @param origem O buffer, posicionado no início do comando.
+     * @return O comando, ou null se o tipo, a espécie ou o terreno forem inválidos.
+     */
+    static ComandoEdicao ler(ByteBuffer origem)
+    {
+        int tipo = origem.get();
+        byte codigo = origem.get();
+        Especie especie = Especie.doCodigo(codigo);
+        int linha0 = origem.getInt();
+        int coluna0 = origem.getInt();
+        int linha1 = origem.getInt();
+        int coluna1 = origem.getInt();
+        if(tipo == Tipo.COLOCAR.ordinal() && especie != null) {
+            return colocar(especie, linha0, coluna0);
+        }
+        if(tipo == Tipo.APAGAR.ordinal()) {
+            return apagar(linha0, coluna0, linha1, coluna1);
+        }
+        if(tipo == Tipo.TERRENO.ordinal() && Simulator.terrenoDoCodigo(codigo) != null) {
+            return terreno(Simulator.terrenoDoCodigo(codigo), linha0, coluna0, linha1, coluna1);
+        }
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return tipo + (especie != null ? " " + especie : "")
+               + (terreno != null ? " " + terreno.getClass().getSimpleName() : "")
+               + " (" + linha0 + ", " + coluna0 + ")-(" + linha1 + ", " + coluna1 + ")";
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Random;
+
+/**
+ * Estado compartilhado por todos os atores de uma mesma simulação.
+ * Antes, os geradores aleatórios eram campos estáticos de Animal, Vegetacao e Field,
+ * o que impedia reproduzir uma execução e fazia simulações diferentes na mesma JVM
+ * interferirem umas nas outras. Agora cada Simulator possui um contexto próprio e o
+ * ativa na thread que executa seus passos; os atores consultam o contexto ativo.
+ * * Se nenhum contexto foi ativado na thread, um contexto padrão global é usado.
+ *
+ * @version 1.0
+ */
+public class ContextoSimulacao
+{
+    // Contexto usado quando nenhuma simulação ativou o seu na thread atual.
+    private static final ContextoSimulacao PADRAO = new ContextoSimulacao(new GeradorAleatorio());
+
+    // O contexto ativo em cada thread.
+    private static final ThreadLocal<ContextoSimulacao> ATUAL = new ThreadLocal<>();
+
+    // O gerador aleatório da simulação.
+    private final GeradorAleatorio gerador;
+
+    // Os parâmetros das espécies nesta simulação.
+    private Parametros parametros = Parametros.PADRAO;
+
+    /**
+     * Cria um contexto com o gerador fornecido.
+     * * @param gerador O gerador aleatório da simulação.
+     */
+    public ContextoSimulacao(GeradorAleatorio gerador)
+    {
+        this.gerador = gerador;
+    }
+
+    /**
+     * Retorna o contexto ativo na thread atual.
+     * * @return O contexto ativo, ou o contexto padrão se nenhum foi ativado.
+     */
+    public static ContextoSimulacao atual()
+    {
+        ContextoSimulacao contexto = ATUAL.get();
+        return contexto != null ? contexto : PADRAO;
+    }
+
+    /**
+     * Atalho para o gerador aleatório do contexto ativo.
+     * * @return O gerador da simulação que está executando na thread atual.
+     */
+    public static Random random()
+    {
+        return atual().gerador;
+    }
+
+    /**
+     * Torna este contexto o ativo na thread atual.
+     */
+    public void ativar()
+    {
+        ATUAL.set(this);
+    }
+
+    /**
+     * Retorna o gerador aleatório deste contexto.
+     * * @return O gerador.
+     */
+    public GeradorAleatorio getGerador()
+    {
+        return gerador;
+    }
+
+    /**
+     * Retorna os parâmetros das espécies deste contexto.
+     * * @return Os parâmetros.
+     */
+    public Parametros getParametros()
+    {
+        return parametros;
+    }
+
+    /**
+     * Define os parâmetros das espécies deste contexto.
+     * * @param parametros Os novos parâmetros.
+     */
+    public void setParametros(Parametros parametros)
+    {
+        this.parametros = parametros;
+    }
+}
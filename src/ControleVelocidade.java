@@ -0,0 +1,219 @@
+/**
+ * Decide quantos passos a simulação executa a cada quadro desenhado e de quanto
+ * em quanto tempo o timer da interface dispara.
+ * * Há três modos: um número alvo de passos por segundo, o máximo possível e um
+ * número fixo de passos por quadro. Nos dois primeiros, o controle mede o tempo
+ * médio de um passo e da entrega de um quadro à janela e agrupa os passos de modo
+ * que cada quadro (passos + entrega) caiba no período do quadro alvo; assim a
+ * janela continua respondendo mesmo quando os passos são rápidos demais para
+ * desenhar um por um. O desenho acontece na thread de eventos, em paralelo com os
+ * passos do quadro seguinte.
+ * * Os métodos são sincronizados: o modo é escolhido na thread de eventos do Swing,
+ * enquanto os passos e as medidas acontecem na thread do motor da simulação.
+ *
+ * @version 1.0
+ */
+public class ControleVelocidade
+{
+    /**
+     * Os modos de velocidade.
+     */
+    public enum Modo
+    {
+        PASSOS_POR_SEGUNDO, MAXIMO, PASSOS_POR_QUADRO
+    }
+
+    // Peso de uma medida nova nas médias móveis.
+    private static final double PESO_MEDIDA = 0.2;
+
+    // Maior número de passos acumulados sem execução (evita rajadas depois de uma pausa).
+    private static final double MAXIMO_ATRASADO = 2.0;
+
+    private Modo modo = Modo.PASSOS_POR_SEGUNDO;
+    private double passosPorSegundo = 5;
+    private int passosPorQuadro = 1;
+    private int quadrosPorSegundo = 30;
+
+    // Médias móveis do tempo de um passo e de um desenho, em nanossegundos.
+    private double nanosPorPasso, nanosPorDesenho;
+
+    // Passos devidos (fração acumulada) no modo de passos por segundo e hora do último quadro.
+    private double devidos;
+    private long ultimoQuadro;
+
+    // Medida da velocidade real: passos e início da janela de medida.
+    private long passosMedidos, inicioMedida;
+    private double passosPorSegundoMedidos;
+
+    /**
+     * Executa um número alvo de passos por segundo.
+     * * @param passosPorSegundo Passos por segundo (maior que zero).
+     */
+    public synchronized void setPassosPorSegundo(double passosPorSegundo)
+    {
+        if(passosPorSegundo <= 0) {
+            throw new IllegalArgumentException("A velocidade deve ser maior do que zero.");
+        }
+        this.modo = Modo.PASSOS_POR_SEGUNDO;
+        this.passosPorSegundo = passosPorSegundo;
+        devidos = 0;
+    }
+
+    /**
+     * Executa o máximo de passos que mantém o número alvo de quadros por segundo.
+     */
+    public synchronized void setMaximo()
+    {
+        this.modo = Modo.MAXIMO;
+    }
+
+    /**
+     * Executa um número fixo de passos antes de cada quadro.
+     * * @param passosPorQuadro Passos por quadro (maior que zero).
+     */
+    public synchronized void setPassosPorQuadro(int passosPorQuadro)
+    {
+        if(passosPorQuadro <= 0) {
+            throw new IllegalArgumentException("O número de passos deve ser maior do que zero.");
+        }
+        this.modo = Modo.PASSOS_POR_QUADRO;
+        this.passosPorQuadro = passosPorQuadro;
+    }
+
+    /**
+     * Define o número de quadros por segundo que a interface tenta manter.
+     * * @param quadrosPorSegundo Quadros por segundo (maior que zero).
+     */
+    public synchronized void setQuadrosPorSegundo(int quadrosPorSegundo)
+    {
+        if(quadrosPorSegundo <= 0) {
+            throw new IllegalArgumentException("O número de quadros deve ser maior do que zero.");
+        }
+        this.quadrosPorSegundo = quadrosPorSegundo;
+    }
+
+    /**
+     * @return O modo atual.
+     */
+    public synchronized Modo getModo()
+    {
+        return modo;
+    }
+
+    /**
+     * @return A velocidade medida nos últimos segundos, em passos por segundo.
+     */
+    public synchronized double getPassosPorSegundoMedidos()
+    {
+        return passosPorSegundoMedidos;
+    }
+
+    /**
+     * @return O intervalo, em milissegundos, até o próximo disparo do timer: o
+     * período de um quadro, ou o intervalo entre passos se a velocidade alvo
+     * for menor que a taxa de quadros.
+     */
+    public synchronized int getAtrasoMs()
+    {
+        int periodo = 1000 / quadrosPorSegundo;
+        if(modo == Modo.PASSOS_POR_SEGUNDO && passosPorSegundo < quadrosPorSegundo) {
+            return (int) Math.min(Integer.MAX_VALUE, Math.round(1000 / passosPorSegundo));
+        }
+        return periodo;
+    }
+
+    /**
+     * Calcula quantos passos executar antes do próximo desenho.
+     * * @param agora A hora atual (System.nanoTime()).
+     * @return O número de passos (pode ser zero no modo de passos por segundo).
+     */
+    public synchronized int passosNoQuadro(long agora)
+    {
+        if(modo == Modo.PASSOS_POR_QUADRO) {
+            ultimoQuadro = agora;
+            return passosPorQuadro;
+        }
+        int limite = passosQueCabem();
+        if(modo == Modo.MAXIMO) {
+            ultimoQuadro = agora;
+            return limite;
+        }
+        if(ultimoQuadro == 0) {
+            devidos = 1;
+        }
+        else {
+            devidos += (agora - ultimoQuadro) * 1e-9 * passosPorSegundo;
+        }
+        ultimoQuadro = agora;
+        devidos = Math.min(devidos, Math.max(MAXIMO_ATRASADO, passosPorSegundo / quadrosPorSegundo * MAXIMO_ATRASADO));
+        int passos = (int) Math.min(devidos, limite);
+        devidos -= passos;
+        return passos;
+    }
+
+    /**
+     * @return Quantos passos cabem em um quadro, descontado o tempo de entregar o
+     * quadro à janela (ao menos um).
+     */
+    private int passosQueCabem()
+    {
+        if(nanosPorPasso == 0) {
+            return 1;
+        }
+        double orcamento = 1e9 / quadrosPorSegundo - nanosPorDesenho;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, orcamento / nanosPorPasso));
+    }
+
+    /**
+     * Registra o tempo gasto nos passos de um quadro.
+     * * @param passos O número de passos executados.
+     * @param nanos O tempo total, em nanossegundos.
+     */
+    public synchronized void registrarPassos(int passos, long nanos)
+    {
+        if(passos <= 0) {
+            return;
+        }
+        nanosPorPasso = media(nanosPorPasso, (double) nanos / passos);
+        long agora = System.nanoTime();
+        if(inicioMedida == 0) {
+            inicioMedida = agora - nanos;
+        }
+        passosMedidos += passos;
+        if(agora - inicioMedida >= 1_000_000_000L) {
+            passosPorSegundoMedidos = passosMedidos * 1e9 / (agora - inicioMedida);
+            passosMedidos = 0;
+            inicioMedida = agora;
+        }
+    }
+
+    /**
+     * Registra o tempo que a thread do motor gasta para entregar um quadro à janela
+     * (o desenho em si acontece na thread de eventos, junto com os próximos passos).
+     * * @param nanos O tempo, em nanossegundos.
+     */
+    public synchronized void registrarDesenho(long nanos)
+    {
+        nanosPorDesenho = media(nanosPorDesenho, nanos);
+    }
+
+    /**
+     * Esquece a hora do último quadro (ex: quando a simulação é pausada), para que
+     * o tempo parado não vire passos devidos.
+     */
+    public synchronized void pausar()
+    {
+        ultimoQuadro = 0;
+        devidos = 0;
+        inicioMedida = 0;
+        passosMedidos = 0;
+    }
+
+    /**
+     * Média móvel exponencial; a primeira medida é usada diretamente.
+     */
+    private static double media(double atual, double medida)
+    {
+        return atual == 0 ? medida : atual + PESO_MEDIDA * (medida - atual);
+    }
+}
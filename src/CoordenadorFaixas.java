@@ -0,0 +1,380 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordena uma execução distribuída em faixas: o campo é dividido em faixas
+ * horizontais, cada uma simulada por um processo {@link TrabalhadorFaixa} na mesma
+ * máquina, de modo que nenhum processo precisa guardar o mapa inteiro (nem o
+ * coordenador, que só conhece as dimensões).
+ * * Os trabalhadores se conectam a um socket de domínio Unix do coordenador. A cada
+ * passo o coordenador manda a cada faixa as bordas das vizinhas (halo), espera
+ * todas executarem o passo, repassa as presas comidas e os atores que cruzaram as
+ * bordas às faixas donas, e soma as populações recebidas. As faixas executam cada
+ * passo em paralelo, e nenhuma começa o passo seguinte antes de todas terminarem
+ * a troca. As mensagens são as de {@link CanalFaixa}.
+ * * Se algum trabalhador não se conectar em {@value #TEMPO_CONEXAO_MS} ms (ou terminar
+ * antes disso), {@link #iniciar()} falha, encerra os processos já iniciados e apaga
+ * o socket; {@link #fechar()} também os encerra e apaga o socket mesmo se falhar.
+ *
+ * @version 1.0
+ */
+public class CoordenadorFaixas
+{
+    // Borda vazia (nenhum ator), para as faixas sem vizinha de um lado.
+    private static final byte[] BORDA_VAZIA = new byte[4];
+
+    // Tempo máximo para todos os trabalhadores se conectarem, e para cada um
+    // terminar depois de receber FIM.
+    static final long TEMPO_CONEXAO_MS = 30_000;
+    private static final long TEMPO_FIM_MS = 10_000;
+
+    private final String arquivoMapa;
+    private final int depth, width;
+    private final int faixas;
+    private final long semente;
+
+    private final Path socket;
+    private ServerSocketChannel servidor;
+    private final List<CanalFaixa> canais = new ArrayList<>();
+    private final List<Process> processos = new ArrayList<>();
+
+    // Bordas de cima e de baixo de cada faixa, recebidas no último ESTADO.
+    private final byte[][] bordaCima, bordaBaixo;
+
+    // Mensagens SAIDAS do passo atual, de cada faixa.
+    private final ByteBuffer[] saidas;
+
+    private final int[] populacao = new int[CanalFaixa.ESPECIES];
+    private int passo;
+
+    /**
+     * Prepara uma execução distribuída. Nada é iniciado até {@link #iniciar()}.
+     * * @param arquivoMapa O arquivo de mapa, lido por cada trabalhador só na sua faixa.
+     * @param depth A profundidade do campo inteiro.
+     * @param width A largura do campo.
+     * @param faixas O número de faixas (processos trabalhadores).
+     * @param semente A semente da qual deriva a de cada faixa.
+     */
+    public CoordenadorFaixas(String arquivoMapa, int depth, int width, int faixas, long semente)
+    {
+        if(faixas <= 0 || faixas > depth) {
+            throw new IllegalArgumentException("O número de faixas deve estar entre 1 e a profundidade do campo.");
+        }
+        this.arquivoMapa = arquivoMapa;
+        this.depth = depth;
+        this.width = width;
+        this.faixas = faixas;
+        this.semente = semente;
+        this.socket = new File(System.getProperty("java.io.tmpdir"),
+                               "coordenador-" + ProcessHandle.current().pid() + ".sock").toPath();
+        bordaCima = new byte[faixas][];
+        bordaBaixo = new byte[faixas][];
+        saidas = new ByteBuffer[faixas];
+    }
+
+    /**
+     * Abre o socket, inicia um processo trabalhador por faixa (com o mesmo
+     * classpath desta JVM) e envia a cada um a sua faixa. Em caso de falha, os
+     * processos já iniciados são encerrados e o socket é apagado.
+     * * @throws IOException Se o socket ou algum processo não puder ser criado, ou se
+     * algum trabalhador não se conectar a tempo.
+     */
+    public void iniciar() throws IOException
+    {
+        try {
+            Files.deleteIfExists(socket);
+            servidor = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            servidor.bind(UnixDomainSocketAddress.of(socket));
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            for(int i = 0; i < faixas; i++) {
+                ProcessBuilder construtor = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                                               "Principal", "trabalhador", socket.toString());
+                construtor.inheritIO();
+                processos.add(construtor.start());
+            }
+            conectarTrabalhadores();
+            receberEstados();
+        }
+        catch(Throwable e) {
+            liberar();
+            throw e;
+        }
+    }
+
+    /**
+     * Aceita a conexão de cada trabalhador, na ordem em que chegam, e envia a sua
+     * faixa. Falha se o prazo TEMPO_CONEXAO_MS acabar ou algum processo terminar antes.
+     */
+    private void conectarTrabalhadores() throws IOException
+    {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TEMPO_CONEXAO_MS);
+        servidor.configureBlocking(false);
+        try(Selector seletor = Selector.open()) {
+            servidor.register(seletor, SelectionKey.OP_ACCEPT);
+            while(canais.size() < faixas) {
+                SocketChannel conexao = servidor.accept();
+                if(conexao == null) {
+                    for(Process processo : processos) {
+                        if(!processo.isAlive()) {
+                            throw new IOException("Um trabalhador terminou antes de se conectar (código "
+                                                  + processo.exitValue() + ").");
+                        }
+                    }
+                    long resta = TimeUnit.NANOSECONDS.toMillis(limite - System.nanoTime());
+                    if(resta <= 0) {
+                        throw new IOException("Só " + canais.size() + " de " + faixas
+                                              + " trabalhadores se conectaram em " + TEMPO_CONEXAO_MS + " ms.");
+                    }
+                    seletor.select(Math.min(resta, 100));
+                    seletor.selectedKeys().clear();
+                    continue;
+                }
+                enviarInicio(canais.size(), conexao);
+            }
+        }
+    }
+
+    /**
+     * Cria o canal de um trabalhador recém-conectado e envia a sua faixa.
+     */
+    private void enviarInicio(int i, SocketChannel conexao) throws IOException
+    {
+        CanalFaixa canal = new CanalFaixa(conexao);
+        canais.add(canal);
+        byte[] mapa = arquivoMapa.getBytes(StandardCharsets.UTF_8);
+        canal.comecar(CanalFaixa.INICIO);
+        ByteBuffer b = canal.reservar(34 + mapa.length);
+        b.putInt(i).putInt(faixas).putInt(depth).putInt(width);
+        b.putInt(linhaInicial(i)).putInt(linhaInicial(i + 1)).putLong(EnsembleSimulacoes.semente(semente, i));
+        b.putShort((short) mapa.length).put(mapa);
+        canal.enviar();
+    }
+
+    /**
+     * Executa um passo em todas as faixas e espera a troca de bordas terminar.
+     * * @return A população de cada espécie no campo inteiro, indexada pelo código.
+     * @throws IOException Se a comunicação com algum trabalhador falhar.
+     */
+    public int[] simularPasso() throws IOException
+    {
+        for(int i = 0; i < faixas; i++) {
+            CanalFaixa canal = canais.get(i);
+            canal.comecar(CanalFaixa.PASSO);
+            canal.escrever(i > 0 ? bordaBaixo[i - 1] : BORDA_VAZIA);
+            canal.escrever(i < faixas - 1 ? bordaCima[i + 1] : BORDA_VAZIA);
+            canal.enviar();
+        }
+        for(int i = 0; i < faixas; i++) {
+            ByteBuffer mensagem = canais.get(i).receber(CanalFaixa.SAIDAS);
+            saidas[i] = ByteBuffer.allocate(mensagem.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            saidas[i].put(mensagem).flip();
+        }
+        for(int i = 0; i < faixas; i++) {
+            enviarTroca(i);
+        }
+        receberEstados();
+        passo++;
+        return getPopulacao();
+    }
+
+    /**
+     * @return O número de passos executados.
+     */
+    public int getPasso()
+    {
+        return passo;
+    }
+
+    /**
+     * @return Uma cópia da população de cada espécie no campo inteiro, indexada pelo código.
+     */
+    public int[] getPopulacao()
+    {
+        return populacao.clone();
+    }
+
+    /**
+     * Manda os trabalhadores terminarem, espera os processos e apaga o socket. Os
+     * processos que não terminarem em TEMPO_FIM_MS, ou todos se o envio falhar, são
+     * encerrados à força; o socket é apagado em qualquer caso.
+     * * @throws IOException Se ocorrer um erro ao fechar.
+     * @throws InterruptedException Se a espera pelos processos for interrompida.
+     */
+    public void fechar() throws IOException, InterruptedException
+    {
+        try {
+            for(CanalFaixa canal : canais) {
+                canal.comecar(CanalFaixa.FIM);
+                canal.enviar();
+            }
+            for(Process processo : processos) {
+                processo.waitFor(TEMPO_FIM_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        finally {
+            liberar();
+        }
+    }
+
+    /**
+     * Fecha os canais e o socket, encerra à força os processos ainda vivos e apaga
+     * o arquivo do socket, sem lançar exceções (usado também quando iniciar falha).
+     */
+    private void liberar()
+    {
+        for(CanalFaixa canal : canais) {
+            try {
+                canal.fechar();
+            }
+            catch(IOException e) {
+                // O processo do outro lado é encerrado abaixo
+            }
+        }
+        canais.clear();
+        for(Process processo : processos) {
+            if(processo.isAlive()) {
+                processo.destroyForcibly();
+            }
+        }
+        processos.clear();
+        try {
+            if(servidor != null) {
+                servidor.close();
+                servidor = null;
+            }
+            Files.deleteIfExists(socket);
+        }
+        catch(IOException e) {
+            System.err.println("Erro ao apagar o socket " + socket + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Monta a mensagem TROCA de uma faixa a partir das saídas das vizinhas: o que a
+     * vizinha de cima enviou para baixo chega pela borda de cima, e vice-versa.
+     */
+    private void enviarTroca(int i) throws IOException
+    {
+        CanalFaixa canal = canais.get(i);
+        canal.comecar(CanalFaixa.TROCA);
+        int comidas = 0;
+        int chegadas = 0;
+        if(i > 0) {
+            comidas += contar(saidas[i - 1], CanalFaixa.BAIXO, false);
+            chegadas += contar(saidas[i - 1], CanalFaixa.BAIXO, true);
+        }
+        if(i < faixas - 1) {
+            comidas += contar(saidas[i + 1], CanalFaixa.CIMA, false);
+            chegadas += contar(saidas[i + 1], CanalFaixa.CIMA, true);
+        }
+        canal.reservar(4).putInt(comidas);
+        if(i > 0) {
+            repassarComidas(canal, saidas[i - 1], CanalFaixa.BAIXO, CanalFaixa.CIMA);
+        }
+        if(i < faixas - 1) {
+            repassarComidas(canal, saidas[i + 1], CanalFaixa.CIMA, CanalFaixa.BAIXO);
+        }
+        canal.reservar(4).putInt(chegadas);
+        if(i > 0) {
+            repassarChegadas(canal, saidas[i - 1], CanalFaixa.BAIXO);
+        }
+        if(i < faixas - 1) {
+            repassarChegadas(canal, saidas[i + 1], CanalFaixa.CIMA);
+        }
+        canal.enviar();
+    }
+
+    /**
+     * Conta, em uma mensagem SAIDAS, as presas comidas (ou os atores que saíram) por um lado.
+     */
+    private static int contar(ByteBuffer saida, byte lado, boolean atores)
+    {
+        int total = 0;
+        int n = saida.getInt(0);
+        if(!atores) {
+            for(int k = 0; k < n; k++) {
+                if(saida.get(4 + 5 * k) == lado) {
+                    total++;
+                }
+            }
+            return total;
+        }
+        int inicio = 4 + 5 * n;
+        int m = saida.getInt(inicio);
+        for(int k = 0; k < m; k++) {
+            if(saida.get(inicio + 4 + 18 * k) == lado) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Copia as presas comidas por um lado, trocando o lado pelo da faixa dona.
+     */
+    private static void repassarComidas(CanalFaixa canal, ByteBuffer saida, byte lado, byte ladoDono)
+    {
+        int n = saida.getInt(0);
+        for(int k = 0; k < n; k++) {
+            if(saida.get(4 + 5 * k) == lado) {
+                canal.reservar(5).put(ladoDono).putInt(saida.getInt(4 + 5 * k + 1));
+            }
+        }
+    }
+
+    /**
+     * Copia os atores que saíram por um lado.
+     */
+    private static void repassarChegadas(CanalFaixa canal, ByteBuffer saida, byte lado)
+    {
+        int inicio = 4 + 5 * saida.getInt(0);
+        int m = saida.getInt(inicio);
+        for(int k = 0; k < m; k++) {
+            int posicao = inicio + 4 + 18 * k;
+            if(saida.get(posicao) == lado) {
+                ByteBuffer ator = saida.duplicate();
+                ator.position(posicao + 1).limit(posicao + 18);
+                canal.reservar(17).put(ator);
+            }
+        }
+    }
+
+    /**
+     * Recebe o ESTADO de todas as faixas: soma as populações e guarda as bordas.
+     */
+    private void receberEstados() throws IOException
+    {
+        Arrays.fill(populacao, 0);
+        for(int i = 0; i < faixas; i++) {
+            ByteBuffer mensagem = canais.get(i).receber(CanalFaixa.ESTADO);
+            for(int c = 0; c < populacao.length; c++) {
+                populacao[c] += mensagem.getInt();
+            }
+            bordaCima[i] = CanalFaixa.lerBorda(mensagem);
+            bordaBaixo[i] = CanalFaixa.lerBorda(mensagem);
+        }
+    }
+
+    /**
+     * @return A primeira linha da faixa (a de índice faixas é o fim do campo).
+     */
+    private int linhaInicial(int faixa)
+    {
+        return (int) ((long) depth * faixa / faixas);
+    }
+}
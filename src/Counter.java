@@ -50,6 +50,15 @@ public class Counter
         count++;
     }
     
+    /**
+     * Soma uma quantidade à contagem atual.
+     * * @param quantidade A quantidade a somar.
+     */
+    public void increment(int quantidade)
+    {
+        count += quantidade;
+    }
+
     /**
      * Reinicia a contagem atual para zero.
      * Geralmente chamado no início de um novo passo de contagem estatística.
@@ -0,0 +1,646 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Diário (journal) só de acréscimo com os eventos de cada passo da simulação.
+ * Um checkpoint completo por passo seria caro demais para campos grandes; em vez
+ * disso, o diário grava apenas o que mudou (nascimentos, mortes, movimentos e
+ * alimentação) e, na recuperação, esses eventos são reaplicados sobre o último
+ * checkpoint.
+ * * Os eventos de um passo são codificados em um buffer na thread da simulação e,
+ * ao final do passo, entregues a uma thread escritora por uma fila limitada.
+ * A escritora copia os blocos para segmentos de arquivo mapeados em memória
+ * ({@code diario-<primeiro passo>.seg}); quando um segmento enche, outro é criado.
+ * Se a escritora ficar para trás, a fila enche e a simulação espera, o que limita
+ * a memória usada e o número de passos que podem ser perdidos.
+ * * Um bloco tem no máximo {@value #TAMANHO_MAXIMO_BLOCO} bytes: os eventos de um passo
+ * maior são entregues em várias partes, e as edições feitas com a simulação parada
+ * são entregues como uma parte do passo seguinte sempre que passam de
+ * {@value #TAMANHO_EDICOES_PENDENTES} bytes. Assim a memória do diário não cresce
+ * com o tamanho do campo nem com o número de edições.
+ * * Formato de um registro (little-endian): int tamanho, int passo, eventos. O tamanho
+ * é escrito por último, de modo que um registro incompleto (queda no meio da cópia)
+ * fica com tamanho zero e é ignorado na leitura. O bit mais alto do passo marca uma
+ * parte que continua no próximo registro; os eventos de um passo são as partes
+ * seguidas até a primeira sem essa marca. Cada evento começa com um byte de tipo:
+ * <pre>
+ *   MOVER   int indice, int linha, int coluna
+ *   MORRER  int indice
+ *   COMER   int indice, int linha, int coluna, int fome   (presa no campo)
+ *   PLANTA  int indice, int linha, int coluna, int fome   (flor da camada de vegetação)
+ *   NASCER  int indice, byte espécie, int linha, int coluna
+ *   FIM     long estado do gerador aleatório
+ *   EDITAR  comando de edição (ver {@link ComandoEdicao})
+ * </pre>
+ * O índice é a posição do ator na lista de atores no início do passo. O
+ * envelhecimento e o aumento da fome de cada ator vivo são implícitos.
+ * * As edições do operador ficam no início do bloco do passo em que foram
+ * aplicadas (as feitas com a simulação parada vão para o bloco do passo seguinte)
+ * e são reaplicadas antes dos eventos dos atores; os atores que elas colocam ou
+ * apagam ou despejam não geram eventos próprios.
+ *
+ * @version 1.0
+ */
+public class DiarioPassos implements ObservadorSimulacao
+{
+    // Tipos de evento.
+    private static final byte MOVER = 1;
+    private static final byte MORRER = 2;
+    private static final byte COMER = 3;
+    private static final byte PLANTA = 4;
+    private static final byte NASCER = 5;
+    private static final byte FIM = 6;
+    private static final byte EDITAR = 7;
+
+    // Cabeçalho dos segmentos ("EDJ1"), versão e tamanho reservado.
+    // A versão 2 acrescentou o evento EDITAR e a 3, as partes (bit CONTINUA);
+    // segmentos das versões anteriores continuam legíveis.
+    private static final int MAGICO = 0x45444A31;
+    private static final short VERSAO = 3;
+    private static final int TAMANHO_CABECALHO = 16;
+
+    // Tamanho padrão de um segmento.
+    private static final int TAMANHO_SEGMENTO = 64 << 20;
+
+    // Número de blocos em circulação entre a simulação e a escritora.
+    private static final int BLOCOS = 8;
+
+    // Tamanho inicial e máximo de um bloco, e das edições pendentes.
+    private static final int TAMANHO_INICIAL_BLOCO = 64 << 10;
+    static final int TAMANHO_MAXIMO_BLOCO = 1 << 20;
+    static final int TAMANHO_EDICOES_PENDENTES = 64 << 10;
+
+    // Marca, no campo passo de um registro, uma parte que continua no próximo.
+    private static final int CONTINUA = 0x80000000;
+
+    // Tipos de bloco na fila.
+    private static final int BLOCO_PASSO = 0;
+    private static final int BLOCO_CHECKPOINT = 1;
+    private static final int BLOCO_FECHAR = 2;
+
+    /**
+     * Um bloco de eventos de um passo (ou um comando para a escritora).
+     */
+    private static class Bloco
+    {
+        ByteBuffer dados = ByteBuffer.allocate(TAMANHO_INICIAL_BLOCO).order(ByteOrder.LITTLE_ENDIAN);
+        int tipo;
+        // O passo, com o bit CONTINUA se o passo continua no próximo bloco.
+        int step;
+    }
+
+    private final Path diretorio;
+    private final ContextoSimulacao contexto;
+
+    // Blocos cheios aguardando a escritora e blocos livres para a simulação.
+    private final BlockingQueue<Bloco> cheios = new ArrayBlockingQueue<>(BLOCOS + 2);
+    private final BlockingQueue<Bloco> livres = new ArrayBlockingQueue<>(BLOCOS);
+
+    // O bloco sendo preenchido pela simulação e o índice do ator que está agindo
+    // (-1 fora dos turnos, quando os eventos vêm de edições).
+    private Bloco atual;
+    private int indiceAtual = -1;
+
+    // Edições aplicadas com a simulação parada, à espera do bloco do próximo passo.
+    private final ByteBuffer edicoesPendentes = ByteBuffer.allocate(TAMANHO_EDICOES_PENDENTES)
+                                                          .order(ByteOrder.LITTLE_ENDIAN);
+
+    // O passo que virá a seguir (só dá nome aos segmentos abertos por edições pendentes).
+    private int passoSeguinte;
+
+    // Estado da escritora: segmento aberto, arquivos já gravados e número do
+    // próximo segmento (distingue segmentos que começam no mesmo passo).
+    private final Thread escritora;
+    private MappedByteBuffer segmento;
+    private final List<Path> segmentos = new ArrayList<>();
+    private int sequencia;
+    private volatile IOException erro;
+
+    /**
+     * Cria o diário e inicia a thread escritora.
+     * * @param diretorio O diretório onde os segmentos serão gravados (criado se necessário).
+     * @param contexto O contexto da simulação, para gravar o estado do gerador aleatório.
+     * @throws IOException Se o diretório não puder ser criado.
+     */
+    public DiarioPassos(Path diretorio, ContextoSimulacao contexto) throws IOException
+    {
+        this.diretorio = diretorio;
+        this.contexto = contexto;
+        Files.createDirectories(diretorio);
+        for(int i = 0; i < BLOCOS; i++) {
+            livres.add(new Bloco());
+        }
+        escritora = new Thread(this::escrever, "diario-escritora");
+        escritora.setDaemon(true);
+        escritora.start();
+    }
+
+    // --- Eventos da simulação (thread da simulação) ---
+
+    @Override
+    public void inicioPasso(Simulator sim)
+    {
+        atual = obterLivre();
+        atual.tipo = BLOCO_PASSO;
+        atual.step = sim.getStep();
+        indiceAtual = -1;
+        edicoesPendentes.flip();
+        reservar(edicoesPendentes.remaining()).put(edicoesPendentes);
+        edicoesPendentes.clear();
+    }
+
+    @Override
+    public void edicao(ComandoEdicao comando)
+    {
+        ByteBuffer b;
+        if(atual != null) {
+            b = reservar(1 + ComandoEdicao.TAMANHO);
+        }
+        else {
+            if(edicoesPendentes.remaining() < 1 + ComandoEdicao.TAMANHO) {
+                entregarEdicoesPendentes();
+            }
+            b = edicoesPendentes;
+        }
+        b.put(EDITAR);
+        comando.gravar(b);
+    }
+
+    @Override
+    public void inicioTurno(int indice, Ator ator)
+    {
+        indiceAtual = indice;
+    }
+
+    @Override
+    public void movimento(Ator ator, Location de, Location para)
+    {
+        if(indiceAtual < 0) {
+            return; // Despejado por uma edição de terreno, que já está gravada
+        }
+        ByteBuffer b = reservar(13);
+        b.put(MOVER).putInt(indiceAtual).putInt(para.getRow()).putInt(para.getCol());
+    }
+
+    @Override
+    public void morte(Ator ator)
+    {
+        if(indiceAtual >= 0) {
+            reservar(5).put(MORRER).putInt(indiceAtual);
+        }
+    }
+
+    @Override
+    public void alimentacao(Ator predador, Ator presa, Location onde)
+    {
+        ByteBuffer b = reservar(17);
+        b.put(presa == null ? PLANTA : COMER).putInt(indiceAtual);
+        b.putInt(onde.getRow()).putInt(onde.getCol()).putInt(((Animal) predador).getFoodLevel());
+    }
+
+    @Override
+    public void nascimento(Ator pai, Ator filho)
+    {
+        if(indiceAtual < 0) {
+            return; // Colocado por uma edição, que já está gravada
+        }
+        Location loc = filho.getLocation();
+        ByteBuffer b = reservar(14);
+        b.put(NASCER).putInt(indiceAtual).put(Especie.codigoDe(filho));
+        b.putInt(loc.getRow()).putInt(loc.getCol());
+    }
+
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        reservar(9).put(FIM).putLong(contexto.getGerador().getEstado());
+        entregar(atual);
+        atual = null;
+        indiceAtual = -1;
+        passoSeguinte = sim.getStep() + 1;
+    }
+
+    /**
+     * Informa que um checkpoint do passo fornecido foi gravado. Os segmentos
+     * anteriores deixam de ser necessários e são apagados pela escritora, e as
+     * edições pendentes, já incluídas no checkpoint, são descartadas.
+     * * @param step O passo do checkpoint.
+     */
+    public void marcarCheckpoint(int step)
+    {
+        edicoesPendentes.clear(); // Já estão no estado salvo
+        passoSeguinte = step + 1;
+        Bloco marca = obterLivre();
+        marca.tipo = BLOCO_CHECKPOINT;
+        marca.step = step;
+        entregar(marca);
+    }
+
+    /**
+     * Espera a gravação de todos os blocos pendentes e encerra a escritora.
+     */
+    public void fechar()
+    {
+        Bloco marca = obterLivre();
+        marca.tipo = BLOCO_FECHAR;
+        entregar(marca);
+        try {
+            escritora.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(erro != null) {
+            System.err.println("Erro ao gravar o diário: " + erro.getMessage());
+        }
+    }
+
+    /**
+     * Garante espaço para n bytes (no máximo TAMANHO_EDICOES_PENDENTES) no bloco
+     * atual, aumentando-o até TAMANHO_MAXIMO_BLOCO; acima disso, entrega o bloco
+     * como uma parte do passo e continua em um bloco livre.
+     */
+    private ByteBuffer reservar(int n)
+    {
+        ByteBuffer b = atual.dados;
+        if(b.remaining() < n) {
+            if(b.position() + n > TAMANHO_MAXIMO_BLOCO) {
+                Bloco seguinte = obterLivre();
+                seguinte.tipo = BLOCO_PASSO;
+                seguinte.step = atual.step;
+                atual.step |= CONTINUA;
+                entregar(atual);
+                atual = seguinte;
+                return atual.dados;
+            }
+            ByteBuffer maior = ByteBuffer.allocate(Math.min(TAMANHO_MAXIMO_BLOCO, Math.max(b.capacity() * 2, b.position() + n)))
+                                         .order(ByteOrder.LITTLE_ENDIAN);
+            b.flip();
+            maior.put(b);
+            atual.dados = maior;
+            b = maior;
+        }
+        return b;
+    }
+
+    /**
+     * Entrega as edições pendentes como uma parte do passo seguinte, liberando o
+     * espaço delas (edições demais com a simulação parada).
+     */
+    private void entregarEdicoesPendentes()
+    {
+        Bloco parte = obterLivre();
+        parte.tipo = BLOCO_PASSO;
+        parte.step = passoSeguinte | CONTINUA;
+        edicoesPendentes.flip();
+        if(parte.dados.capacity() < edicoesPendentes.remaining()) {
+            parte.dados = ByteBuffer.allocate(edicoesPendentes.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        parte.dados.put(edicoesPendentes);
+        edicoesPendentes.clear();
+        entregar(parte);
+    }
+
+    /**
+     * Obtém um bloco livre, esperando a escritora se todos estiverem em uso.
+     */
+    private Bloco obterLivre()
+    {
+        try {
+            Bloco bloco = livres.take();
+            bloco.dados.clear();
+            return bloco;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido esperando o diário", e);
+        }
+    }
+
+    /**
+     * Entrega um bloco à escritora.
+     */
+    private void entregar(Bloco bloco)
+    {
+        try {
+            cheios.put(bloco);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido entregando bloco ao diário", e);
+        }
+    }
+
+    // --- Thread escritora ---
+
+    /**
+     * Laço da thread escritora: copia cada bloco para o segmento atual.
+     */
+    private void escrever()
+    {
+        try {
+            while(true) {
+                Bloco bloco = cheios.take();
+                try {
+                    if(bloco.tipo == BLOCO_FECHAR) {
+                        if(segmento != null) {
+                            segmento.force();
+                        }
+                        return;
+                    }
+                    if(erro == null) {
+                        if(bloco.tipo == BLOCO_CHECKPOINT) {
+                            apagarAnteriores(bloco.step);
+                        }
+                        else {
+                            gravarBloco(bloco);
+                        }
+                    }
+                }
+                catch(IOException e) {
+                    erro = e;
+                }
+                finally {
+                    livres.put(bloco);
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copia um bloco de passo para o segmento, criando um novo se não couber.
+     */
+    private void gravarBloco(Bloco bloco) throws IOException
+    {
+        ByteBuffer dados = bloco.dados;
+        dados.flip();
+        int tamanho = 4 + dados.remaining();
+        if(segmento == null || segmento.remaining() < 4 + tamanho) {
+            abrirSegmento(bloco.step & ~CONTINUA, 4 + tamanho);
+        }
+        int inicio = segmento.position();
+        segmento.position(inicio + 4);
+        segmento.putInt(bloco.step);
+        segmento.put(dados);
+        segmento.putInt(inicio, tamanho);
+    }
+
+    /**
+     * Cria e mapeia um novo segmento cujo primeiro bloco é o do passo fornecido.
+     */
+    private void abrirSegmento(int primeiroPasso, int minimo) throws IOException
+    {
+        if(segmento != null) {
+            segmento.force();
+        }
+        Path arquivo = diretorio.resolve(String.format("diario-%010d-%06d.seg", primeiroPasso, sequencia++));
+        long tamanho = Math.max(TAMANHO_SEGMENTO, TAMANHO_CABECALHO + minimo);
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo.toFile(), "rw")) {
+            raf.setLength(0);
+            raf.setLength(tamanho);
+            segmento = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+        }
+        segmento.order(ByteOrder.LITTLE_ENDIAN);
+        segmento.putInt(MAGICO);
+        segmento.putShort(VERSAO);
+        segmento.putInt(primeiroPasso);
+        segmento.position(TAMANHO_CABECALHO);
+        segmentos.add(arquivo);
+    }
+
+    /**
+     * Fecha o segmento atual e apaga todos os segmentos gravados até agora,
+     * pois contêm apenas passos cobertos pelo checkpoint do passo fornecido.
+     */
+    private void apagarAnteriores(int step) throws IOException
+    {
+        if(segmento != null) {
+            segmento.force();
+            segmento = null;
+        }
+        for(Path arquivo : segmentos) {
+            Files.deleteIfExists(arquivo);
+        }
+        segmentos.clear();
+    }
+
+    // --- Recuperação ---
+
+    /**
+     * Reaplica sobre a simulação os passos do diário posteriores ao passo atual.
+     * A simulação deve ter acabado de ser restaurada do checkpoint correspondente.
+     * A reaplicação para no primeiro passo ausente ou incompleto. As partes de um
+     * passo são juntadas antes da reaplicação, mesmo que estejam em segmentos diferentes.
+     * * @param sim A simulação restaurada.
+     * @param diretorio O diretório do diário.
+     * @return O número de passos reaplicados.
+     * @throws IOException Se um segmento não puder ser lido.
+     */
+    public static int reproduzir(Simulator sim, Path diretorio) throws IOException
+    {
+        List<Path> arquivos = new ArrayList<>();
+        if(Files.isDirectory(diretorio)) {
+            try (DirectoryStream<Path> lista = Files.newDirectoryStream(diretorio, "diario-*.seg")) {
+                for(Path arquivo : lista) {
+                    arquivos.add(arquivo);
+                }
+            }
+        }
+        Collections.sort(arquivos);
+
+        int aplicados = 0;
+        List<ByteBuffer> partes = new ArrayList<>();
+        for(Path arquivo : arquivos) {
+            MappedByteBuffer seg;
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+                seg = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            }
+            seg.order(ByteOrder.LITTLE_ENDIAN);
+            if(seg.remaining() < TAMANHO_CABECALHO || seg.getInt() != MAGICO || seg.getShort() > VERSAO) {
+                throw new IOException("Segmento de diário inválido: " + arquivo);
+            }
+            seg.position(TAMANHO_CABECALHO);
+            while(seg.remaining() >= 8) {
+                int tamanho = seg.getInt(seg.position());
+                if(tamanho <= 0 || tamanho > seg.remaining() - 4) {
+                    break;
+                }
+                int campoPasso = seg.getInt(seg.position() + 4);
+                partes.add(seg.slice(seg.position() + 8, tamanho - 4));
+                seg.position(seg.position() + 4 + tamanho);
+                if((campoPasso & CONTINUA) != 0) {
+                    continue;
+                }
+                int step = campoPasso;
+                ByteBuffer eventos = juntar(partes);
+                partes.clear();
+                if(step <= sim.getStep()) {
+                    continue;
+                }
+                if(step != sim.getStep() + 1 || !completo(eventos)) {
+                    return aplicados;
+                }
+                aplicarPasso(sim, step, eventos);
+                aplicados++;
+            }
+        }
+        return aplicados;
+    }
+
+    /**
+     * Junta as partes de um passo em um único buffer (sem cópia se houver só uma).
+     */
+    private static ByteBuffer juntar(List<ByteBuffer> partes)
+    {
+        if(partes.size() == 1) {
+            return partes.get(0).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int total = 0;
+        for(ByteBuffer parte : partes) {
+            total += parte.remaining();
+        }
+        ByteBuffer junto = ByteBuffer.allocate(total).order(ByteOrder.LITTLE_ENDIAN);
+        for(ByteBuffer parte : partes) {
+            junto.put(parte);
+        }
+        return junto.flip();
+    }
+
+    /**
+     * Verifica se o bloco termina com o evento FIM.
+     */
+    private static boolean completo(ByteBuffer eventos)
+    {
+        int n = eventos.limit();
+        return n >= 9 && eventos.get(n - 9) == FIM;
+    }
+
+    /**
+     * Reconstrói um passo a partir dos seus eventos, percorrendo a lista de atores
+     * na mesma ordem de simulateOneStep.
+     */
+    private static void aplicarPasso(Simulator sim, int step, ByteBuffer eventos) throws IOException
+    {
+        Field atual = sim.getField();
+        Field novo = sim.getUpdatedField();
+        CamadaVegetacao vegetacao = sim.getCamadaVegetacao();
+        List<Ator> atores = sim.getAtores();
+        while(eventos.hasRemaining() && eventos.get(eventos.position()) == EDITAR) {
+            eventos.get();
+            ComandoEdicao comando = ComandoEdicao.ler(eventos);
+            if(comando == null) {
+                throw new IOException("Edição inválida no diário, passo " + step);
+            }
+            sim.aplicarEdicao(comando, null);
+        }
+        List<Ator> sobreviventes = new ArrayList<>(atores.size());
+        List<Ator> nascidos = new ArrayList<>();
+
+        for(int indice = 0; indice < atores.size(); indice++) {
+            Ator ator = atores.get(indice);
+            if(!ator.isAlive()) {
+                continue; // Removido da lista, como em simulateOneStep
+            }
+            sobreviventes.add(ator);
+            envelhecer(ator);
+
+            while(eventos.hasRemaining() && eventos.get(eventos.position()) != FIM
+                  && eventos.getInt(eventos.position() + 1) == indice) {
+                byte tipo = eventos.get();
+                eventos.getInt(); // índice
+                switch(tipo) {
+                    case MOVER:
+                        ator.setLocation(new Location(eventos.getInt(), eventos.getInt()));
+                        break;
+                    case MORRER:
+                        matar(ator);
+                        break;
+                    case COMER:
+                    case PLANTA: {
+                        Location onde = new Location(eventos.getInt(), eventos.getInt());
+                        ((Animal) ator).setFoodLevel(eventos.getInt());
+                        if(tipo == PLANTA) {
+                            vegetacao.comer(onde.getRow(), onde.getCol());
+                        }
+                        else {
+                            matar(atual.getObjectAt(onde));
+                        }
+                        break;
+                    }
+                    case NASCER: {
+                        Especie especie = Especie.doCodigo(eventos.get());
+                        if(especie == null) {
+                            throw new IOException("Espécie inválida no diário, passo " + step);
+                        }
+                        Ator filho = especie.criar();
+                        Location loc = new Location(eventos.getInt(), eventos.getInt());
+                        filho.setLocation(loc);
+                        novo.place(filho, loc);
+                        nascidos.add(filho);
+                        break;
+                    }
+                    default:
+                        throw new IOException("Evento inválido no diário, passo " + step);
+                }
+            }
+            if(ator.isAlive()) {
+                novo.place(ator, ator.getLocation());
+            }
+        }
+        if(eventos.get() != FIM) {
+            throw new IOException("Eventos restantes no diário, passo " + step);
+        }
+
+        atores.clear();
+        atores.addAll(sobreviventes);
+        atores.addAll(nascidos);
+        sim.concluirPassoReproduzido(step);
+        sim.getContexto().getGerador().setEstado(eventos.getLong());
+    }
+
+    /**
+     * Aplica o envelhecimento e a fome que todo ator vivo sofre no início do turno.
+     * As mortes resultantes estão gravadas explicitamente como eventos MORRER.
+     */
+    private static void envelhecer(Ator ator)
+    {
+        if(ator instanceof Animal) {
+            Animal animal = (Animal) ator;
+            animal.setAge(animal.getAge() + 1);
+            animal.setFoodLevel(animal.getFoodLevel() - 1);
+        }
+        else if(ator instanceof Vegetacao) {
+            Vegetacao planta = (Vegetacao) ator;
+            planta.setAge(planta.getAge() + 1);
+        }
+    }
+
+    /**
+     * Marca um ator como morto.
+     */
+    private static void matar(Ator ator)
+    {
+        if(ator instanceof Animal) {
+            ((Animal) ator).setDead();
+        }
+        else if(ator instanceof Vegetacao) {
+            ((Vegetacao) ator).setDead();
+        }
+    }
+}
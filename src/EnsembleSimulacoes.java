@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executa várias réplicas independentes da mesma configuração em paralelo,
+ * na mesma JVM, e agrega as séries de população (ver {@link AgregadorPopulacao}).
+ * * O mapa é lido uma única vez e a matriz de terrenos resultante é compartilhada,
+ * somente para leitura, por todas as réplicas. Cada réplica tem o seu próprio
+ * gerador aleatório, com uma semente derivada da semente base e do índice da
+ * réplica, de modo que a mesma semente base reproduz o mesmo conjunto de resultados
+ * independentemente do número de threads.
+ *
+ * @version 1.0
+ */
+public class EnsembleSimulacoes
+{
+    private final Terreno[][] terrenos;
+    private final int threads;
+    private boolean camadaVegetacao;
+    private Parametros parametros = Parametros.PADRAO;
+
+    /**
+     * Cria um ensemble sobre o mapa dado, usando uma thread por processador.
+     * * @param arquivoMapa O arquivo de mapa (ex: "mapa.txt").
+     * @param depth A profundidade (altura) do campo. Deve ser maior que zero.
+     * @param width A largura do campo. Deve ser maior que zero.
+     */
+    public EnsembleSimulacoes(String arquivoMapa, int depth, int width)
+    {
+        this(arquivoMapa, depth, width, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Cria um ensemble sobre o mapa dado.
+     * * @param arquivoMapa O arquivo de mapa (ex: "mapa.txt").
+     * @param depth A profundidade (altura) do campo. Deve ser maior que zero.
+     * @param width A largura do campo. Deve ser maior que zero.
+     * @param threads O número máximo de réplicas executadas ao mesmo tempo.
+     */
+    public EnsembleSimulacoes(String arquivoMapa, int depth, int width, int threads)
+    {
+        if(depth <= 0 || width <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Dimensões e número de threads devem ser maiores do que zero.");
+        }
+        this.terrenos = Simulator.carregarTerreno(arquivoMapa, depth, width);
+        this.threads = threads;
+    }
+
+    /**
+     * Define se as réplicas usam a camada de vegetação primitiva.
+     * * @param ativa true para usar a camada de vegetação.
+     */
+    public void setCamadaVegetacao(boolean ativa)
+    {
+        camadaVegetacao = ativa;
+    }
+
+    /**
+     * Define os parâmetros das espécies usados por todas as réplicas.
+     * * @param parametros Os parâmetros.
+     */
+    public void setParametros(Parametros parametros)
+    {
+        this.parametros = parametros;
+    }
+
+    /**
+     * Executa as réplicas e espera todas terminarem.
+     * * @param replicas O número de réplicas.
+     * @param passos O número de passos de cada réplica.
+     * @param sementeBase A semente da qual as sementes das réplicas são derivadas.
+     * @return O agregador com as séries de todas as réplicas.
+     * @throws InterruptedException Se a thread for interrompida enquanto espera.
+     */
+    public AgregadorPopulacao executar(int replicas, int passos, long sementeBase)
+        throws InterruptedException
+    {
+        AgregadorPopulacao agregador = new AgregadorPopulacao(replicas, passos, terrenos.length * terrenos[0].length);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, replicas)));
+        try {
+            List<Future<?>> tarefas = new ArrayList<>(replicas);
+            for(int i = 0; i < replicas; i++) {
+                final int replica = i;
+                tarefas.add(executor.submit(() -> executarReplica(replica, passos, sementeBase, agregador)));
+            }
+            for(Future<?> tarefa : tarefas) {
+                try {
+                    tarefa.get();
+                }
+                catch(ExecutionException e) {
+                    throw new IllegalStateException("Falha em uma réplica: " + e.getCause(), e.getCause());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return agregador;
+    }
+
+    /**
+     * Executa uma réplica, registrando a população após cada passo.
+     */
+    private void executarReplica(int replica, int passos, long sementeBase, AgregadorPopulacao agregador)
+    {
+        Simulator sim = new Simulator(terrenos, semente(sementeBase, replica), parametros);
+        if(camadaVegetacao) {
+            sim.setCamadaVegetacao(true);
+        }
+        int[] contagens = new int[Especie.values().length + 1];
+        sim.contarPopulacao(contagens);
+        agregador.registrar(replica, 0, contagens);
+        for(int passo = 1; passo <= passos; passo++) {
+            sim.simulateOneStep();
+            sim.contarPopulacao(contagens);
+            agregador.registrar(replica, passo, contagens);
+        }
+    }
+
+    /**
+     * Deriva a semente de uma réplica (função de mistura do SplitMix64), para que
+     * réplicas vizinhas não comecem de estados próximos do gerador. Também usada
+     * para as faixas de uma execução distribuída ({@link CoordenadorFaixas}).
+     */
+    static long semente(long base, int replica)
+    {
+        long z = base + (replica + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
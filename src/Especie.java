@@ -0,0 +1,169 @@
+import java.awt.Color;
+
+/**
+ * Enumera as espécies de atores da simulação e associa a cada uma um código
+ * numérico estável. O código é usado nos formatos binários (checkpoints,
+ * gravações) e em qualquer estrutura que guarde a espécie em um tipo primitivo.
+ * O código 0 é reservado para "célula vazia".
+ *
+ * @version 1.0
+ */
+public enum Especie
+{
+    RAPOSA(1, Fox.class),
+    COELHO(2, Rabbit.class),
+    FLOR(3, Flor.class),
+    VITORIA_REGIA(4, VitoriaRegia.class);
+
+    // Código reservado para uma célula sem ator.
+    public static final byte VAZIO = 0;
+
+    // Espécies indexadas pelo código.
+    private static final Especie[] POR_CODIGO = new Especie[5];
+    static {
+        for(Especie especie : values()) {
+            POR_CODIGO[especie.codigo] = especie;
+        }
+    }
+
+    private final byte codigo;
+    private final Class<? extends Ator> classe;
+
+    /**
+     * @param codigo O código numérico da espécie.
+     * @param classe A classe de ator correspondente.
+     */
+    Especie(int codigo, Class<? extends Ator> classe)
+    {
+        this.codigo = (byte) codigo;
+        this.classe = classe;
+    }
+
+    /**
+     * @return O código numérico desta espécie.
+     */
+    public byte getCodigo()
+    {
+        return codigo;
+    }
+
+    /**
+     * @return A classe de ator desta espécie.
+     */
+    public Class<? extends Ator> getClasse()
+    {
+        return classe;
+    }
+
+    /**
+     * @return A cor usada para desenhar esta espécie.
+     */
+    public Color getCor()
+    {
+        switch(this) {
+            case RAPOSA:
+                return Fox.COR;
+            case COELHO:
+                return Rabbit.COR;
+            case FLOR:
+                return Flor.COR;
+            default:
+                return VitoriaRegia.COR;
+        }
+    }
+
+    /**
+     * Cria um ator desta espécie no estado de recém-nascido, sem consumir sorteios.
+     * Usado para reconstruir atores cujo estado será preenchido em seguida.
+     * * @return Um novo ator.
+     */
+    public Ator criar()
+    {
+        switch(this) {
+            case RAPOSA:
+                return new Fox(false);
+            case COELHO:
+                return new Rabbit(false);
+            case FLOR:
+                return new Flor();
+            default:
+                return new VitoriaRegia();
+        }
+    }
+
+    /**
+     * Cria uma cópia independente de um ator desta espécie, com a mesma idade,
+     * fome, localização e estado de vida.
+     * * @param original O ator a copiar.
+     * @return A cópia.
+     */
+    public Ator copiar(Ator original)
+    {
+        Ator copia = criar();
+        if(original instanceof Animal) {
+            Animal de = (Animal) original;
+            Animal para = (Animal) copia;
+            para.setAge(de.getAge());
+            para.setFoodLevel(de.getFoodLevel());
+            if(!de.isAlive()) {
+                para.setDead();
+            }
+        }
+        else {
+            Vegetacao de = (Vegetacao) original;
+            Vegetacao para = (Vegetacao) copia;
+            para.setAge(de.getAge());
+            if(!de.isAlive()) {
+                para.setDead();
+            }
+        }
+        copia.setLocation(original.getLocation());
+        return copia;
+    }
+
+    /**
+     * Retorna a espécie de um ator.
+     * * @param ator O ator.
+     * @return A espécie, ou null se o ator não pertencer a nenhuma espécie conhecida.
+     */
+    public static Especie de(Ator ator)
+    {
+        if(ator instanceof Fox) {
+            return RAPOSA;
+        }
+        if(ator instanceof Rabbit) {
+            return COELHO;
+        }
+        if(ator instanceof Flor) {
+            return FLOR;
+        }
+        if(ator instanceof VitoriaRegia) {
+            return VITORIA_REGIA;
+        }
+        return null;
+    }
+
+    /**
+     * Retorna o código da espécie de um ator.
+     * * @param ator O ator, ou null.
+     * @return O código da espécie, ou VAZIO se o ator for null ou desconhecido.
+     */
+    public static byte codigoDe(Ator ator)
+    {
+        Especie especie = ator == null ? null : de(ator);
+        return especie == null ? VAZIO : especie.codigo;
+    }
+
+    /**
+     * Retorna a espécie associada a um código.
+     * * @param codigo O código numérico.
+     * @return A espécie, ou null se o código for VAZIO ou inválido.
+     */
+    public static Especie doCodigo(int codigo)
+    {
+        if(codigo <= 0 || codigo >= POR_CODIGO.length) {
+            return null;
+        }
+        return POR_CODIGO[codigo];
+    }
+}
@@ -0,0 +1,155 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventos do Java Flight Recorder que marcam as fases de um passo da simulação,
+ * para que uma gravação mostre qual passo ou fase foi lento, e não só os métodos
+ * mais executados.
+ * * Todos os eventos vêm desativados. Para gravá-los, ative-os em um arquivo de
+ * configuração do JFR (.jfc) e passe-o na gravação, por exemplo:
+ * <pre>
+ *   &lt;event name="simulador.Passo"&gt;&lt;setting name="enabled"&gt;true&lt;/setting&gt;&lt;/event&gt;
+ *
+ *   java -XX:StartFlightRecording:filename=sim.jfr,settings=simulador.jfc ...
+ * </pre>
+ * Com um evento desativado, criar o objeto, chamar begin() e shouldCommit() não
+ * tem efeito e o JIT elimina a alocação; os campos só são preenchidos quando
+ * shouldCommit() retorna true.
+ *
+ * @version 1.0
+ */
+final class EventosJfr
+{
+    private EventosJfr()
+    {
+    }
+
+    /**
+     * Um passo completo de simulateOneStep (sem a atualização da tela).
+     */
+    @Name("simulador.Passo")
+    @Label("Passo da simulação")
+    @Category("Simulador")
+    @Enabled(false)
+    @StackTrace(false)
+    static class Passo extends Event
+    {
+        @Label("Passo")
+        int passo;
+
+        @Label("Atores")
+        @Description("Tamanho da lista de atores no fim do passo")
+        int atores;
+
+        @Label("Nascidos")
+        int nascidos;
+
+        @Label("Linhas")
+        int depth;
+
+        @Label("Colunas")
+        int width;
+    }
+
+    /**
+     * O laço em que cada ator vivo age e os mortos são retirados da lista.
+     */
+    @Name("simulador.LacoAtores")
+    @Label("Laço de atores")
+    @Category("Simulador")
+    @Enabled(false)
+    @StackTrace(false)
+    static class LacoAtores extends Event
+    {
+        @Label("Passo")
+        int passo;
+
+        @Label("Atores no início")
+        int atores;
+
+        @Label("Removidos")
+        int removidos;
+    }
+
+    /**
+     * A inclusão dos recém-nascidos na lista de atores.
+     */
+    @Name("simulador.InclusaoNascidos")
+    @Label("Inclusão de nascidos")
+    @Category("Simulador")
+    @Enabled(false)
+    @StackTrace(false)
+    static class InclusaoNascidos extends Event
+    {
+        @Label("Passo")
+        int passo;
+
+        @Label("Nascidos")
+        int nascidos;
+    }
+
+    /**
+     * A troca dos campos atual e atualizado e a limpeza do novo campo atualizado.
+     */
+    @Name("simulador.TrocaCampos")
+    @Label("Troca e limpeza dos campos")
+    @Category("Simulador")
+    @Enabled(false)
+    @StackTrace(false)
+    static class TrocaCampos extends Event
+    {
+        @Label("Passo")
+        int passo;
+
+        @Label("Linhas")
+        int depth;
+
+        @Label("Colunas")
+        int width;
+    }
+
+    /**
+     * O desenho de um passo na janela (SimulatorView.showStatus).
+     */
+    @Name("simulador.ExibicaoEstado")
+    @Label("Exibição do estado")
+    @Category({"Simulador", "Interface"})
+    @Enabled(false)
+    @StackTrace(false)
+    static class ExibicaoEstado extends Event
+    {
+        @Label("Passo")
+        int passo;
+
+        @Label("Linhas")
+        int depth;
+
+        @Label("Colunas")
+        int width;
+    }
+
+    /**
+     * A leitura do arquivo de mapa (loadTerrenoFromFile).
+     */
+    @Name("simulador.CarregarTerreno")
+    @Label("Carregamento do terreno")
+    @Category("Simulador")
+    @Enabled(false)
+    @StackTrace(false)
+    static class CarregarTerreno extends Event
+    {
+        @Label("Arquivo")
+        String arquivo;
+
+        @Label("Linhas")
+        int depth;
+
+        @Label("Colunas")
+        int width;
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Observador que grava, a cada N passos, os dados de cada ator (espécie, idade,
+ * nível de alimento, linha e coluna) em arquivos por coluna, para análise fora
+ * da simulação.
+ * * Cada passo amostrado gera um diretório "passo-NNNNNNNN" com um arquivo por
+ * atributo (especie.col, idade.col, alimento.col, linha.col, coluna.col). Cada
+ * arquivo é um cabeçalho fixo de {@value #TAMANHO_CABECALHO} bytes seguido do
+ * array primitivo little-endian, de modo que pode ser mapeado na memória e lido
+ * diretamente, sem interpretação (ver {@link #mapear(Path)}). O cabeçalho e o
+ * array são escritos juntos com uma escrita agrupada do FileChannel.
+ * * As plantas da camada de vegetação entram como atores, com alimento -1 (como as
+ * plantas comuns). Opcionalmente os arquivos são comprimidos com gzip (.col.gz);
+ * esses não podem ser mapeados.
+ * * Como observador, a escrita acontece na thread da simulação, no fim do passo
+ * amostrado. Como consumidor de uma {@link PipelinePassos}, ela acontece na thread
+ * da pipeline, a partir do quadro já copiado, enquanto a simulação segue.
+ *
+ * @version 1.0
+ */
+public class ExportadorInstantaneos implements ObservadorSimulacao, PipelinePassos.Consumidor
+{
+    // Tamanho do cabeçalho de cada arquivo de coluna, em bytes.
+    static final int TAMANHO_CABECALHO = 32;
+
+    private static final int MAGICO = 0x45434331; // "ECC1"
+    private static final int VERSAO = 1;
+
+    // Nomes das colunas, na ordem em que são gravadas.
+    private static final String[] COLUNAS = {"especie", "idade", "alimento", "linha", "coluna"};
+
+    // Tamanho de um elemento de cada coluna, em bytes.
+    private static final int[] TAMANHOS = {1, 4, 4, 4, 4};
+
+    private final Path diretorio;
+    private final int intervalo;
+    private boolean compactado;
+
+    // Buffers das colunas, reaproveitados e aumentados quando preciso.
+    private final ByteBuffer[] colunas = new ByteBuffer[COLUNAS.length];
+    private final ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO).order(ByteOrder.LITTLE_ENDIAN);
+    private IOException erro;
+
+    // Quadro usado quando a exportação é feita direto da simulação.
+    private QuadroPasso quadroProprio;
+
+    /**
+     * Cria um exportador que grava no diretório dado.
+     * * @param diretorio O diretório de destino (criado se não existir).
+     * @param intervalo Grava os passos múltiplos deste número. Deve ser maior que zero.
+     */
+    public ExportadorInstantaneos(Path diretorio, int intervalo)
+    {
+        if(intervalo <= 0) {
+            throw new IllegalArgumentException("O intervalo deve ser maior do que zero.");
+        }
+        this.diretorio = diretorio;
+        this.intervalo = intervalo;
+        for(int c = 0; c < colunas.length; c++) {
+            colunas[c] = ByteBuffer.allocateDirect(1024 * TAMANHOS[c]).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Define se os arquivos são comprimidos com gzip.
+     * * @param compactado true para gravar arquivos .col.gz.
+     */
+    public void setCompactado(boolean compactado)
+    {
+        this.compactado = compactado;
+    }
+
+    /**
+     * Grava o passo que terminou se ele for amostrado. Um erro de escrita é
+     * guardado e devolvido por {@link #getErro()}, sem interromper a simulação.
+     */
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        if(sim.getStep() % intervalo != 0 || erro != null) {
+            return;
+        }
+        try {
+            exportar(sim);
+        }
+        catch(IOException e) {
+            erro = e;
+        }
+    }
+
+    /**
+     * Grava o quadro entregue pela pipeline se o passo for amostrado.
+     * * @param quadro O quadro do passo.
+     * @throws IOException Se algum arquivo não puder ser gravado.
+     */
+    @Override
+    public void consumir(QuadroPasso quadro) throws IOException
+    {
+        if(quadro.getPasso() % intervalo == 0) {
+            exportar(quadro);
+        }
+    }
+
+    /**
+     * @return O primeiro erro de escrita, ou null se não houve erro.
+     */
+    public IOException getErro()
+    {
+        return erro;
+    }
+
+    /**
+     * Grava o estado atual da simulação, amostrado ou não.
+     * * @param sim A simulação.
+     * @return O diretório do passo gravado.
+     * @throws IOException Se algum arquivo não puder ser gravado.
+     */
+    public Path exportar(Simulator sim) throws IOException
+    {
+        if(quadroProprio == null) {
+            quadroProprio = new QuadroPasso();
+        }
+        quadroProprio.preencher(sim, 0, 0);
+        return exportar(quadroProprio);
+    }
+
+    /**
+     * Grava um passo já copiado para um quadro.
+     * * @param quadro O quadro do passo.
+     * @return O diretório do passo gravado.
+     * @throws IOException Se algum arquivo não puder ser gravado.
+     */
+    public Path exportar(QuadroPasso quadro) throws IOException
+    {
+        for(ByteBuffer coluna : colunas) {
+            coluna.clear();
+        }
+        int n = quadro.getTamanho();
+        for(int i = 0; i < n; i++) {
+            acrescentar(quadro.getEspecie(i), quadro.getIdade(i), quadro.getAlimento(i),
+                        quadro.getLinha(i), quadro.getColuna(i));
+        }
+
+        Path pasta = diretorio.resolve(String.format("passo-%08d", quadro.getPasso()));
+        Files.createDirectories(pasta);
+        for(int c = 0; c < colunas.length; c++) {
+            cabecalho.clear();
+            cabecalho.putInt(MAGICO).putInt(VERSAO).putInt(TAMANHOS[c]).putInt(n).putLong(quadro.getPasso());
+            while(cabecalho.hasRemaining()) {
+                cabecalho.put((byte) 0);
+            }
+            cabecalho.flip();
+            colunas[c].flip();
+            gravar(pasta.resolve(COLUNAS[c] + (compactado ? ".col.gz" : ".col")), cabecalho, colunas[c]);
+        }
+        return pasta;
+    }
+
+    /**
+     * Acrescenta uma linha às colunas.
+     */
+    private void acrescentar(int especie, int idade, int alimento, int linha, int coluna)
+    {
+        if(colunas[1].remaining() < 4) {
+            for(int c = 0; c < colunas.length; c++) {
+                ByteBuffer maior = ByteBuffer.allocateDirect(colunas[c].capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+                colunas[c].flip();
+                maior.put(colunas[c]);
+                colunas[c] = maior;
+            }
+        }
+        colunas[0].put((byte) especie);
+        colunas[1].putInt(idade);
+        colunas[2].putInt(alimento);
+        colunas[3].putInt(linha);
+        colunas[4].putInt(coluna);
+    }
+
+    /**
+     * Grava o cabeçalho e os dados de uma coluna em um arquivo.
+     */
+    private void gravar(Path arquivo, ByteBuffer cabecalho, ByteBuffer dados) throws IOException
+    {
+        if(compactado) {
+            try(OutputStream saida = new GZIPOutputStream(Files.newOutputStream(arquivo), 1 << 16)) {
+                WritableByteChannel canal = Channels.newChannel(saida);
+                canal.write(cabecalho);
+                while(dados.hasRemaining()) {
+                    canal.write(dados);
+                }
+            }
+            return;
+        }
+        try(FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                                                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] partes = {cabecalho, dados};
+            while(dados.hasRemaining() || cabecalho.hasRemaining()) {
+                canal.write(partes);
+            }
+        }
+    }
+
+    /**
+     * Mapeia na memória um arquivo de coluna não comprimido.
+     * * @param arquivo O arquivo .col.
+     * @return Os dados da coluna (sem o cabeçalho), em little-endian: use get(i)
+     * para a coluna de espécie e getInt(4 * i) para as demais.
+     * @throws IOException Se o arquivo não puder ser lido ou não for uma coluna.
+     */
+    public static ByteBuffer mapear(Path arquivo) throws IOException
+    {
+        try(FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            mapa.order(ByteOrder.LITTLE_ENDIAN);
+            if(canal.size() < TAMANHO_CABECALHO || mapa.getInt(0) != MAGICO) {
+                throw new IOException("Arquivo de coluna inválido: " + arquivo);
+            }
+            int tamanho = mapa.getInt(8);
+            int n = mapa.getInt(12);
+            mapa.position(TAMANHO_CABECALHO).limit(TAMANHO_CABECALHO + tamanho * n);
+            return mapa.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Observador que grava a série de população de uma execução: a cada passo, o
+ * número do passo, os nascimentos, as mortes e a população de cada espécie.
+ * O formato do arquivo é escolhido com um {@link FormatoSerie} (CSV ou binário).
+ * * A thread da simulação apenas copia o registro para uma fila circular limitada
+ * e sem travas (um produtor, um consumidor); uma thread de fundo esvazia a fila em
+ * lotes e escreve no disco. Assim a escrita nunca bloqueia simulateOneStep: se o
+ * disco estiver lento e a fila encher, o registro é descartado e contado em
+ * {@link #getDescartados()}.
+ * * Como consumidor de uma {@link PipelinePassos}, o registro vem do quadro do passo
+ * e é produzido na thread da pipeline, e a simulação não conta nem a população. O
+ * exportador deve ser usado de um dos dois jeitos, não dos dois ao mesmo tempo (a
+ * fila tem um único produtor).
+ *
+ * @version 1.0
+ */
+public class ExportadorPopulacao implements ObservadorSimulacao, PipelinePassos.Consumidor
+{
+    // Campos de um registro: passo, nascimentos, mortes e uma população por espécie.
+    static final int CAMPOS = 3 + Especie.values().length;
+
+    // Máximo de registros escritos antes de liberar as posições da fila.
+    private static final int LOTE = 256;
+
+    // Fila circular: capacidade registros de CAMPOS inteiros cada.
+    private final int[] fila;
+    private final int capacidade;
+
+    // Registros produzidos e consumidos desde o início (as posições são os restos).
+    private final AtomicLong produzidos = new AtomicLong();
+    private final AtomicLong consumidos = new AtomicLong();
+
+    // Cópia local de consumidos usada pelo produtor, para evitar leituras voláteis a cada passo.
+    private long consumidosVisto;
+
+    private final AtomicLong descartados = new AtomicLong();
+    private final OutputStream saida;
+    private final FormatoSerie formato;
+    private final Thread escritor;
+    private volatile boolean fechando;
+    private volatile IOException erro;
+
+    // Contagens do passo em andamento (thread da simulação).
+    private int nascimentos, mortes;
+    private final int[] contagens = new int[Especie.values().length + 1];
+
+    /**
+     * Cria o arquivo, escreve o cabeçalho e inicia a thread de escrita.
+     * * @param arquivo O arquivo de destino (sobrescrito se existir).
+     * @param formato O formato do arquivo.
+     * @param capacidade O número máximo de registros à espera de escrita.
+     * @throws IOException Se o arquivo não puder ser criado.
+     */
+    public ExportadorPopulacao(Path arquivo, FormatoSerie formato, int capacidade) throws IOException
+    {
+        this.capacidade = Math.max(1, capacidade);
+        this.fila = new int[this.capacidade * CAMPOS];
+        this.formato = formato;
+        this.saida = new BufferedOutputStream(Files.newOutputStream(arquivo), 1 << 16);
+        formato.cabecalho(saida);
+        escritor = new Thread(this::escrever, "exportador-populacao");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    @Override
+    public void inicioPasso(Simulator sim)
+    {
+        nascimentos = 0;
+        mortes = 0;
+    }
+
+    @Override
+    public void nascimento(Ator pai, Ator filho)
+    {
+        nascimentos++;
+    }
+
+    @Override
+    public void morte(Ator ator)
+    {
+        mortes++;
+    }
+
+    @Override
+    public void alimentacao(Ator predador, Ator presa, Location onde)
+    {
+        mortes++; // A presa (animal ou planta) morre fora do próprio turno
+    }
+
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        int base = reservar();
+        if(base >= 0) {
+            sim.contarPopulacao(contagens);
+            produzir(base, sim.getStep(), nascimentos, mortes);
+        }
+    }
+
+    /**
+     * Enfileira o registro de um passo recebido de uma pipeline.
+     * * @param quadro O quadro do passo.
+     */
+    @Override
+    public void consumir(QuadroPasso quadro)
+    {
+        int base = reservar();
+        if(base >= 0) {
+            quadro.populacao(contagens);
+            produzir(base, quadro.getPasso(), quadro.getNascimentos(), quadro.getMortes());
+        }
+    }
+
+    /**
+     * Reserva a próxima posição da fila.
+     * * @return O início do registro na fila, ou -1 se a fila estiver cheia (o
+     * registro é descartado).
+     */
+    private int reservar()
+    {
+        long posicao = produzidos.get();
+        if(posicao - consumidosVisto >= capacidade) {
+            consumidosVisto = consumidos.get();
+            if(posicao - consumidosVisto >= capacidade) {
+                descartados.incrementAndGet();
+                return -1;
+            }
+        }
+        return (int) (posicao % capacidade) * CAMPOS;
+    }
+
+    /**
+     * Copia o registro para a posição reservada e o publica para o escritor.
+     */
+    private void produzir(int base, int passo, int nascimentosPasso, int mortesPasso)
+    {
+        fila[base] = passo;
+        fila[base + 1] = nascimentosPasso;
+        fila[base + 2] = mortesPasso;
+        for(Especie especie : Especie.values()) {
+            fila[base + 2 + especie.getCodigo()] = contagens[especie.getCodigo()];
+        }
+        produzidos.lazySet(produzidos.get() + 1); // Publica o registro para o escritor
+    }
+
+    /**
+     * @return O número de registros descartados porque a fila estava cheia.
+     */
+    public long getDescartados()
+    {
+        return descartados.get();
+    }
+
+    /**
+     * Espera a escrita dos registros pendentes e fecha o arquivo.
+     * * @throws IOException Se ocorreu algum erro de escrita.
+     */
+    public void fechar() throws IOException
+    {
+        fechando = true;
+        LockSupport.unpark(escritor);
+        try {
+            escritor.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(erro != null) {
+            throw erro;
+        }
+    }
+
+    /**
+     * Laço da thread de escrita: esvazia a fila em lotes; dorme um pouco quando vazia.
+     * O arquivo é fechado quando o laço termina, inclusive por um erro de escrita.
+     */
+    private void escrever()
+    {
+        try(OutputStream destino = saida) { // Fecha o arquivo também depois de um erro
+            long lidos = consumidos.get();
+            while(true) {
+                long disponiveis = produzidos.get();
+                if(disponiveis == lidos) {
+                    if(fechando && produzidos.get() == lidos) {
+                        break;
+                    }
+                    destino.flush();
+                    LockSupport.parkNanos(1_000_000L);
+                    continue;
+                }
+                long fim = Math.min(disponiveis, lidos + LOTE);
+                for(; lidos < fim; lidos++) {
+                    formato.registro(destino, fila, (int) (lidos % capacidade) * CAMPOS);
+                }
+                consumidos.lazySet(lidos); // Libera as posições para o produtor
+            }
+        }
+        catch(IOException e) {
+            erro = e;
+            // Continua consumindo para que o produtor não fique descartando sem fim
+            while(!fechando) {
+                consumidos.lazySet(produzidos.get());
+                LockSupport.parkNanos(1_000_000L);
+            }
+        }
+    }
+}
@@ -1,7 +1,11 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
+import java.util.function.UnaryOperator;
 
 /**
  * Representa uma grade retangular de posições de campo.
@@ -13,17 +17,42 @@ import java.util.Random;
  */
 public class Field
 {
-    private static final Random rand = new Random();
-    
     // A profundidade (número de linhas) do campo. & A largura (número de colunas) do campo.
     private int depth, width;
 
     // Matriz que armazena os atores em cada posição
     private Ator[][] field;
 
+    // Linhas de field que ainda são compartilhadas com o campo de outra simulação
+    // (fork) e precisam ser copiadas antes de uma escrita; null se nenhuma é.
+    private boolean[] compartilhada;
+
+    // Troca um ator ainda compartilhado com outras simulações pela cópia própria da
+    // simulação dona deste campo; null se os atores do campo são todos próprios.
+    private UnaryOperator<Ator> copiaDeAtor;
+
+    // Atores cobertos por outro posicionado na mesma célula (ex: uma planta sob um
+    // animal): continuam na sua posição sem aparecer na grade. Esvaziado por clear.
+    private List<Ator> cobertos = new ArrayList<>();
+
+    // Índice de cobertos por célula, montado sob demanda por cobertosEm: cada chave é
+    // (row * width + col) << 32 | posição em cobertos, em ordem crescente. Vale para
+    // os primeiros cobertosIndexados elementos de cobertos.
+    private long[] chavesCobertos = new long[0];
+    private int cobertosIndexados;
+
     // Matriz que armazena os tipos de terreno
     private Terreno[][] terrenos; 
 
+    // Camada de vegetação opcional, compartilhada pelos dois campos (null se desativada)
+    private CamadaVegetacao vegetacao;
+
+    // Índice espacial opcional do início do passo, compartilhado pelos dois campos (null se desativado)
+    private IndiceEspacial indice;
+
+    // Observador dos eventos da simulação, compartilhado pelos dois campos (null se não houver)
+    private ObservadorSimulacao observador;
+
     /**
      * Cria um campo com as dimensões e a configuração de terreno fornecidas.
      * * @param depth A profundidade do campo.
@@ -38,17 +67,94 @@ public class Field
         this.field = new Ator[depth][width];
         this.terrenos = terrenos;
     }
-    
+
     /**
-     * Esvazia o campo.
+     * Construtor usado por {@link #compartilhar()}: o novo campo usa as mesmas linhas.
      */
-    public void clear()
+    private Field(int depth, int width, Terreno[][] terrenos, Ator[][] linhas)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.field = linhas;
+        this.terrenos = terrenos;
+    }
+
+    /**
+     * Cria um campo com o mesmo conteúdo deste sem copiar a grade: os dois passam a
+     * compartilhar todas as linhas, e cada um copia uma linha só na primeira vez que
+     * posicionar algo nela. A camada de vegetação, o índice e o observador não são
+     * levados para o novo campo.
+     * * @return O novo campo.
+     */
+    Field compartilhar()
+    {
+        if(compartilhada == null) {
+            compartilhada = new boolean[depth];
+        }
+        Arrays.fill(compartilhada, true);
+        Field outro = new Field(depth, width, terrenos, field.clone());
+        outro.compartilhada = compartilhada.clone();
+        outro.cobertos = new ArrayList<>(cobertos);
+        return outro;
+    }
+
+    /**
+     * Define como os atores ainda compartilhados com outras simulações são trocados
+     * pelas cópias próprias ao serem lidos de {@link #getObjectAt(int, int)}.
+     * * @param copiaDeAtor A função de troca, ou {@code null} se os atores são todos próprios.
+     */
+    void setCopiaDeAtor(UnaryOperator<Ator> copiaDeAtor)
+    {
+        this.copiaDeAtor = copiaDeAtor;
+    }
+
+    /**
+     * Copia todas as linhas ainda compartilhadas e troca cada ator do campo pela
+     * cópia dada pela função de {@link #setCopiaDeAtor(UnaryOperator)}.
+     */
+    void resolverAtores()
     {
         for(int row = 0; row < depth; row++) {
+            copiarLinha(row);
+            Ator[] linha = field[row];
             for(int col = 0; col < width; col++) {
-                field[row][col] = null;
+                if(linha[col] != null && copiaDeAtor != null) {
+                    linha[col] = copiaDeAtor.apply(linha[col]);
+                }
             }
         }
+        if(copiaDeAtor != null) {
+            cobertos.replaceAll(copiaDeAtor);
+        }
+    }
+
+    /**
+     * Esvazia o campo. As linhas compartilhadas são trocadas por linhas novas.
+     */
+    public void clear()
+    {
+        for(int row = 0; row < depth; row++) {
+            if(compartilhada != null && compartilhada[row]) {
+                field[row] = new Ator[width];
+            }
+            else {
+                Arrays.fill(field[row], null);
+            }
+        }
+        compartilhada = null;
+        cobertos.clear();
+        cobertosIndexados = 0;
+    }
+
+    /**
+     * Passa a usar uma cópia própria da linha, se ela ainda é compartilhada.
+     */
+    private void copiarLinha(int row)
+    {
+        if(compartilhada != null && compartilhada[row]) {
+            field[row] = field[row].clone();
+            compartilhada[row] = false;
+        }
     }
     
     /**
@@ -65,15 +171,81 @@ public class Field
     
     /**
      * Posiciona um ator na localização fornecida.
-     * Se já houver um ator no local, ele será sobrescrito (perdido).
+     * Se já houver um ator no local, ele será sobrescrito (perdido da grade, mas
+     * lembrado em {@link #cobertosEm}).
      * * @param ator O ator a ser posicionado.
      * @param location O objeto Location onde posicionar o ator.
      */
     public void place(Ator ator, Location location)
     {
+        copiarLinha(location.getRow());
+        Ator anterior = field[location.getRow()][location.getCol()];
+        if(anterior != null && ator != null && anterior != ator) {
+            cobertos.add(anterior);
+        }
         field[location.getRow()][location.getCol()] = ator;
     }
 
+    /**
+     * Registra um ator que ocupa a sua posição sem aparecer na grade (ex: ao
+     * restaurar um campo em que ele estava coberto por outro).
+     * * @param ator O ator.
+     */
+    void cobrir(Ator ator)
+    {
+        cobertos.add(ator);
+    }
+
+    /**
+     * Acrescenta a uma lista os atores cobertos por outro posicionado na mesma célula
+     * desde o último {@link #clear()} cuja célula (no momento em que foram cobertos)
+     * está no retângulo, em ordem de leitura das células. Alguns podem ter morrido ou
+     * saído da célula depois; quem usa a lista confere a posição e se o ator ainda
+     * está fora da grade. O custo é o de uma busca binária por linha do retângulo
+     * mais os atores encontrados (e, depois de novos cobertos, o de reordenar o índice).
+     * * @param linha0 A primeira linha.
+     * @param coluna0 A primeira coluna.
+     * @param linha1 A última linha (incluída).
+     * @param coluna1 A última coluna (incluída).
+     * @param destino A lista que recebe os atores.
+     */
+    void cobertosEm(int linha0, int coluna0, int linha1, int coluna1, List<Ator> destino)
+    {
+        indexarCobertos();
+        int n = cobertosIndexados;
+        for(int row = linha0; row <= linha1; row++) {
+            long inicio = (long) (row * width + coluna0) << 32;
+            long fim = (long) (row * width + coluna1) << 32 | 0xFFFFFFFFL;
+            int k = Arrays.binarySearch(chavesCobertos, 0, n, inicio);
+            if(k < 0) {
+                k = -k - 1;
+            }
+            for(; k < n && chavesCobertos[k] <= fim; k++) {
+                destino.add(cobertos.get((int) chavesCobertos[k]));
+            }
+        }
+    }
+
+    /**
+     * Reordena o índice de cobertos por célula, se houve cobertos novos.
+     */
+    private void indexarCobertos()
+    {
+        int n = cobertos.size();
+        if(n == cobertosIndexados) {
+            return;
+        }
+        if(chavesCobertos.length < n) {
+            chavesCobertos = new long[Math.max(n, chavesCobertos.length * 2)];
+        }
+        for(int i = 0; i < n; i++) {
+            Location onde = cobertos.get(i).getLocation();
+            chavesCobertos[i] = (long) (onde.getRow() * width + onde.getCol()) << 32 | i;
+        }
+        Arrays.sort(chavesCobertos, 0, n);
+        cobertosIndexados = n;
+    }
+
     /**
      * Retorna o ator na localização fornecida, se houver.
      * * @param location O objeto Location a ser verificado.
@@ -85,14 +257,20 @@ public class Field
     }
     
     /**
-     * Retorna o ator na localização fornecida por coordenadas.
+     * Retorna o ator na localização fornecida por coordenadas. Depois de um fork,
+     * um ator ainda compartilhado com outras simulações é trocado pela cópia própria
+     * desta (ver {@link #setCopiaDeAtor(UnaryOperator)}).
      * * @param row A linha desejada.
      * @param col A coluna desejada.
      * @return O ator na localização, ou {@code null} se estiver vazia.
      */
     public Ator getObjectAt(int row, int col)
     {
-        return field[row][col];
+        Ator ator = field[row][col];
+        if(ator != null && copiaDeAtor != null) {
+            return copiaDeAtor.apply(ator);
+        }
+        return ator;
     }
 
     /**
@@ -116,6 +294,86 @@ public class Field
         return terrenos[row][col];
     }
 
+    /**
+     * Substitui a matriz de terrenos usada por este campo (quando a simulação
+     * passa a ter uma cópia própria do terreno).
+     * * @param terrenos A nova matriz de terrenos.
+     */
+    void setTerrenos(Terreno[][] terrenos)
+    {
+        this.terrenos = terrenos;
+    }
+
+    /**
+     * Retorna a camada de vegetação associada a este campo.
+     * * @return A camada de vegetação, ou {@code null} se as plantas forem atores comuns.
+     */
+    public CamadaVegetacao getVegetacao()
+    {
+        return vegetacao;
+    }
+
+    /**
+     * Associa uma camada de vegetação a este campo.
+     * * @param vegetacao A camada a usar, ou {@code null} para desativá-la.
+     */
+    public void setVegetacao(CamadaVegetacao vegetacao)
+    {
+        this.vegetacao = vegetacao;
+    }
+
+    /**
+     * Retorna o índice espacial usado pelos animais com raio de percepção maior que 1.
+     * * @return O índice, ou {@code null} se nenhum animal enxerga além das adjacências.
+     */
+    public IndiceEspacial getIndice()
+    {
+        return indice;
+    }
+
+    /**
+     * Associa um índice espacial a este campo.
+     * * @param indice O índice a usar, ou {@code null} para desativá-lo.
+     */
+    public void setIndice(IndiceEspacial indice)
+    {
+        this.indice = indice;
+    }
+
+    /**
+     * Define o observador que recebe os eventos gerados pelos atores neste campo.
+     * * @param observador O observador, ou {@code null} para nenhum.
+     */
+    public void setObservador(ObservadorSimulacao observador)
+    {
+        this.observador = observador;
+    }
+
+    /**
+     * Informa que um ator comeu outro. Chamado pelos atores durante o seu turno.
+     * * @param predador O ator que comeu.
+     * @param presa O ator comido, ou {@code null} para uma planta da camada de vegetação.
+     * @param onde A posição da presa.
+     */
+    public void notificarAlimentacao(Ator predador, Ator presa, Location onde)
+    {
+        if(observador != null) {
+            observador.alimentacao(predador, presa, onde);
+        }
+    }
+
+    /**
+     * Informa que um animal morreu por não ter para onde se mover (superlotação).
+     * Chamado pelos atores durante o seu turno.
+     * * @param ator O animal.
+     */
+    public void notificarSuperlotacao(Ator ator)
+    {
+        if(observador != null) {
+            observador.superlotacao(ator);
+        }
+    }
+
     /**
      * Gera uma localização aleatória adjacente à localização fornecida,
      * ou retorna a própria localização.
@@ -128,6 +386,7 @@ public class Field
         int row = location.getRow();
         int col = location.getCol();
         // Gera um deslocamento de -1, 0, ou +1 para linha e coluna.
+        Random rand = ContextoSimulacao.random();
         int nextRow = row + rand.nextInt(3) - 1;
         int nextCol = col + rand.nextInt(3) - 1;
         // Verifica se a nova localização está fora dos limites.
@@ -226,7 +485,7 @@ public class Field
                 }
             }
         }
-        Collections.shuffle(locations,rand);
+        Collections.shuffle(locations, ContextoSimulacao.random());
         return locations.iterator();
     }
 
@@ -52,6 +52,18 @@ public class FieldStats
         return buffer.toString();
     }
     
+    /**
+     * Retorna a contagem atual de uma classe de ator.
+     * Se as estatísticas não estiverem atualizadas, retorna a contagem em andamento.
+     * * @param atorClass A classe do ator (ex: Fox.class).
+     * @return A contagem, ou 0 se a classe ainda não foi encontrada.
+     */
+    public int getCount(Class<?> atorClass)
+    {
+        Counter cnt = counters.get(atorClass);
+        return cnt == null ? 0 : cnt.getCount();
+    }
+
     /**
      * Invalida o conjunto atual de estatísticas e reseta todas as contagens para zero.
      * Deve ser chamado antes de iniciar uma nova varredura de contagem no campo.
@@ -82,6 +94,22 @@ public class FieldStats
         cnt.increment();
     }
 
+    /**
+     * Soma uma quantidade à contagem de uma classe de ator (ex: quando a população
+     * já foi contada pelo simulador).
+     * * @param atorClass A classe do ator a ser contado (ex: Fox.class).
+     * @param quantidade A quantidade a somar.
+     */
+    public void incrementCount(Class<?> atorClass, int quantidade)
+    {
+        Counter cnt = counters.get(atorClass);
+        if(cnt == null) {
+            cnt = new Counter(atorClass.getName());
+            counters.put(atorClass, cnt);
+        }
+        cnt.increment(quantidade);
+    }
+
     /**
      * Indica que uma contagem de atores foi concluída.
      * Marca as estatísticas atuais como válidas.
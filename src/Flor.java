@@ -10,14 +10,14 @@ import java.util.List;
  */
 public class Flor extends Vegetacao
 {
-    // A idade máxima que a flor pode viver.
-    private static final int MAX_AGE = 15;
+    // A idade máxima que a flor pode viver (valor padrão, ver Parametros).
+    static final int MAX_AGE = 15;
 
-    // A probabilidade de se espalhar.
-    private static final double SPREAD_PROBABILITY = 0.11;
+    // A probabilidade de se espalhar (valor padrão, ver Parametros).
+    static final double SPREAD_PROBABILITY = 0.11;
 
     // A cor da flor.
-    private static final Color COR = Color.RED;
+    static final Color COR = Color.RED;
 
     /**
      * Constrói uma nova instância de Flor.
@@ -45,7 +45,7 @@ public class Flor extends Vegetacao
     @Override
     protected int getMaxAge()
     {
-        return MAX_AGE;
+        return parametros().getInt(Parametro.FLOR_IDADE_MAXIMA);
     }
 
     /**
@@ -69,7 +69,7 @@ public class Flor extends Vegetacao
     @Override
     protected void executarAcao(Field currentField, Field updatedField, List<Ator> newActors)
     {
-        if (rand.nextDouble() <= SPREAD_PROBABILITY) {
+        if (rand().nextDouble() <= parametros().get(Parametro.FLOR_PROBABILIDADE_ESPALHAMENTO)) {
             Iterator<Location> adjacent = currentField.adjacentLocations(location);
             while (adjacent.hasNext()) {
                 Location next = adjacent.next();
@@ -0,0 +1,230 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formato de arquivo da série de população gravada por {@link ExportadorPopulacao}.
+ * Cada registro é um array de inteiros com o passo, os nascimentos, as mortes e a
+ * população de cada espécie (ver {@link ExportadorPopulacao#CAMPOS}).
+ * Os métodos são chamados apenas pela thread de escrita do exportador.
+ *
+ * @version 1.0
+ */
+public interface FormatoSerie
+{
+    /**
+     * Escreve o cabeçalho do arquivo.
+     * @param saida O destino (já com buffer).
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    void cabecalho(OutputStream saida) throws IOException;
+
+    /**
+     * Escreve um registro.
+     * @param saida O destino (já com buffer).
+     * @param dados O array com os registros.
+     * @param inicio A posição do primeiro campo do registro em dados.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    void registro(OutputStream saida, int[] dados, int inicio) throws IOException;
+
+    /**
+     * @return Um formato de texto CSV, uma linha por passo.
+     */
+    static FormatoSerie csv()
+    {
+        return new Csv();
+    }
+
+    /**
+     * @return Um formato binário compacto: o passo é gravado como diferença em
+     * relação ao anterior (ou, se não avançou, como um marcador seguido do passo
+     * absoluto) e todos os campos como varints.
+     */
+    static FormatoSerie binario()
+    {
+        return new Binario();
+    }
+
+    /**
+     * Texto CSV: passo,nascimentos,mortes e uma coluna por espécie.
+     */
+    class Csv implements FormatoSerie
+    {
+        private final StringBuilder linha = new StringBuilder();
+
+        @Override
+        public void cabecalho(OutputStream saida) throws IOException
+        {
+            linha.setLength(0);
+            linha.append("passo,nascimentos,mortes");
+            for(Especie especie : Especie.values()) {
+                linha.append(',').append(especie.name());
+            }
+            linha.append('\n');
+            saida.write(linha.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void registro(OutputStream saida, int[] dados, int inicio) throws IOException
+        {
+            linha.setLength(0);
+            for(int i = 0; i < ExportadorPopulacao.CAMPOS; i++) {
+                if(i > 0) {
+                    linha.append(',');
+                }
+                linha.append(dados[inicio + i]);
+            }
+            linha.append('\n');
+            for(int i = 0; i < linha.length(); i++) {
+                saida.write(linha.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Binário. O arquivo começa com os 4 bytes "ECS2" e um byte com o número de
+     * campos por registro (n). Cada registro é uma sequência de varints sem sinal
+     * (7 bits por byte, do menos significativo ao mais; o bit 0x80 indica que há
+     * mais bytes):
+     * - a diferença entre o passo e o passo do registro anterior (0 antes do
+     * primeiro). Como os passos de uma execução só avançam, a diferença 0 marca um
+     * recomeço (a simulação foi reiniciada ou restaurada de um checkpoint) e é
+     * seguida de outro varint com o passo absoluto;
+     * - os n - 1 campos restantes, na ordem do CSV (nascimentos, mortes e a
+     * população de cada espécie pelo código).
+     * O arquivo termina após o último registro. Ver {@link LeitorBinario}.
+     */
+    class Binario implements FormatoSerie
+    {
+        static final byte[] MAGICO = {'E', 'C', 'S', '2'};
+        private int passoAnterior;
+
+        @Override
+        public void cabecalho(OutputStream saida) throws IOException
+        {
+            saida.write(MAGICO);
+            saida.write(ExportadorPopulacao.CAMPOS);
+            passoAnterior = 0;
+        }
+
+        @Override
+        public void registro(OutputStream saida, int[] dados, int inicio) throws IOException
+        {
+            int passo = dados[inicio];
+            if(passo > passoAnterior) {
+                varint(saida, passo - passoAnterior);
+            }
+            else {
+                varint(saida, 0);
+                varint(saida, passo);
+            }
+            passoAnterior = passo;
+            for(int i = 1; i < ExportadorPopulacao.CAMPOS; i++) {
+                varint(saida, dados[inicio + i]);
+            }
+        }
+
+        /**
+         * Escreve um inteiro sem sinal em 7 bits por byte.
+         */
+        private static void varint(OutputStream saida, int valor) throws IOException
+        {
+            while((valor & ~0x7F) != 0) {
+                saida.write((valor & 0x7F) | 0x80);
+                valor >>>= 7;
+            }
+            saida.write(valor);
+        }
+    }
+
+    /**
+     * Lê os registros de um arquivo no formato {@link Binario}, na ordem em que
+     * foram gravados.
+     */
+    class LeitorBinario
+    {
+        private final InputStream entrada;
+        private final int campos;
+        private int passoAnterior;
+
+        /**
+         * Lê e valida o cabeçalho.
+         * * @param entrada A origem (de preferência com buffer), posicionada no início do arquivo.
+         * @throws IOException Se o cabeçalho for inválido ou ocorrer um erro de leitura.
+         */
+        public LeitorBinario(InputStream entrada) throws IOException
+        {
+            this.entrada = entrada;
+            for(byte esperado : Binario.MAGICO) {
+                if(entrada.read() != esperado) {
+                    throw new IOException("Arquivo não é uma série binária de população");
+                }
+            }
+            campos = entrada.read();
+            if(campos < 1) {
+                throw new IOException("Número de campos inválido na série: " + campos);
+            }
+        }
+
+        /**
+         * @return O número de campos de cada registro (o primeiro é o passo).
+         */
+        public int getCampos()
+        {
+            return campos;
+        }
+
+        /**
+         * Lê o próximo registro.
+         * * @param registro Recebe os campos; deve ter pelo menos {@link #getCampos()} posições.
+         * @return false se o arquivo terminou antes do registro.
+         * @throws IOException Se o arquivo terminar no meio de um registro ou ocorrer um erro de leitura.
+         */
+        public boolean proximo(int[] registro) throws IOException
+        {
+            int primeiro = entrada.read();
+            if(primeiro < 0) {
+                return false;
+            }
+            int diferenca = varint(primeiro);
+            int passo = diferenca == 0 ? varint(ler()) : passoAnterior + diferenca;
+            registro[0] = passo;
+            passoAnterior = passo;
+            for(int i = 1; i < campos; i++) {
+                registro[i] = varint(ler());
+            }
+            return true;
+        }
+
+        /**
+         * Lê um byte que precisa existir.
+         */
+        private int ler() throws IOException
+        {
+            int b = entrada.read();
+            if(b < 0) {
+                throw new EOFException("Série binária truncada");
+            }
+            return b;
+        }
+
+        /**
+         * Decodifica um varint cujo primeiro byte já foi lido.
+         */
+        private int varint(int b) throws IOException
+        {
+            int valor = b & 0x7F;
+            for(int deslocamento = 7; (b & 0x80) != 0; deslocamento += 7) {
+                if(deslocamento > 28) {
+                    throw new IOException("Varint inválido na série binária");
+                }
+                b = ler();
+                valor |= (b & 0x7F) << deslocamento;
+            }
+            return valor;
+        }
+    }
+}
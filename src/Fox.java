@@ -12,25 +12,30 @@ import java.util.Iterator;
 public class Fox extends Animal
 {
     // Características compartilhadas por todas as raposas (campos estáticos).
+    // São os valores padrão; cada simulação pode alterá-los (ver Parametros).
     
     /** Idade mínima para que a raposa possa se reproduzir. */
-    private static final int BREEDING_AGE = 10;
+    static final int BREEDING_AGE = 10;
     
     /** Idade máxima que uma raposa pode atingir. */
-    private static final int MAX_AGE = 150;
+    static final int MAX_AGE = 150;
     
     /** Probabilidade de uma raposa se reproduzir em cada passo (0 a 1). */
-    private static final double BREEDING_PROBABILITY = 0.09;
+    static final double BREEDING_PROBABILITY = 0.09;
     
     /** Número máximo de filhotes em um nascimento. */
-    private static final int MAX_LITTER_SIZE = 3;
+    static final int MAX_LITTER_SIZE = 3;
     
     /** Valor nutritivo de um coelho em passos de vida.
      * Representa quantos passos a raposa pode sobreviver após comer um coelho. */
-    private static final int RABBIT_FOOD_VALUE = 10;
+    static final int RABBIT_FOOD_VALUE = 10;
+    
+    /** Distância máxima, em passos, em que a raposa enxerga um coelho.
+     * Com 1, ela só percebe os coelhos adjacentes. */
+    static final int SENSING_RADIUS = 1;
     
     /** Cor de representação visual da raposa na simulação. */
-    private static final Color COR = Color.BLUE;
+    static final Color COR = Color.BLUE;
     
     // Características individuais (campos de instância).
     
@@ -50,10 +55,10 @@ public class Fox extends Animal
     {
         super(randomAge); // Chama o construtor da classe Animal
         if(randomAge) {
-            foodLevel = rand.nextInt(RABBIT_FOOD_VALUE);
+            foodLevel = rand().nextInt(parametros().getInt(Parametro.RAPOSA_VALOR_ALIMENTO_COELHO));
         }
         else {
-            foodLevel = RABBIT_FOOD_VALUE;
+            foodLevel = parametros().getInt(Parametro.RAPOSA_VALOR_ALIMENTO_COELHO);
         }
     }
 
@@ -82,6 +87,26 @@ public class Fox extends Animal
         }
     }
 
+    /**
+     * Retorna o nível de fome atual.
+     * * @return Quantos passos faltam até morrer de fome.
+     */
+    @Override
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * Define o nível de fome.
+     * * @param foodLevel O novo nível de fome.
+     */
+    @Override
+    void setFoodLevel(int foodLevel)
+    {
+        this.foodLevel = foodLevel;
+    }
+
     /**
      * Determina a próxima localização para a qual a raposa deve se mover.
      * Implementa a estratégia de movimento: primeiro busca comida (coelhos),
@@ -99,6 +124,15 @@ public class Fox extends Animal
         if(foodLocation != null) {
             return foodLocation;
         }
+
+        // Sem coelho adjacente, segue o mais próximo dentro do raio de percepção
+        Location rabbitLocation = findDistantRabbit(currentField);
+        if(rabbitLocation != null) {
+            Location towards = aproximar(rabbitLocation, updatedField);
+            if(towards != null) {
+                return towards;
+            }
+        }
         
         return updatedField.freeHabitableAdjacentLocation(location, this);
     }
@@ -106,45 +140,45 @@ public class Fox extends Animal
     /**
      * Retorna a idade máxima que uma raposa pode atingir.
      * 
-     * @return A idade máxima ({@value #MAX_AGE} passos).
+     * @return A idade máxima (padrão: {@value #MAX_AGE} passos).
      */
     @Override
     protected int getMaxAge()
     {
-        return MAX_AGE;
+        return parametros().getInt(Parametro.RAPOSA_IDADE_MAXIMA);
     }
 
     /**
      * Retorna a idade mínima para que uma raposa possa se reproduzir.
      * 
-     * @return A idade mínima para reprodução ({@value #BREEDING_AGE} passos).
+     * @return A idade mínima para reprodução (padrão: {@value #BREEDING_AGE} passos).
      */
     @Override
     protected int getBreedingAge()
     {
-        return BREEDING_AGE;
+        return parametros().getInt(Parametro.RAPOSA_IDADE_REPRODUCAO);
     }
 
     /**
      * Retorna a probabilidade de uma raposa se reproduzir.
      * 
-     * @return A probabilidade de reprodução (valor entre 0 e 1: {@value #BREEDING_PROBABILITY}).
+     * @return A probabilidade de reprodução (valor entre 0 e 1, padrão: {@value #BREEDING_PROBABILITY}).
      */
     @Override
     protected double getBreedingProbability()
     {
-        return BREEDING_PROBABILITY;
+        return parametros().get(Parametro.RAPOSA_PROBABILIDADE_REPRODUCAO);
     }
 
     /**
      * Retorna o número máximo de filhotes em um nascimento.
      * 
-     * @return O número máximo de filhotes ({@value #MAX_LITTER_SIZE}).
+     * @return O número máximo de filhotes (padrão: {@value #MAX_LITTER_SIZE}).
      */
     @Override
     protected int getMaxLitterSize()
     {
-        return MAX_LITTER_SIZE;
+        return parametros().getInt(Parametro.RAPOSA_MAXIMO_FILHOTES);
     }
 
     /**
@@ -185,7 +219,8 @@ public class Fox extends Animal
                     Rabbit rabbit = (Rabbit) animal;
                     if(rabbit.isAlive()) { 
                         rabbit.setEaten();
-                        foodLevel = RABBIT_FOOD_VALUE;
+                        foodLevel = parametros().getInt(Parametro.RAPOSA_VALOR_ALIMENTO_COELHO);
+                        currentField.notificarAlimentacao(this, rabbit, where);
                         return where;
                     }
                 }
@@ -194,4 +229,32 @@ public class Fox extends Animal
         return null;
     }
 
+    /**
+     * Procura o coelho vivo mais próximo além das adjacências, dentro do raio de
+     * percepção, usando o índice espacial do campo.
+     * 
+     * @param currentField O campo atual da simulação (contém os animais).
+     * @return A localização do coelho, ou {@code null} se o raio for 1 ou nenhum
+     *         coelho estiver à vista.
+     */
+    private Location findDistantRabbit(Field currentField)
+    {
+        int radius = parametros().getInt(Parametro.RAPOSA_RAIO_PERCEPCAO);
+        IndiceEspacial indice = currentField.getIndice();
+        if(radius <= 1 || indice == null) {
+            return null;
+        }
+        int width = currentField.getWidth();
+        int row = location.getRow();
+        int col = location.getCol();
+        int cell = indice.maisProxima(Especie.COELHO, row, col, radius, c -> {
+            if(Math.abs(c / width - row) <= 1 && Math.abs(c % width - col) <= 1) {
+                return false; // As adjacentes já foram vistas por findFood
+            }
+            Ator ator = currentField.getObjectAt(c / width, c % width);
+            return ator instanceof Rabbit && ator.isAlive();
+        });
+        return cell < 0 ? null : new Location(cell / width, cell % width);
+    }
+
 }
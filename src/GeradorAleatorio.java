@@ -0,0 +1,81 @@
+import java.util.Random;
+
+/**
+ * Gerador de números aleatórios cujo estado interno pode ser lido e restaurado.
+ * Usa exatamente o mesmo gerador congruencial linear de {@link java.util.Random},
+ * portanto produz a mesma sequência para a mesma semente; a diferença é que o
+ * estado de 48 bits fica acessível, o que permite salvar uma simulação e
+ * continuá-la depois com a mesma sequência de sorteios.
+ * * Não é sincronizado: cada simulação usa o seu próprio gerador em uma única thread.
+ *
+ * @version 1.0
+ */
+public class GeradorAleatorio extends Random
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLICADOR = 0x5DEECE66DL;
+    private static final long INCREMENTO = 0xBL;
+    private static final long MASCARA = (1L << 48) - 1;
+
+    // O estado atual do gerador congruencial (48 bits).
+    private long estado;
+
+    /**
+     * Cria um gerador com uma semente derivada do relógio do sistema.
+     */
+    public GeradorAleatorio()
+    {
+        this(System.nanoTime() ^ 0x2545F4914F6CDD1DL);
+    }
+
+    /**
+     * Cria um gerador com a semente fornecida.
+     * * @param semente A semente inicial.
+     */
+    public GeradorAleatorio(long semente)
+    {
+        super(semente); // O construtor de Random chama setSeed, que inicializa o estado
+    }
+
+    /**
+     * Reinicia o gerador com uma nova semente, como {@link Random#setSeed(long)}.
+     * * @param semente A nova semente.
+     */
+    @Override
+    public synchronized void setSeed(long semente)
+    {
+        super.setSeed(semente);
+        estado = (semente ^ MULTIPLICADOR) & MASCARA;
+    }
+
+    /**
+     * Gera os próximos bits pseudoaleatórios.
+     * * @param bits O número de bits desejados (1 a 32).
+     * @return Os bits gerados.
+     */
+    @Override
+    protected int next(int bits)
+    {
+        estado = (estado * MULTIPLICADOR + INCREMENTO) & MASCARA;
+        return (int) (estado >>> (48 - bits));
+    }
+
+    /**
+     * Retorna o estado interno atual.
+     * * @return O estado de 48 bits.
+     */
+    public long getEstado()
+    {
+        return estado;
+    }
+
+    /**
+     * Restaura um estado obtido por {@link #getEstado()}.
+     * * @param estado O estado de 48 bits.
+     */
+    public void setEstado(long estado)
+    {
+        this.estado = estado & MASCARA;
+    }
+}
@@ -0,0 +1,191 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import javax.swing.JPanel;
+
+/**
+ * Gráfico da população de cada espécie ao longo dos passos, para a janela da
+ * simulação.
+ * * Os dados ficam em uma fila circular de tamanho fixo, com uma coluna por pixel
+ * do gráfico, de modo que a memória não cresce em execuções longas. Quando há
+ * mais passos na janela exibida do que pixels, cada coluna resume vários passos
+ * e é desenhada como uma barra do mínimo ao máximo de cada espécie.
+ * * O desenho é incremental: quando uma coluna se completa, a imagem já desenhada
+ * é deslocada um pixel para a esquerda e só a coluna nova é desenhada. O gráfico
+ * inteiro só é redesenhado quando a escala vertical precisa aumentar.
+ * * Os métodos devem ser chamados na thread de eventos do Swing.
+ *
+ * @version 1.0
+ */
+public class GraficoPopulacao extends JPanel
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final Color FUNDO = Color.BLACK;
+
+    private final Especie[] especies = Especie.values();
+    private final int colunas, altura;
+    private final int passosPorColuna;
+
+    // Fila circular de colunas completas: minimo/maximo[coluna * especies + especie].
+    private final int[] minimo, maximo;
+    private int primeira, quantas;
+
+    // Coluna em preenchimento e quantos passos ela já tem.
+    private final int[] minimoAberto, maximoAberto;
+    private int passosAbertos;
+
+    // Valor que corresponde ao topo do gráfico.
+    private int escala = 1;
+
+    private final BufferedImage imagem;
+    private final Graphics2D g;
+
+    /**
+     * Cria um gráfico vazio.
+     * * @param colunas A largura da imagem, em pixels (uma coluna por pixel).
+     * @param altura A altura da imagem, em pixels.
+     * @param janela O número de passos exibidos; se maior que colunas, cada coluna
+     * resume janela / colunas passos (arredondado para cima).
+     */
+    public GraficoPopulacao(int colunas, int altura, int janela)
+    {
+        this.colunas = colunas;
+        this.altura = altura;
+        this.passosPorColuna = Math.max(1, (janela + colunas - 1) / colunas);
+        minimo = new int[colunas * especies.length];
+        maximo = new int[colunas * especies.length];
+        minimoAberto = new int[especies.length];
+        maximoAberto = new int[especies.length];
+        imagem = new BufferedImage(colunas, altura, BufferedImage.TYPE_INT_RGB);
+        g = imagem.createGraphics();
+        limpar();
+    }
+
+    /**
+     * Apaga o gráfico (ex: quando a simulação é reiniciada).
+     */
+    public void limpar()
+    {
+        primeira = 0;
+        quantas = 0;
+        passosAbertos = 0;
+        escala = 1;
+        g.setColor(FUNDO);
+        g.fillRect(0, 0, colunas, altura);
+        repaint();
+    }
+
+    /**
+     * Acrescenta a população de um passo.
+     * * @param populacao A população de cada espécie, indexada pelo código da espécie.
+     */
+    public void adicionar(int[] populacao)
+    {
+        for(int e = 0; e < especies.length; e++) {
+            int valor = populacao[especies[e].getCodigo()];
+            if(passosAbertos == 0) {
+                minimoAberto[e] = valor;
+                maximoAberto[e] = valor;
+            }
+            else {
+                minimoAberto[e] = Math.min(minimoAberto[e], valor);
+                maximoAberto[e] = Math.max(maximoAberto[e], valor);
+            }
+        }
+        passosAbertos++;
+        if(passosAbertos == passosPorColuna) {
+            fecharColuna();
+            passosAbertos = 0;
+        }
+    }
+
+    /**
+     * Guarda a coluna completa na fila circular e a desenha.
+     */
+    private void fecharColuna()
+    {
+        int posicao = (primeira + quantas) % colunas;
+        if(quantas == colunas) {
+            primeira = (primeira + 1) % colunas;
+        }
+        else {
+            quantas++;
+        }
+        int maior = 0;
+        for(int e = 0; e < especies.length; e++) {
+            minimo[posicao * especies.length + e] = minimoAberto[e];
+            maximo[posicao * especies.length + e] = maximoAberto[e];
+            maior = Math.max(maior, maximoAberto[e]);
+        }
+
+        if(maior > escala) {
+            // Folga para que a escala não mude a cada passo de crescimento
+            escala = Math.max(maior + maior / 4, 2 * escala);
+            redesenhar();
+        }
+        else {
+            g.copyArea(1, 0, colunas - 1, altura, -1, 0);
+            desenharColuna(posicao, colunas - 1);
+        }
+        repaint();
+    }
+
+    /**
+     * Redesenha todas as colunas da fila com a escala atual.
+     */
+    private void redesenhar()
+    {
+        g.setColor(FUNDO);
+        g.fillRect(0, 0, colunas, altura);
+        for(int i = 0; i < quantas; i++) {
+            desenharColuna((primeira + i) % colunas, colunas - quantas + i);
+        }
+    }
+
+    /**
+     * Desenha uma coluna da fila em uma coluna de pixels.
+     * * @param posicao A posição da coluna na fila circular.
+     * @param x A coluna de pixels.
+     */
+    private void desenharColuna(int posicao, int x)
+    {
+        g.setColor(FUNDO);
+        g.drawLine(x, 0, x, altura - 1);
+        for(int e = 0; e < especies.length; e++) {
+            int topo = y(maximo[posicao * especies.length + e]);
+            int base = y(minimo[posicao * especies.length + e]);
+            g.setColor(especies[e].getCor());
+            g.drawLine(x, topo, x, base);
+        }
+    }
+
+    /**
+     * Converte uma população na linha de pixels correspondente.
+     */
+    private int y(int valor)
+    {
+        return altura - 1 - (int) ((long) valor * (altura - 1) / escala);
+    }
+
+    /**
+     * @return O tamanho da imagem do gráfico.
+     */
+    @Override
+    public Dimension getPreferredSize()
+    {
+        return new Dimension(colunas, altura);
+    }
+
+    /**
+     * Copia a imagem do gráfico para a tela, esticada para o tamanho do componente.
+     * * @param tela O contexto gráfico.
+     */
+    @Override
+    protected void paintComponent(Graphics tela)
+    {
+        tela.drawImage(imagem, 0, 0, getWidth(), getHeight(), null);
+    }
+}
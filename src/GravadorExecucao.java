@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Grava uma execução como uma sequência de quadros de ocupação, para que ela
+ * possa ser revista depois (ver {@link LeitorGravacao}) sem ser simulada de novo.
+ * Cada quadro é a grade de códigos de espécie ({@link Especie}) de um passo,
+ * incluindo as plantas da camada de vegetação.
+ * * Para ocupar pouco espaço, a cada INTERVALO_CHAVE passos é gravado um quadro-chave
+ * completo; os demais guardam apenas o XOR com o quadro anterior. Ambos são
+ * compactados com codificação por carreiras (run-length): como quase todas as
+ * células repetem o quadro anterior, o XOR é formado por longas carreiras de zeros.
+ * Ao fechar, um índice com a posição de cada quadro é gravado no final do arquivo,
+ * permitindo buscar qualquer passo decodificando no máximo INTERVALO_CHAVE quadros.
+ * * O terreno do cabeçalho é o do início da gravação. Cada edição de terreno feita
+ * durante a gravação ({@link ComandoEdicao.Tipo#TERRENO}) é gravada entre os
+ * quadros, com a codificação de {@value ComandoEdicao#TAMANHO} bytes do comando, e
+ * repetida no índice; a leitura a aplica a partir do quadro seguinte.
+ * * Formato (little-endian):
+ * <pre>
+ *   cabeçalho: int MAGICO, short VERSAO, int depth, int width, int intervalo chave,
+ *              byte código do terreno por célula
+ *   quadro:    byte tipo (0 = chave, 1 = XOR), int passo, int tamanho, dados RLE
+ *   edição:    byte tipo (2), int passo, int tamanho, comando
+ *   índice:    int total, (long posição, int passo) por quadro,
+ *              int edições, (int primeiro quadro afetado, comando) por edição
+ *   final:     long posição do índice, int MAGICO_INDICE
+ * </pre>
+ * Os dados RLE são pares (byte valor, varint comprimento da carreira). A versão 1
+ * não tinha edições; ela continua legível.
+ *
+ * @version 1.0
+ */
+public class GravadorExecucao implements ObservadorSimulacao
+{
+    static final int MAGICO = 0x45435231;        // "ECR1"
+    static final int MAGICO_INDICE = 0x45435249; // "ECRI"
+    static final short VERSAO = 2;
+    static final byte QUADRO_CHAVE = 0;
+    static final byte QUADRO_XOR = 1;
+    static final byte EDICAO_TERRENO = 2;
+
+    // A cada quantos quadros é gravado um quadro-chave.
+    static final int INTERVALO_CHAVE = 64;
+
+    private final FileChannel canal;
+    private final int depth, width;
+
+    // Quadro atual, quadro anterior e buffer de codificação (reaproveitados).
+    private byte[] quadro;
+    private byte[] anterior;
+    private byte[] codificado;
+
+    // Índice dos quadros gravados.
+    private long[] posicoes = new long[1024];
+    private int[] passos = new int[1024];
+    private int total;
+
+    // Edições de terreno já gravadas, repetidas no índice: o primeiro quadro
+    // afetado por cada uma e os comandos codificados, em sequência.
+    private int[] quadrosEdicao = new int[16];
+    private ByteBuffer edicoes = ByteBuffer.allocate(16 * ComandoEdicao.TAMANHO).order(ByteOrder.LITTLE_ENDIAN);
+    private int totalEdicoes;
+    private int ultimoPasso;
+
+    /**
+     * Cria o arquivo de gravação e escreve o cabeçalho com o terreno.
+     * * @param arquivo O arquivo de destino (sobrescrito se existir).
+     * @param field O campo da simulação (dimensões e terreno).
+     * @throws IOException Se o arquivo não puder ser criado.
+     */
+    public GravadorExecucao(Path arquivo, Field field) throws IOException
+    {
+        depth = field.getDepth();
+        width = field.getWidth();
+        quadro = new byte[depth * width];
+        anterior = new byte[depth * width];
+        codificado = new byte[1024];
+        canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer cabecalho = ByteBuffer.allocate(18 + depth * width).order(ByteOrder.LITTLE_ENDIAN);
+        cabecalho.putInt(MAGICO).putShort(VERSAO).putInt(depth).putInt(width).putInt(INTERVALO_CHAVE);
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                cabecalho.put((byte) Simulator.codigoDoTerreno(field.getTerrenoAt(row, col)));
+            }
+        }
+        cabecalho.flip();
+        escreverTudo(cabecalho);
+    }
+
+    /**
+     * Grava as edições de terreno; as demais já aparecem no quadro seguinte.
+     */
+    @Override
+    public void edicao(ComandoEdicao comando)
+    {
+        if(comando.getTipo() != ComandoEdicao.Tipo.TERRENO) {
+            return;
+        }
+        try {
+            gravarEdicao(comando);
+        }
+        catch(IOException e) {
+            throw new IllegalStateException("Erro ao gravar a execução: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Grava uma edição de terreno, que vale a partir do próximo quadro.
+     * * @param comando A edição, do tipo TERRENO.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    public void gravarEdicao(ComandoEdicao comando) throws IOException
+    {
+        if(totalEdicoes == quadrosEdicao.length) {
+            quadrosEdicao = Arrays.copyOf(quadrosEdicao, totalEdicoes * 2);
+            ByteBuffer maior = ByteBuffer.allocate(edicoes.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            edicoes.flip();
+            edicoes = maior.put(edicoes);
+        }
+        quadrosEdicao[totalEdicoes++] = total;
+        int inicio = edicoes.position();
+        comando.gravar(edicoes);
+
+        ByteBuffer registro = ByteBuffer.allocate(9 + ComandoEdicao.TAMANHO).order(ByteOrder.LITTLE_ENDIAN);
+        registro.put(EDICAO_TERRENO).putInt(ultimoPasso).putInt(ComandoEdicao.TAMANHO);
+        registro.put(edicoes.duplicate().position(inicio).limit(edicoes.position()));
+        registro.flip();
+        escreverTudo(registro);
+    }
+
+    /**
+     * Grava o quadro do passo que acabou de terminar.
+     */
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        try {
+            gravar(sim.getStep(), sim.getField());
+        }
+        catch(IOException e) {
+            throw new IllegalStateException("Erro ao gravar a execução: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Grava um quadro com a ocupação atual do campo.
+     * * @param step O número do passo.
+     * @param field O campo com o estado do passo.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    public void gravar(int step, Field field) throws IOException
+    {
+        CamadaVegetacao vegetacao = field.getVegetacao();
+        int i = 0;
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++, i++) {
+                byte codigo = Especie.codigoDe(field.getObjectAt(row, col));
+                if(codigo == Especie.VAZIO && vegetacao != null) {
+                    codigo = codigoPlanta(vegetacao.getTipo(row, col));
+                }
+                quadro[i] = codigo;
+            }
+        }
+
+        boolean chave = total % INTERVALO_CHAVE == 0;
+        if(!chave) {
+            // O anterior passa a guardar o XOR; o quadro atual vira o anterior na troca abaixo.
+            for(int k = 0; k < quadro.length; k++) {
+                anterior[k] ^= quadro[k];
+            }
+        }
+        int tamanho = codificarRle(chave ? quadro : anterior);
+
+        if(total == posicoes.length) {
+            posicoes = Arrays.copyOf(posicoes, total * 2);
+            passos = Arrays.copyOf(passos, total * 2);
+        }
+        posicoes[total] = canal.position();
+        passos[total] = step;
+        total++;
+        ultimoPasso = step;
+
+        ByteBuffer cabecalho = ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+        cabecalho.put(chave ? QUADRO_CHAVE : QUADRO_XOR).putInt(step).putInt(tamanho);
+        cabecalho.flip();
+        escreverTudo(cabecalho);
+        escreverTudo(ByteBuffer.wrap(codificado, 0, tamanho));
+
+        byte[] temp = anterior;
+        anterior = quadro;
+        quadro = temp;
+    }
+
+    /**
+     * Grava o índice de quadros e fecha o arquivo.
+     * * @throws IOException Se ocorrer um erro de escrita.
+     */
+    public void fechar() throws IOException
+    {
+        long posicaoIndice = canal.position();
+        ByteBuffer indice = ByteBuffer.allocate(4 + total * 12 + 4 + totalEdicoes * (4 + ComandoEdicao.TAMANHO) + 12)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        indice.putInt(total);
+        for(int k = 0; k < total; k++) {
+            indice.putLong(posicoes[k]).putInt(passos[k]);
+        }
+        indice.putInt(totalEdicoes);
+        for(int k = 0; k < totalEdicoes; k++) {
+            indice.putInt(quadrosEdicao[k]);
+            indice.put(edicoes.duplicate().position(k * ComandoEdicao.TAMANHO)
+                              .limit((k + 1) * ComandoEdicao.TAMANHO));
+        }
+        indice.putLong(posicaoIndice).putInt(MAGICO_INDICE);
+        indice.flip();
+        escreverTudo(indice);
+        canal.close();
+    }
+
+    /**
+     * Converte o código da camada de vegetação no código de espécie correspondente.
+     */
+    static byte codigoPlanta(byte tipoPlanta)
+    {
+        switch(tipoPlanta) {
+            case CamadaVegetacao.FLOR:
+                return Especie.FLOR.getCodigo();
+            case CamadaVegetacao.VITORIA_REGIA:
+                return Especie.VITORIA_REGIA.getCodigo();
+            default:
+                return Especie.VAZIO;
+        }
+    }
+
+    /**
+     * Codifica os dados em carreiras (valor, comprimento) no buffer codificado.
+     * * @param dados Os bytes a codificar.
+     * @return O número de bytes codificados.
+     */
+    private int codificarRle(byte[] dados)
+    {
+        int n = 0;
+        int i = 0;
+        while(i < dados.length) {
+            byte valor = dados[i];
+            int inicio = i;
+            while(i < dados.length && dados[i] == valor) {
+                i++;
+            }
+            if(codificado.length - n < 6) {
+                codificado = Arrays.copyOf(codificado, codificado.length * 2);
+            }
+            codificado[n++] = valor;
+            int comprimento = i - inicio;
+            while((comprimento & ~0x7F) != 0) {
+                codificado[n++] = (byte) ((comprimento & 0x7F) | 0x80);
+                comprimento >>>= 7;
+            }
+            codificado[n++] = (byte) comprimento;
+        }
+        return n;
+    }
+
+    /**
+     * Escreve todo o conteúdo do buffer no canal.
+     */
+    private void escreverTudo(ByteBuffer buf) throws IOException
+    {
+        while(buf.hasRemaining()) {
+            canal.write(buf);
+        }
+    }
+}
@@ -0,0 +1,544 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Histórico compacto da população de cada espécie, para execuções muito longas.
+ * Como observador, acrescenta uma amostra (a população de cada espécie) por passo.
+ * Como consumidor de uma {@link PipelinePassos} com espera, faz o mesmo na thread
+ * da pipeline, a partir do quadro de cada passo, e a simulação não conta nem a
+ * população (sem espera, um passo descartado recomeça o histórico, como um reinício).
+ * * As amostras são guardadas em blocos de tamanho fixo. Quando um bloco enche, cada
+ * série é codificada como o primeiro valor seguido das diferenças entre valores
+ * consecutivos, em zig-zag e varint: como a população muda pouco de um passo para
+ * o outro, a maioria das amostras ocupa um byte. Cada bloco guarda também o mínimo,
+ * o máximo e a soma de cada série, de modo que leituras reduzidas para gráficos
+ * ({@link #reduzir}) usam o resumo dos blocos inteiros e só decodificam as bordas.
+ * * O histórico descreve uma única trajetória, de passos consecutivos: se a simulação
+ * observada for reiniciada ou restaurada de um checkpoint, o histórico recomeça no
+ * novo passo ({@link Simulator#ativarHistorico()}).
+ * * O histórico pode ser gravado em disco e carregado de volta. Os métodos são
+ * sincronizados: a simulação acrescenta amostras enquanto outra thread consulta.
+ *
+ * @version 1.0
+ */
+public class HistoricoPopulacao implements ObservadorSimulacao, PipelinePassos.Consumidor
+{
+    // Amostras por bloco.
+    static final int TAMANHO_BLOCO = 4096;
+
+    private static final int MAGICO = 0x45434831; // "ECH1"
+
+    /**
+     * Um bloco de amostras já codificado.
+     */
+    private static final class Bloco
+    {
+        final long inicio;
+        final int n;
+        final byte[][] dados;
+        final int[] min, max;
+        final long[] soma;
+
+        Bloco(long inicio, int n, byte[][] dados, int[] min, int[] max, long[] soma)
+        {
+            this.inicio = inicio;
+            this.n = n;
+            this.dados = dados;
+            this.min = min;
+            this.max = max;
+            this.soma = soma;
+        }
+    }
+
+    /**
+     * Uma leitura reduzida: mínimo, máximo e média de cada balde.
+     */
+    public static final class Baldes
+    {
+        private final int[] min;
+        private final int[] max;
+        private final double[] media;
+
+        Baldes(int n)
+        {
+            min = new int[n];
+            max = new int[n];
+            media = new double[n];
+        }
+
+        /**
+         * @return O número de baldes.
+         */
+        public int tamanho()
+        {
+            return media.length;
+        }
+
+        /**
+         * @return O menor valor de cada balde.
+         */
+        public int[] getMin()
+        {
+            return min;
+        }
+
+        /**
+         * @return O maior valor de cada balde.
+         */
+        public int[] getMax()
+        {
+            return max;
+        }
+
+        /**
+         * @return A média de cada balde.
+         */
+        public double[] getMedia()
+        {
+            return media;
+        }
+    }
+
+    private final Especie[] especies = Especie.values();
+    private final List<Bloco> blocos = new ArrayList<>();
+
+    // Bloco em preenchimento: aberto[serie][i].
+    private final int[][] aberto;
+    private int noAberto;
+
+    // Passo da primeira amostra (-1 se vazio) e número total de amostras.
+    private long primeiroPasso = -1;
+    private long total;
+
+    // Buffers de trabalho.
+    private final int[] contagens = new int[especies.length + 1];
+    private final int[] decodificado = new int[TAMANHO_BLOCO];
+    private byte[] codificacao = new byte[TAMANHO_BLOCO * 5];
+
+    /**
+     * Cria um histórico vazio.
+     */
+    public HistoricoPopulacao()
+    {
+        aberto = new int[especies.length][TAMANHO_BLOCO];
+    }
+
+    /**
+     * Acrescenta a população do passo que terminou. Se o passo não for o seguinte
+     * ao da última amostra (a simulação foi reiniciada ou restaurada), descarta as
+     * amostras anteriores e recomeça.
+     */
+    @Override
+    public synchronized void fimPasso(Simulator sim)
+    {
+        if(total > 0 && sim.getStep() != getUltimoPasso() + 1) {
+            limpar();
+        }
+        sim.contarPopulacao(contagens);
+        adicionar(sim.getStep(), contagens);
+    }
+
+    /**
+     * Acrescenta a população de um passo recebido de uma pipeline, recomeçando se
+     * o passo não for o seguinte ao da última amostra.
+     * * @param quadro O quadro do passo.
+     */
+    @Override
+    public synchronized void consumir(QuadroPasso quadro)
+    {
+        if(total > 0 && quadro.getPasso() != getUltimoPasso() + 1) {
+            limpar();
+        }
+        quadro.populacao(contagens);
+        adicionar(quadro.getPasso(), contagens);
+    }
+
+    /**
+     * Acrescenta uma amostra (usado quando as contagens vêm de outra fonte).
+     * * @param passo O passo da amostra; deve ser o seguinte ao da última amostra.
+     * @param populacao A população de cada espécie, indexada pelo código da espécie.
+     * @throws IllegalArgumentException Se o passo não for o seguinte ao da última amostra.
+     */
+    public synchronized void adicionar(long passo, int[] populacao)
+    {
+        if(primeiroPasso < 0) {
+            if(passo < 0) {
+                throw new IllegalArgumentException("Passo negativo: " + passo);
+            }
+            primeiroPasso = passo;
+        }
+        else if(passo != primeiroPasso + total) {
+            throw new IllegalArgumentException("Amostra do passo " + passo + " fora de ordem; esperado "
+                                               + (primeiroPasso + total));
+        }
+        for(int s = 0; s < especies.length; s++) {
+            aberto[s][noAberto] = populacao[especies[s].getCodigo()];
+        }
+        noAberto++;
+        total++;
+        if(noAberto == TAMANHO_BLOCO) {
+            fecharBloco();
+        }
+    }
+
+    /**
+     * Descarta todas as amostras.
+     */
+    public synchronized void limpar()
+    {
+        blocos.clear();
+        noAberto = 0;
+        total = 0;
+        primeiroPasso = -1;
+    }
+
+    /**
+     * @return O passo da primeira amostra, ou -1 se o histórico estiver vazio.
+     */
+    public synchronized long getPrimeiroPasso()
+    {
+        return primeiroPasso;
+    }
+
+    /**
+     * @return O passo da última amostra, ou -1 se o histórico estiver vazio.
+     */
+    public synchronized long getUltimoPasso()
+    {
+        return total == 0 ? -1 : primeiroPasso + total - 1;
+    }
+
+    /**
+     * @return O número aproximado de bytes ocupados pelas amostras.
+     */
+    public synchronized long getBytes()
+    {
+        long bytes = (long) noAberto * especies.length * 4;
+        for(Bloco b : blocos) {
+            for(byte[] d : b.dados) {
+                bytes += d.length;
+            }
+            bytes += especies.length * 16L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Lê a população de uma espécie em um intervalo de passos.
+     * * @param especie A espécie.
+     * @param de O primeiro passo (inclusive).
+     * @param ate O último passo (inclusive).
+     * @return Uma amostra por passo do intervalo que esteja no histórico.
+     */
+    public synchronized int[] intervalo(Especie especie, long de, long ate)
+    {
+        long i0 = Math.max(0, de - primeiroPasso);
+        long i1 = Math.min(total, ate - primeiroPasso + 1);
+        if(primeiroPasso < 0 || i1 <= i0) {
+            return new int[0];
+        }
+        int s = especie.ordinal();
+        int[] resultado = new int[(int) (i1 - i0)];
+        int k = 0;
+        long i = i0;
+        while(i < i1) {
+            int[] valores = valoresDoBloco(s, i);
+            long inicio = inicioDoBloco(i);
+            int desde = (int) (i - inicio);
+            int quantos = (int) Math.min(i1 - i, tamanhoDoBloco(i) - desde);
+            System.arraycopy(valores, desde, resultado, k, quantos);
+            k += quantos;
+            i += quantos;
+        }
+        return resultado;
+    }
+
+    /**
+     * Lê a população de uma espécie em um intervalo de passos reduzida a um número
+     * fixo de baldes (ex: um por pixel de um gráfico), com mínimo, máximo e média.
+     * Blocos inteiros contidos em um único balde usam o resumo, sem decodificação.
+     * * @param especie A espécie.
+     * @param de O primeiro passo (inclusive).
+     * @param ate O último passo (inclusive).
+     * @param baldes O número de baldes.
+     * @return Os baldes; vazio se o intervalo não tiver amostras.
+     */
+    public synchronized Baldes reduzir(Especie especie, long de, long ate, int baldes)
+    {
+        long i0 = Math.max(0, de - primeiroPasso);
+        long i1 = Math.min(total, ate - primeiroPasso + 1);
+        if(primeiroPasso < 0 || i1 <= i0 || baldes <= 0) {
+            return new Baldes(0);
+        }
+        int s = especie.ordinal();
+        long n = i1 - i0;
+        baldes = (int) Math.min(baldes, n);
+        Baldes r = new Baldes(baldes);
+        Arrays.fill(r.min, Integer.MAX_VALUE);
+        Arrays.fill(r.max, Integer.MIN_VALUE);
+        long[] soma = new long[baldes];
+        long[] contagem = new long[baldes];
+
+        long i = i0;
+        while(i < i1) {
+            long inicio = inicioDoBloco(i);
+            int tamanho = tamanhoDoBloco(i);
+            long fimBloco = inicio + tamanho;
+            int baldeInicio = (int) ((i - i0) * baldes / n);
+            int baldeFim = (int) ((Math.min(fimBloco, i1) - 1 - i0) * baldes / n);
+            Bloco bloco = i < total - noAberto ? blocoDe(i) : null;
+            if(bloco != null && i == inicio && fimBloco <= i1 && baldeInicio == baldeFim) {
+                // Bloco inteiro em um só balde: usa o resumo
+                r.min[baldeInicio] = Math.min(r.min[baldeInicio], bloco.min[s]);
+                r.max[baldeInicio] = Math.max(r.max[baldeInicio], bloco.max[s]);
+                soma[baldeInicio] += bloco.soma[s];
+                contagem[baldeInicio] += tamanho;
+                i = fimBloco;
+                continue;
+            }
+            int[] valores = valoresDoBloco(s, i);
+            long fim = Math.min(fimBloco, i1);
+            for(; i < fim; i++) {
+                int v = valores[(int) (i - inicio)];
+                int b = (int) ((i - i0) * baldes / n);
+                r.min[b] = Math.min(r.min[b], v);
+                r.max[b] = Math.max(r.max[b], v);
+                soma[b] += v;
+                contagem[b]++;
+            }
+        }
+        for(int b = 0; b < baldes; b++) {
+            r.media[b] = contagem[b] == 0 ? 0 : (double) soma[b] / contagem[b];
+        }
+        return r;
+    }
+
+    /**
+     * Grava o histórico em um arquivo.
+     * * @param arquivo O arquivo de destino (sobrescrito se existir).
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+    public synchronized void salvar(Path arquivo) throws IOException
+    {
+        List<Bloco> todos = new ArrayList<>(blocos);
+        if(noAberto > 0) {
+            todos.add(codificar(total - noAberto, noAberto));
+        }
+        try(FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            cabecalho.putInt(MAGICO).putInt(especies.length).putLong(primeiroPasso).putInt(todos.size()).putInt(0);
+            cabecalho.flip();
+            escreverTudo(canal, cabecalho);
+            for(Bloco b : todos) {
+                int bytes = 4;
+                for(byte[] d : b.dados) {
+                    bytes += 4 + 4 + 8 + 4 + d.length;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+                buf.putInt(b.n);
+                for(int s = 0; s < especies.length; s++) {
+                    buf.putInt(b.min[s]).putInt(b.max[s]).putLong(b.soma[s]).putInt(b.dados[s].length).put(b.dados[s]);
+                }
+                buf.flip();
+                escreverTudo(canal, buf);
+            }
+        }
+    }
+
+    /**
+     * Carrega um histórico gravado por {@link #salvar(Path)}. Novas amostras podem
+     * ser acrescentadas ao histórico carregado.
+     * * @param arquivo O arquivo.
+     * @return O histórico.
+     * @throws IOException Se o arquivo não puder ser lido, não for um histórico ou
+     * estiver truncado ou corrompido.
+     */
+    public static HistoricoPopulacao carregar(Path arquivo) throws IOException
+    {
+        HistoricoPopulacao h = new HistoricoPopulacao();
+        try(FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            if(canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Histórico grande demais: " + arquivo);
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) canal.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while(buf.hasRemaining() && canal.read(buf) >= 0) {
+                // Lê o arquivo inteiro
+            }
+            buf.flip();
+            if(buf.remaining() < 24 || buf.getInt() != MAGICO || buf.getInt() != h.especies.length) {
+                throw new IOException("Arquivo não é um histórico de população compatível: " + arquivo);
+            }
+            try {
+                lerBlocos(h, buf);
+            }
+            catch(BufferUnderflowException e) {
+                throw new IOException("Histórico truncado ou corrompido: " + arquivo, e);
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Lê os blocos gravados por salvar, depois do cabeçalho; um tamanho fora dos
+     * limites lança BufferUnderflowException, como um arquivo truncado.
+     */
+    private static void lerBlocos(HistoricoPopulacao h, ByteBuffer buf)
+    {
+        h.primeiroPasso = buf.getLong();
+        int nBlocos = buf.getInt();
+        buf.getInt();
+        if(nBlocos < 0 || (nBlocos > 0 && h.primeiroPasso < 0)) {
+            throw new BufferUnderflowException();
+        }
+        for(int k = 0; k < nBlocos; k++) {
+            int n = buf.getInt();
+            if(n <= 0 || n > TAMANHO_BLOCO) {
+                throw new BufferUnderflowException();
+            }
+            int series = h.especies.length;
+            byte[][] dados = new byte[series][];
+            int[] min = new int[series], max = new int[series];
+            long[] soma = new long[series];
+            for(int s = 0; s < series; s++) {
+                min[s] = buf.getInt();
+                max[s] = buf.getInt();
+                soma[s] = buf.getLong();
+                int bytes = buf.getInt();
+                if(bytes < 0 || bytes > buf.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                dados[s] = new byte[bytes];
+                buf.get(dados[s]);
+            }
+            h.blocos.add(new Bloco(h.total, n, dados, min, max, soma));
+            h.total += n;
+        }
+    }
+
+    /**
+     * Codifica o bloco aberto e começa um novo.
+     */
+    private void fecharBloco()
+    {
+        blocos.add(codificar(total - noAberto, noAberto));
+        noAberto = 0;
+    }
+
+    /**
+     * Codifica as n primeiras amostras do bloco aberto.
+     */
+    private Bloco codificar(long inicio, int n)
+    {
+        int series = especies.length;
+        byte[][] dados = new byte[series][];
+        int[] min = new int[series], max = new int[series];
+        long[] soma = new long[series];
+        for(int s = 0; s < series; s++) {
+            int[] valores = aberto[s];
+            int pos = 0;
+            int anterior = 0;
+            int mn = Integer.MAX_VALUE, mx = Integer.MIN_VALUE;
+            long sm = 0;
+            for(int i = 0; i < n; i++) {
+                int v = valores[i];
+                int delta = v - anterior;
+                anterior = v;
+                int zigzag = (delta << 1) ^ (delta >> 31);
+                while((zigzag & ~0x7F) != 0) {
+                    codificacao[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+                    zigzag >>>= 7;
+                }
+                codificacao[pos++] = (byte) zigzag;
+                mn = Math.min(mn, v);
+                mx = Math.max(mx, v);
+                sm += v;
+            }
+            dados[s] = Arrays.copyOf(codificacao, pos);
+            min[s] = mn;
+            max[s] = mx;
+            soma[s] = sm;
+        }
+        return new Bloco(inicio, n, dados, min, max, soma);
+    }
+
+    /**
+     * Retorna os valores do bloco que contém a amostra i (decodificando se fechado).
+     * O array retornado é reaproveitado na próxima chamada.
+     */
+    private int[] valoresDoBloco(int s, long i)
+    {
+        if(i >= total - noAberto) {
+            return aberto[s];
+        }
+        Bloco bloco = blocoDe(i);
+        byte[] d = bloco.dados[s];
+        int pos = 0;
+        int valor = 0;
+        for(int k = 0; k < bloco.n; k++) {
+            int zigzag = 0;
+            int deslocamento = 0;
+            byte b;
+            do {
+                b = d[pos++];
+                zigzag |= (b & 0x7F) << deslocamento;
+                deslocamento += 7;
+            } while(b < 0);
+            valor += (zigzag >>> 1) ^ -(zigzag & 1);
+            decodificado[k] = valor;
+        }
+        return decodificado;
+    }
+
+    /**
+     * Retorna o bloco fechado que contém a amostra i (busca binária).
+     */
+    private Bloco blocoDe(long i)
+    {
+        int lo = 0, hi = blocos.size() - 1;
+        while(lo < hi) {
+            int meio = (lo + hi + 1) >>> 1;
+            if(blocos.get(meio).inicio <= i) {
+                lo = meio;
+            }
+            else {
+                hi = meio - 1;
+            }
+        }
+        return blocos.get(lo);
+    }
+
+    /**
+     * @return A primeira amostra do bloco que contém a amostra i.
+     */
+    private long inicioDoBloco(long i)
+    {
+        return i >= total - noAberto ? total - noAberto : blocoDe(i).inicio;
+    }
+
+    /**
+     * @return O número de amostras do bloco que contém a amostra i.
+     */
+    private int tamanhoDoBloco(long i)
+    {
+        return i >= total - noAberto ? noAberto : blocoDe(i).n;
+    }
+
+    /**
+     * Escreve todo o conteúdo do buffer no canal.
+     */
+    private static void escreverTudo(FileChannel canal, ByteBuffer buf) throws IOException
+    {
+        while(buf.hasRemaining()) {
+            canal.write(buf);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Índice espacial das posições de cada espécie, usado pelos animais com raio de
+ * percepção maior que 1 para achar a presa (ou flor) mais próxima sem percorrer
+ * todas as células do raio.
+ * * O campo é dividido em baldes de {@value #LADO} x {@value #LADO} células. O índice
+ * é reconstruído no início de cada passo a partir da lista de atores e da camada
+ * de vegetação, com uma ordenação por contagem: para cada espécie e balde, as células
+ * ocupadas ficam em um trecho contíguo de um único array. Uma consulta percorre os
+ * baldes em anéis a partir do balde do animal e para assim que nenhum balde mais
+ * distante pode ter uma célula mais próxima que a melhor já achada; o custo depende
+ * do número de baldes do raio e dos candidatos neles, não do número de células.
+ * * O índice é o retrato do início do passo: presas comidas ou que já se moveram
+ * continuam nele, e quem consulta confirma cada candidato no campo atual.
+ * A distância usada é a de Chebyshev, o número de passos entre células vizinhas.
+ *
+ * @version 1.0
+ */
+public class IndiceEspacial
+{
+    // Log2 do lado de um balde, em células.
+    static final int LADO_LOG = 3;
+
+    /**
+     * O lado de um balde, em células.
+     */
+    public static final int LADO = 1 << LADO_LOG;
+
+    private static final int ESPECIES = Especie.values().length + 1;
+
+    private final int alturaCampo, width;
+    private final int larguraBaldes, alturaBaldes;
+    private final int baldes;
+
+    // inicio[codigo * baldes + balde] é a primeira posição do balde em celulas;
+    // o trecho vai até o início do balde seguinte.
+    private final int[] inicio;
+
+    // Células ocupadas (row * width + col), agrupadas por espécie e balde.
+    private int[] celulas = new int[1024];
+
+    /**
+     * Cria um índice vazio para um campo com as dimensões dadas.
+     * * @param depth A profundidade do campo.
+     * @param width A largura do campo.
+     */
+    public IndiceEspacial(int depth, int width)
+    {
+        this.alturaCampo = depth;
+        this.width = width;
+        larguraBaldes = ((width - 1) >> LADO_LOG) + 1;
+        alturaBaldes = ((depth - 1) >> LADO_LOG) + 1;
+        baldes = larguraBaldes * alturaBaldes;
+        inicio = new int[ESPECIES * baldes + 1];
+    }
+
+    /**
+     * Reconstrói o índice com os atores visíveis no campo (os que ocupam a própria
+     * célula) e as plantas da camada de vegetação.
+     * * @param atores A lista de atores da simulação.
+     * @param field O campo atual.
+     * @param camada A camada de vegetação, ou null se desativada.
+     */
+    public void construir(List<Ator> atores, Field field, CamadaVegetacao camada)
+    {
+        // 1. Conta as células de cada espécie em cada balde
+        Arrays.fill(inicio, 0);
+        for(Ator ator : atores) {
+            if(visivel(ator, field)) {
+                inicio[chave(Especie.codigoDe(ator), ator.getLocation().getRow(), ator.getLocation().getCol()) + 1]++;
+            }
+        }
+        if(camada != null) {
+            for(int row = 0; row < alturaCampo; row++) {
+                byte[] tipos = camada.tiposDaLinha(row);
+                for(int col = 0; col < width; col++) {
+                    if(tipos[col] != CamadaVegetacao.VAZIO) {
+                        inicio[chave(codigoDaCamada(tipos[col]), row, col) + 1]++;
+                    }
+                }
+            }
+        }
+
+        // 2. Transforma as contagens em posições iniciais
+        for(int k = 1; k < inicio.length; k++) {
+            inicio[k] += inicio[k - 1];
+        }
+        if(celulas.length < inicio[inicio.length - 1]) {
+            celulas = new int[Math.max(inicio[inicio.length - 1], celulas.length * 2)];
+        }
+
+        // 3. Distribui as células; no fim, inicio[k] avançou até o início do balde k + 1
+        for(Ator ator : atores) {
+            if(visivel(ator, field)) {
+                int row = ator.getLocation().getRow();
+                int col = ator.getLocation().getCol();
+                celulas[inicio[chave(Especie.codigoDe(ator), row, col)]++] = row * width + col;
+            }
+        }
+        if(camada != null) {
+            for(int row = 0; row < alturaCampo; row++) {
+                byte[] tipos = camada.tiposDaLinha(row);
+                for(int col = 0; col < width; col++) {
+                    if(tipos[col] != CamadaVegetacao.VAZIO) {
+                        celulas[inicio[chave(codigoDaCamada(tipos[col]), row, col)]++] = row * width + col;
+                    }
+                }
+            }
+        }
+        System.arraycopy(inicio, 0, inicio, 1, inicio.length - 1);
+        inicio[0] = 0;
+    }
+
+    /**
+     * Procura a célula indexada mais próxima de uma posição, dentro do raio, que
+     * seja aceita pelo filtro. Entre células à mesma distância, vale a primeira
+     * encontrada (ordem fixa dos baldes), de modo que a busca é determinística.
+     * * @param especie A espécie procurada.
+     * @param row A linha de origem.
+     * @param col A coluna de origem.
+     * @param raio A distância máxima (Chebyshev).
+     * @param filtro Recebe a célula (row * largura + col) e diz se ela serve.
+     * @return A célula encontrada (row * largura + col), ou -1 se não houver.
+     */
+    public int maisProxima(Especie especie, int row, int col, int raio, IntPredicate filtro)
+    {
+        int base = especie.getCodigo() * baldes;
+        int linhaBalde = row >> LADO_LOG;
+        int colunaBalde = col >> LADO_LOG;
+        int anelMaximo = (raio >> LADO_LOG) + 1;
+        int melhor = -1;
+        int melhorDistancia = raio + 1;
+        for(int anel = 0; anel <= anelMaximo; anel++) {
+            // Um balde a 'anel' baldes de distância está a pelo menos (anel - 1) * LADO + 1 células
+            if(anel > 0 && (anel - 1) * LADO + 1 >= melhorDistancia) {
+                break;
+            }
+            for(int br = linhaBalde - anel; br <= linhaBalde + anel; br++) {
+                if(br < 0 || br >= alturaBaldes) {
+                    continue;
+                }
+                boolean borda = br == linhaBalde - anel || br == linhaBalde + anel;
+                int passo = borda ? 1 : 2 * anel;
+                for(int bc = colunaBalde - anel; bc <= colunaBalde + anel; bc += passo) {
+                    if(bc < 0 || bc >= larguraBaldes) {
+                        continue;
+                    }
+                    int balde = base + br * larguraBaldes + bc;
+                    for(int k = inicio[balde]; k < inicio[balde + 1]; k++) {
+                        int celula = celulas[k];
+                        int distancia = Math.max(Math.abs(celula / width - row), Math.abs(celula % width - col));
+                        if(distancia > 0 && distancia < melhorDistancia && filtro.test(celula)) {
+                            melhor = celula;
+                            melhorDistancia = distancia;
+                        }
+                    }
+                }
+            }
+        }
+        return melhor;
+    }
+
+    /**
+     * @return A largura do campo indexado (para decodificar as células).
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return true se o ator está vivo e ocupa a própria célula no campo.
+     */
+    private static boolean visivel(Ator ator, Field field)
+    {
+        Location onde = ator.getLocation();
+        return ator.isAlive() && onde != null && field.getObjectAt(onde) == ator;
+    }
+
+    /**
+     * @return A posição em inicio da espécie e do balde de uma célula.
+     */
+    private int chave(int codigo, int row, int col)
+    {
+        return codigo * baldes + (row >> LADO_LOG) * larguraBaldes + (col >> LADO_LOG);
+    }
+
+    /**
+     * @return O código da espécie de um tipo de planta da camada.
+     */
+    private static int codigoDaCamada(byte tipo)
+    {
+        return tipo == CamadaVegetacao.FLOR ? Especie.FLOR.getCodigo() : Especie.VITORIA_REGIA.getCodigo();
+    }
+}
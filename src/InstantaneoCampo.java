@@ -0,0 +1,141 @@
+/**
+ * Uma versão somente leitura do campo no fim de um passo: a espécie em cada
+ * célula e a população de cada espécie. Pode ser lida de qualquer thread, sem
+ * travas, enquanto a simulação continua.
+ * * O campo é dividido em blocos de {@value #LADO} x {@value #LADO} células, cada um
+ * com o código da espécie visível em cada célula. A população conta todos os
+ * atores vivos e as plantas da camada, inclusive as cobertas por um animal. Os blocos nunca
+ * são alterados depois de criados: uma versão nova reaproveita os blocos da versão
+ * anterior que não mudaram no passo e só tem blocos novos onde algo mudou (ver
+ * {@link PublicadorInstantaneos}).
+ *
+ * @version 1.0
+ */
+public final class InstantaneoCampo
+{
+    // Log2 do lado de um bloco, em células.
+    static final int LADO_LOG = 5;
+
+    /**
+     * O lado de um bloco, em células.
+     */
+    public static final int LADO = 1 << LADO_LOG;
+
+    private final long versao;
+    private final int passo;
+    private final int depth, width;
+    private final int larguraBlocos;
+
+    // Códigos das espécies por bloco: blocos[bloco][(row % LADO) * LADO + col % LADO].
+    private final byte[][] blocos;
+
+    // População de cada espécie, indexada pelo código.
+    private final int[] populacao;
+
+    private final int blocosNovos;
+
+    /**
+     * Cria uma versão (usado pelo publicador; os arrays passam a pertencer a ela).
+     */
+    InstantaneoCampo(long versao, int passo, int depth, int width, byte[][] blocos,
+                     int[] populacao, int blocosNovos)
+    {
+        this.versao = versao;
+        this.passo = passo;
+        this.depth = depth;
+        this.width = width;
+        this.larguraBlocos = ((width - 1) >> LADO_LOG) + 1;
+        this.blocos = blocos;
+        this.populacao = populacao;
+        this.blocosNovos = blocosNovos;
+    }
+
+    /**
+     * @return O número da versão; cresce a cada publicação, mesmo depois de um reinício.
+     */
+    public long getVersao()
+    {
+        return versao;
+    }
+
+    /**
+     * @return O passo da simulação representado.
+     */
+    public int getPasso()
+    {
+        return passo;
+    }
+
+    /**
+     * @return A profundidade do campo.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return A largura do campo.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Retorna o código da espécie em uma célula (0 se vazia).
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return O código da espécie.
+     */
+    public int getCodigo(int row, int col)
+    {
+        return blocos[(row >> LADO_LOG) * larguraBlocos + (col >> LADO_LOG)]
+                     [((row & (LADO - 1)) << LADO_LOG) + (col & (LADO - 1))];
+    }
+
+    /**
+     * Retorna a espécie em uma célula.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return A espécie, ou null se a célula estiver vazia.
+     */
+    public Especie getEspecie(int row, int col)
+    {
+        return Especie.doCodigo(getCodigo(row, col));
+    }
+
+    /**
+     * @param especie A espécie.
+     * @return A população da espécie.
+     */
+    public int getPopulacao(Especie especie)
+    {
+        return populacao[especie.getCodigo()];
+    }
+
+    /**
+     * Copia a população de cada espécie.
+     * * @param destino Recebe a população de cada espécie, indexada pelo código.
+     */
+    public void populacao(int[] destino)
+    {
+        System.arraycopy(populacao, 0, destino, 0, populacao.length);
+    }
+
+    /**
+     * @return Quantos blocos foram criados nesta versão (os demais são os da versão anterior).
+     */
+    public int getBlocosNovos()
+    {
+        return blocosNovos;
+    }
+
+    /**
+     * @return O array de blocos (uso interno do pacote; não deve ser alterado).
+     */
+    byte[][] blocos()
+    {
+        return blocos;
+    }
+}
@@ -0,0 +1,355 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lê um arquivo produzido por {@link GravadorExecucao} e reconstrói qualquer quadro.
+ * O índice do final do arquivo dá a posição de cada quadro; para obter o quadro i,
+ * decodifica-se o quadro-chave anterior e aplicam-se os XOR seguintes até i.
+ * O último quadro decodificado fica guardado, de modo que a reprodução em ordem
+ * decodifica apenas um quadro por passo. As edições de terreno gravadas são aplicadas
+ * ao terreno do cabeçalho até o último quadro lido, de modo que {@link #getTerrenoAt}
+ * devolve o terreno daquele quadro.
+ * * Se a gravação foi interrompida antes de o índice ser escrito, o arquivo é
+ * percorrido uma vez para reconstruí-lo.
+ *
+ * @version 1.0
+ */
+public class LeitorGravacao
+{
+    private final FileChannel canal;
+    private final int depth, width, intervaloChave;
+    private final short versao;
+
+    // Terreno do cabeçalho e terreno do último quadro lido.
+    private final Terreno[][] terrenosIniciais;
+    private final Terreno[][] terrenos;
+
+    // Edições de terreno, o primeiro quadro afetado por cada uma e quantas já
+    // foram aplicadas a terrenos.
+    private final List<ComandoEdicao> edicoes = new ArrayList<>();
+    private int[] quadrosEdicao = new int[16];
+    private int edicoesAplicadas;
+
+    // Posição e passo de cada quadro.
+    private long[] posicoes;
+    private int[] passos;
+    private int total;
+
+    // O último quadro decodificado e seu índice (-1 se nenhum).
+    private final byte[] quadro;
+    private int indiceQuadro = -1;
+
+    // Buffer de leitura dos dados codificados.
+    private ByteBuffer dados = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * Abre uma gravação e carrega o seu índice.
+     * * @param arquivo O arquivo de gravação.
+     * @throws IOException Se o arquivo não puder ser lido ou não for uma gravação.
+     */
+    public LeitorGravacao(Path arquivo) throws IOException
+    {
+        canal = FileChannel.open(arquivo, StandardOpenOption.READ);
+        ByteBuffer cabecalho = ler(0, 18);
+        if(cabecalho.getInt() != GravadorExecucao.MAGICO) {
+            throw new IOException("Arquivo não é uma gravação do simulador: " + arquivo);
+        }
+        versao = cabecalho.getShort();
+        if(versao < 1 || versao > GravadorExecucao.VERSAO) {
+            throw new IOException("Versão de gravação não suportada: " + arquivo);
+        }
+        depth = cabecalho.getInt();
+        width = cabecalho.getInt();
+        intervaloChave = cabecalho.getInt();
+        quadro = new byte[depth * width];
+
+        terrenosIniciais = new Terreno[depth][width];
+        terrenos = new Terreno[depth][width];
+        ByteBuffer codigos = ler(18, depth * width);
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                Terreno terreno = Simulator.terrenoDoCodigo(codigos.get());
+                terrenosIniciais[row][col] = terreno != null ? terreno : Simulator.terrenoDoCodigo(0);
+            }
+            terrenos[row] = terrenosIniciais[row].clone();
+        }
+
+        if(!lerIndice()) {
+            reconstruirIndice(18L + depth * width);
+        }
+    }
+
+    /**
+     * @return O número de quadros gravados.
+     */
+    public int getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * @return A profundidade do campo gravado.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return A largura do campo gravado.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Retorna o terreno de uma posição no último quadro lido por {@link #quadro(int)}
+     * (o do cabeçalho, antes da primeira leitura).
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return O terreno, com as edições feitas até aquele quadro.
+     */
+    public Terreno getTerrenoAt(int row, int col)
+    {
+        return terrenos[row][col];
+    }
+
+    /**
+     * Retorna o número do passo de simulação de um quadro.
+     * * @param indice O índice do quadro (0 a getTotal() - 1).
+     * @return O passo correspondente.
+     */
+    public int getPasso(int indice)
+    {
+        return passos[indice];
+    }
+
+    /**
+     * Retorna a grade de códigos de espécie de um quadro, em ordem de linhas.
+     * O array retornado é reutilizado na próxima chamada e não deve ser alterado.
+     * * @param indice O índice do quadro (0 a getTotal() - 1).
+     * @return A grade de códigos.
+     * @throws IOException Se o quadro não puder ser lido.
+     */
+    public byte[] quadro(int indice) throws IOException
+    {
+        if(indice < 0 || indice >= total) {
+            throw new IndexOutOfBoundsException("Quadro inexistente: " + indice);
+        }
+        int chave = indice - indice % intervaloChave;
+        int inicio;
+        if(indiceQuadro >= chave && indiceQuadro <= indice) {
+            inicio = indiceQuadro + 1; // Continua a partir do quadro já decodificado
+        }
+        else {
+            inicio = chave;
+        }
+        for(int k = inicio; k <= indice; k++) {
+            decodificar(k);
+        }
+        indiceQuadro = indice;
+        atualizarTerreno(indice);
+        return quadro;
+    }
+
+    /**
+     * Deixa em terrenos o terreno do quadro dado: aplica as edições seguintes às já
+     * aplicadas ou, voltando antes de alguma delas, recomeça do terreno do cabeçalho.
+     */
+    private void atualizarTerreno(int indice)
+    {
+        int alvo = 0;
+        while(alvo < edicoes.size() && quadrosEdicao[alvo] <= indice) {
+            alvo++;
+        }
+        if(alvo < edicoesAplicadas) {
+            for(int row = 0; row < depth; row++) {
+                System.arraycopy(terrenosIniciais[row], 0, terrenos[row], 0, width);
+            }
+            edicoesAplicadas = 0;
+        }
+        for(; edicoesAplicadas < alvo; edicoesAplicadas++) {
+            ComandoEdicao comando = edicoes.get(edicoesAplicadas);
+            int linha1 = Math.min(depth - 1, comando.getLinha1());
+            int coluna0 = Math.max(0, comando.getColuna0());
+            int coluna1 = Math.min(width - 1, comando.getColuna1());
+            for(int row = Math.max(0, comando.getLinha0()); row <= linha1; row++) {
+                for(int col = coluna0; col <= coluna1; col++) {
+                    terrenos[row][col] = comando.getTerreno();
+                }
+            }
+        }
+    }
+
+    /**
+     * Guarda uma edição de terreno lida do arquivo (as inválidas são ignoradas).
+     */
+    private void acrescentarEdicao(int quadroAfetado, ByteBuffer origem)
+    {
+        ComandoEdicao comando = ComandoEdicao.ler(origem);
+        if(comando == null || comando.getTipo() != ComandoEdicao.Tipo.TERRENO) {
+            return;
+        }
+        if(edicoes.size() == quadrosEdicao.length) {
+            quadrosEdicao = Arrays.copyOf(quadrosEdicao, edicoes.size() * 2);
+        }
+        quadrosEdicao[edicoes.size()] = quadroAfetado;
+        edicoes.add(comando);
+    }
+
+    /**
+     * Fecha o arquivo.
+     * * @throws IOException Se ocorrer um erro ao fechar.
+     */
+    public void fechar() throws IOException
+    {
+        canal.close();
+    }
+
+    /**
+     * Decodifica o quadro k sobre o quadro atual (substituindo-o se for chave).
+     */
+    private void decodificar(int k) throws IOException
+    {
+        ByteBuffer cabecalho = ler(posicoes[k], 9);
+        byte tipo = cabecalho.get();
+        cabecalho.getInt(); // passo
+        int tamanho = cabecalho.getInt();
+        if(dados.capacity() < tamanho) {
+            dados = ByteBuffer.allocate(tamanho);
+        }
+        dados.clear().limit(tamanho);
+        lerEm(posicoes[k] + 9, dados);
+        dados.flip();
+
+        boolean chave = tipo == GravadorExecucao.QUADRO_CHAVE;
+        int i = 0;
+        while(dados.hasRemaining()) {
+            byte valor = dados.get();
+            int comprimento = 0;
+            int deslocamento = 0;
+            byte b;
+            do {
+                b = dados.get();
+                comprimento |= (b & 0x7F) << deslocamento;
+                deslocamento += 7;
+            } while((b & 0x80) != 0);
+            if(i + comprimento > quadro.length) {
+                throw new IOException("Quadro corrompido: " + k);
+            }
+            if(chave) {
+                Arrays.fill(quadro, i, i + comprimento, valor);
+            }
+            else if(valor != 0) {
+                for(int j = i; j < i + comprimento; j++) {
+                    quadro[j] ^= valor;
+                }
+            }
+            i += comprimento;
+        }
+    }
+
+    /**
+     * Carrega o índice gravado no final do arquivo.
+     * @return false se o arquivo não tiver índice (gravação interrompida).
+     */
+    private boolean lerIndice() throws IOException
+    {
+        long tamanho = canal.size();
+        if(tamanho < 18L + depth * width + 12) {
+            return false;
+        }
+        ByteBuffer fim = ler(tamanho - 12, 12);
+        long posicaoIndice = fim.getLong();
+        if(fim.getInt() != GravadorExecucao.MAGICO_INDICE) {
+            return false;
+        }
+        total = ler(posicaoIndice, 4).getInt();
+        posicoes = new long[total];
+        passos = new int[total];
+        ByteBuffer indice = ler(posicaoIndice + 4, total * 12);
+        for(int k = 0; k < total; k++) {
+            posicoes[k] = indice.getLong();
+            passos[k] = indice.getInt();
+        }
+        if(versao >= 2) {
+            long posicao = posicaoIndice + 4 + total * 12L;
+            int n = ler(posicao, 4).getInt();
+            ByteBuffer lista = ler(posicao + 4, n * (4 + ComandoEdicao.TAMANHO));
+            for(int k = 0; k < n; k++) {
+                acrescentarEdicao(lista.getInt(), lista);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Percorre os quadros a partir da posição dada para reconstruir o índice (e
+     * guardar as edições de terreno), parando no primeiro quadro incompleto.
+     */
+    private void reconstruirIndice(long posicao) throws IOException
+    {
+        posicoes = new long[1024];
+        passos = new int[1024];
+        total = 0;
+        long tamanho = canal.size();
+        while(posicao + 9 <= tamanho) {
+            ByteBuffer cabecalho = ler(posicao, 9);
+            byte tipo = cabecalho.get();
+            int passo = cabecalho.getInt();
+            int bytes = cabecalho.getInt();
+            if(tipo < GravadorExecucao.QUADRO_CHAVE || tipo > GravadorExecucao.EDICAO_TERRENO
+               || bytes < 0 || posicao + 9 + bytes > tamanho) {
+                break; // Quadro incompleto ou início de um índice incompleto
+            }
+            if(tipo == GravadorExecucao.EDICAO_TERRENO) {
+                if(bytes == ComandoEdicao.TAMANHO) {
+                    acrescentarEdicao(total, ler(posicao + 9, bytes));
+                }
+                posicao += 9 + bytes;
+                continue;
+            }
+            if(total == posicoes.length) {
+                posicoes = Arrays.copyOf(posicoes, total * 2);
+                passos = Arrays.copyOf(passos, total * 2);
+            }
+            posicoes[total] = posicao;
+            passos[total] = passo;
+            total++;
+            posicao += 9 + bytes;
+        }
+    }
+
+    /**
+     * Lê n bytes a partir da posição dada.
+     */
+    private ByteBuffer ler(long posicao, int n) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(n);
+        lerEm(posicao, buf);
+        buf.flip();
+        return buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Preenche o buffer com bytes lidos a partir da posição dada.
+     */
+    private void lerEm(long posicao, ByteBuffer buf) throws IOException
+    {
+        while(buf.hasRemaining()) {
+            int lidos = canal.read(buf, posicao);
+            if(lidos < 0) {
+                throw new IOException("Gravação truncada");
+            }
+            posicao += lidos;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+/**
+ * Repassa os eventos da simulação para vários observadores, na ordem em que
+ * foram adicionados. Usa um array simples para que o repasse não crie objetos.
+ *
+ * @version 1.0
+ */
+public class ListaObservadores implements ObservadorSimulacao
+{
+    private ObservadorSimulacao[] observadores = new ObservadorSimulacao[0];
+
+    /**
+     * Adiciona um observador ao final da lista.
+     * @param observador O observador.
+     */
+    public void adicionar(ObservadorSimulacao observador)
+    {
+        observadores = Arrays.copyOf(observadores, observadores.length + 1);
+        observadores[observadores.length - 1] = observador;
+    }
+
+    /**
+     * Remove um observador da lista, se estiver presente.
+     * @param observador O observador.
+     */
+    public void remover(ObservadorSimulacao observador)
+    {
+        for(int i = 0; i < observadores.length; i++) {
+            if(observadores[i] == observador) {
+                ObservadorSimulacao[] novos = new ObservadorSimulacao[observadores.length - 1];
+                System.arraycopy(observadores, 0, novos, 0, i);
+                System.arraycopy(observadores, i + 1, novos, i, novos.length - i);
+                observadores = novos;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true se não houver nenhum observador.
+     */
+    public boolean isEmpty()
+    {
+        return observadores.length == 0;
+    }
+
+    @Override
+    public void inicioPasso(Simulator sim)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.inicioPasso(sim);
+        }
+    }
+
+    @Override
+    public void inicioTurno(int indice, Ator ator)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.inicioTurno(indice, ator);
+        }
+    }
+
+    @Override
+    public void fimTurno(int indice, Ator ator)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.fimTurno(indice, ator);
+        }
+    }
+
+    @Override
+    public void superlotacao(Ator ator)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.superlotacao(ator);
+        }
+    }
+
+    @Override
+    public void nascimento(Ator pai, Ator filho)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.nascimento(pai, filho);
+        }
+    }
+
+    @Override
+    public void movimento(Ator ator, Location de, Location para)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.movimento(ator, de, para);
+        }
+    }
+
+    @Override
+    public void alimentacao(Ator predador, Ator presa, Location onde)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.alimentacao(predador, presa, onde);
+        }
+    }
+
+    @Override
+    public void morte(Ator ator)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.morte(ator);
+        }
+    }
+
+    @Override
+    public void remocao(Ator ator)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.remocao(ator);
+        }
+    }
+
+    @Override
+    public void edicao(ComandoEdicao comando)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.edicao(comando);
+        }
+    }
+
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        for(ObservadorSimulacao o : observadores) {
+            o.fimPasso(sim);
+        }
+    }
+}
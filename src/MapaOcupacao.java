@@ -0,0 +1,258 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.imageio.ImageIO;
+
+/**
+ * Mapa de ocupação acumulado ao longo de uma execução: para cada espécie, quantos
+ * passos cada célula passou ocupada por um indivíduo dela. Mostra onde cada espécie
+ * vive (ex: coelhos concentrados na beira da água).
+ * * As contagens ficam em um {@code int[]} por espécie, em ordem de linhas
+ * (índice = linha * largura + coluna), criado apenas quando a espécie aparece.
+ * Elas são atualizadas pelo próprio laço de simulateOneStep, ator por ator, e pelo
+ * percurso que a camada de vegetação já faz a cada passo, sem uma varredura extra
+ * da grade. Um ator conta na célula em que está depois do seu turno.
+ * * O resultado pode ser gravado como imagem PNG (uma por espécie) ou como os
+ * arrays brutos.
+ *
+ * @version 1.0
+ */
+public class MapaOcupacao
+{
+    // Diferente do de Checkpoint, para que um arquivo não seja confundido com o outro.
+    private static final int MAGICO = 0x454f4331; // "EOC1"
+
+    private final int depth, width;
+
+    // Contagens indexadas pelo código da espécie (null até a espécie aparecer).
+    private final int[][] contagens = new int[Especie.values().length + 1][];
+
+    // Grades da camada de vegetação, indexadas pelo código do tipo da camada.
+    private int[][] gradesCamada;
+
+    private long passos;
+
+    /**
+     * Cria um mapa vazio para um campo com as dimensões dadas.
+     * * @param depth A profundidade do campo.
+     * @param width A largura do campo.
+     */
+    public MapaOcupacao(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+    }
+
+    /**
+     * Conta a posição de um ator depois do seu turno (chamado pelo laço de atores).
+     * * @param ator O ator que acabou de agir.
+     */
+    void registrar(Ator ator)
+    {
+        Location onde = ator.getLocation();
+        if(!ator.isAlive() || onde == null) {
+            return;
+        }
+        int codigo = Especie.codigoDe(ator);
+        if(codigo != Especie.VAZIO) {
+            int[] grade = contagens[codigo];
+            if(grade == null) {
+                grade = grade(codigo);
+            }
+            grade[onde.getRow() * width + onde.getCol()]++;
+        }
+    }
+
+    /**
+     * @return As grades da flor e da vitória-régia indexadas pelo código do tipo
+     * da camada de vegetação (ver {@link CamadaVegetacao#avancar(int[][], int[][])}).
+     */
+    int[][] gradesCamada()
+    {
+        if(gradesCamada == null) {
+            gradesCamada = new int[3][];
+            gradesCamada[CamadaVegetacao.FLOR] = grade(Especie.FLOR.getCodigo());
+            gradesCamada[CamadaVegetacao.VITORIA_REGIA] = grade(Especie.VITORIA_REGIA.getCodigo());
+        }
+        return gradesCamada;
+    }
+
+    /**
+     * Conta um passo concluído.
+     */
+    void fimPasso()
+    {
+        passos++;
+    }
+
+    /**
+     * Retorna a grade de uma espécie, criando-a se preciso.
+     */
+    private int[] grade(int codigo)
+    {
+        if(contagens[codigo] == null) {
+            contagens[codigo] = new int[depth * width];
+        }
+        return contagens[codigo];
+    }
+
+    /**
+     * @return O número de passos acumulados.
+     */
+    public long getPassos()
+    {
+        return passos;
+    }
+
+    /**
+     * @return A profundidade do campo.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return A largura do campo.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Retorna uma cópia das contagens de uma espécie.
+     * * @param especie A espécie.
+     * @return Passos ocupados por célula, em ordem de linhas (zeros se a espécie
+     * nunca apareceu).
+     */
+    public int[] getContagens(Especie especie)
+    {
+        int[] grade = contagens[especie.getCodigo()];
+        return grade == null ? new int[depth * width] : grade.clone();
+    }
+
+    /**
+     * Retorna o número de passos em que uma célula esteve ocupada por uma espécie.
+     * * @param especie A espécie.
+     * @param row A linha.
+     * @param col A coluna.
+     * @return O número de passos.
+     */
+    public int getContagem(Especie especie, int row, int col)
+    {
+        int[] grade = contagens[especie.getCodigo()];
+        return grade == null ? 0 : grade[row * width + col];
+    }
+
+    /**
+     * Zera todas as contagens.
+     */
+    public void limpar()
+    {
+        for(int[] grade : contagens) {
+            if(grade != null) {
+                java.util.Arrays.fill(grade, 0);
+            }
+        }
+        passos = 0;
+    }
+
+    /**
+     * Grava o mapa de uma espécie como imagem PNG, um pixel por célula: preto onde
+     * a espécie nunca esteve, e a cor da espécie cada vez mais clara conforme a
+     * ocupação (em escala logarítmica, para que as áreas pouco visitadas apareçam).
+     * * @param especie A espécie.
+     * @param arquivo O arquivo de destino.
+     * @throws IOException Se a imagem não puder ser gravada.
+     */
+    public void salvarPng(Especie especie, Path arquivo) throws IOException
+    {
+        int[] grade = contagens[especie.getCodigo()];
+        BufferedImage imagem = new BufferedImage(width, depth, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) imagem.getRaster().getDataBuffer()).getData();
+        if(grade != null) {
+            int maximo = 0;
+            for(int v : grade) {
+                maximo = Math.max(maximo, v);
+            }
+            int[] paleta = paleta(especie.getCor());
+            double escala = maximo == 0 ? 0 : (paleta.length - 1) / Math.log1p(maximo);
+            for(int i = 0; i < grade.length; i++) {
+                if(grade[i] > 0) {
+                    pixels[i] = paleta[Math.max(1, (int) (Math.log1p(grade[i]) * escala))];
+                }
+            }
+        }
+        if(!ImageIO.write(imagem, "png", arquivo.toFile())) {
+            throw new IOException("Formato PNG indisponível.");
+        }
+    }
+
+    /**
+     * Monta 256 tons que vão do preto à cor da espécie e depois clareiam até o branco.
+     */
+    private static int[] paleta(Color cor)
+    {
+        int[] paleta = new int[256];
+        for(int i = 0; i < paleta.length; i++) {
+            double t = i / 255.0;
+            double escuro = Math.min(1, 2 * t);
+            double claro = Math.max(0, 2 * t - 1);
+            int r = (int) (cor.getRed() * escuro + (255 - cor.getRed()) * claro);
+            int g = (int) (cor.getGreen() * escuro + (255 - cor.getGreen()) * claro);
+            int b = (int) (cor.getBlue() * escuro + (255 - cor.getBlue()) * claro);
+            paleta[i] = (r << 16) | (g << 8) | b;
+        }
+        return paleta;
+    }
+
+    /**
+     * Grava as contagens brutas de todas as espécies. Formato (little-endian):
+     * int "EOC1", int depth, int width, long passos, int número de espécies e,
+     * para cada espécie, int código seguido de depth * width ints.
+     * * @param arquivo O arquivo de destino (sobrescrito se existir).
+     * @throws IOException Se o arquivo não puder ser gravado.
+     */
+    public void salvarBruto(Path arquivo) throws IOException
+    {
+        Especie[] especies = Especie.values();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        try(FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                                                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGICO).putInt(depth).putInt(width).putLong(passos).putInt(especies.length);
+            for(Especie especie : especies) {
+                int[] grade = contagens[especie.getCodigo()];
+                if(buffer.remaining() < 4) {
+                    esvaziar(canal, buffer);
+                }
+                buffer.putInt(especie.getCodigo());
+                for(int i = 0; i < depth * width; i++) {
+                    if(buffer.remaining() < 4) {
+                        esvaziar(canal, buffer);
+                    }
+                    buffer.putInt(grade == null ? 0 : grade[i]);
+                }
+            }
+            esvaziar(canal, buffer);
+        }
+    }
+
+    /**
+     * Escreve o conteúdo do buffer no canal e o deixa pronto para novas escritas.
+     */
+    private static void esvaziar(FileChannel canal, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+}
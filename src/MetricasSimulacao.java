@@ -0,0 +1,428 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Observador que mede o motor da simulação: duração de cada passo (histograma),
+ * tempo gasto em Ator.acao por espécie, nascimentos, mortes, predações, mortes
+ * por superlotação e tamanho da lista de atores. As métricas são publicadas como
+ * um MBean (ver {@link MetricasSimulacaoMBean}) e podem ser escritas periodicamente
+ * em texto.
+ * * O custo é controlado pelo nível de amostragem, que pode ser trocado com a
+ * simulação em execução (inclusive pelo JMX):
+ * <ul>
+ *   <li>DESLIGADO: nada é medido;</li>
+ *   <li>CONTADORES: contadores de eventos e duração dos passos;</li>
+ *   <li>AMOSTRADO: também o tempo de ação de um a cada 16 atores;</li>
+ *   <li>COMPLETO: também o tempo de ação de todos os atores.</li>
+ * </ul>
+ * Só a thread da simulação escreve nas métricas, sem sincronização, e escreve o
+ * contador volátil de passos por último a cada passo. Todo leitor (JMX, relatório)
+ * lê esse contador antes dos demais campos, o que lhe garante ver pelo menos os
+ * valores do último passo concluído; os do passo em andamento podem aparecer ou não.
+ *
+ * @version 1.0
+ */
+public class MetricasSimulacao implements ObservadorSimulacao, MetricasSimulacaoMBean
+{
+    /**
+     * Níveis de amostragem, do mais barato ao mais detalhado.
+     */
+    public enum NivelAmostragem
+    {
+        DESLIGADO, CONTADORES, AMOSTRADO, COMPLETO
+    }
+
+    // No nível AMOSTRADO, mede um a cada (MASCARA_AMOSTRA + 1) atores.
+    private static final int MASCARA_AMOSTRA = 15;
+
+    // Histograma de duração dos passos: 4 subfaixas por potência de 2 (em nanossegundos).
+    private static final int FAIXAS = 256;
+
+    private volatile NivelAmostragem nivel = NivelAmostragem.CONTADORES;
+    private volatile boolean zerarPendente;
+
+    // Escrito por último a cada passo (volátil), publicando os demais campos.
+    private volatile long passos;
+
+    private long nascimentos, mortes, predacoes, movimentosFalhos;
+    private int tamanhoListaAtores, maiorListaAtores;
+    private final long[] histograma = new long[FAIXAS];
+    private long somaLatencia, maiorLatencia, passosMedidos;
+
+    // Tempo total de ação e número de ações medidas, indexados pelo código da espécie.
+    private final long[] tempoEspecie = new long[Especie.values().length + 1];
+    private final long[] acoesEspecie = new long[Especie.values().length + 1];
+
+    // Início do passo e do turno em medição (0 se o turno não está sendo medido).
+    private long inicioPasso;
+    private long inicioTurno;
+
+    private ObjectName nomeJmx;
+    private ScheduledExecutorService relatorioPeriodico;
+
+    /**
+     * Registra estas métricas no servidor de MBeans da plataforma.
+     * * @param nome Um nome que identifique a simulação.
+     * @throws JMException Se o registro falhar (por exemplo, nome repetido).
+     */
+    public void registrar(String nome) throws JMException
+    {
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        nomeJmx = new ObjectName("simulador:type=MetricasSimulacao,name=" + ObjectName.quote(nome));
+        servidor.registerMBean(this, nomeJmx);
+    }
+
+    /**
+     * Escreve o relatório de métricas a cada período, em uma thread própria.
+     * * @param periodoSegundos O intervalo entre relatórios.
+     * @param saida O destino do texto (ex: System.out).
+     */
+    public synchronized void iniciarRelatorioPeriodico(long periodoSegundos, PrintStream saida)
+    {
+        pararRelatorioPeriodico();
+        relatorioPeriodico = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "relatorio-metricas");
+            t.setDaemon(true);
+            return t;
+        });
+        relatorioPeriodico.scheduleAtFixedRate(() -> saida.println(relatorio()),
+                                               periodoSegundos, periodoSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Interrompe o relatório periódico, se houver.
+     */
+    public synchronized void pararRelatorioPeriodico()
+    {
+        if(relatorioPeriodico != null) {
+            relatorioPeriodico.shutdownNow();
+            relatorioPeriodico = null;
+        }
+    }
+
+    /**
+     * Para o relatório periódico e remove o MBean do servidor.
+     */
+    public void fechar()
+    {
+        pararRelatorioPeriodico();
+        if(nomeJmx != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nomeJmx);
+            }
+            catch(JMException e) {
+                // Já removido
+            }
+            nomeJmx = null;
+        }
+    }
+
+    /**
+     * Define o nível de amostragem.
+     * * @param nivel O novo nível.
+     */
+    public void setNivel(NivelAmostragem nivel)
+    {
+        this.nivel = nivel;
+    }
+
+    // --- Eventos da simulação (thread da simulação) ---
+
+    @Override
+    public void inicioPasso(Simulator sim)
+    {
+        if(zerarPendente) {
+            limpar();
+        }
+        inicioPasso = nivel != NivelAmostragem.DESLIGADO ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void inicioTurno(int indice, Ator ator)
+    {
+        NivelAmostragem n = nivel;
+        if(n == NivelAmostragem.COMPLETO
+           || (n == NivelAmostragem.AMOSTRADO && (indice & MASCARA_AMOSTRA) == 0)) {
+            inicioTurno = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void fimTurno(int indice, Ator ator)
+    {
+        if(inicioTurno != 0) {
+            int codigo = Especie.codigoDe(ator);
+            tempoEspecie[codigo] += System.nanoTime() - inicioTurno;
+            acoesEspecie[codigo]++;
+            inicioTurno = 0;
+        }
+    }
+
+    @Override
+    public void nascimento(Ator pai, Ator filho)
+    {
+        if(nivel != NivelAmostragem.DESLIGADO) {
+            nascimentos++;
+        }
+    }
+
+    @Override
+    public void alimentacao(Ator predador, Ator presa, Location onde)
+    {
+        if(nivel != NivelAmostragem.DESLIGADO) {
+            predacoes++;
+        }
+    }
+
+    @Override
+    public void morte(Ator ator)
+    {
+        if(nivel != NivelAmostragem.DESLIGADO) {
+            mortes++;
+        }
+    }
+
+    @Override
+    public void superlotacao(Ator ator)
+    {
+        if(nivel != NivelAmostragem.DESLIGADO) {
+            movimentosFalhos++;
+        }
+    }
+
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        if(inicioPasso == 0) {
+            return;
+        }
+        long duracao = System.nanoTime() - inicioPasso;
+        histograma[faixa(duracao)]++;
+        somaLatencia += duracao;
+        maiorLatencia = Math.max(maiorLatencia, duracao);
+        passosMedidos++;
+        tamanhoListaAtores = sim.getAtores().size();
+        maiorListaAtores = Math.max(maiorListaAtores, tamanhoListaAtores);
+        passos = passos + 1; // Publica os valores deste passo
+    }
+
+    // --- MBean (qualquer thread) ---
+
+    /**
+     * Lê o contador volátil de passos. Chamado por todo leitor antes dos campos não
+     * voláteis, para que os valores escritos até o último passo concluído fiquem
+     * visíveis à thread que lê.
+     * * @return O número de passos concluídos.
+     */
+    private long publicados()
+    {
+        return passos;
+    }
+
+    @Override
+    public String getNivelAmostragem()
+    {
+        return nivel.name();
+    }
+
+    @Override
+    public void setNivelAmostragem(String nivel)
+    {
+        setNivel(NivelAmostragem.valueOf(nivel.trim().toUpperCase()));
+    }
+
+    @Override
+    public long getPassos()
+    {
+        return passos;
+    }
+
+    @Override
+    public long getNascimentos()
+    {
+        publicados();
+        return nascimentos;
+    }
+
+    @Override
+    public long getMortes()
+    {
+        publicados();
+        return mortes;
+    }
+
+    @Override
+    public long getPredacoes()
+    {
+        publicados();
+        return predacoes;
+    }
+
+    @Override
+    public long getMovimentosFalhos()
+    {
+        publicados();
+        return movimentosFalhos;
+    }
+
+    @Override
+    public int getTamanhoListaAtores()
+    {
+        publicados();
+        return tamanhoListaAtores;
+    }
+
+    @Override
+    public int getMaiorListaAtores()
+    {
+        publicados();
+        return maiorListaAtores;
+    }
+
+    @Override
+    public double getLatenciaMediaMicros()
+    {
+        publicados();
+        return passosMedidos == 0 ? 0 : somaLatencia / 1000.0 / passosMedidos;
+    }
+
+    @Override
+    public double getLatenciaP50Micros()
+    {
+        return percentil(0.50);
+    }
+
+    @Override
+    public double getLatenciaP99Micros()
+    {
+        return percentil(0.99);
+    }
+
+    @Override
+    public double getLatenciaMaximaMicros()
+    {
+        publicados();
+        return maiorLatencia / 1000.0;
+    }
+
+    @Override
+    public String[] getHistogramaLatencia()
+    {
+        publicados();
+        java.util.List<String> linhas = new java.util.ArrayList<>();
+        for(int i = 0; i < FAIXAS; i++) {
+            long n = histograma[i];
+            if(n != 0) {
+                linhas.add(String.format("[%.3f, %.3f) us: %d", limiteInferior(i) / 1000.0,
+                                         limiteInferior(i + 1) / 1000.0, n));
+            }
+        }
+        return linhas.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getTempoPorEspecie()
+    {
+        publicados();
+        Especie[] especies = Especie.values();
+        String[] linhas = new String[especies.length];
+        for(int i = 0; i < especies.length; i++) {
+            int codigo = especies[i].getCodigo();
+            long acoes = acoesEspecie[codigo];
+            linhas[i] = String.format("%s: %.0f ns/ação (%d ações medidas)", especies[i].name(),
+                                      acoes == 0 ? 0.0 : (double) tempoEspecie[codigo] / acoes, acoes);
+        }
+        return linhas;
+    }
+
+    @Override
+    public void zerar()
+    {
+        zerarPendente = true;
+    }
+
+    @Override
+    public String relatorio()
+    {
+        long concluidos = publicados();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("passos=%d nivel=%s latencia(us): media=%.1f p50=%.1f p99=%.1f max=%.1f%n",
+                                concluidos, getNivelAmostragem(), getLatenciaMediaMicros(),
+                                getLatenciaP50Micros(), getLatenciaP99Micros(), getLatenciaMaximaMicros()));
+        sb.append(String.format("  nascimentos=%d mortes=%d predacoes=%d superlotacao=%d atores=%d (max %d)%n",
+                                getNascimentos(), getMortes(), getPredacoes(), getMovimentosFalhos(),
+                                getTamanhoListaAtores(), getMaiorListaAtores()));
+        for(String linha : getTempoPorEspecie()) {
+            sb.append("  ").append(linha).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Zera todas as métricas (na thread da simulação).
+     */
+    private void limpar()
+    {
+        zerarPendente = false;
+        nascimentos = mortes = predacoes = movimentosFalhos = 0;
+        tamanhoListaAtores = maiorListaAtores = 0;
+        java.util.Arrays.fill(histograma, 0);
+        somaLatencia = maiorLatencia = passosMedidos = 0;
+        java.util.Arrays.fill(tempoEspecie, 0);
+        java.util.Arrays.fill(acoesEspecie, 0);
+        passos = 0;
+    }
+
+    /**
+     * Calcula um percentil aproximado (ponto médio da faixa) da duração dos passos.
+     */
+    private double percentil(double q)
+    {
+        publicados();
+        long total = passosMedidos;
+        if(total == 0) {
+            return 0;
+        }
+        long alvo = (long) Math.ceil(q * total);
+        long acumulado = 0;
+        for(int i = 0; i < FAIXAS; i++) {
+            acumulado += histograma[i];
+            if(acumulado >= alvo) {
+                return (limiteInferior(i) + limiteInferior(i + 1)) / 2.0 / 1000.0;
+            }
+        }
+        return maiorLatencia / 1000.0;
+    }
+
+    /**
+     * Retorna a faixa do histograma de uma duração: 4 subfaixas por potência de 2.
+     */
+    private static int faixa(long nanos)
+    {
+        if(nanos < 4) {
+            return (int) Math.max(0, nanos);
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (expoente - 2)) & 3;
+        return Math.min(FAIXAS - 1, (expoente - 1) * 4 + sub);
+    }
+
+    /**
+     * Retorna o menor valor (em nanossegundos) que cai na faixa dada.
+     */
+    private static long limiteInferior(int faixa)
+    {
+        if(faixa < 4) {
+            return faixa;
+        }
+        int expoente = faixa / 4 + 1;
+        int sub = faixa % 4;
+        return (4L + sub) << (expoente - 2);
+    }
+}
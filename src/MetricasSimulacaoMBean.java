@@ -0,0 +1,60 @@
+/**
+ * Interface de gerenciamento (JMX) das métricas de uma simulação.
+ * Os atributos podem ser lidos em qualquer ferramenta JMX (ex: jconsole,
+ * VisualVM) enquanto a simulação executa. Ver {@link MetricasSimulacao}.
+ *
+ * @version 1.0
+ */
+public interface MetricasSimulacaoMBean
+{
+    /** @return O nível de amostragem atual (DESLIGADO, CONTADORES, AMOSTRADO ou COMPLETO). */
+    String getNivelAmostragem();
+
+    /** @param nivel O novo nível de amostragem. */
+    void setNivelAmostragem(String nivel);
+
+    /** @return O número de passos medidos. */
+    long getPassos();
+
+    /** @return O número de nascimentos. */
+    long getNascimentos();
+
+    /** @return O número de mortes durante o próprio turno (velhice, fome ou superlotação). */
+    long getMortes();
+
+    /** @return O número de vezes em que um ator comeu outro. */
+    long getPredacoes();
+
+    /** @return O número de mortes por falta de posição livre (superlotação). */
+    long getMovimentosFalhos();
+
+    /** @return O tamanho da lista de atores no fim do último passo. */
+    int getTamanhoListaAtores();
+
+    /** @return O maior tamanho da lista de atores observado. */
+    int getMaiorListaAtores();
+
+    /** @return A duração média de um passo, em microssegundos. */
+    double getLatenciaMediaMicros();
+
+    /** @return A mediana aproximada da duração de um passo, em microssegundos. */
+    double getLatenciaP50Micros();
+
+    /** @return O percentil 99 aproximado da duração de um passo, em microssegundos. */
+    double getLatenciaP99Micros();
+
+    /** @return A maior duração de um passo, em microssegundos. */
+    double getLatenciaMaximaMicros();
+
+    /** @return As faixas não vazias do histograma de duração dos passos, uma por linha ("[início, fim) us: passos"). */
+    String[] getHistogramaLatencia();
+
+    /** @return O tempo médio de uma ação por espécie, uma linha por espécie. */
+    String[] getTempoPorEspecie();
+
+    /** Zera todas as métricas no início do próximo passo. */
+    void zerar();
+
+    /** @return Um relatório em texto com todas as métricas. */
+    String relatorio();
+}
@@ -0,0 +1,477 @@
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Teste de resistência (soak): executa o motor sem interface por muitos passos
+ * e mede, a cada passo, os bytes alocados pela thread da simulação
+ * ({@code ThreadMXBean.getThreadAllocatedBytes}), as coletas de lixo e os atores
+ * vivos. O tempo de coleta de cada janela é a diferença do tempo acumulado
+ * informado pelos coletores ({@code GarbageCollectorMXBean.getCollectionTime}),
+ * que inclui as fases concorrentes de alguns coletores e, portanto, não é o tempo
+ * de pausa da aplicação. As pausas vêm das notificações de fim de coleta
+ * ({@code GarbageCollectionNotificationInfo}): cada coleta de um coletor que para
+ * a aplicação soma sua duração ({@code GcInfo.getDuration}); os ciclos concorrentes
+ * (coletores "... Cycles" do ZGC e do Shenandoah, cujas pausas são informadas à parte
+ * pelos coletores "... Pauses", e "G1 Concurrent GC") são ignorados. As notificações
+ * chegam por outra thread logo após a coleta, de modo que uma pausa no fim de uma
+ * janela pode ser contada na seguinte. Os valores são acumulados em janelas de passos,
+ * de modo que execuções de milhões de passos ocupam pouca memória.
+ * * Ao final, o relatório aponta as faixas de passos em que a alocação por ator
+ * ou a memória retida (heap ocupado logo após a última coleta) cresce de forma
+ * contínua, o que indica objetos retidos ou custos que aumentam com o tempo.
+ * * Se todos os atores morrerem, a simulação é reiniciada (sobre o mesmo terreno)
+ * para que o motor continue sendo exercitado; os reinícios são contados.
+ *
+ * @version 1.0
+ */
+public class ModoResistencia
+{
+    // Número de janelas usadas no cálculo da tendência.
+    private static final int JANELAS_TENDENCIA = 8;
+
+    // Crescimento relativo (ao longo das janelas da tendência) a partir do qual uma faixa é apontada.
+    private static final double CRESCIMENTO_SUSPEITO = 0.10;
+
+    /**
+     * Os valores acumulados em uma janela de passos.
+     */
+    public static class Janela
+    {
+        private final long passoInicial;
+        private final long passoFinal;
+        private final long bytesAlocados;
+        private final double mediaAtores;
+        private final long coletas;
+        private final long tempoColetoresMs;
+        private final long pausas;
+        private final long tempoPausasMs;
+        private final long maiorPausaMs;
+        private final long heapRetido;
+        private final int reinicios;
+
+        Janela(long passoInicial, long passoFinal, long bytesAlocados, double mediaAtores,
+               long coletas, long tempoColetoresMs, long[] pausas, long heapRetido, int reinicios)
+        {
+            this.passoInicial = passoInicial;
+            this.passoFinal = passoFinal;
+            this.bytesAlocados = bytesAlocados;
+            this.mediaAtores = mediaAtores;
+            this.coletas = coletas;
+            this.tempoColetoresMs = tempoColetoresMs;
+            this.pausas = pausas[0];
+            this.tempoPausasMs = pausas[1];
+            this.maiorPausaMs = pausas[2];
+            this.heapRetido = heapRetido;
+            this.reinicios = reinicios;
+        }
+
+        /**
+         * @return O primeiro passo da janela.
+         */
+        public long getPassoInicial()
+        {
+            return passoInicial;
+        }
+
+        /**
+         * @return O último passo da janela.
+         */
+        public long getPassoFinal()
+        {
+            return passoFinal;
+        }
+
+        /**
+         * @return Os bytes alocados pela thread da simulação na janela.
+         */
+        public long getBytesAlocados()
+        {
+            return bytesAlocados;
+        }
+
+        /**
+         * @return A média de atores vivos por passo.
+         */
+        public double getMediaAtores()
+        {
+            return mediaAtores;
+        }
+
+        /**
+         * @return O número de coletas de lixo na janela.
+         */
+        public long getColetas()
+        {
+            return coletas;
+        }
+
+        /**
+         * @return O tempo que os coletores informaram ter gasto na janela, em
+         * milissegundos (inclui fases concorrentes; não é o tempo de pausa).
+         */
+        public long getTempoColetoresMs()
+        {
+            return tempoColetoresMs;
+        }
+
+        /**
+         * @return O número de coletas que pararam a aplicação na janela.
+         */
+        public long getPausas()
+        {
+            return pausas;
+        }
+
+        /**
+         * @return A soma das pausas de coleta na janela, em milissegundos.
+         */
+        public long getTempoPausasMs()
+        {
+            return tempoPausasMs;
+        }
+
+        /**
+         * @return A maior pausa de coleta na janela, em milissegundos.
+         */
+        public long getMaiorPausaMs()
+        {
+            return maiorPausaMs;
+        }
+
+        /**
+         * @return O heap ocupado logo após a última coleta, no fim da janela.
+         */
+        public long getHeapRetido()
+        {
+            return heapRetido;
+        }
+
+        /**
+         * @return Quantas vezes a simulação foi reiniciada na janela.
+         */
+        public int getReinicios()
+        {
+            return reinicios;
+        }
+
+        /**
+         * @return Bytes alocados por ator vivo por passo nesta janela.
+         */
+        public double bytesPorAtor()
+        {
+            long passos = passoFinal - passoInicial + 1;
+            return mediaAtores == 0 ? 0 : bytesAlocados / mediaAtores / passos;
+        }
+    }
+
+    private final Simulator sim;
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<GarbageCollectorMXBean> coletores;
+    private final List<MemoryPoolMXBean> pools;
+    private final List<Janela> janelas = new ArrayList<>();
+    private final MedidorPausas pausas = new MedidorPausas();
+    private int reinicios;
+
+    /**
+     * Recebe as notificações de fim de coleta e acumula as pausas da janela atual.
+     */
+    private static class MedidorPausas implements NotificationListener
+    {
+        private long quantidade;
+        private long totalMs;
+        private long maiorMs;
+
+        @Override
+        public synchronized void handleNotification(Notification notificacao, Object dados)
+        {
+            if(!notificacao.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notificacao.getUserData());
+            if(concorrente(info.getGcName())) {
+                return;
+            }
+            long duracao = info.getGcInfo().getDuration();
+            quantidade++;
+            totalMs += duracao;
+            maiorMs = Math.max(maiorMs, duracao);
+        }
+
+        /**
+         * Retorna as pausas acumuladas desde a chamada anterior e recomeça a contagem.
+         * * @return {quantidade, total em ms, maior em ms}.
+         */
+        synchronized long[] fecharJanela()
+        {
+            long[] valores = {quantidade, totalMs, maiorMs};
+            quantidade = 0;
+            totalMs = 0;
+            maiorMs = 0;
+            return valores;
+        }
+
+        /**
+         * @return true se o coletor informa ciclos concorrentes em vez de pausas.
+         */
+        private static boolean concorrente(String nome)
+        {
+            return nome.endsWith(" Cycles") || nome.contains("Concurrent");
+        }
+    }
+
+    /**
+     * Prepara um teste sobre o mapa dado, com uma simulação sem interface.
+     * * @param arquivoMapa O arquivo de mapa (ex: "mapa.txt").
+     * @param depth A profundidade (altura) do campo. Deve ser maior que zero.
+     * @param width A largura do campo. Deve ser maior que zero.
+     * @param semente A semente do gerador aleatório.
+     */
+    public ModoResistencia(String arquivoMapa, int depth, int width, long semente)
+    {
+        if(depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("As dimensões devem ser maiores do que zero.");
+        }
+        sim = new Simulator(Simulator.carregarTerreno(arquivoMapa, depth, width), semente);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        coletores = ManagementFactory.getGarbageCollectorMXBeans();
+        pools = new ArrayList<>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                pools.add(pool);
+            }
+        }
+    }
+
+    /**
+     * Executa o teste na thread atual.
+     * * @param passos O número total de passos (zero ou mais).
+     * @param tamanhoJanela O número de passos por janela (maior que zero).
+     * @return As janelas medidas.
+     * @throws IllegalArgumentException Se passos for negativo ou tamanhoJanela não for positivo.
+     */
+    public List<Janela> executar(long passos, int tamanhoJanela)
+    {
+        if(passos < 0) {
+            throw new IllegalArgumentException("O número de passos não pode ser negativo.");
+        }
+        if(tamanhoJanela <= 0) {
+            throw new IllegalArgumentException("O tamanho da janela deve ser maior do que zero.");
+        }
+        long idThread = Thread.currentThread().getId();
+        for(GarbageCollectorMXBean gc : coletores) {
+            if(gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(pausas, null, null);
+            }
+        }
+        try {
+            medir(passos, tamanhoJanela, idThread);
+        }
+        finally {
+            for(GarbageCollectorMXBean gc : coletores) {
+                if(gc instanceof NotificationEmitter) {
+                    try {
+                        ((NotificationEmitter) gc).removeNotificationListener(pausas);
+                    }
+                    catch(ListenerNotFoundException e) {
+                        // já removido
+                    }
+                }
+            }
+        }
+        return janelas;
+    }
+
+    /**
+     * Executa os passos, fechando uma janela a cada tamanhoJanela passos.
+     */
+    private void medir(long passos, int tamanhoJanela, long idThread)
+    {
+        pausas.fecharJanela();
+        long passo = 0;
+        while(passo < passos) {
+            long inicio = passo + 1;
+            int reiniciosAntes = reinicios;
+            long coletasAntes = totalColetas();
+            long tempoAntes = tempoColetores();
+            long bytes = 0;
+            long somaAtores = 0;
+            int n = 0;
+            while(n < tamanhoJanela && passo < passos) {
+                long antes = threads.getThreadAllocatedBytes(idThread);
+                sim.simulateOneStep();
+                bytes += threads.getThreadAllocatedBytes(idThread) - antes;
+                int vivos = atoresVivos();
+                somaAtores += vivos;
+                if(vivos == 0) {
+                    sim.reset();
+                    reinicios++;
+                }
+                passo++;
+                n++;
+            }
+            janelas.add(new Janela(inicio, passo, bytes, (double) somaAtores / n,
+                                   totalColetas() - coletasAntes, tempoColetores() - tempoAntes,
+                                   pausas.fecharJanela(), heapRetido(), reinicios - reiniciosAntes));
+        }
+    }
+
+    /**
+     * Retorna as faixas de passos em que a alocação por ator cresce.
+     * * @return Pares {passo inicial, passo final}.
+     */
+    public List<long[]> faixasAlocacaoCrescente()
+    {
+        double[] valores = new double[janelas.size()];
+        for(int i = 0; i < valores.length; i++) {
+            valores[i] = janelas.get(i).bytesPorAtor();
+        }
+        return faixasCrescentes(valores);
+    }
+
+    /**
+     * Retorna as faixas de passos em que a memória retida após as coletas cresce.
+     * * @return Pares {passo inicial, passo final}.
+     */
+    public List<long[]> faixasHeapCrescente()
+    {
+        double[] valores = new double[janelas.size()];
+        for(int i = 0; i < valores.length; i++) {
+            valores[i] = janelas.get(i).heapRetido;
+        }
+        return faixasCrescentes(valores);
+    }
+
+    /**
+     * Escreve uma tabela com as janelas e as faixas suspeitas.
+     * * @param saida O destino do texto.
+     */
+    public void escreverRelatorio(PrintStream saida)
+    {
+        saida.println("passos,bytes_alocados,bytes_por_ator_passo,media_atores,coletas,tempo_coletores_ms,"
+                      + "pausas,tempo_pausas_ms,maior_pausa_ms,heap_retido,reinicios");
+        for(Janela j : janelas) {
+            saida.printf("%d-%d,%d,%.1f,%.1f,%d,%d,%d,%d,%d,%d,%d%n", j.passoInicial, j.passoFinal, j.bytesAlocados,
+                         j.bytesPorAtor(), j.mediaAtores, j.coletas, j.tempoColetoresMs, j.pausas,
+                         j.tempoPausasMs, j.maiorPausaMs, j.heapRetido, j.reinicios);
+        }
+        escreverFaixas(saida, "Alocação por ator crescente", faixasAlocacaoCrescente());
+        escreverFaixas(saida, "Heap retido crescente", faixasHeapCrescente());
+    }
+
+    /**
+     * Escreve uma lista de faixas suspeitas.
+     */
+    private static void escreverFaixas(PrintStream saida, String titulo, List<long[]> faixas)
+    {
+        if(faixas.isEmpty()) {
+            saida.println(titulo + ": nenhuma faixa");
+        }
+        for(long[] faixa : faixas) {
+            saida.println(titulo + ": passos " + faixa[0] + " a " + faixa[1]);
+        }
+    }
+
+    /**
+     * Marca cada janela cuja tendência (reta de mínimos quadrados sobre as últimas
+     * JANELAS_TENDENCIA janelas) cresce mais que CRESCIMENTO_SUSPEITO em relação à
+     * média, e junta as janelas marcadas consecutivas em faixas de passos.
+     */
+    private List<long[]> faixasCrescentes(double[] valores)
+    {
+        List<long[]> faixas = new ArrayList<>();
+        long[] atual = null;
+        int k = JANELAS_TENDENCIA;
+        for(int fim = k - 1; fim < valores.length; fim++) {
+            double somaX = 0, somaY = 0, somaXY = 0, somaXX = 0;
+            for(int x = 0; x < k; x++) {
+                double y = valores[fim - k + 1 + x];
+                somaX += x;
+                somaY += y;
+                somaXY += x * y;
+                somaXX += x * x;
+            }
+            double inclinacao = (k * somaXY - somaX * somaY) / (k * somaXX - somaX * somaX);
+            double media = somaY / k;
+            boolean crescente = media > 0 && inclinacao * (k - 1) / media > CRESCIMENTO_SUSPEITO;
+            if(crescente) {
+                long inicio = janelas.get(fim - k + 1).passoInicial;
+                long termino = janelas.get(fim).passoFinal;
+                if(atual != null && inicio <= atual[1] + 1) {
+                    atual[1] = termino;
+                }
+                else {
+                    atual = new long[] {inicio, termino};
+                    faixas.add(atual);
+                }
+            }
+        }
+        return faixas;
+    }
+
+    /**
+     * Conta os atores vivos da simulação.
+     */
+    private int atoresVivos()
+    {
+        int vivos = 0;
+        for(Ator ator : sim.getAtores()) {
+            if(ator.isAlive()) {
+                vivos++;
+            }
+        }
+        return vivos;
+    }
+
+    /**
+     * @return O total de coletas de lixo desde o início da JVM.
+     */
+    private long totalColetas()
+    {
+        long total = 0;
+        for(GarbageCollectorMXBean gc : coletores) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /**
+     * @return O tempo acumulado (ms) informado pelos coletores desde o início da JVM.
+     */
+    private long tempoColetores()
+    {
+        long total = 0;
+        for(GarbageCollectorMXBean gc : coletores) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * @return O heap ocupado logo após a última coleta de cada área.
+     */
+    private long heapRetido()
+    {
+        long total = 0;
+        for(MemoryPoolMXBean pool : pools) {
+            MemoryUsage uso = pool.getCollectionUsage();
+            if(uso != null) {
+                total += uso.getUsed();
+            }
+        }
+        return total;
+    }
+}
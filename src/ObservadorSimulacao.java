@@ -0,0 +1,91 @@
+/**
+ * Recebe os eventos de um passo da simulação à medida que acontecem.
+ * Os eventos são emitidos pela thread que executa o passo, na ordem em que os
+ * atores agem; por isso as implementações devem ser rápidas e não bloquear.
+ * Todos os métodos têm implementação vazia, de modo que cada observador
+ * sobrescreve apenas o que lhe interessa.
+ *
+ * @version 1.0
+ */
+public interface ObservadorSimulacao
+{
+    /**
+     * Um novo passo vai começar. O campo atual ainda contém o estado do passo anterior.
+     * @param sim A simulação.
+     */
+    default void inicioPasso(Simulator sim) {}
+
+    /**
+     * Um ator vivo vai agir. Os eventos seguintes, até o próximo inicioTurno,
+     * foram causados por este ator.
+     * @param indice A posição do ator na lista de atores no início do passo.
+     * @param ator O ator.
+     */
+    default void inicioTurno(int indice, Ator ator) {}
+
+    /**
+     * O ator terminou de agir; os eventos do seu turno já foram emitidos.
+     * @param indice A posição do ator na lista de atores no início do passo.
+     * @param ator O ator.
+     */
+    default void fimTurno(int indice, Ator ator) {}
+
+    /**
+     * Um ator nasceu (filhote ou planta espalhada) e já foi posicionado.
+     * Também é emitido para um ator colocado por uma edição, com pai null.
+     * @param pai O ator que o gerou, ou null se ele veio de uma edição.
+     * @param filho O novo ator.
+     */
+    default void nascimento(Ator pai, Ator filho) {}
+
+    /**
+     * Um ator terminou seu turno em uma posição diferente da inicial. Também é
+     * emitido para um animal despejado por uma edição de terreno.
+     * @param ator O ator.
+     * @param de A posição no início do turno.
+     * @param para A nova posição.
+     */
+    default void movimento(Ator ator, Location de, Location para) {}
+
+    /**
+     * Um ator comeu outro (raposa come coelho, coelho come flor).
+     * @param predador O ator que comeu.
+     * @param presa O ator comido, ou null se a presa era uma planta da camada de vegetação.
+     * @param onde A posição da presa.
+     */
+    default void alimentacao(Ator predador, Ator presa, Location onde) {}
+
+    /**
+     * Um ator morreu durante o próprio turno (velhice, fome ou superlotação) ou
+     * foi apagado por uma edição.
+     * @param ator O ator.
+     */
+    default void morte(Ator ator) {}
+
+    /**
+     * Um animal não encontrou posição livre para se mover e vai morrer por
+     * superlotação (o evento morte vem em seguida).
+     * @param ator O animal.
+     */
+    default void superlotacao(Ator ator) {}
+
+    /**
+     * Um ator morto foi retirado da lista de atores.
+     * @param ator O ator.
+     */
+    default void remocao(Ator ator) {}
+
+    /**
+     * Uma edição do operador vai ser aplicada (entre dois passos, ou no início de
+     * um passo, antes do turno do primeiro ator). Os atores colocados e apagados
+     * por ela são informados em seguida por nascimento e morte.
+     * @param comando A edição.
+     */
+    default void edicao(ComandoEdicao comando) {}
+
+    /**
+     * O passo terminou e o campo atual já contém o novo estado.
+     * @param sim A simulação.
+     */
+    default void fimPasso(Simulator sim) {}
+}
@@ -0,0 +1,51 @@
+/**
+ * Enumera os parâmetros das espécies e da população inicial que podem ser
+ * alterados por execução (ver {@link Parametros}), sem recompilar o simulador.
+ * O valor padrão de cada parâmetro é a constante correspondente da classe da espécie.
+ *
+ * @version 1.0
+ */
+public enum Parametro
+{
+    RAPOSA_IDADE_REPRODUCAO(Fox.BREEDING_AGE),
+    RAPOSA_IDADE_MAXIMA(Fox.MAX_AGE),
+    RAPOSA_PROBABILIDADE_REPRODUCAO(Fox.BREEDING_PROBABILITY),
+    RAPOSA_MAXIMO_FILHOTES(Fox.MAX_LITTER_SIZE),
+    RAPOSA_VALOR_ALIMENTO_COELHO(Fox.RABBIT_FOOD_VALUE),
+    RAPOSA_RAIO_PERCEPCAO(Fox.SENSING_RADIUS),
+
+    COELHO_IDADE_REPRODUCAO(Rabbit.BREEDING_AGE),
+    COELHO_IDADE_MAXIMA(Rabbit.MAX_AGE),
+    COELHO_PROBABILIDADE_REPRODUCAO(Rabbit.BREEDING_PROBABILITY),
+    COELHO_MAXIMO_FILHOTES(Rabbit.MAX_LITTER_SIZE),
+    COELHO_VALOR_ALIMENTO_FLOR(Rabbit.FLOWER_FOOD_VALUE),
+    COELHO_RAIO_PERCEPCAO(Rabbit.SENSING_RADIUS),
+
+    FLOR_IDADE_MAXIMA(Flor.MAX_AGE),
+    FLOR_PROBABILIDADE_ESPALHAMENTO(Flor.SPREAD_PROBABILITY),
+    VITORIA_REGIA_IDADE_MAXIMA(VitoriaRegia.MAX_AGE),
+    VITORIA_REGIA_PROBABILIDADE_ESPALHAMENTO(VitoriaRegia.SPREAD_PROBABILITY),
+
+    CRIACAO_RAPOSA(Simulator.FOX_CREATION_PROBABILITY),
+    CRIACAO_COELHO(Simulator.RABBIT_CREATION_PROBABILITY),
+    CRIACAO_FLOR(Simulator.FLOR_CREATION_PROBABILITY),
+    CRIACAO_VITORIA_REGIA(Simulator.VITORIAREGIA_CREATION_PROBABILITY);
+
+    private final double padrao;
+
+    /**
+     * @param padrao O valor padrão do parâmetro.
+     */
+    Parametro(double padrao)
+    {
+        this.padrao = padrao;
+    }
+
+    /**
+     * @return O valor padrão do parâmetro.
+     */
+    public double getPadrao()
+    {
+        return padrao;
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/**
+ * Um conjunto de valores para os parâmetros de uma execução (ver {@link Parametro}).
+ * É imutável: {@link #com(Parametro, double)} devolve um novo conjunto, de modo
+ * que o mesmo objeto pode ser usado por várias simulações ao mesmo tempo.
+ * * Os atores leem os valores da simulação em execução por meio de
+ * {@link ContextoSimulacao#atual()}; a simulação define os seus com
+ * {@link Simulator#setParametros(Parametros)}.
+ *
+ * @version 1.0
+ */
+public final class Parametros
+{
+    // Os valores padrão (as constantes das classes das espécies).
+    public static final Parametros PADRAO = new Parametros();
+
+    // Valores indexados pelo ordinal do parâmetro.
+    private final double[] valores;
+
+    /**
+     * Cria um conjunto com todos os valores padrão.
+     */
+    private Parametros()
+    {
+        Parametro[] todos = Parametro.values();
+        valores = new double[todos.length];
+        for(Parametro p : todos) {
+            valores[p.ordinal()] = p.getPadrao();
+        }
+    }
+
+    /**
+     * Construtor usado por {@link #com(Parametro, double)}.
+     */
+    private Parametros(double[] valores)
+    {
+        this.valores = valores;
+    }
+
+    /**
+     * Retorna um novo conjunto igual a este, exceto pelo valor de um parâmetro.
+     * * @param parametro O parâmetro a alterar.
+     * @param valor O novo valor.
+     * @return O novo conjunto.
+     */
+    public Parametros com(Parametro parametro, double valor)
+    {
+        double[] copia = valores.clone();
+        copia[parametro.ordinal()] = valor;
+        return new Parametros(copia);
+    }
+
+    /**
+     * @param parametro O parâmetro.
+     * @return O valor do parâmetro.
+     */
+    public double get(Parametro parametro)
+    {
+        return valores[parametro.ordinal()];
+    }
+
+    /**
+     * @param parametro Um parâmetro inteiro (idade, tamanho de ninhada, valor de alimento).
+     * @return O valor do parâmetro, truncado para inteiro.
+     */
+    public int getInt(Parametro parametro)
+    {
+        return (int) valores[parametro.ordinal()];
+    }
+
+    /**
+     * Retorna uma descrição estável de todos os valores, usada como parte da
+     * chave do cache de resultados.
+     * * @return Os pares nome=valor, em ordem de declaração.
+     */
+    public String chave()
+    {
+        StringBuilder sb = new StringBuilder();
+        for(Parametro p : Parametro.values()) {
+            if(sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(p.name()).append('=').append(valores[p.ordinal()]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Retorna apenas os parâmetros diferentes do padrão.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("{");
+        for(Parametro p : Parametro.values()) {
+            if(valores[p.ordinal()] != p.getPadrao()) {
+                if(sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(p.name()).append('=').append(valores[p.ordinal()]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    @Override
+    public boolean equals(Object outro)
+    {
+        return outro instanceof Parametros && Arrays.equals(valores, ((Parametros) outro).valores);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(valores);
+    }
+}
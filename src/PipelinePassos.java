@@ -0,0 +1,272 @@
+import java.io.IOException;
+
+/**
+ * Observador que entrega cada passo concluído a consumidores em outra thread, de
+ * modo que a simulação calcula o passo N+1 enquanto o passo N é gravado ou analisado.
+ * * Há três quadros ({@link QuadroPasso}): o que a simulação está preenchendo, o
+ * último publicado e o que o consumidor está lendo. No fim de cada passo, a thread
+ * da simulação copia o estado para o seu quadro e troca os papéis dos quadros
+ * (só os índices mudam; nenhum quadro é copiado na entrega). Ao pedir o próximo
+ * quadro, o consumidor devolve o anterior.
+ * * Se o consumidor ainda não pegou o último quadro publicado:
+ * <ul>
+ * <li>com espera (o padrão), a simulação para até que ele pegue, de modo que
+ * nenhum passo se perde e um consumidor lento limita o ritmo da simulação a no
+ * máximo um passo à frente do quadro em leitura;</li>
+ * <li>sem espera, o quadro antigo é descartado e substituído pelo novo (o
+ * consumidor vê sempre o passo mais recente) e contado em {@link #getDescartados()}.</li>
+ * </ul>
+ * * Os consumidores são as saídas sem interface: {@link ExportadorInstantaneos},
+ * {@link ExportadorPopulacao} (que recebe os nascimentos e as mortes contados aqui)
+ * e {@link HistoricoPopulacao}. A janela não usa a pipeline: com interface, o motor
+ * roda na sua própria thread e entrega à janela uma versão do campo
+ * ({@link InstantaneoCampo}), que é desenhada na thread de eventos enquanto o motor
+ * calcula os passos seguintes (ver {@link SimulatorView#entregar}).
+ *
+ * @version 1.0
+ */
+public class PipelinePassos implements ObservadorSimulacao
+{
+    /**
+     * Recebe os quadros entregues pela pipeline, na thread de consumo.
+     */
+    public interface Consumidor
+    {
+        /**
+         * Processa um passo concluído. O quadro só é válido até o retorno.
+         * * @param quadro O quadro do passo.
+         * @throws IOException Se o processamento falhar (ex: erro de escrita).
+         */
+        void consumir(QuadroPasso quadro) throws IOException;
+    }
+
+    private static final int NENHUM = -1;
+
+    private final QuadroPasso[] quadros = {new QuadroPasso(), new QuadroPasso(), new QuadroPasso()};
+    private final boolean esperar;
+
+    // Índices dos quadros: em preenchimento, publicado (ou NENHUM) e em leitura (ou NENHUM).
+    private int preenchendo = 0, publicado = NENHUM, lendo = NENHUM;
+
+    private long descartados;
+    private boolean fechada;
+
+    // Nascimentos e mortes do passo em andamento (thread da simulação).
+    private int nascimentos, mortes;
+
+    private Thread thread;
+    private volatile IOException erro;
+
+    /**
+     * Cria uma pipeline que espera o consumidor (nenhum passo é descartado).
+     */
+    public PipelinePassos()
+    {
+        this(true);
+    }
+
+    /**
+     * Cria uma pipeline.
+     * * @param esperar true para a simulação esperar um consumidor atrasado; false
+     * para descartar o quadro não lido e manter só o mais recente.
+     */
+    public PipelinePassos(boolean esperar)
+    {
+        this.esperar = esperar;
+    }
+
+    @Override
+    public void inicioPasso(Simulator sim)
+    {
+        nascimentos = 0;
+        mortes = 0;
+    }
+
+    @Override
+    public void nascimento(Ator pai, Ator filho)
+    {
+        nascimentos++;
+    }
+
+    @Override
+    public void morte(Ator ator)
+    {
+        mortes++;
+    }
+
+    @Override
+    public void alimentacao(Ator predador, Ator presa, Location onde)
+    {
+        mortes++; // A presa (animal ou planta) morre fora do próprio turno
+    }
+
+    /**
+     * Publica o passo que terminou.
+     */
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        try {
+            publicar(sim);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copia o estado atual da simulação para o quadro em preenchimento e o publica.
+     * Com espera, bloqueia enquanto o quadro publicado anterior não for pego.
+     * * @param sim A simulação, entre dois passos.
+     * @throws InterruptedException Se a thread for interrompida durante a espera.
+     */
+    public void publicar(Simulator sim) throws InterruptedException
+    {
+        // O quadro em preenchimento pertence só à thread da simulação
+        quadros[preenchendo].preencher(sim, nascimentos, mortes);
+        synchronized(this) {
+            while(esperar && publicado != NENHUM && !fechada) {
+                wait();
+            }
+            if(fechada) {
+                return;
+            }
+            int livre;
+            if(publicado != NENHUM) {
+                livre = publicado;
+                descartados++;
+            }
+            else if(lendo == NENHUM) {
+                livre = (preenchendo + 1) % quadros.length;
+            }
+            else {
+                livre = 3 - preenchendo - lendo; // O índice que não é nenhum dos dois
+            }
+            publicado = preenchendo;
+            preenchendo = livre;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Pega o último quadro publicado, esperando se ainda não houver um novo. O
+     * quadro pego antes é devolvido e não deve mais ser lido.
+     * * @return O quadro, ou null se a pipeline foi fechada e não há quadro pendente.
+     * @throws InterruptedException Se a thread for interrompida durante a espera.
+     */
+    public synchronized QuadroPasso receber() throws InterruptedException
+    {
+        while(publicado == NENHUM && !fechada) {
+            wait();
+        }
+        return pegar();
+    }
+
+    /**
+     * Pega o último quadro publicado, se houver um novo, sem esperar. Se houver, o
+     * quadro pego antes é devolvido e não deve mais ser lido.
+     * * @return O quadro, ou null se nenhum foi publicado desde o último pego.
+     */
+    public synchronized QuadroPasso tentarReceber()
+    {
+        return pegar();
+    }
+
+    /**
+     * Passa o quadro publicado para leitura e libera a simulação, se ela espera.
+     */
+    private QuadroPasso pegar()
+    {
+        if(publicado == NENHUM) {
+            return null;
+        }
+        lendo = publicado;
+        publicado = NENHUM;
+        notifyAll();
+        return quadros[lendo];
+    }
+
+    /**
+     * @return O número de quadros descartados porque o consumidor não os pegou a tempo.
+     */
+    public synchronized long getDescartados()
+    {
+        return descartados;
+    }
+
+    /**
+     * Inicia uma thread que entrega cada quadro aos consumidores, na ordem dada, até
+     * a pipeline ser fechada. Se um consumidor falhar, o erro é guardado e os quadros
+     * seguintes são apenas devolvidos, para não parar a simulação.
+     * * @param consumidores Os consumidores.
+     */
+    public synchronized void iniciar(Consumidor... consumidores)
+    {
+        if(thread != null) {
+            throw new IllegalStateException("A pipeline já tem uma thread de consumo.");
+        }
+        thread = new Thread(() -> consumir(consumidores), "pipeline-passos");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Laço da thread de consumo.
+     */
+    private void consumir(Consumidor[] consumidores)
+    {
+        try {
+            QuadroPasso quadro;
+            while((quadro = receber()) != null) {
+                if(erro != null) {
+                    continue;
+                }
+                try {
+                    for(Consumidor consumidor : consumidores) {
+                        consumidor.consumir(quadro);
+                    }
+                }
+                catch(IOException e) {
+                    erro = e;
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fecha a pipeline: novos passos deixam de ser publicados, o quadro pendente
+     * ainda é entregue e a thread de consumo, se houver, termina.
+     * * @throws IOException O erro de algum consumidor, se houve.
+     */
+    public void fechar() throws IOException
+    {
+        Thread consumo;
+        synchronized(this) {
+            fechada = true;
+            notifyAll();
+            consumo = thread;
+        }
+        if(consumo != null) {
+            try {
+                consumo.join();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if(erro != null) {
+            throw erro;
+        }
+    }
+
+    /**
+     * @return O primeiro erro de um consumidor, ou null se não houve erro.
+     */
+    public IOException getErro()
+    {
+        return erro;
+    }
+}
@@ -0,0 +1,370 @@
+import java.util.Arrays;
+
+/**
+ * Pirâmide de contagens por bloco, usada para desenhar mundos maiores que a
+ * janela: cada pixel da visão afastada corresponde a um bloco de células e é
+ * colorido pela mistura de espécies do bloco.
+ * * O nível 0 conta os indivíduos de cada espécie em blocos de 4x4 células; cada
+ * nível seguinte junta 2x2 blocos do anterior, até um único bloco. As contagens
+ * são mantidas como observador: nascimentos, movimentos, mortes e presas comidas
+ * somam ou subtraem 1 no bloco da célula em todos os níveis. As plantas da camada
+ * de vegetação são contadas por bloco no próprio percurso de
+ * {@link CamadaVegetacao#avancar(int[][], int[][])} e só as diferenças em relação
+ * ao passo anterior sobem pela pirâmide.
+ * * Quando o estado muda por inteiro (reinício, checkpoint), a pirâmide é marcada
+ * como inválida e reconstruída a partir dos atores antes do próximo uso.
+ * * A pirâmide pertence à thread da simulação; a janela desenha a partir de uma
+ * cópia entregue no fim de cada quadro ({@link #copiarPara(PiramideDensidade)}).
+ *
+ * @version 1.0
+ */
+public class PiramideDensidade implements ObservadorSimulacao
+{
+    // Log2 do lado de um bloco do nível 0, em células.
+    static final int LADO_LOG = 2;
+
+    private static final int ESPECIES = Especie.values().length;
+
+    private final int depth, width;
+
+    // contagens[nivel][(linhaBloco * largura[nivel] + colunaBloco) * ESPECIES + ordinal]
+    private final int[][] contagens;
+    private final int[] largura, altura;
+
+    // Plantas da camada por bloco do nível 0, indexadas pelo código do tipo da camada:
+    // as do passo anterior e as que a camada está contando no passo atual.
+    private int[][] camadaAnterior, camadaAtual;
+
+    private boolean valida;
+
+    /**
+     * Cria uma pirâmide para um campo com as dimensões dadas. Ela começa inválida.
+     * * @param depth A profundidade do campo.
+     * @param width A largura do campo.
+     */
+    public PiramideDensidade(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        int niveis = 1;
+        while((Math.max(depth, width) - 1) >> (LADO_LOG + niveis - 1) > 0) {
+            niveis++;
+        }
+        contagens = new int[niveis][];
+        largura = new int[niveis];
+        altura = new int[niveis];
+        for(int j = 0; j < niveis; j++) {
+            largura[j] = ((width - 1) >> (LADO_LOG + j)) + 1;
+            altura[j] = ((depth - 1) >> (LADO_LOG + j)) + 1;
+            contagens[j] = new int[largura[j] * altura[j] * ESPECIES];
+        }
+        camadaAnterior = new int[3][];
+        camadaAtual = new int[3][];
+        for(byte tipo : new byte[] {CamadaVegetacao.FLOR, CamadaVegetacao.VITORIA_REGIA}) {
+            camadaAnterior[tipo] = new int[largura[0] * altura[0]];
+            camadaAtual[tipo] = new int[largura[0] * altura[0]];
+        }
+    }
+
+    /**
+     * @return O número de níveis.
+     */
+    public int getNiveis()
+    {
+        return contagens.length;
+    }
+
+    /**
+     * @param nivel O nível.
+     * @return O número de células no lado de um bloco desse nível.
+     */
+    public int getLadoBloco(int nivel)
+    {
+        return 1 << (LADO_LOG + nivel);
+    }
+
+    /**
+     * @param nivel O nível.
+     * @return O número de colunas de blocos desse nível.
+     */
+    public int getLargura(int nivel)
+    {
+        return largura[nivel];
+    }
+
+    /**
+     * @param nivel O nível.
+     * @return O número de linhas de blocos desse nível.
+     */
+    public int getAltura(int nivel)
+    {
+        return altura[nivel];
+    }
+
+    /**
+     * Retorna quantos indivíduos de uma espécie há em um bloco.
+     * * @param nivel O nível.
+     * @param linha A linha do bloco.
+     * @param coluna A coluna do bloco.
+     * @param especie A espécie.
+     * @return A contagem.
+     */
+    public int getContagem(int nivel, int linha, int coluna, Especie especie)
+    {
+        return contagens[nivel][(linha * largura[nivel] + coluna) * ESPECIES + especie.ordinal()];
+    }
+
+    /**
+     * Copia o total de cada espécie (o bloco único do último nível).
+     * * @param populacao Recebe a população de cada espécie, indexada pelo código.
+     */
+    public void totais(int[] populacao)
+    {
+        int[] topo = contagens[contagens.length - 1];
+        Arrays.fill(populacao, 0);
+        for(Especie especie : Especie.values()) {
+            populacao[especie.getCodigo()] = topo[especie.ordinal()];
+        }
+    }
+
+    /**
+     * @param nivel O nível.
+     * @return O array interno do nível, com ESPECIES contagens (pelo ordinal) por
+     * bloco em ordem de linhas (uso interno do pacote; não deve ser alterado).
+     */
+    int[] nivel(int nivel)
+    {
+        return contagens[nivel];
+    }
+
+    /**
+     * Copia as contagens para outra pirâmide, para que a cópia seja lida em outra
+     * thread enquanto esta continua sendo atualizada.
+     * * @param destino Uma pirâmide das mesmas dimensões, ou null para criar uma.
+     * @return A cópia.
+     */
+    PiramideDensidade copiarPara(PiramideDensidade destino)
+    {
+        if(destino == null) {
+            destino = new PiramideDensidade(depth, width);
+        }
+        for(int j = 0; j < contagens.length; j++) {
+            System.arraycopy(contagens[j], 0, destino.contagens[j], 0, contagens[j].length);
+        }
+        destino.valida = valida;
+        return destino;
+    }
+
+    /**
+     * @return false se a pirâmide precisa ser reconstruída antes de ser lida.
+     */
+    public boolean isValida()
+    {
+        return valida;
+    }
+
+    /**
+     * Marca a pirâmide para reconstrução (o estado da simulação mudou por inteiro).
+     */
+    public void invalidar()
+    {
+        valida = false;
+    }
+
+    /**
+     * Reconstrói a pirâmide se ela estiver inválida.
+     * * @param sim A simulação.
+     */
+    public void sincronizar(Simulator sim)
+    {
+        if(!valida) {
+            reconstruir(sim);
+        }
+    }
+
+    /**
+     * Reconstrói todas as contagens a partir dos atores vivos e da camada de vegetação.
+     * * @param sim A simulação.
+     */
+    public void reconstruir(Simulator sim)
+    {
+        for(int[] nivel : contagens) {
+            Arrays.fill(nivel, 0);
+        }
+        for(Ator ator : sim.getAtores()) {
+            if(ator.isAlive() && ator.getLocation() != null) {
+                somar(ator.getLocation(), Especie.de(ator), 1);
+            }
+        }
+        for(int[] blocos : camadaAnterior) {
+            if(blocos != null) {
+                Arrays.fill(blocos, 0);
+            }
+        }
+        CamadaVegetacao camada = sim.getCamadaVegetacao();
+        if(camada != null) {
+            for(int row = 0; row < depth; row++) {
+                byte[] tipos = camada.tiposDaLinha(row);
+                for(int col = 0; col < width; col++) {
+                    if(tipos[col] != CamadaVegetacao.VAZIO) {
+                        camadaAnterior[tipos[col]][bloco(row, col)]++;
+                        somar(row, col, especieDaCamada(tipos[col]).ordinal(), 1);
+                    }
+                }
+            }
+        }
+        valida = true;
+    }
+
+    /**
+     * Reconstrói a pirâmide antes do passo se ela estiver inválida, para que as
+     * diferenças do passo sejam aplicadas sobre contagens corretas.
+     */
+    @Override
+    public void inicioPasso(Simulator sim)
+    {
+        sincronizar(sim);
+    }
+
+    @Override
+    public void nascimento(Ator pai, Ator filho)
+    {
+        somar(filho.getLocation(), Especie.de(filho), 1);
+    }
+
+    @Override
+    public void movimento(Ator ator, Location de, Location para)
+    {
+        Especie especie = Especie.de(ator);
+        somar(de, especie, -1);
+        somar(para, especie, 1);
+    }
+
+    @Override
+    public void morte(Ator ator)
+    {
+        somar(ator.getLocation(), Especie.de(ator), -1);
+    }
+
+    /**
+     * A presa é descontada onde foi contada (se já agiu neste passo, na posição
+     * nova). Uma flor da camada de vegetação é descontada na posição comida.
+     */
+    @Override
+    public void alimentacao(Ator predador, Ator presa, Location onde)
+    {
+        if(presa != null) {
+            somar(presa.getLocation(), Especie.de(presa), -1);
+        }
+        else {
+            camadaAnterior[CamadaVegetacao.FLOR][bloco(onde.getRow(), onde.getCol())]--;
+            somar(onde, Especie.FLOR, -1);
+        }
+    }
+
+    /**
+     * Conta uma planta posta na camada de vegetação (+1) ou tirada dela (-1) fora do
+     * avanço da camada, por uma edição. Vale dentro e fora de um passo: o avanço
+     * seguinte compara com as contagens já ajustadas.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @param tipo FLOR ou VITORIA_REGIA.
+     * @param quantidade +1 ou -1.
+     */
+    void ajustarCamada(int row, int col, byte tipo, int quantidade)
+    {
+        camadaAnterior[tipo][bloco(row, col)] += quantidade;
+        somar(row, col, especieDaCamada(tipo).ordinal(), quantidade);
+    }
+
+    /**
+     * Prepara as contagens da camada de vegetação para o avanço da camada.
+     * * @return Contagens zeradas por bloco do nível 0, indexadas pelo código do tipo
+     * da camada, a serem preenchidas por {@link CamadaVegetacao#avancar(int[][], int[][])}.
+     */
+    int[][] blocosCamada()
+    {
+        for(int[] blocos : camadaAtual) {
+            if(blocos != null) {
+                Arrays.fill(blocos, 0);
+            }
+        }
+        return camadaAtual;
+    }
+
+    /**
+     * Sobe pela pirâmide as diferenças entre as contagens da camada deste passo
+     * e as do passo anterior.
+     */
+    void fimCamada()
+    {
+        for(byte tipo : new byte[] {CamadaVegetacao.FLOR, CamadaVegetacao.VITORIA_REGIA}) {
+            int[] antes = camadaAnterior[tipo];
+            int[] agora = camadaAtual[tipo];
+            int especie = especieDaCamada(tipo).ordinal();
+            for(int b = 0; b < agora.length; b++) {
+                int diferenca = agora[b] - antes[b];
+                if(diferenca != 0) {
+                    int linha = b / largura[0];
+                    somarBloco(linha, b - linha * largura[0], especie, diferenca);
+                }
+            }
+        }
+        int[][] troca = camadaAnterior;
+        camadaAnterior = camadaAtual;
+        camadaAtual = troca;
+    }
+
+    /**
+     * @return O índice do bloco do nível 0 que contém a célula.
+     */
+    int bloco(int row, int col)
+    {
+        return (row >> LADO_LOG) * largura[0] + (col >> LADO_LOG);
+    }
+
+    /**
+     * @return O número de colunas de blocos do nível 0 (usado pela camada de vegetação).
+     */
+    int getLarguraBlocos()
+    {
+        return largura[0];
+    }
+
+    /**
+     * Soma uma quantidade à espécie no bloco da posição, em todos os níveis.
+     */
+    private void somar(Location onde, Especie especie, int quantidade)
+    {
+        if(onde != null && especie != null) {
+            somar(onde.getRow(), onde.getCol(), especie.ordinal(), quantidade);
+        }
+    }
+
+    /**
+     * Soma uma quantidade à espécie no bloco da célula, em todos os níveis.
+     */
+    private void somar(int row, int col, int especie, int quantidade)
+    {
+        somarBloco(row >> LADO_LOG, col >> LADO_LOG, especie, quantidade);
+    }
+
+    /**
+     * Soma uma quantidade à espécie em um bloco do nível 0 e nos blocos que o
+     * contêm nos níveis seguintes.
+     */
+    private void somarBloco(int linha, int coluna, int especie, int quantidade)
+    {
+        for(int j = 0; j < contagens.length; j++) {
+            contagens[j][((linha >> j) * largura[j] + (coluna >> j)) * ESPECIES + especie] += quantidade;
+        }
+    }
+
+    /**
+     * @return A espécie correspondente a um tipo da camada de vegetação.
+     */
+    private static Especie especieDaCamada(byte tipo)
+    {
+        return tipo == CamadaVegetacao.FLOR ? Especie.FLOR : Especie.VITORIA_REGIA;
+    }
+}
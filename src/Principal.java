@@ -1,5 +1,168 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
 public class Principal{
-  public static void main(String[] args){
-    new Simulator();
+  /**
+   * Sem argumentos, abre a simulação. Com "reproduzir <arquivo>", abre a
+   * reprodução de uma execução gravada. Com "ensemble <réplicas> <passos> [semente]",
+   * executa as réplicas em paralelo, sem interface, e escreve no console a média
+   * e os quantis de 5%, 50% e 95% da população de cada espécie a cada passo.
+   * Com "varredura <passos> <sementes> <cache> PARAMETRO=v1,v2,... ...", executa a
+   * grade de parâmetros com as sementes 1 a <sementes> e escreve um resultado por linha.
+   * Com "resistencia <passos> [janela]", executa o teste de resistência sem interface
+   * e escreve a alocação, as coletas de lixo e as faixas de crescimento suspeito.
+   * Com "ocupacao <passos> <prefixo>", executa sem interface e grava o mapa de
+   * ocupação de cada espécie em <prefixo>-ESPECIE.png e os arrays em <prefixo>.bin.
+   * Com "historico <passos> <arquivo>", executa sem interface e grava o histórico
+   * compacto da população de cada espécie em <arquivo>, montado em uma thread
+   * separada, enquanto os passos seguem.
+   * Com "instantaneos <passos> <intervalo> <diretorio>", executa sem interface e grava
+   * os instantâneos por coluna em uma thread separada, enquanto os passos seguem.
+   * Com "distribuido <faixas> <passos> <profundidade> <largura> [mapa]", divide o campo
+   * em faixas simuladas por processos trabalhadores e escreve a população a cada passo;
+   * "trabalhador <socket>" é o modo usado por esses processos.
+   * Com "serie <arquivo>", converte uma série de população gravada no formato
+   * binário ({@link FormatoSerie#binario()}) para CSV no console.
+   * Com "servico <porta>", inicia o serviço local de trabalhos de simulação, que
+   * escuta só em localhost e executa até o processo ser encerrado.
+   * Antes de qualquer modo, a opção "camada" ativa a camada de vegetação primitiva
+   * ({@link CamadaVegetacao}) na janela e nos modos ensemble, ocupacao, historico e
+   * instantaneos.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException{
+    boolean camada = args.length >= 1 && args[0].equals("camada");
+    if(camada){
+      args = Arrays.copyOfRange(args, 1, args.length);
+    }
+    if(args.length >= 2 && args[0].equals("reproduzir")){
+      new SimulatorView(new LeitorGravacao(new File(args[1]).toPath()));
+    }
+    else if(args.length >= 3 && args[0].equals("ensemble")){
+      long semente = args.length >= 4 ? Long.parseLong(args[3]) : 1L;
+      EnsembleSimulacoes ensemble = new EnsembleSimulacoes("mapa.txt", 50, 50);
+      ensemble.setCamadaVegetacao(camada);
+      AgregadorPopulacao resultado = ensemble.executar(Integer.parseInt(args[1]), Integer.parseInt(args[2]), semente);
+      PrintWriter saida = new PrintWriter(System.out);
+      resultado.escreverCsv(saida, 0.05, 0.5, 0.95);
+      saida.flush();
+    }
+    else if(args.length >= 4 && args[0].equals("varredura")){
+      VarreduraParametros varredura = new VarreduraParametros("mapa.txt", 50, 50);
+      varredura.setCache(new CacheResultados(new File(args[3]).toPath()));
+      for(int i = 4; i < args.length; i++){
+        String[] partes = args[i].split("=");
+        String[] textos = partes[1].split(",");
+        double[] valores = new double[textos.length];
+        for(int j = 0; j < textos.length; j++){
+          valores[j] = Double.parseDouble(textos[j]);
+        }
+        varredura.variar(Parametro.valueOf(partes[0]), valores);
+      }
+      long[] sementes = new long[Integer.parseInt(args[2])];
+      for(int i = 0; i < sementes.length; i++){
+        sementes[i] = i + 1;
+      }
+      for(ResultadoExecucao resultado : varredura.executar(Integer.parseInt(args[1]), sementes)){
+        System.out.println(resultado);
+      }
+    }
+    else if(args.length >= 2 && args[0].equals("resistencia")){
+      ModoResistencia teste = new ModoResistencia("mapa.txt", 50, 50, 1L);
+      teste.executar(Long.parseLong(args[1]), args.length >= 3 ? Integer.parseInt(args[2]) : 1000);
+      teste.escreverRelatorio(System.out);
+    }
+    else if(args.length >= 3 && args[0].equals("ocupacao")){
+      Simulator simulador = new Simulator(50, 50, false);
+      if(camada){
+        simulador.setCamadaVegetacao(true);
+      }
+      MapaOcupacao mapa = simulador.ativarOcupacao();
+      for(long i = Long.parseLong(args[1]); i > 0; i--){
+        simulador.simulateOneStep();
+      }
+      for(Especie especie : Especie.values()){
+        mapa.salvarPng(especie, new File(args[2] + "-" + especie.name() + ".png").toPath());
+      }
+      mapa.salvarBruto(new File(args[2] + ".bin").toPath());
+    }
+    else if(args.length >= 3 && args[0].equals("historico")){
+      Simulator simulador = new Simulator(50, 50, false);
+      if(camada){
+        simulador.setCamadaVegetacao(true);
+      }
+      HistoricoPopulacao historico = new HistoricoPopulacao();
+      PipelinePassos pipeline = simulador.ativarPipeline(true);
+      pipeline.iniciar(historico);
+      for(long i = Long.parseLong(args[1]); i > 0; i--){
+        simulador.simulateOneStep();
+      }
+      simulador.desativarPipeline();
+      historico.salvar(new File(args[2]).toPath());
+    }
+    else if(args.length >= 4 && args[0].equals("instantaneos")){
+      Simulator simulador = new Simulator(50, 50, false);
+      if(camada){
+        simulador.setCamadaVegetacao(true);
+      }
+      PipelinePassos pipeline = simulador.ativarPipeline(true);
+      pipeline.iniciar(new ExportadorInstantaneos(new File(args[3]).toPath(), Integer.parseInt(args[2])));
+      for(long i = Long.parseLong(args[1]); i > 0; i--){
+        simulador.simulateOneStep();
+      }
+      simulador.desativarPipeline();
+    }
+    else if(args.length >= 5 && args[0].equals("distribuido")){
+      CoordenadorFaixas coordenador = new CoordenadorFaixas(args.length >= 6 ? args[5] : "mapa.txt",
+          Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[1]), 1L);
+      try{
+        coordenador.iniciar();
+        System.out.println("passo,especie,populacao");
+        for(long i = Long.parseLong(args[2]); i > 0; i--){
+          int[] populacao = coordenador.simularPasso();
+          for(Especie especie : Especie.values()){
+            System.out.println(coordenador.getPasso() + "," + especie.name() + "," + populacao[especie.getCodigo()]);
+          }
+        }
+      }
+      finally{
+        coordenador.fechar();
+      }
+    }
+    else if(args.length >= 2 && args[0].equals("serie")){
+      try(InputStream entrada = new BufferedInputStream(new FileInputStream(args[1]))){
+        FormatoSerie.LeitorBinario leitor = new FormatoSerie.LeitorBinario(entrada);
+        FormatoSerie csv = FormatoSerie.csv();
+        BufferedOutputStream saida = new BufferedOutputStream(System.out);
+        if(leitor.getCampos() != ExportadorPopulacao.CAMPOS){
+          throw new IOException("A série tem " + leitor.getCampos() + " campos; esperados " + ExportadorPopulacao.CAMPOS);
+        }
+        int[] registro = new int[leitor.getCampos()];
+        csv.cabecalho(saida);
+        while(leitor.proximo(registro)){
+          csv.registro(saida, registro, 0);
+        }
+        saida.flush();
+      }
+    }
+    else if(args.length >= 2 && args[0].equals("servico")){
+      ServicoSimulacoes servico = new ServicoSimulacoes(Integer.parseInt(args[1]));
+      servico.iniciar();
+      System.out.println("Servico em http://localhost:" + servico.getPorta() + "/trabalhos");
+    }
+    else if(args.length >= 2 && args[0].equals("trabalhador")){
+      new TrabalhadorFaixa(new File(args[1]).toPath()).executar();
+    }
+    else{
+      Simulator simulador = new Simulator();
+      if(camada){
+        simulador.naSimulacao(() -> simulador.setCamadaVegetacao(true));
+      }
+    }
   }
 }
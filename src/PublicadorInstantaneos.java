@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * Observador que publica, no fim de cada passo, uma versão somente leitura do
+ * campo ({@link InstantaneoCampo}) para leitores em outras threads.
+ * * A versão mais recente fica em uma referência volátil: um leitor chama
+ * {@link #getAtual()} e lê a versão obtida à vontade, sem travas, sabendo que
+ * todas as células são do mesmo passo. A publicação é barata porque só os blocos
+ * que mudaram são copiados: nascimentos, movimentos, mortes e presas comidas
+ * marcam o bloco das células envolvidas, e os demais blocos são os mesmos objetos
+ * da versão anterior. Com a camada de vegetação, que muda em qualquer lugar, os
+ * blocos sem eventos de atores são comparados com a versão anterior e só viram
+ * blocos novos se mudaram.
+ * * Quando o estado muda por inteiro (reinício, checkpoint), o publicador é
+ * invalidado e a próxima versão é montada do zero.
+ *
+ * @version 1.0
+ */
+public class PublicadorInstantaneos implements ObservadorSimulacao
+{
+    private static final int LADO_LOG = InstantaneoCampo.LADO_LOG;
+    private static final int LADO = InstantaneoCampo.LADO;
+
+    private final int depth, width;
+    private final int larguraBlocos;
+
+    // Blocos com eventos desde a última publicação (thread da simulação).
+    private final boolean[] sujo;
+    private boolean valido;
+
+    // Bloco montado para comparação com a camada de vegetação.
+    private final byte[] rascunho = new byte[LADO * LADO];
+
+    private long versao;
+    private volatile InstantaneoCampo atual;
+
+    /**
+     * Cria um publicador para um campo com as dimensões dadas. Nada é publicado
+     * até a primeira chamada de {@link #publicar(Simulator)}.
+     * * @param depth A profundidade do campo.
+     * @param width A largura do campo.
+     */
+    public PublicadorInstantaneos(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.larguraBlocos = ((width - 1) >> LADO_LOG) + 1;
+        int blocos = larguraBlocos * (((depth - 1) >> LADO_LOG) + 1);
+        sujo = new boolean[blocos];
+    }
+
+    /**
+     * Retorna a versão mais recente. Pode ser chamado de qualquer thread.
+     * * @return A versão, ou null se nada foi publicado ainda.
+     */
+    public InstantaneoCampo getAtual()
+    {
+        return atual;
+    }
+
+    /**
+     * Faz a próxima publicação montar todos os blocos (o estado mudou por inteiro).
+     */
+    public void invalidar()
+    {
+        valido = false;
+    }
+
+    @Override
+    public void nascimento(Ator pai, Ator filho)
+    {
+        marcar(filho.getLocation());
+    }
+
+    @Override
+    public void movimento(Ator ator, Location de, Location para)
+    {
+        marcar(de);
+        marcar(para);
+    }
+
+    @Override
+    public void morte(Ator ator)
+    {
+        marcar(ator.getLocation());
+    }
+
+    @Override
+    public void alimentacao(Ator predador, Ator presa, Location onde)
+    {
+        marcar(presa != null ? presa.getLocation() : onde);
+    }
+
+    /**
+     * Publica o passo que terminou.
+     */
+    @Override
+    public void fimPasso(Simulator sim)
+    {
+        publicar(sim);
+    }
+
+    /**
+     * Monta e publica a versão do estado atual da simulação.
+     * * @param sim A simulação, entre dois passos.
+     * @return A versão publicada.
+     */
+    public InstantaneoCampo publicar(Simulator sim)
+    {
+        Field field = sim.getField();
+        CamadaVegetacao camada = sim.getCamadaVegetacao();
+        InstantaneoCampo anterior = valido ? atual : null;
+        byte[][] blocos = new byte[sujo.length][];
+        int novos = 0;
+        for(int b = 0; b < blocos.length; b++) {
+            if(anterior == null || sujo[b]) {
+                blocos[b] = new byte[LADO * LADO];
+                montar(b, field, camada, blocos[b]);
+                novos++;
+            }
+            else if(camada != null) {
+                montar(b, field, camada, rascunho);
+                byte[] antigo = anterior.blocos()[b];
+                if(Arrays.equals(rascunho, antigo)) {
+                    blocos[b] = antigo;
+                }
+                else {
+                    blocos[b] = rascunho.clone();
+                    novos++;
+                }
+            }
+            else {
+                blocos[b] = anterior.blocos()[b];
+            }
+        }
+        Arrays.fill(sujo, false);
+        valido = true;
+
+        int[] populacao = new int[Especie.values().length + 1];
+        sim.contarPopulacao(populacao);
+        atual = new InstantaneoCampo(++versao, sim.getStep(), depth, width, blocos, populacao, novos);
+        return atual;
+    }
+
+    /**
+     * Preenche um bloco com o código da espécie de cada célula (o ator vivo, senão
+     * a planta da camada, senão 0).
+     */
+    private void montar(int bloco, Field field, CamadaVegetacao camada, byte[] destino)
+    {
+        int linha0 = (bloco / larguraBlocos) << LADO_LOG;
+        int coluna0 = (bloco % larguraBlocos) << LADO_LOG;
+        int linhas = Math.min(LADO, depth - linha0);
+        int colunas = Math.min(LADO, width - coluna0);
+        for(int r = 0; r < linhas; r++) {
+            for(int c = 0; c < colunas; c++) {
+                int row = linha0 + r;
+                int col = coluna0 + c;
+                Ator ator = field.getObjectAt(row, col);
+                byte codigo;
+                if(ator != null && ator.isAlive()) {
+                    codigo = Especie.codigoDe(ator);
+                }
+                else if(camada != null && camada.getTipo(row, col) != CamadaVegetacao.VAZIO) {
+                    codigo = camada.getTipo(row, col) == CamadaVegetacao.FLOR
+                             ? Especie.FLOR.getCodigo() : Especie.VITORIA_REGIA.getCodigo();
+                }
+                else {
+                    codigo = 0;
+                }
+                destino[(r << LADO_LOG) + c] = codigo;
+            }
+        }
+    }
+
+    /**
+     * Marca o bloco de uma célula como alterado.
+     */
+    private void marcar(Location onde)
+    {
+        if(onde != null) {
+            sujo[(onde.getRow() >> LADO_LOG) * larguraBlocos + (onde.getCol() >> LADO_LOG)] = true;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.Arrays;
+
+/**
+ * O estado de um passo concluído, copiado dos atores para arrays primitivos, para
+ * ser lido fora da thread da simulação enquanto ela calcula os passos seguintes.
+ * * Os atores são objetos mutáveis que mudam de idade, de posição e de estado a cada
+ * passo; o quadro guarda, por coluna, o que um consumidor precisa de cada um
+ * (espécie, idade, alimento, linha e coluna), a população de cada espécie e os
+ * nascimentos e mortes do passo. As
+ * plantas da camada de vegetação entram como atores, com alimento -1 (como as
+ * plantas comuns).
+ * * Um quadro é preenchido pela thread da simulação e, depois de entregue por uma
+ * {@link PipelinePassos}, não muda até o consumidor devolvê-lo (pedindo o próximo).
+ * Os arrays são reaproveitados entre os passos e só crescem.
+ *
+ * @version 1.0
+ */
+public class QuadroPasso
+{
+    private int passo;
+    private int depth, width;
+    private int tamanho;
+    private int nascimentos, mortes;
+
+    private byte[] especies = new byte[1024];
+    private int[] idades = new int[1024];
+    private int[] alimentos = new int[1024];
+    private int[] linhas = new int[1024];
+    private int[] colunas = new int[1024];
+
+    private final int[] populacao = new int[Especie.values().length + 1];
+
+    /**
+     * @return O número do passo.
+     */
+    public int getPasso()
+    {
+        return passo;
+    }
+
+    /**
+     * @return A profundidade do campo.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return A largura do campo.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return O número de atores (incluindo as plantas da camada de vegetação).
+     */
+    public int getTamanho()
+    {
+        return tamanho;
+    }
+
+    /**
+     * @param i O índice do ator, de 0 a getTamanho() - 1.
+     * @return O código da espécie do ator.
+     */
+    public int getEspecie(int i)
+    {
+        return especies[i];
+    }
+
+    /**
+     * @param i O índice do ator.
+     * @return A idade do ator (0 para atores sem idade).
+     */
+    public int getIdade(int i)
+    {
+        return idades[i];
+    }
+
+    /**
+     * @param i O índice do ator.
+     * @return O nível de alimento do ator, ou -1 para plantas.
+     */
+    public int getAlimento(int i)
+    {
+        return alimentos[i];
+    }
+
+    /**
+     * @param i O índice do ator.
+     * @return A linha do ator.
+     */
+    public int getLinha(int i)
+    {
+        return linhas[i];
+    }
+
+    /**
+     * @param i O índice do ator.
+     * @return A coluna do ator.
+     */
+    public int getColuna(int i)
+    {
+        return colunas[i];
+    }
+
+    /**
+     * @return O número de nascimentos no passo (0 se o quadro não veio de uma pipeline).
+     */
+    public int getNascimentos()
+    {
+        return nascimentos;
+    }
+
+    /**
+     * @return O número de mortes no passo, inclusive as presas comidas (0 se o
+     * quadro não veio de uma pipeline).
+     */
+    public int getMortes()
+    {
+        return mortes;
+    }
+
+    /**
+     * @param especie A espécie.
+     * @return A população da espécie no fim do passo.
+     */
+    public int getPopulacao(Especie especie)
+    {
+        return populacao[especie.getCodigo()];
+    }
+
+    /**
+     * Copia a população de cada espécie.
+     * * @param destino Recebe a população de cada espécie, indexada pelo código.
+     */
+    public void populacao(int[] destino)
+    {
+        System.arraycopy(populacao, 0, destino, 0, populacao.length);
+    }
+
+    /**
+     * Copia o estado atual da simulação para o quadro.
+     * * @param sim A simulação, entre dois passos.
+     * @param nascimentos Os nascimentos do passo.
+     * @param mortes As mortes do passo.
+     */
+    void preencher(Simulator sim, int nascimentos, int mortes)
+    {
+        passo = sim.getStep();
+        this.nascimentos = nascimentos;
+        this.mortes = mortes;
+        depth = sim.getField().getDepth();
+        width = sim.getField().getWidth();
+        tamanho = 0;
+        Arrays.fill(populacao, 0);
+        for(Ator ator : sim.getAtores()) {
+            Location onde = ator.getLocation();
+            if(!ator.isAlive() || onde == null) {
+                continue;
+            }
+            int idade, alimento;
+            if(ator instanceof Animal) {
+                idade = ((Animal) ator).getAge();
+                alimento = ((Animal) ator).getFoodLevel();
+            }
+            else {
+                idade = ator instanceof Vegetacao ? ((Vegetacao) ator).getAge() : 0;
+                alimento = -1;
+            }
+            acrescentar(Especie.codigoDe(ator), idade, alimento, onde.getRow(), onde.getCol());
+        }
+        CamadaVegetacao camada = sim.getCamadaVegetacao();
+        if(camada != null) {
+            for(int row = 0; row < depth; row++) {
+                byte[] tipos = camada.tiposDaLinha(row);
+                short[] idadesCamada = camada.idadesDaLinha(row);
+                for(int col = 0; col < width; col++) {
+                    if(tipos[col] != CamadaVegetacao.VAZIO) {
+                        Especie especie = tipos[col] == CamadaVegetacao.FLOR ? Especie.FLOR : Especie.VITORIA_REGIA;
+                        acrescentar(especie.getCodigo(), idadesCamada[col], -1, row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Acrescenta um ator às colunas, aumentando os arrays se preciso.
+     */
+    private void acrescentar(int especie, int idade, int alimento, int linha, int coluna)
+    {
+        if(tamanho == especies.length) {
+            int maior = tamanho * 2;
+            especies = Arrays.copyOf(especies, maior);
+            idades = Arrays.copyOf(idades, maior);
+            alimentos = Arrays.copyOf(alimentos, maior);
+            linhas = Arrays.copyOf(linhas, maior);
+            colunas = Arrays.copyOf(colunas, maior);
+        }
+        especies[tamanho] = (byte) especie;
+        idades[tamanho] = idade;
+        alimentos[tamanho] = alimento;
+        linhas[tamanho] = linha;
+        colunas[tamanho] = coluna;
+        populacao[especie]++;
+        tamanho++;
+    }
+}
@@ -11,24 +11,28 @@ import java.util.Iterator;
 public class Rabbit extends Animal
 {
     // Características compartilhadas por todos os coelhos (campos estáticos).
+    // São os valores padrão; cada simulação pode alterá-los (ver Parametros).
 
     // A idade mínima para que um coelho possa começar a se reproduzir.
-    private static final int BREEDING_AGE = 5;
+    static final int BREEDING_AGE = 5;
 
     // A idade máxima que um coelho pode atingir antes de morrer de velhice.
-    private static final int MAX_AGE = 50;
+    static final int MAX_AGE = 50;
 
     // A probabilidade de um coelho se reproduzir em cada passo.
-    private static final double BREEDING_PROBABILITY = 0.10;
+    static final double BREEDING_PROBABILITY = 0.10;
 
     // O número máximo de filhotes que podem nascer em uma única ninhada.
-    private static final int MAX_LITTER_SIZE = 5;
+    static final int MAX_LITTER_SIZE = 5;
 
     // AA cor de representação visual do coelho na simulação
-    private static final Color COR = Color.ORANGE;
+    static final Color COR = Color.ORANGE;
 
     // Valor nutricional de uma flor (quantos passos o coelho ganha)
-    private static final int FLOWER_FOOD_VALUE = 8;
+    static final int FLOWER_FOOD_VALUE = 8;
+
+    // Distância máxima, em passos, em que o coelho enxerga uma flor (1: só as adjacentes)
+    static final int SENSING_RADIUS = 1;
 
     // Nível de fome atual
     private int foodLevel;
@@ -44,9 +48,9 @@ public class Rabbit extends Animal
     {
        super(randomAge);
        if(randomAge) {
-           foodLevel = rand.nextInt(FLOWER_FOOD_VALUE);
+           foodLevel = rand().nextInt(parametros().getInt(Parametro.COELHO_VALOR_ALIMENTO_FLOR));
        } else {
-           foodLevel = FLOWER_FOOD_VALUE;
+           foodLevel = parametros().getInt(Parametro.COELHO_VALOR_ALIMENTO_FLOR);
        }
     }
 
@@ -72,6 +76,26 @@ public class Rabbit extends Animal
         }
     }
 
+    /**
+     * Retorna o nível de fome atual.
+     * * @return Quantos passos faltam até morrer de fome.
+     */
+    @Override
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * Define o nível de fome.
+     * * @param foodLevel O novo nível de fome.
+     */
+    @Override
+    void setFoodLevel(int foodLevel)
+    {
+        this.foodLevel = foodLevel;
+    }
+
     /**
      * Determina a próxima localização para a qual o coelho deve se mover.
      * Coelhos se movem aleatoriamente para qualquer localização adjacente 
@@ -88,48 +112,56 @@ public class Rabbit extends Animal
         if(foodLocation != null) {
             return foodLocation;
         }
-        // 2. Se não, procura movimento livre
+        // 2. Se não, segue a flor mais próxima dentro do raio de percepção
+        Location florLocation = findDistantFlower(currentField);
+        if(florLocation != null) {
+            Location towards = aproximar(florLocation, updatedField);
+            if(towards != null) {
+                return towards;
+            }
+        }
+        // 3. Se não, procura movimento livre
         return updatedField.freeHabitableAdjacentLocation(location, this);
     }
 
     /**
      * Retorna a idade máxima de vida do coelho.
-     * * @return A idade máxima ({@value #MAX_AGE}).
+     * * @return A idade máxima (padrão: {@value #MAX_AGE}).
      */
     @Override
     protected int getMaxAge()
     {
-        return MAX_AGE;
+        return parametros().getInt(Parametro.COELHO_IDADE_MAXIMA);
     }
 
     /**
      * Retorna a idade mínima para reprodução.
-     * * @return A idade de reprodução ({@value #BREEDING_AGE}).
+     * * @return A idade de reprodução (padrão: {@value #BREEDING_AGE}).
      */
     @Override
     protected int getBreedingAge()
     {
-        return BREEDING_AGE;
+        return parametros().getInt(Parametro.COELHO_IDADE_REPRODUCAO);
     }
 
     /**
      * Retorna a probabilidade de reprodução.
-     * * @return A probabilidade ({@value #BREEDING_PROBABILITY}).
+     * * @return A probabilidade (padrão: {@value #BREEDING_PROBABILITY}).
      */
     @Override
     protected double getBreedingProbability()
     {
-        return BREEDING_PROBABILITY;
+        return parametros().get(Parametro.COELHO_PROBABILIDADE_REPRODUCAO);
     }
 
     /**
      * Retorna o tamanho máximo da ninhada.
-     * * @return O tamanho máximo ({@value #MAX_LITTER_SIZE}).
+     * * @return O tamanho máximo (padrão: {@value #MAX_LITTER_SIZE}).
      */
     @Override
     protected int getMaxLitterSize()
     {
-        return MAX_LITTER_SIZE;
+        return parametros().getInt(Parametro.COELHO_MAXIMO_FILHOTES);
     }
 
     /**
@@ -155,26 +187,38 @@ public class Rabbit extends Animal
     /**
      * Procura por flores adjacentes para comer.
      * Se encontrar uma flor viva, o coelho a come (a flor morre)
-     * e o nível de fome do coelho é restaurado.
+     * e o nível de fome do coelho é restaurado. Se o campo usar a camada de
+     * vegetação, a flor é procurada nela.
      * * @param currentField O campo atual (para consulta).
      * @param updatedField O campo atualizado (para verificar disponibilidade).
      * @return A localização da flor comida, ou null se nenhuma flor for encontrada.
      */
     private Location findFood(Field currentField, Field updatedField)
     {
+        CamadaVegetacao vegetacao = currentField.getVegetacao();
         Iterator<Location> adjacentLocations = currentField.adjacentLocations(location);
         while(adjacentLocations.hasNext()) {
             Location where = adjacentLocations.next();
 
             // Verifica se o coelho pode ir para lá (habitável)
             if (updatedField.getTerrenoAt(where).ehHabitavel(this)) {
+                // Com a camada de vegetação, as flores não ocupam o campo de atores
+                if (vegetacao != null && vegetacao.temFlor(where.getRow(), where.getCol())
+                        && updatedField.getObjectAt(where) == null) {
+                    vegetacao.comer(where.getRow(), where.getCol());
+                    foodLevel = parametros().getInt(Parametro.COELHO_VALOR_ALIMENTO_FLOR);
+                    currentField.notificarAlimentacao(this, null, where);
+                    return where;
+                }
+
                 Object actor = currentField.getObjectAt(where);
 
                 if(actor instanceof Flor) {
                     Flor flor = (Flor) actor;
                     if(flor.isAlive()) { 
                         flor.setEaten(); // Come a flor
-                        foodLevel = FLOWER_FOOD_VALUE; // Enche a barriga
+                        foodLevel = parametros().getInt(Parametro.COELHO_VALOR_ALIMENTO_FLOR); // Enche a barriga
+                        currentField.notificarAlimentacao(this, flor, where);
                         return where;
                     }
                 }
@@ -182,4 +226,37 @@ public class Rabbit extends Animal
         }
         return null;
     }
+
+    /**
+     * Procura a flor viva mais próxima além das adjacências, dentro do raio de
+     * percepção, usando o índice espacial do campo (que inclui as flores da camada
+     * de vegetação).
+     * * @param currentField O campo atual (para consulta).
+     * @return A localização da flor, ou null se o raio for 1 ou nenhuma flor estiver à vista.
+     */
+    private Location findDistantFlower(Field currentField)
+    {
+        int radius = parametros().getInt(Parametro.COELHO_RAIO_PERCEPCAO);
+        IndiceEspacial indice = currentField.getIndice();
+        if(radius <= 1 || indice == null) {
+            return null;
+        }
+        CamadaVegetacao vegetacao = currentField.getVegetacao();
+        int width = currentField.getWidth();
+        int row = location.getRow();
+        int col = location.getCol();
+        int cell = indice.maisProxima(Especie.FLOR, row, col, radius, c -> {
+            int r = c / width;
+            int k = c % width;
+            if(Math.abs(r - row) <= 1 && Math.abs(k - col) <= 1) {
+                return false; // As adjacentes já foram vistas por findFood
+            }
+            if(vegetacao != null && vegetacao.temFlor(r, k)) {
+                return true;
+            }
+            Ator actor = currentField.getObjectAt(r, k);
+            return actor instanceof Flor && actor.isAlive();
+        });
+        return cell < 0 ? null : new Location(cell / width, cell % width);
+    }
 }
@@ -0,0 +1,109 @@
+/**
+ * O resultado de uma execução de uma varredura de parâmetros
+ * (ver {@link VarreduraParametros}): por que e em que passo ela parou e a
+ * população final de cada espécie.
+ *
+ * @version 1.0
+ */
+public class ResultadoExecucao
+{
+    /**
+     * Motivo pelo qual a execução terminou.
+     */
+    public enum Motivo
+    {
+        // Alguma espécie animal se extinguiu.
+        COLAPSO,
+        // As populações ficaram estáveis durante a janela de observação.
+        ESTAVEL,
+        // O número máximo de passos foi atingido.
+        LIMITE
+    }
+
+    private final Parametros parametros;
+    private final long semente;
+    private final int passos;
+    private final Motivo motivo;
+    private final int[] populacao;
+    private final boolean doCache;
+
+    /**
+     * @param parametros Os parâmetros da execução.
+     * @param semente A semente do gerador aleatório.
+     * @param passos O passo em que a execução parou.
+     * @param motivo O motivo da parada.
+     * @param populacao A população final, indexada pelo código da espécie.
+     * @param doCache true se o resultado foi lido do cache em vez de simulado.
+     */
+    public ResultadoExecucao(Parametros parametros, long semente, int passos, Motivo motivo,
+                             int[] populacao, boolean doCache)
+    {
+        this.parametros = parametros;
+        this.semente = semente;
+        this.passos = passos;
+        this.motivo = motivo;
+        this.populacao = populacao.clone();
+        this.doCache = doCache;
+    }
+
+    /**
+     * @return Os parâmetros da execução.
+     */
+    public Parametros getParametros()
+    {
+        return parametros;
+    }
+
+    /**
+     * @return A semente do gerador aleatório.
+     */
+    public long getSemente()
+    {
+        return semente;
+    }
+
+    /**
+     * @return O passo em que a execução parou.
+     */
+    public int getPassos()
+    {
+        return passos;
+    }
+
+    /**
+     * @return O motivo da parada.
+     */
+    public Motivo getMotivo()
+    {
+        return motivo;
+    }
+
+    /**
+     * @param especie A espécie.
+     * @return A população final da espécie.
+     */
+    public int getPopulacao(Especie especie)
+    {
+        return populacao[especie.getCodigo()];
+    }
+
+    /**
+     * @return true se o resultado veio do cache.
+     */
+    public boolean isDoCache()
+    {
+        return doCache;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(parametros).append(" semente=").append(semente)
+          .append(" passos=").append(passos).append(' ').append(motivo);
+        for(Especie especie : Especie.values()) {
+            sb.append(' ').append(especie.name()).append('=').append(getPopulacao(especie));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,433 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Um serviço HTTP local que recebe trabalhos de simulação ({@link TrabalhoSimulacao})
+ * e os executa sem interface, com um número limitado de simulações simultâneas.
+ * O servidor só escuta no endereço de loopback.
+ * * Rotas (respostas em texto, uma informação "nome=valor" por linha):
+ * <pre>
+ *   POST /trabalhos                   corpo "mapa=...&amp;semente=...&amp;passos=...[&amp;profundidade=...]
+ *                                     [&amp;largura=...][&amp;PARAMETRO=valor...]"; responde o id
+ *   GET  /trabalhos/{id}              estado e progresso
+ *   GET  /trabalhos/{id}/serie        CSV passo,especie,populacao dos passos já simulados
+ *   GET  /trabalhos/{id}/instantaneo  população e código da espécie em cada célula no fim
+ * </pre>
+ * Um trabalho igual a outro já recebido (mesmo arquivo de mapa, sem alterações desde
+ * então, e mesmas dimensões, parâmetros, semente e passos) não é simulado de novo:
+ * a resposta traz o id do trabalho existente, que pode estar na fila, executando ou
+ * concluído. Os trabalhos que falharam podem ser enviados de novo. Um mapa
+ * inexistente ou ilegível é recusado (400) e, com a fila cheia, o envio é recusado
+ * (503). O mapa só é lido pela thread que executa o trabalho.
+ * * O serviço guarda no máximo {@value #TRABALHOS_GUARDADOS} trabalhos terminados
+ * (concluídos ou falhos), que juntos ocupam no máximo {@value #BYTES_GUARDADOS} bytes
+ * (série e instantâneo, ver {@link TrabalhoSimulacao#getBytesRetidos()}); acima
+ * disso, os mais antigos são esquecidos e as rotas deles respondem 404. Os que estão
+ * executando são limitados pelo número de threads, e os da fila ainda não alocaram
+ * nada.
+ *
+ * @version 1.0
+ */
+public class ServicoSimulacoes
+{
+    // Limites de um trabalho, para que um envio não esgote a memória do serviço.
+    private static final int PASSOS_MAXIMOS = 100_000;
+    private static final int LADO_MAXIMO = 2000;
+
+    // Máximo de trabalhos terminados guardados para consulta. Os que estão na fila ou
+    // executando já são limitados pelo executor e nunca são esquecidos.
+    static final int TRABALHOS_GUARDADOS = 1024;
+
+    // Máximo de bytes ocupados pelos resultados dos trabalhos terminados guardados.
+    static final long BYTES_GUARDADOS = 256L << 20;
+
+    private final HttpServer servidor;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong proximoId = new AtomicLong(1);
+    private final Map<Long, TrabalhoSimulacao> trabalhos = new ConcurrentHashMap<>();
+
+    // Trabalho de cada chave, para servir envios repetidos (acesso sincronizado em this).
+    private final Map<String, TrabalhoSimulacao> porChave = new HashMap<>();
+
+    // Os trabalhos guardados, do mais antigo ao mais novo (acesso sincronizado em this).
+    private final ArrayDeque<TrabalhoSimulacao> ordem = new ArrayDeque<>();
+
+    // Bytes de cada trabalho terminado, pelo id, e a soma deles (acesso sincronizado em this).
+    // Só os trabalhos que já estão aqui podem ser esquecidos.
+    private final Map<Long, Long> bytesTerminados = new HashMap<>();
+    private long totalBytesTerminados;
+
+    /**
+     * Cria o serviço com uma thread de simulação por processador e uma fila de
+     * 16 trabalhos por thread. Nada é aceito até {@link #iniciar()}.
+     * * @param porta A porta local (0 escolhe uma livre).
+     * @throws IOException Se a porta não puder ser aberta.
+     */
+    public ServicoSimulacoes(int porta) throws IOException
+    {
+        this(porta, Runtime.getRuntime().availableProcessors(), 16 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Cria o serviço. Nada é aceito até {@link #iniciar()}.
+     * * @param porta A porta local (0 escolhe uma livre).
+     * @param threads O número máximo de simulações simultâneas.
+     * @param capacidadeFila O número máximo de trabalhos esperando uma thread.
+     * @throws IOException Se a porta não puder ser aberta.
+     */
+    public ServicoSimulacoes(int porta, int threads, int capacidadeFila) throws IOException
+    {
+        if(threads <= 0 || capacidadeFila <= 0) {
+            throw new IllegalArgumentException("Número de threads e capacidade da fila devem ser maiores do que zero.");
+        }
+        AtomicInteger contador = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<Runnable>(capacidadeFila), r -> {
+            Thread t = new Thread(r, "servico-simulacao-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+        servidor.createContext("/trabalhos", this::atender);
+    }
+
+    /**
+     * Começa a aceitar requisições.
+     */
+    public void iniciar()
+    {
+        servidor.start();
+    }
+
+    /**
+     * @return A porta em que o serviço escuta.
+     */
+    public int getPorta()
+    {
+        return servidor.getAddress().getPort();
+    }
+
+    /**
+     * Para de aceitar requisições e interrompe as simulações.
+     */
+    public void fechar()
+    {
+        servidor.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Registra um trabalho e o coloca na fila, ou devolve o trabalho igual já registrado.
+     * O mapa é lido só quando o trabalho começa a executar.
+     * * @param arquivoMapa O arquivo de mapa.
+     * @param depth A profundidade do campo.
+     * @param width A largura do campo.
+     * @param parametros Os parâmetros das espécies.
+     * @param semente A semente do gerador aleatório.
+     * @param passos O número de passos a simular.
+     * @return O trabalho; se a fila estiver cheia, ele volta no estado FALHOU.
+     * @throws IllegalArgumentException Se as dimensões ou os passos estiverem fora dos
+     * limites, ou se o arquivo de mapa não existir ou não puder ser lido.
+     */
+    public TrabalhoSimulacao enviar(String arquivoMapa, int depth, int width, Parametros parametros,
+                                    long semente, int passos)
+    {
+        if(depth <= 0 || width <= 0 || depth > LADO_MAXIMO || width > LADO_MAXIMO) {
+            throw new IllegalArgumentException("Dimensões devem estar entre 1 e " + LADO_MAXIMO + ".");
+        }
+        if(passos < 0 || passos > PASSOS_MAXIMOS) {
+            throw new IllegalArgumentException("O número de passos deve estar entre 0 e " + PASSOS_MAXIMOS + ".");
+        }
+        String chave = parametros.chave() + "|semente=" + semente + "|mapa=" + identificarMapa(arquivoMapa)
+                       + "|dimensoes=" + depth + "x" + width + "|passos=" + passos;
+        TrabalhoSimulacao trabalho;
+        synchronized(this) {
+            TrabalhoSimulacao existente = porChave.get(chave);
+            if(existente != null && existente.getEstado() != TrabalhoSimulacao.Estado.FALHOU) {
+                return existente;
+            }
+            trabalho = new TrabalhoSimulacao(proximoId.getAndIncrement(), chave, arquivoMapa, depth, width,
+                                             parametros, semente, passos);
+            trabalhos.put(trabalho.getId(), trabalho);
+            porChave.put(chave, trabalho);
+            ordem.addLast(trabalho);
+            esquecerTerminados();
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    trabalho.executar();
+                }
+                finally {
+                    terminou(trabalho);
+                }
+            });
+        }
+        catch(RejectedExecutionException e) {
+            trabalho.falhar("Fila cheia");
+            terminou(trabalho);
+        }
+        return trabalho;
+    }
+
+    /**
+     * Contabiliza a memória de um trabalho que terminou e esquece os mais antigos
+     * se os limites foram ultrapassados.
+     */
+    private synchronized void terminou(TrabalhoSimulacao trabalho)
+    {
+        if(trabalhos.get(trabalho.getId()) != trabalho) {
+            return;
+        }
+        long bytes = trabalho.getBytesRetidos();
+        bytesTerminados.put(trabalho.getId(), bytes);
+        totalBytesTerminados += bytes;
+        esquecerTerminados();
+    }
+
+    /**
+     * Identifica o arquivo de mapa pelo caminho canônico, tamanho e data de
+     * modificação, sem lê-lo.
+     * * @param arquivoMapa O arquivo de mapa.
+     * @return A identificação, usada na chave do trabalho.
+     * @throws IllegalArgumentException Se o arquivo não existir ou não puder ser lido.
+     */
+    private static String identificarMapa(String arquivoMapa)
+    {
+        File arquivo = new File(arquivoMapa);
+        if(!arquivo.isFile() || !arquivo.canRead()) {
+            throw new IllegalArgumentException("Arquivo de mapa inexistente ou ilegível: " + arquivoMapa);
+        }
+        try {
+            return arquivo.getCanonicalPath() + ":" + arquivo.length() + ":" + arquivo.lastModified();
+        }
+        catch(IOException e) {
+            throw new IllegalArgumentException("Arquivo de mapa inacessível: " + arquivoMapa);
+        }
+    }
+
+    /**
+     * Esquece os trabalhos terminados mais antigos enquanto houver mais de
+     * TRABALHOS_GUARDADOS trabalhos ou os terminados ocuparem mais de
+     * BYTES_GUARDADOS bytes. Chamado com o monitor de this.
+     */
+    private void esquecerTerminados()
+    {
+        Iterator<TrabalhoSimulacao> iter = ordem.iterator();
+        while((ordem.size() > TRABALHOS_GUARDADOS || totalBytesTerminados > BYTES_GUARDADOS) && iter.hasNext()) {
+            TrabalhoSimulacao antigo = iter.next();
+            Long bytes = bytesTerminados.remove(antigo.getId());
+            if(bytes != null) {
+                totalBytesTerminados -= bytes;
+                iter.remove();
+                trabalhos.remove(antigo.getId());
+                porChave.remove(antigo.getChave(), antigo);
+            }
+        }
+    }
+
+    /**
+     * @param id O identificador do trabalho.
+     * @return O trabalho, ou null se não existir (ou já tiver sido esquecido).
+     */
+    public TrabalhoSimulacao getTrabalho(long id)
+    {
+        return trabalhos.get(id);
+    }
+
+    /**
+     * Trata uma requisição em /trabalhos.
+     */
+    private void atender(HttpExchange troca) throws IOException
+    {
+        try {
+            String[] partes = troca.getRequestURI().getPath().split("/");
+            String metodo = troca.getRequestMethod();
+            if(partes.length == 2 && metodo.equals("POST")) {
+                receberTrabalho(troca);
+                return;
+            }
+            if(partes.length < 3 || partes.length > 4 || !metodo.equals("GET")) {
+                responder(troca, 404, "Rota inexistente\n");
+                return;
+            }
+            TrabalhoSimulacao trabalho;
+            try {
+                trabalho = trabalhos.get(Long.parseLong(partes[2]));
+            }
+            catch(NumberFormatException e) {
+                trabalho = null;
+            }
+            if(trabalho == null) {
+                responder(troca, 404, "Trabalho inexistente\n");
+            }
+            else if(partes.length == 3) {
+                responder(troca, 200, descrever(trabalho));
+            }
+            else if(partes[3].equals("serie")) {
+                responder(troca, 200, serie(trabalho));
+            }
+            else if(partes[3].equals("instantaneo")) {
+                InstantaneoCampo instantaneo = trabalho.getInstantaneo();
+                if(instantaneo == null) {
+                    responder(troca, 409, "estado=" + trabalho.getEstado() + "\n");
+                }
+                else {
+                    responder(troca, 200, instantaneo(instantaneo));
+                }
+            }
+            else {
+                responder(troca, 404, "Rota inexistente\n");
+            }
+        }
+        finally {
+            troca.close();
+        }
+    }
+
+    /**
+     * Lê o corpo de um POST, envia o trabalho e responde o id.
+     */
+    private void receberTrabalho(HttpExchange troca) throws IOException
+    {
+        String corpo = new String(troca.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        String arquivoMapa = "mapa.txt";
+        int depth = 50;
+        int width = 50;
+        long semente = 1L;
+        int passos = -1;
+        Parametros parametros = Parametros.PADRAO;
+        try {
+            for(String campo : corpo.trim().split("&")) {
+                if(campo.isEmpty()) {
+                    continue;
+                }
+                int igual = campo.indexOf('=');
+                if(igual < 0) {
+                    throw new IllegalArgumentException("Campo sem valor: " + campo);
+                }
+                String nome = URLDecoder.decode(campo.substring(0, igual), StandardCharsets.UTF_8);
+                String valor = URLDecoder.decode(campo.substring(igual + 1), StandardCharsets.UTF_8);
+                switch(nome) {
+                    case "mapa":
+                        arquivoMapa = valor;
+                        break;
+                    case "profundidade":
+                        depth = Integer.parseInt(valor);
+                        break;
+                    case "largura":
+                        width = Integer.parseInt(valor);
+                        break;
+                    case "semente":
+                        semente = Long.parseLong(valor);
+                        break;
+                    case "passos":
+                        passos = Integer.parseInt(valor);
+                        break;
+                    default:
+                        parametros = parametros.com(Parametro.valueOf(nome), Double.parseDouble(valor));
+                }
+            }
+            if(passos < 0) {
+                throw new IllegalArgumentException("Campo passos ausente");
+            }
+            TrabalhoSimulacao trabalho = enviar(arquivoMapa, depth, width, parametros, semente, passos);
+            if(trabalho.getEstado() == TrabalhoSimulacao.Estado.FALHOU) {
+                responder(troca, 503, "id=" + trabalho.getId() + "\nerro=" + trabalho.getErro() + "\n");
+            }
+            else {
+                responder(troca, 202, "id=" + trabalho.getId() + "\n");
+            }
+        }
+        catch(IllegalArgumentException e) {
+            responder(troca, 400, "erro=" + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * @return O estado e o progresso de um trabalho.
+     */
+    private static String descrever(TrabalhoSimulacao trabalho)
+    {
+        StringBuilder texto = new StringBuilder();
+        texto.append("id=").append(trabalho.getId()).append('\n');
+        texto.append("estado=").append(trabalho.getEstado()).append('\n');
+        texto.append("passo=").append(Math.max(0, trabalho.getPasso())).append('\n');
+        texto.append("passos=").append(trabalho.getPassos()).append('\n');
+        texto.append("mapa=").append(trabalho.getArquivoMapa()).append('\n');
+        texto.append("semente=").append(trabalho.getSemente()).append('\n');
+        texto.append("parametros=").append(trabalho.getParametros()).append('\n');
+        if(trabalho.getErro() != null) {
+            texto.append("erro=").append(trabalho.getErro()).append('\n');
+        }
+        return texto.toString();
+    }
+
+    /**
+     * @return A série de população dos passos já simulados, em CSV.
+     */
+    private static String serie(TrabalhoSimulacao trabalho)
+    {
+        StringBuilder texto = new StringBuilder("passo,especie,populacao\n");
+        int ultimo = trabalho.getPasso();
+        for(int i = 0; i <= ultimo; i++) {
+            int[] populacao = trabalho.getPopulacao(i);
+            for(Especie especie : Especie.values()) {
+                texto.append(i).append(',').append(especie.name()).append(',')
+                     .append(populacao[especie.getCodigo()]).append('\n');
+            }
+        }
+        return texto.toString();
+    }
+
+    /**
+     * @return A população e uma linha de códigos de espécie por linha do campo.
+     */
+    private static String instantaneo(InstantaneoCampo instantaneo)
+    {
+        StringBuilder texto = new StringBuilder();
+        texto.append("passo=").append(instantaneo.getPasso()).append('\n');
+        for(Especie especie : Especie.values()) {
+            texto.append(especie.name()).append('=').append(instantaneo.getPopulacao(especie)).append('\n');
+        }
+        for(int row = 0; row < instantaneo.getDepth(); row++) {
+            for(int col = 0; col < instantaneo.getWidth(); col++) {
+                texto.append(instantaneo.getCodigo(row, col));
+            }
+            texto.append('\n');
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Envia uma resposta em texto.
+     */
+    private static void responder(HttpExchange troca, int status, String texto) throws IOException
+    {
+        byte[] corpo = texto.getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        troca.sendResponseHeaders(status, corpo.length);
+        try(OutputStream saida = troca.getResponseBody()) {
+            saida.write(corpo);
+        }
+    }
+}
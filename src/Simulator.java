@@ -1,7 +1,9 @@
 import java.util.Random;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.ListIterator;
 import java.util.Collections;
 import java.awt.event.ActionEvent;   
 import java.awt.event.ActionListener;
@@ -11,6 +13,12 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
 
 
 import javax.swing.Timer;
@@ -21,7 +29,9 @@ import javax.swing.Timer;
  * a gestão das listas de atores (animais e plantas), a manipulação dos campos (atual e atualizado)
  * e a coordenação com a interface gráfica.
  * * Esta classe atua como o controlador central, orquestrando a interação entre
- * o modelo (Atores, Field) e a visão (SimulatorView).
+ * o modelo (Atores, Field) e a visão (SimulatorView). Com interface, os passos,
+ * as edições e os reinícios rodam em uma thread própria (o motor), e a janela só
+ * desenha, na thread de eventos, as cópias que recebe no fim de cada quadro.
  * 
  * @author David J. Barnes and Michael Kolling
  * @version 2002-04-09
@@ -36,17 +46,20 @@ public class Simulator
     // Profundidade (altura) padrão para a grade de simulação.
     private static final int DEFAULT_DEPTH = 50;
 
+    // Probabilidades padrão de criação na inicialização; cada simulação pode alterá-las
+    // (ver Parametros).
+
     // Probabilidade de uma raposa ser criada em qualquer posição da grade na inicialização.
-    private static final double FOX_CREATION_PROBABILITY = 0.02;
+    static final double FOX_CREATION_PROBABILITY = 0.02;
 
     // Probabilidade de um coelho ser criado em qualquer posição da grade na inicialização.
-    private static final double RABBIT_CREATION_PROBABILITY = 0.08; 
+    static final double RABBIT_CREATION_PROBABILITY = 0.08; 
 
     // Probabilidade de uma flor ser criada em um terreno de grama na inicialização (15%)
-    private static final double FLOR_CREATION_PROBABILITY = 0.15; 
+    static final double FLOR_CREATION_PROBABILITY = 0.15; 
 
     // Probabilidade de uma vitória-régia ser criada em um terreno de água na inicialização (10%)
-    private static final double VITORIAREGIA_CREATION_PROBABILITY = 0.10;
+    static final double VITORIAREGIA_CREATION_PROBABILITY = 0.10;
     
     // Dimensões do campo de simulação.
     private int depth;
@@ -70,15 +83,107 @@ public class Simulator
     // A interface gráfica que exibe a simulação.
     private SimulatorView view;
 
+    // Buffer da população de cada espécie passada à interface.
+    private final int[] populacaoExibida = new int[Especie.values().length + 1];
+
     // Timer responsável por executar os passos da simulação periodicamente.
     private Timer timer;
 
+    // Com interface, a thread do motor: executa os passos, as edições e os reinícios,
+    // para que a thread de eventos só desenhe; null sem interface.
+    private ExecutorService motor;
+
+    // true enquanto o quadro pedido pelo timer ainda está sendo calculado.
+    private final AtomicBoolean calculandoQuadro = new AtomicBoolean();
+
+    // Com interface, monta as versões do campo entregues à janela, uma por quadro.
+    private PublicadorInstantaneos publicadorJanela;
+
+    // Cópia do terreno entregue à janela (as linhas entregues não mudam mais) e o
+    // intervalo de linhas alteradas desde a última entrega (vazio se a primeira > a última).
+    private Terreno[][] terrenoExibido;
+    private int terrenoAlterado0, terrenoAlterado1 = -1;
+
     // Intervalo de tempo em milissegundos entre cada passo da simulação
     private static final int TIMER_DELAY_MS = 200;
 
+    // Decide quantos passos o timer executa por quadro desenhado.
+    private final ControleVelocidade velocidade = new ControleVelocidade();
+
     // Matriz única que armazena a configuração do terreno
     private Terreno[][] terrenos;
 
+    // Camada de vegetação primitiva; quando não é null, substitui as plantas como atores.
+    private CamadaVegetacao vegetacao;
+
+    // Contexto desta simulação (gerador aleatório próprio, ativado a cada passo).
+    private ContextoSimulacao contexto;
+
+    // Observadores dos eventos de cada passo.
+    private ListaObservadores observadores;
+
+    // Atalho usado no laço principal: null quando não há observadores.
+    private ObservadorSimulacao observador;
+
+    // Diário de passos para recuperação após falhas (null se desativado).
+    private DiarioPassos diario;
+
+    // Gravador dos quadros de ocupação para reprodução posterior (null se desativado).
+    private GravadorExecucao gravador;
+
+    // As métricas publicadas por JMX, ou null se desativadas.
+    private MetricasSimulacao metricas;
+
+    // O exportador da série de população, ou null se desativado.
+    private ExportadorPopulacao exportador;
+
+    // O mapa de ocupação acumulado pelo laço de atores, ou null se desativado.
+    private MapaOcupacao ocupacao;
+
+    // O exportador de instantâneos por coluna, ou null se desativado.
+    private ExportadorInstantaneos instantaneos;
+
+    // A pirâmide de contagens por bloco usada pela visão afastada, ou null se desativada.
+    private PiramideDensidade densidade;
+
+    // O histórico compacto da população, ou null se desativado.
+    private HistoricoPopulacao historico;
+
+    // A pipeline que entrega os passos concluídos a outra thread, ou null se desativada.
+    private PipelinePassos pipeline;
+
+    // O publicador das versões somente leitura do campo, ou null se desativado.
+    private PublicadorInstantaneos publicador;
+
+    // O índice espacial do início do passo, ou null se nenhum animal enxerga além das adjacências.
+    private IndiceEspacial indice;
+
+    // Edições do operador à espera do próximo intervalo entre passos. Qualquer thread
+    // pode acrescentar; só a thread da simulação retira.
+    private final ConcurrentLinkedQueue<ComandoEdicao> edicoes = new ConcurrentLinkedQueue<>();
+
+    // Máximo de edições aplicadas de uma vez (o resto fica para o próximo passo).
+    private static final int EDICOES_POR_LOTE = 4096;
+
+    // Quantas simulações ainda usam os atores do último fork (ela mesma incluída);
+    // null se todos os atores desta simulação são próprios.
+    private AtomicInteger donosDoEstado;
+
+    // Cópia própria de cada ator compartilhado já copiado por esta simulação (a cópia
+    // também aponta para si mesma); null se todos os atores são próprios.
+    private IdentityHashMap<Ator, Ator> copias;
+
+    // Se true, um ator compartilhado lido pelo campo ou pela lista é copiado (laço de
+    // atores e edições); senão, é devolvido como está (leitura).
+    private boolean copiando;
+
+    // Indica que a matriz de terrenos pode estar sendo usada por outra simulação.
+    private boolean terrenoCompartilhado;
+
+    // O arquivo de mapa recarregado a cada reset; null quando o terreno foi
+    // fornecido pronto e deve ser mantido.
+    private String arquivoMapa = "mapa.txt";
+
     // O tipo de terreno padrão utilizado na inicialização (Grama).
     private static final Terreno TERRENO_PADRAO = new Grama();
 
@@ -107,6 +212,19 @@ public class Simulator
      * @param width A largura do campo. Deve ser maior que zero.
      */
     public Simulator(int depth, int width)
+    {
+        this(depth, width, true);
+    }
+
+    /**
+     * Cria um simulador com as dimensões especificadas, com ou sem interface gráfica.
+     * Sem interface, a simulação avança apenas por chamadas a simulateOneStep,
+     * o que permite executar várias simulações na mesma JVM.
+     * * @param depth A profundidade (altura) do campo. Deve ser maior que zero.
+     * @param width A largura do campo. Deve ser maior que zero.
+     * @param comInterface true para criar a janela da simulação.
+     */
+    public Simulator(int depth, int width, boolean comInterface)
     {
         if(width <= 0 || depth <= 0) {
             System.out.println("As dimensoes devem ser maiores do que zero.");
@@ -117,6 +235,7 @@ public class Simulator
 
         this.depth = depth;
         this.width = width;
+        contexto = new ContextoSimulacao(new GeradorAleatorio());
 
         // 1. Cria a matriz de terrenos que será compartilhada
         terrenos = new Terreno[depth][width];
@@ -125,30 +244,289 @@ public class Simulator
         // 2. Cria as listas de atores
         atores = new ArrayList<Ator>();
         newAtores = new ArrayList<Ator>();
+        observadores = new ListaObservadores();
 
         // 3. Cria os DOIS campos, passando a MESMA matriz de terrenos
         field = new Field(depth, width, terrenos);
         updatedField = new Field(depth, width, terrenos);
 
-        // 4. Configura a GUI e o Timer
-        view = new SimulatorView(this, depth, width);
-        timer = new Timer(TIMER_DELAY_MS, new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                simulateOneStep();
-            }
-        });
+        // 4. Configura a thread do motor e o Timer; a janela só é criada depois do
+        //    estado inicial, para que nenhum pedido dela chegue antes
+        if(comInterface) {
+            ativarDensidade();
+            publicadorJanela = new PublicadorInstantaneos(depth, width) {
+                @Override
+                public void fimPasso(Simulator sim)
+                {
+                    // Só marca os blocos; a versão é montada no fim do quadro (mostrarEstado)
+                }
+            };
+            adicionarObservador(publicadorJanela);
+            motor = Executors.newSingleThreadExecutor(tarefa -> {
+                Thread thread = new Thread(tarefa, "motor-simulacao");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        timer = criarTimer();
         
         // Prepara o estado inicial válido.
         reset();
+        if(comInterface) {
+            view = new SimulatorView(this, depth, width);
+            naSimulacao(this::mostrarEstado);
+        }
+    }
+
+    /**
+     * Cria uma simulação sem interface sobre um terreno já carregado, com um
+     * gerador aleatório de semente fixa. O terreno é compartilhado, não copiado:
+     * várias simulações podem usá-lo ao mesmo tempo, e reset() não recarrega o mapa.
+     * Se esta simulação alterar o terreno, ela passa a usar uma cópia própria.
+     * * @param terrenos A matriz de terrenos (não pode estar vazia).
+     * @param semente A semente do gerador aleatório.
+     */
+    Simulator(Terreno[][] terrenos, long semente)
+    {
+        this(terrenos, semente, Parametros.PADRAO);
+    }
+
+    /**
+     * Cria uma simulação sem interface sobre um terreno já carregado, com semente
+     * fixa e parâmetros próprios. Os parâmetros já valem para a população inicial.
+     * * @param terrenos A matriz de terrenos (não pode estar vazia).
+     * @param semente A semente do gerador aleatório.
+     * @param parametros Os parâmetros das espécies.
+     */
+    Simulator(Terreno[][] terrenos, long semente, Parametros parametros)
+    {
+        depth = terrenos.length;
+        width = terrenos[0].length;
+        this.terrenos = terrenos;
+        terrenoCompartilhado = true;
+        arquivoMapa = null;
+        contexto = new ContextoSimulacao(new GeradorAleatorio(semente));
+        contexto.setParametros(parametros);
+
+        atores = new ArrayList<Ator>();
+        newAtores = new ArrayList<Ator>();
+        observadores = new ListaObservadores();
+
+        field = new Field(depth, width, terrenos);
+        updatedField = new Field(depth, width, terrenos);
+        timer = criarTimer();
+
+        reset();
+    }
+
+    /**
+     * Cria uma simulação derivada (fork), sem interface, no mesmo estado da original.
+     * Só a lista de referências aos atores é copiada: as linhas do campo atual e da
+     * vegetação, os próprios atores e o terreno passam a ser compartilhados, e cada
+     * simulação copia uma linha ou um ator apenas quando for alterá-lo (ver
+     * {@link #proprio(Ator)}). O campo atualizado só é criado no primeiro passo.
+     * * @param pai A simulação original.
+     */
+    private Simulator(Simulator pai)
+    {
+        depth = pai.depth;
+        width = pai.width;
+        step = pai.step;
+        terrenos = pai.terrenos;
+        terrenoCompartilhado = true;
+        arquivoMapa = pai.arquivoMapa;
+        atores = new ArrayList<Ator>(pai.atores);
+        field = pai.field.compartilhar();
+        if(pai.vegetacao != null) {
+            vegetacao = pai.vegetacao.copiar();
+        }
+        field.setVegetacao(vegetacao);
+        copias = new IdentityHashMap<Ator, Ator>();
+        field.setCopiaDeAtor(this::proprio);
+        donosDoEstado = pai.donosDoEstado;
+        newAtores = new ArrayList<Ator>();
+        observadores = new ListaObservadores();
+        contexto = new ContextoSimulacao(new GeradorAleatorio());
+        contexto.getGerador().setEstado(pai.contexto.getGerador().getEstado());
+        contexto.setParametros(pai.contexto.getParametros());
+        timer = criarTimer();
+    }
+
+    /**
+     * Cria o timer da execução automática. Ele começa disparando a cada
+     * TIMER_DELAY_MS milissegundos (um passo por disparo); depois o intervalo e o
+     * número de passos por disparo seguem o {@link ControleVelocidade}. O disparo,
+     * na thread de eventos, só acorda a thread da simulação; se o quadro anterior
+     * ainda estiver sendo calculado, o disparo é ignorado.
+     * * @return O timer (parado).
+     */
+    private Timer criarTimer()
+    {
+        return new Timer(TIMER_DELAY_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(calculandoQuadro.compareAndSet(false, true)) {
+                    naSimulacao(Simulator.this::executarQuadro);
+                }
+                timer.setDelay(velocidade.getAtrasoMs());
+            }
+        });
+    }
+
+    /**
+     * Executa uma tarefa na thread da simulação: com interface, na thread do motor,
+     * depois das tarefas já pedidas a ela e sem esperar; sem interface, na hora, na
+     * thread que chama. A janela pede assim os quadros, os reinícios, as edições e
+     * a troca do modelo de vegetação, que não podem acontecer no meio de um passo.
+     * * @param tarefa A tarefa.
+     */
+    void naSimulacao(Runnable tarefa)
+    {
+        if(motor == null) {
+            tarefa.run();
+        }
+        else {
+            motor.execute(tarefa);
+        }
+    }
+
+    /**
+     * Executa os passos de um quadro, sem exibir os intermediários, e entrega o
+     * estado final à janela, que o desenha na thread de eventos enquanto esta
+     * thread já calcula o quadro seguinte. A população de cada passo intermediário
+     * ainda vai para o gráfico, que assim recebe uma amostra por passo em qualquer
+     * velocidade. Os tempos medidos alimentam o controle de velocidade.
+     */
+    private void executarQuadro()
+    {
+        try {
+            int passos = velocidade.passosNoQuadro(System.nanoTime());
+            if(passos > 0) {
+                long inicio = System.nanoTime();
+                for(int i = 0; i < passos; i++) {
+                    avancarPasso();
+                    if(i < passos - 1 && view != null) {
+                        contarExibida();
+                        view.registrarPasso(step, populacaoExibida);
+                    }
+                }
+                long fimPassos = System.nanoTime();
+                velocidade.registrarPassos(passos, fimPassos - inicio);
+                mostrarEstado();
+                velocidade.registrarDesenho(System.nanoTime() - fimPassos);
+            }
+        }
+        finally {
+            calculandoQuadro.set(false);
+        }
+    }
+
+    /**
+     * Retorna o controle de velocidade da execução automática (passos por segundo,
+     * máximo ou passos por quadro).
+     * * @return O controle de velocidade.
+     */
+    public ControleVelocidade getControleVelocidade()
+    {
+        return velocidade;
+    }
+
+    /**
+     * Cria uma simulação independente a partir do estado atual desta, para explorar
+     * alternativas sem repetir os passos já executados. O fork não tem interface
+     * gráfica nem observadores, e pode ser executado em outra thread, em paralelo
+     * com esta simulação e com outros forks.
+     * * O fork copia só a lista de referências aos atores e os ponteiros das linhas:
+     * as linhas do campo atual e da camada de vegetação são copiadas por cada
+     * simulação na primeira escrita, e cada ator é copiado quando a simulação o
+     * altera pela primeira vez (no laço de atores, ao ser lido do campo por um
+     * predador ou por uma edição). Depois do fork as duas simulações tratam os atores
+     * existentes como somente leitura; a última que ainda os usa passa a alterá-los
+     * sem copiar. O terreno continua compartilhado até que uma das simulações o altere.
+     * * Um fork de uma simulação que já copiou atores desde o fork anterior copia
+     * antes o restante do estado dela, para que as cópias já feitas não sejam
+     * compartilhadas.
+     * Deve ser chamado entre passos, na thread que executa esta simulação.
+     * * @return A nova simulação.
+     */
+    public Simulator fork()
+    {
+        if(copias != null && !copias.isEmpty()) {
+            tornarProprio();
+        }
+        if(copias == null) {
+            donosDoEstado = new AtomicInteger(1);
+            copias = new IdentityHashMap<Ator, Ator>();
+            field.setCopiaDeAtor(this::proprio);
+        }
+        donosDoEstado.incrementAndGet();
+        terrenoCompartilhado = true;
+        return new Simulator(this);
+    }
+
+    /**
+     * Troca um ator que pode ainda ser compartilhado com outras simulações pela cópia
+     * própria desta. Fora do laço de atores e das edições, apenas devolve a cópia já
+     * feita (ou o próprio ator, se ele ainda não foi copiado), sem copiar nada.
+     * Atores mortos nunca são alterados e não são copiados; se nenhuma outra simulação
+     * usa mais os atores do fork, o próprio ator passa a ser a cópia.
+     * * @param ator Um ator da lista ou do campo atual.
+     * @return O ator que esta simulação pode alterar.
+     */
+    private Ator proprio(Ator ator)
+    {
+        Ator copia = copias.get(ator);
+        if(copia == null) {
+            if(!copiando || !ator.isAlive()) {
+                return ator;
+            }
+            copia = donosDoEstado.get() == 1 ? ator : Especie.de(ator).copiar(ator);
+            copias.put(ator, copia);
+            copias.put(copia, copia);
+        }
+        return copia;
+    }
+
+    /**
+     * Copia de uma vez todos os atores e linhas do campo ainda compartilhados e
+     * deixa de compartilhar os atores do fork.
+     */
+    private void tornarProprio()
+    {
+        contexto.ativar();
+        copiando = true;
+        for(ListIterator<Ator> iter = atores.listIterator(); iter.hasNext(); ) {
+            iter.set(proprio(iter.next()));
+        }
+        field.resolverAtores();
+        copiando = false;
+        liberarAtores();
+    }
+
+    /**
+     * Deixa de usar os atores do fork: a partir daqui todos os atores desta
+     * simulação são próprios.
+     */
+    private void liberarAtores()
+    {
+        copias = null;
+        field.setCopiaDeAtor(null);
+        if(updatedField != null) {
+            updatedField.setCopiaDeAtor(null);
+        }
+        donosDoEstado.decrementAndGet();
+        donosDoEstado = null;
     }
     
 
     /**
      * Inicia ou retoma a execução automática da simulação.
-     * O timer começará a disparar eventos que chamam simulateOneStep.
+     * O timer começará a disparar eventos que pedem um quadro de passos à thread
+     * da simulação.
      */
     public void startSimulation()
     {
+        velocidade.pausar();
+        timer.setInitialDelay(0);
         timer.start();
     }
     
@@ -161,16 +539,66 @@ public class Simulator
         timer.stop();
     }
 
+    /**
+     * Ativa ou desativa a camada de vegetação primitiva.
+     * Com a camada ativa, flores e vitórias-régias deixam de ser atores individuais
+     * e passam a ser avançadas em bloco pela {@link CamadaVegetacao}.
+     * A simulação é reiniciada para que as plantas sejam criadas no modelo escolhido.
+     * Com interface, deve ser chamado na thread do motor (ver {@link #naSimulacao}).
+     * * @param ativa true para usar a camada de vegetação.
+     */
+    public void setCamadaVegetacao(boolean ativa)
+    {
+        if(ativa && vegetacao == null) {
+            vegetacao = new CamadaVegetacao(depth, width, terrenos, contexto.getGerador().nextLong());
+            vegetacao.setParametros(contexto.getParametros());
+        }
+        else if(!ativa) {
+            vegetacao = null;
+        }
+        garantirCampoAtualizado();
+        field.setVegetacao(vegetacao);
+        updatedField.setVegetacao(vegetacao);
+        if(view != null) {
+            view.setCamadaVegetacao(ativa);
+        }
+        resetSimulation();
+    }
+
+    /**
+     * Define os parâmetros das espécies (idades, probabilidades, ninhadas, valores
+     * de alimento e probabilidades de criação) desta simulação. Os novos valores
+     * valem a partir do próximo passo; as probabilidades de criação, a partir do
+     * próximo reset.
+     * * @param parametros Os parâmetros.
+     */
+    public void setParametros(Parametros parametros)
+    {
+        contexto.setParametros(parametros);
+        if(vegetacao != null) {
+            vegetacao.setParametros(parametros);
+        }
+    }
+
+    /**
+     * @return Os parâmetros das espécies desta simulação.
+     */
+    public Parametros getParametros()
+    {
+        return contexto.getParametros();
+    }
+
     /**
      * Reinicia a simulação para o estado inicial.
      * Para o timer, recarrega o mapa, repopula o campo e atualiza a visualização.
+     * Com interface, deve ser chamado na thread do motor (ver {@link #naSimulacao}).
      */
     public void resetSimulation()
     {
         timer.stop(); // Para o timer
         reset();      // Chama o reset lógico
         // Atualiza a view para mostrar o estado resetado
-        view.showStatus(step, field); 
+        mostrarEstado(); 
     }
 
     
@@ -182,138 +610,1299 @@ public class Simulator
      */
     public void simulateOneStep()
     {
+        avancarPasso();
+
+        // Exibe o novo campo na tela
+        mostrarEstado();
+    }
+
+    /**
+     * Executa um passo da simulação sem atualizar a tela.
+     */
+    private void avancarPasso()
+    {
+        EventosJfr.Passo eventoPasso = new EventosJfr.Passo();
+        eventoPasso.begin();
+        contexto.ativar();
+        garantirCampoAtualizado();
         step++;
         newAtores.clear();
+        if(observador != null) {
+            observador.inicioPasso(this);
+        }
+        drenarEdicoes();
+        indexar();
         
         // Permite que todos os atores ajam
-        for(Iterator<Ator> iter = atores.iterator(); iter.hasNext(); ) {
+        EventosJfr.LacoAtores eventoLaco = new EventosJfr.LacoAtores();
+        eventoLaco.begin();
+        int atoresNoInicio = atores.size();
+        int indice = 0;
+        copiando = copias != null;
+        for(ListIterator<Ator> iter = atores.listIterator(); iter.hasNext(); indice++) {
             Ator ator = iter.next();
+            if(copiando) {
+                ator = proprio(ator);
+                iter.set(ator);
+            }
             if(ator.isAlive()) {
-                ator.acao(field, updatedField, newAtores);
+                if(observador == null) {
+                    ator.acao(field, updatedField, newAtores);
+                }
+                else {
+                    acaoObservada(indice, ator);
+                }
+                if(ocupacao != null) {
+                    ocupacao.registrar(ator);
+                }
             }else {
+                if(observador != null) {
+                    observador.remocao(ator);
+                }
                 iter.remove();   
             }
         }
+        if(eventoLaco.shouldCommit()) {
+            eventoLaco.passo = step;
+            eventoLaco.atores = atoresNoInicio;
+            eventoLaco.removidos = atoresNoInicio - atores.size();
+            eventoLaco.commit();
+        }
+
         // Adiciona animais recém-nascidos à lista principal
+        EventosJfr.InclusaoNascidos eventoNascidos = new EventosJfr.InclusaoNascidos();
+        eventoNascidos.begin();
         atores.addAll(newAtores);
+        if(eventoNascidos.shouldCommit()) {
+            eventoNascidos.passo = step;
+            eventoNascidos.nascidos = newAtores.size();
+            eventoNascidos.commit();
+        }
+
+        // A vegetação em camada avança depois que os coelhos comeram
+        if(vegetacao != null) {
+            vegetacao.avancar(ocupacao == null ? null : ocupacao.gradesCamada(),
+                              densidade == null ? null : densidade.blocosCamada());
+            if(densidade != null) {
+                densidade.fimCamada();
+            }
+        }
+        if(ocupacao != null) {
+            ocupacao.fimPasso();
+        }
         
+        copiando = false;
+
         // Troca o campo e o updatedField para o próximo passo
-        Field temp = field;
-        field = updatedField;
-        updatedField = temp;
-        updatedField.clear();
+        trocarCampos();
+        if(copias != null) {
+            // A lista e o novo campo atual só têm cópias próprias e atores novos
+            liberarAtores();
+        }
+        if(observador != null) {
+            observador.fimPasso(this);
+        }
+        if(eventoPasso.shouldCommit()) {
+            eventoPasso.passo = step;
+            eventoPasso.atores = atores.size();
+            eventoPasso.nascidos = newAtores.size();
+            eventoPasso.depth = depth;
+            eventoPasso.width = width;
+            eventoPasso.commit();
+        }
+    }
 
-        // Exibe o novo campo na tela
-        view.showStatus(step, field);
+    /**
+     * Reconstrói o índice espacial quando algum raio de percepção é maior que 1;
+     * com os raios padrão, nenhum índice é mantido e os animais só olham as adjacências.
+     */
+    private void indexar()
+    {
+        Parametros parametros = contexto.getParametros();
+        if(parametros.getInt(Parametro.RAPOSA_RAIO_PERCEPCAO) <= 1
+                && parametros.getInt(Parametro.COELHO_RAIO_PERCEPCAO) <= 1) {
+            indice = null;
+        }
+        else {
+            if(indice == null) {
+                indice = new IndiceEspacial(depth, width);
+            }
+            indice.construir(atores, field, vegetacao);
+        }
+        field.setIndice(indice);
+        updatedField.setIndice(indice);
     }
-        
+
     /**
-     * Reseta a simulação para uma posição inicial.
-     * Limpa os atores, recarrega o terreno do arquivo e popula o campo aleatoriamente.
+     * Executa a ação de um ator informando aos observadores o que aconteceu no turno.
+     * Nascimentos são detectados pelo crescimento de newAtores; movimento e morte,
+     * comparando o estado do ator antes e depois da ação.
+     * * @param indice A posição do ator na lista no início do passo.
+     * @param ator O ator que vai agir.
      */
-    public void reset()
+    private void acaoObservada(int indice, Ator ator)
     {
-        step = 0;
-        atores.clear();
-        field.clear();
-        updatedField.clear();
-        loadTerrenoFromFile("mapa.txt");
-        populate(field);
-        
+        Location antes = ator.getLocation();
+        int nascidos = newAtores.size();
+        observador.inicioTurno(indice, ator);
+        ator.acao(field, updatedField, newAtores);
+        for(int i = nascidos; i < newAtores.size(); i++) {
+            observador.nascimento(ator, newAtores.get(i));
+        }
+        if(!ator.isAlive()) {
+            observador.morte(ator);
+        }
+        else if(ator.getLocation() != antes) {
+            observador.movimento(ator, antes, ator.getLocation());
+        }
+        observador.fimTurno(indice, ator);
     }
-    
+
     /**
-     * Popula o campo com raposas, coelhos e vegetação.
-     * A criação de cada ator depende das probabilidades definidas e da
-     * compatibilidade com o terreno da posição (ex: Vitória-Régia apenas na água).
-     * * @param field O campo a ser populado.
+     * Pede uma edição do mundo. Pode ser chamado de qualquer thread, sem travas: o
+     * comando entra em uma fila e é aplicado no início do próximo passo (ou na
+     * próxima chamada de {@link #aplicarEdicoes()}).
+     * * @param comando A edição.
      */
-    private void populate(Field field)
+    public void editar(ComandoEdicao comando)
     {
-        Random rand = new Random();
-        field.clear(); // Limpa apenas os atores, não o terreno
-        
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
+        edicoes.add(comando);
+    }
 
-                
-                // --- LÓGICA DOS ANIMAIS ---
-                if(rand.nextDouble() <= FOX_CREATION_PROBABILITY) {
-                    Fox fox = new Fox(true);
-                    // Só coloca a raposa se o terreno for habitável por ela
-                    placeIfHabitable(field, fox, row, col);
-                }
-                else if(rand.nextDouble() <= RABBIT_CREATION_PROBABILITY) {
-                    Rabbit rabbit = new Rabbit(true);
-                    // Só coloca o coelho se o terreno for habitável por ele
-                    placeIfHabitable(field, rabbit, row, col);
-                }
-                                
-                // Se o local ainda estiver vazio (nenhum animal foi criado nele)...
-                if (field.getObjectAt(row, col) == null) {
-                    
-                    // Tentamos plantar uma Flor.
-                    if (rand.nextDouble() <= FLOR_CREATION_PROBABILITY) {
-                        Flor flor = new Flor();
-                        placeIfHabitable(field, flor, row, col);
-                    }
-                    
-                    // Tentamos plantar uma VitoriaRegia.
-                    if (rand.nextDouble() <= VITORIAREGIA_CREATION_PROBABILITY) {
-                        VitoriaRegia vixRegia = new VitoriaRegia();
-                        placeIfHabitable(field, vixRegia, row, col);
-                    }
-                }
-                // --- FIM DA LÓGICA DAS PLANTAS ---
+    /**
+     * Aplica agora as edições pendentes e atualiza a tela, sem avançar um passo
+     * (ex: edições feitas na janela com a simulação parada). Deve ser chamado pela
+     * thread da simulação, entre dois passos (com interface, a thread do motor).
+     * * @return O número de edições aplicadas.
+     */
+    public int aplicarEdicoes()
+    {
+        contexto.ativar();
+        garantirCampoAtualizado();
+        int aplicadas = drenarEdicoes();
+        if(aplicadas > 0) {
+            if(publicador != null) {
+                publicador.publicar(this);
             }
+            mostrarEstado();
         }
-        Collections.shuffle(atores);
+        return aplicadas;
     }
 
     /**
-     * Inicializa a matriz de terrenos preenchendo todas as posições com o terreno padrão (Grama).
+     * Retira e aplica as edições pendentes, até EDICOES_POR_LOTE, informando cada
+     * uma aos observadores.
+     * * @return O número de edições aplicadas.
      */
-    private void initializeTerrenos()
+    private int drenarEdicoes()
     {
-        for (int row = 0; row < depth; row++) {
-            for (int col = 0; col < width; col++) {
-                terrenos[row][col] = TERRENO_PADRAO;
+        int aplicadas = 0;
+        ComandoEdicao comando;
+        while(aplicadas < EDICOES_POR_LOTE && (comando = edicoes.poll()) != null) {
+            if(observador != null) {
+                observador.edicao(comando);
             }
+            aplicarEdicao(comando, observador);
+            aplicadas++;
         }
+        return aplicadas;
     }
 
     /**
-     * Tenta colocar um ator numa posição do campo se o terreno for habitável
-     * e a posição estiver vazia. Centraliza a lógica de adição para evitar
-     * duplicação em `populate()`.
-     *
-     * @param field O campo onde colocar o ator.
-     * @param ator O ator a ser colocado (Animal ou Vegetacao).
-     * @param row A coordenada da linha.
-     * @param col A coordenada da coluna.
+     * Aplica uma edição ao campo atual, à lista de atores e à camada de vegetação.
+     * Atores colocados entram no fim da lista (e agem já no passo seguinte);
+     * atores apagados são marcados como mortos, tirados do campo e retirados da
+     * lista no próximo passo, como os que morrem no próprio turno. As posições
+     * fora do campo são ignoradas. Nada aqui usa o gerador aleatório, para que a
+     * reaplicação pelo diário chegue ao mesmo estado.
+     * * @param comando A edição.
+     * @param avisar O observador dos atores colocados e apagados, ou null (reprodução do diário).
      */
-    private void placeIfHabitable(Field field, Ator ator, int row, int col)
+    void aplicarEdicao(ComandoEdicao comando, ObservadorSimulacao avisar)
     {
-        Terreno terreno = field.getTerrenoAt(row, col);
-        if (terreno.ehHabitavel(ator) && field.getObjectAt(row, col) == null) {
-            atores.add(ator);
-            ator.setLocation(new Location(row, col));
-            field.place(ator, row, col);
+        copiando = copias != null;
+        try {
+            aplicarNoRetangulo(comando, avisar);
+        }
+        finally {
+            copiando = false;
         }
     }
 
     /**
-     * Carrega a configuração do terreno a partir de um arquivo de texto.
-     * O arquivo deve conter números inteiros separados por espaço, onde cada número
-     * corresponde a um tipo de terreno (0=Grama, 1=Água, 2=Pedra).
-     * Se o arquivo não for encontrado ou contiver erros, o terreno padrão é mantido.
-     * * @param fileName O caminho ou nome do arquivo de mapa (ex: "mapa.txt").
+     * Aplica uma edição, já limitada ao retângulo dentro do campo.
      */
-    public void loadTerrenoFromFile(String fileName)
+    private void aplicarNoRetangulo(ComandoEdicao comando, ObservadorSimulacao avisar)
     {
-        // Reseta o terreno para o padrão primeiro
-        initializeTerrenos(); 
+        int linha0 = Math.max(0, comando.getLinha0());
+        int coluna0 = Math.max(0, comando.getColuna0());
+        int linha1 = Math.min(depth - 1, comando.getLinha1());
+        int coluna1 = Math.min(width - 1, comando.getColuna1());
+        if(linha0 > linha1 || coluna0 > coluna1) {
+            return;
+        }
+        switch(comando.getTipo()) {
+            case COLOCAR:
+                colocar(comando.getEspecie(), linha0, coluna0, avisar);
+                break;
+            case APAGAR:
+                apagar(linha0, coluna0, linha1, coluna1, avisar);
+                break;
+            case TERRENO:
+                mudarTerreno(comando.getTerreno(), linha0, coluna0, linha1, coluna1, avisar);
+                break;
+        }
+    }
+
+    /**
+     * Coloca um recém-nascido da espécie na célula, se ela estiver livre e o terreno permitir.
+     */
+    private void colocar(Especie especie, int row, int col, ObservadorSimulacao avisar)
+    {
+        if(field.getObjectAt(row, col) != null) {
+            return;
+        }
+        if(vegetacao != null && (especie == Especie.FLOR || especie == Especie.VITORIA_REGIA)) {
+            byte tipo = especie == Especie.FLOR ? CamadaVegetacao.FLOR : CamadaVegetacao.VITORIA_REGIA;
+            if(vegetacao.plantar(tipo, row, col) && densidade != null) {
+                densidade.ajustarCamada(row, col, tipo, 1);
+            }
+            return;
+        }
+        Ator ator = especie.criar();
+        if(!field.getTerrenoAt(row, col).ehHabitavel(ator)) {
+            return;
+        }
+        Location onde = new Location(row, col);
+        ator.setLocation(onde);
+        field.place(ator, onde);
+        atores.add(ator);
+        if(copias != null) {
+            copias.put(ator, ator);
+        }
+        if(avisar != null) {
+            avisar.nascimento(null, ator);
+        }
+    }
+
+    /**
+     * Apaga os atores e as plantas da camada de vegetação de um retângulo (já dentro
+     * do campo).
+     */
+    private void apagar(int linha0, int coluna0, int linha1, int coluna1, ObservadorSimulacao avisar)
+    {
+        for(Ator ator : atoresEm(linha0, coluna0, linha1, coluna1)) {
+            tirarDoCampo(ator);
+            matar(ator, avisar);
+        }
+        if(vegetacao != null) {
+            for(int row = linha0; row <= linha1; row++) {
+                for(int col = coluna0; col <= coluna1; col++) {
+                    if(vegetacao.getTipo(row, col) != CamadaVegetacao.VAZIO) {
+                        removerDaCamada(row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Muda o terreno de um retângulo (já dentro do campo) e despeja quem não puder
+     * mais ficar nele. Nada é reconstruído por inteiro: o resumo de terreno da
+     * camada de vegetação é recalculado só no retângulo, e a pirâmide de densidade
+     * e as versões publicadas recebem apenas os despejos, como eventos. A matriz
+     * de terrenos é copiada antes se ainda for compartilhada com outras simulações.
+     * * Regras de despejo, aplicadas depois de todo o retângulo ter o terreno novo,
+     * aos atores na ordem de {@link #atoresEm(int, int, int, int)}: um animal que não pode ficar no
+     * terreno vai para a primeira célula vizinha livre e habitável para ele, na
+     * ordem de leitura (linha de cima para baixo, coluna da esquerda para a
+     * direita), e morre se não houver nenhuma; uma planta (Flor ou VitoriaRegia)
+     * morre; uma planta da camada de vegetação em terreno incompatível é removida.
+     */
+    private void mudarTerreno(Terreno terreno, int linha0, int coluna0, int linha1, int coluna1,
+                              ObservadorSimulacao avisar)
+    {
+        garantirTerrenoProprio();
+        for(int row = linha0; row <= linha1; row++) {
+            Arrays.fill(terrenos[row], coluna0, coluna1 + 1, terreno);
+        }
+        marcarTerreno(linha0, linha1);
+        if(vegetacao != null) {
+            vegetacao.atualizarTerreno(terrenos, linha0, coluna0, linha1, coluna1);
+        }
+        for(Ator ator : atoresEm(linha0, coluna0, linha1, coluna1)) {
+            if(!terreno.ehHabitavel(ator)) {
+                despejar(ator, avisar);
+            }
+        }
+        if(vegetacao != null) {
+            for(int row = linha0; row <= linha1; row++) {
+                for(int col = coluna0; col <= coluna1; col++) {
+                    if(!vegetacao.compativel(row, col)) {
+                        removerDaCamada(row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retorna os atores vivos cuja posição está no retângulo: primeiro os da grade
+     * do campo atual, em ordem de leitura, e depois os cobertos por outro na mesma
+     * célula (uma planta sob um animal, que voltaria ao campo no passo seguinte),
+     * também em ordem de leitura. O custo depende da área do retângulo e do número
+     * de atores cobertos no passo, não do total de atores. O campo atualizado não é
+     * consultado: entre dois passos ele está vazio.
+     * * Logo depois de um fork, enquanto a lista ainda tem atores compartilhados, ela
+     * é percorrida, na sua ordem, para que os atores devolvidos (e só eles) sejam
+     * trocados nela pelas cópias próprias desta simulação.
+     */
+    private List<Ator> atoresEm(int linha0, int coluna0, int linha1, int coluna1)
+    {
+        if(copias != null) {
+            return atoresDaListaEm(linha0, coluna0, linha1, coluna1);
+        }
+        List<Ator> dentro = new ArrayList<Ator>();
+        for(int row = linha0; row <= linha1; row++) {
+            for(int col = coluna0; col <= coluna1; col++) {
+                Ator ator = field.getObjectAt(row, col);
+                if(ator != null && ator.isAlive() && ator.getLocation().getRow() == row
+                   && ator.getLocation().getCol() == col) {
+                    dentro.add(ator);
+                }
+            }
+        }
+        List<Ator> cobertos = new ArrayList<Ator>();
+        field.cobertosEm(linha0, coluna0, linha1, coluna1, cobertos);
+        for(Ator ator : cobertos) {
+            Location loc = ator.getLocation();
+            if(ator.isAlive() && loc.getRow() >= linha0 && loc.getRow() <= linha1
+               && loc.getCol() >= coluna0 && loc.getCol() <= coluna1 && field.getObjectAt(loc) != ator) {
+                dentro.add(ator);
+            }
+        }
+        return dentro;
+    }
+
+    /**
+     * Versão de {@link #atoresEm(int, int, int, int)} que percorre a lista de atores,
+     * usada enquanto ela ainda tem atores compartilhados com um fork.
+     */
+    private List<Ator> atoresDaListaEm(int linha0, int coluna0, int linha1, int coluna1)
+    {
+        List<Ator> dentro = new ArrayList<Ator>();
+        for(ListIterator<Ator> iter = atores.listIterator(); iter.hasNext(); ) {
+            Ator ator = iter.next();
+            Location loc = ator.getLocation();
+            if(ator.isAlive() && loc != null && loc.getRow() >= linha0 && loc.getRow() <= linha1
+               && loc.getCol() >= coluna0 && loc.getCol() <= coluna1) {
+                if(copias != null) {
+                    ator = proprio(ator);
+                    iter.set(ator);
+                }
+                dentro.add(ator);
+            }
+        }
+        return dentro;
+    }
+
+    /**
+     * Tira um ator do campo atual, se ele ainda ocupa a própria posição.
+     */
+    private void tirarDoCampo(Ator ator)
+    {
+        if(field.getObjectAt(ator.getLocation()) == ator) {
+            field.place(null, ator.getLocation());
+        }
+    }
+
+    /**
+     * Tira um ator de uma célula onde ele não pode mais ficar: um animal vai para a
+     * primeira vizinha livre e habitável (na ordem de leitura); os demais morrem.
+     */
+    private void despejar(Ator ator, ObservadorSimulacao avisar)
+    {
+        tirarDoCampo(ator);
+        int row = ator.getLocation().getRow();
+        int col = ator.getLocation().getCol();
+        if(ator instanceof Animal) {
+            for(int r = Math.max(0, row - 1); r <= Math.min(depth - 1, row + 1); r++) {
+                for(int c = Math.max(0, col - 1); c <= Math.min(width - 1, col + 1); c++) {
+                    if(field.getObjectAt(r, c) == null && field.getTerrenoAt(r, c).ehHabitavel(ator)) {
+                        Location de = ator.getLocation();
+                        Location para = new Location(r, c);
+                        ator.setLocation(para);
+                        field.place(ator, para);
+                        if(avisar != null) {
+                            avisar.movimento(ator, de, para);
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+        matar(ator, avisar);
+    }
+
+    /**
+     * Marca como morto um ator já tirado do campo por uma edição.
+     */
+    private void matar(Ator ator, ObservadorSimulacao avisar)
+    {
+        if(ator instanceof Animal) {
+            ((Animal) ator).setDead();
+        }
+        else if(ator instanceof Vegetacao) {
+            ((Vegetacao) ator).setDead();
+        }
+        if(avisar != null) {
+            avisar.morte(ator);
+        }
+    }
+
+    /**
+     * Remove a planta da camada de vegetação de uma célula, descontando-a da pirâmide.
+     */
+    private void removerDaCamada(int row, int col)
+    {
+        if(densidade != null) {
+            densidade.ajustarCamada(row, col, vegetacao.getTipo(row, col), -1);
+        }
+        vegetacao.remover(row, col);
+    }
+
+    /**
+     * Cria o campo atualizado de um fork, adiado até o primeiro passo ou edição
+     * para que o fork não precise alocar uma grade inteira.
+     */
+    private void garantirCampoAtualizado()
+    {
+        if(updatedField == null) {
+            updatedField = new Field(depth, width, terrenos);
+            updatedField.setVegetacao(vegetacao);
+            updatedField.setObservador(observador);
+        }
+    }
+
+    /**
+     * Garante que a matriz de terrenos pertença só a esta simulação antes de alterá-la.
+     */
+    private void garantirTerrenoProprio()
+    {
+        garantirCampoAtualizado();
+        if(!terrenoCompartilhado) {
+            return;
+        }
+        Terreno[][] copia = new Terreno[depth][];
+        for(int row = 0; row < depth; row++) {
+            copia[row] = terrenos[row].clone();
+        }
+        terrenos = copia;
+        terrenoCompartilhado = false;
+        field.setTerrenos(terrenos);
+        updatedField.setTerrenos(terrenos);
+    }
+
+    /**
+     * Prepara a simulação para ter todo o seu estado substituído (restauração de
+     * checkpoint ou reset): deixa de usar os atores do fork sem copiá-los, já que
+     * o chamador esvazia a lista e o campo, e garante o terreno próprio.
+     */
+    void garantirEstadoProprio()
+    {
+        garantirTerrenoProprio();
+        if(copias != null) {
+            liberarAtores();
+        }
+    }
+
+    /**
+     * Entrega o estado atual à interface gráfica, se houver uma: uma versão somente
+     * leitura do campo ({@link InstantaneoCampo}, que só copia os blocos alterados
+     * desde o quadro anterior), a cópia do terreno e, se a janela estiver na visão
+     * afastada, uma cópia da pirâmide de densidade. A janela desenha a partir dessas
+     * cópias, sem ler o campo, os atores nem a pirâmide da simulação. Deve ser
+     * chamado na thread da simulação.
+     */
+    void mostrarEstado()
+    {
+        if(view != null) {
+            PiramideDensidade copia = null;
+            if(view.isAfastada()) {
+                densidade.sincronizar(this);
+                copia = view.copiarDensidade(densidade);
+            }
+            view.entregar(publicadorJanela.publicar(this), terrenoParaJanela(), copia);
+        }
+    }
+
+    /**
+     * Devolve a cópia do terreno para a janela, copiando de novo só as linhas
+     * alteradas desde a última entrega (as linhas já entregues nunca são alteradas).
+     */
+    private Terreno[][] terrenoParaJanela()
+    {
+        if(terrenoAlterado0 <= terrenoAlterado1) {
+            Terreno[][] copia = terrenoExibido == null ? new Terreno[depth][] : terrenoExibido.clone();
+            for(int row = terrenoAlterado0; row <= terrenoAlterado1; row++) {
+                copia[row] = terrenos[row].clone();
+            }
+            terrenoExibido = copia;
+            terrenoAlterado0 = 0;
+            terrenoAlterado1 = -1;
+        }
+        return terrenoExibido;
+    }
+
+    /**
+     * Marca linhas do terreno como alteradas, para a próxima entrega à janela.
+     */
+    private void marcarTerreno(int linha0, int linha1)
+    {
+        if(terrenoAlterado0 > terrenoAlterado1) {
+            terrenoAlterado0 = linha0;
+            terrenoAlterado1 = linha1;
+        }
+        else {
+            terrenoAlterado0 = Math.min(terrenoAlterado0, linha0);
+            terrenoAlterado1 = Math.max(terrenoAlterado1, linha1);
+        }
+    }
+
+    /**
+     * Conta a população de cada espécie para a interface, pela pirâmide de
+     * densidade quando ela está ativa.
+     */
+    private void contarExibida()
+    {
+        if(densidade != null) {
+            densidade.sincronizar(this);
+            densidade.totais(populacaoExibida);
+        }
+        else {
+            contarPopulacao(populacaoExibida);
+        }
+    }
+
+    /**
+     * Troca o campo atual pelo campo atualizado e limpa o antigo para o próximo passo.
+     */
+    private void trocarCampos()
+    {
+        EventosJfr.TrocaCampos evento = new EventosJfr.TrocaCampos();
+        evento.begin();
+        Field temp = field;
+        field = updatedField;
+        updatedField = temp;
+        updatedField.clear();
+        if(evento.shouldCommit()) {
+            evento.passo = step;
+            evento.depth = depth;
+            evento.width = width;
+            evento.commit();
+        }
+    }
+
+    /**
+     * Adiciona um observador dos eventos de cada passo.
+     * * @param novo O observador.
+     */
+    public void adicionarObservador(ObservadorSimulacao novo)
+    {
+        observadores.adicionar(novo);
+        atualizarObservador();
+    }
+
+    /**
+     * Remove um observador adicionado anteriormente.
+     * * @param antigo O observador.
+     */
+    public void removerObservador(ObservadorSimulacao antigo)
+    {
+        observadores.remover(antigo);
+        atualizarObservador();
+    }
+
+    /**
+     * Atualiza o atalho do laço principal e o observador dos campos.
+     */
+    private void atualizarObservador()
+    {
+        observador = observadores.isEmpty() ? null : observadores;
+        field.setObservador(observador);
+        if(updatedField != null) {
+            updatedField.setObservador(observador);
+        }
+    }
+
+    /**
+     * Passa a gravar um diário dos eventos de cada passo no diretório fornecido.
+     * Junto com o último checkpoint, o diário permite recuperar a simulação após
+     * uma falha perdendo no máximo os passos ainda não gravados.
+     * * @param diretorio O diretório dos segmentos do diário.
+     * @throws IOException Se o diretório não puder ser preparado.
+     */
+    public void ativarDiario(String diretorio) throws IOException
+    {
+        desativarDiario();
+        diario = new DiarioPassos(new File(diretorio).toPath(), contexto);
+        adicionarObservador(diario);
+    }
+
+    /**
+     * Para de gravar o diário, esperando a gravação dos passos pendentes.
+     */
+    public void desativarDiario()
+    {
+        if(diario != null) {
+            removerObservador(diario);
+            diario.fechar();
+            diario = null;
+        }
+    }
+
+    /**
+     * Passa a gravar a ocupação do campo a cada passo, para que a execução possa
+     * ser revista depois com {@link SimulatorView#SimulatorView(LeitorGravacao)}.
+     * O estado atual é gravado como primeiro quadro.
+     * * @param arquivo O arquivo da gravação.
+     * @throws IOException Se o arquivo não puder ser criado.
+     */
+    public void iniciarGravacao(String arquivo) throws IOException
+    {
+        pararGravacao();
+        gravador = new GravadorExecucao(new File(arquivo).toPath(), field);
+        gravador.gravar(step, field);
+        adicionarObservador(gravador);
+    }
+
+    /**
+     * Para a gravação e escreve o índice de quadros no arquivo.
+     */
+    public void pararGravacao()
+    {
+        if(gravador != null) {
+            removerObservador(gravador);
+            try {
+                gravador.fechar();
+            }
+            catch(IOException e) {
+                System.err.println("Erro ao fechar a gravação: " + e.getMessage());
+            }
+            gravador = null;
+        }
+    }
+
+    /**
+     * Recupera uma simulação interrompida: restaura o checkpoint e reaplica os
+     * passos gravados no diário depois dele.
+     * * @param checkpoint O arquivo do último checkpoint.
+     * @param diretorioDiario O diretório do diário.
+     * @return O número de passos reaplicados a partir do diário.
+     * @throws IOException Se os arquivos não puderem ser lidos.
+     */
+    public int recuperar(String checkpoint, String diretorioDiario) throws IOException
+    {
+        timer.stop();
+        contexto.ativar();
+        Checkpoint.restaurar(this, new File(checkpoint).toPath());
+        int passos = DiarioPassos.reproduzir(this, new File(diretorioDiario).toPath());
+        invalidarDerivados();
+        mostrarEstado();
+        return passos;
+    }
         
+    /**
+     * Reseta a simulação para uma posição inicial.
+     * Limpa os atores, recarrega o terreno do arquivo e popula o campo aleatoriamente.
+     */
+    public void reset()
+    {
+        contexto.ativar();
+        garantirCampoAtualizado();
+        if(copias != null) {
+            liberarAtores(); // A lista e o campo são esvaziados abaixo
+        }
+        step = 0;
+        atores.clear();
+        field.clear();
+        updatedField.clear();
+        if(arquivoMapa != null) {
+            loadTerrenoFromFile(arquivoMapa);
+        }
+        if(vegetacao != null) {
+            vegetacao.clear();
+            vegetacao.atualizarTerreno(terrenos);
+        }
+        populate(field);
+        invalidarDerivados();
+    }
+    
+    /**
+     * Popula o campo com raposas, coelhos e vegetação.
+     * A criação de cada ator depende das probabilidades definidas e da
+     * compatibilidade com o terreno da posição (ex: Vitória-Régia apenas na água).
+     * * @param field O campo a ser populado.
+     */
+    private void populate(Field field)
+    {
+        Random rand = contexto.getGerador();
+        Parametros parametros = contexto.getParametros();
+        field.clear(); // Limpa apenas os atores, não o terreno
+        
+        for(int row = 0; row < field.getDepth(); row++) {
+            for(int col = 0; col < field.getWidth(); col++) {
+
+                
+                // --- LÓGICA DOS ANIMAIS ---
+                if(rand.nextDouble() <= parametros.get(Parametro.CRIACAO_RAPOSA)) {
+                    Fox fox = new Fox(true);
+                    // Só coloca a raposa se o terreno for habitável por ela
+                    placeIfHabitable(field, fox, row, col);
+                }
+                else if(rand.nextDouble() <= parametros.get(Parametro.CRIACAO_COELHO)) {
+                    Rabbit rabbit = new Rabbit(true);
+                    // Só coloca o coelho se o terreno for habitável por ele
+                    placeIfHabitable(field, rabbit, row, col);
+                }
+                                
+                // Se o local ainda estiver vazio (nenhum animal foi criado nele)...
+                if (field.getObjectAt(row, col) == null) {
+                    
+                    // Tentamos plantar uma Flor.
+                    if (rand.nextDouble() <= parametros.get(Parametro.CRIACAO_FLOR)) {
+                        if (vegetacao != null) {
+                            vegetacao.plantar(CamadaVegetacao.FLOR, row, col);
+                        } else {
+                            Flor flor = new Flor();
+                            placeIfHabitable(field, flor, row, col);
+                        }
+                    }
+                    
+                    // Tentamos plantar uma VitoriaRegia.
+                    if (rand.nextDouble() <= parametros.get(Parametro.CRIACAO_VITORIA_REGIA)) {
+                        if (vegetacao != null) {
+                            vegetacao.plantar(CamadaVegetacao.VITORIA_REGIA, row, col);
+                        } else {
+                            VitoriaRegia vixRegia = new VitoriaRegia();
+                            placeIfHabitable(field, vixRegia, row, col);
+                        }
+                    }
+                }
+                // --- FIM DA LÓGICA DAS PLANTAS ---
+            }
+        }
+        Collections.shuffle(atores, rand);
+    }
+
+    /**
+     * Inicializa a matriz de terrenos preenchendo todas as posições com o terreno padrão (Grama).
+     */
+    private void initializeTerrenos()
+    {
+        for (int row = 0; row < depth; row++) {
+            for (int col = 0; col < width; col++) {
+                terrenos[row][col] = TERRENO_PADRAO;
+            }
+        }
+    }
+
+    /**
+     * Tenta colocar um ator numa posição do campo se o terreno for habitável
+     * e a posição estiver vazia. Centraliza a lógica de adição para evitar
+     * duplicação em `populate()`.
+     *
+     * @param field O campo onde colocar o ator.
+     * @param ator O ator a ser colocado (Animal ou Vegetacao).
+     * @param row A coordenada da linha.
+     * @param col A coordenada da coluna.
+     */
+    private void placeIfHabitable(Field field, Ator ator, int row, int col)
+    {
+        Terreno terreno = field.getTerrenoAt(row, col);
+        if (terreno.ehHabitavel(ator) && field.getObjectAt(row, col) == null) {
+            atores.add(ator);
+            ator.setLocation(new Location(row, col));
+            field.place(ator, row, col);
+        }
+    }
+
+    /**
+     * Salva o estado completo da simulação (passo, terreno, atores, vegetação e
+     * estado do gerador aleatório) em um arquivo de checkpoint binário.
+     * * @param fileName O caminho do arquivo a ser escrito.
+     * @throws IOException Se o arquivo não puder ser escrito.
+     */
+    public void salvarCheckpoint(String fileName) throws IOException
+    {
+        Checkpoint.salvar(this, new File(fileName).toPath());
+        // Só depois que o checkpoint está no disco o diário pode apagar os segmentos
+        if(diario != null) {
+            diario.marcarCheckpoint(step);
+        }
+    }
+
+    /**
+     * Passa a gravar a série de população (passo, nascimentos, mortes e população
+     * de cada espécie) em um arquivo, em uma thread de fundo que nunca bloqueia os
+     * passos (ver {@link ExportadorPopulacao}). Substitui uma exportação anterior.
+     * * @param arquivo O arquivo de destino.
+     * @param formato O formato (ex: FormatoSerie.csv() ou FormatoSerie.binario()).
+     * @throws IOException Se o arquivo não puder ser criado.
+     */
+    public void ativarExportacao(String arquivo, FormatoSerie formato) throws IOException
+    {
+        desativarExportacao();
+        exportador = new ExportadorPopulacao(new File(arquivo).toPath(), formato, 4096);
+        adicionarObservador(exportador);
+    }
+
+    /**
+     * Termina a exportação, esperando a escrita dos registros pendentes.
+     * * @throws IOException Se ocorreu algum erro de escrita.
+     */
+    public void desativarExportacao() throws IOException
+    {
+        if(exportador != null) {
+            removerObservador(exportador);
+            ExportadorPopulacao antigo = exportador;
+            exportador = null;
+            antigo.fechar();
+        }
+    }
+
+    /**
+     * Passa a gravar, a cada intervalo passos, os dados de cada ator em arquivos
+     * por coluna (ver {@link ExportadorInstantaneos}). Substitui uma exportação anterior.
+     * * @param diretorio O diretório de destino.
+     * @param intervalo Grava os passos múltiplos deste número.
+     * @param compactado true para comprimir os arquivos com gzip.
+     * @return O exportador, para consultar erros de escrita.
+     */
+    public ExportadorInstantaneos ativarInstantaneos(String diretorio, int intervalo, boolean compactado)
+    {
+        desativarInstantaneos();
+        instantaneos = new ExportadorInstantaneos(new File(diretorio).toPath(), intervalo);
+        instantaneos.setCompactado(compactado);
+        adicionarObservador(instantaneos);
+        return instantaneos;
+    }
+
+    /**
+     * Deixa de gravar instantâneos.
+     */
+    public void desativarInstantaneos()
+    {
+        if(instantaneos != null) {
+            removerObservador(instantaneos);
+            instantaneos = null;
+        }
+    }
+
+    /**
+     * Passa a publicar cada passo concluído em uma {@link PipelinePassos}, para que
+     * consumidores em outra thread (ex: {@link ExportadorInstantaneos}) processem o
+     * passo N enquanto o passo N+1 é calculado. Substitui uma pipeline anterior.
+     * * @param esperar true para a simulação esperar um consumidor atrasado; false
+     * para descartar os passos que ele não pegou a tempo.
+     * @return A pipeline, onde os consumidores devem ser iniciados.
+     * @throws IOException O erro de algum consumidor da pipeline anterior, se houve.
+     */
+    public PipelinePassos ativarPipeline(boolean esperar) throws IOException
+    {
+        desativarPipeline();
+        pipeline = new PipelinePassos(esperar);
+        adicionarObservador(pipeline);
+        return pipeline;
+    }
+
+    /**
+     * Deixa de publicar os passos e fecha a pipeline, esperando os consumidores
+     * terminarem o último passo publicado.
+     * * @throws IOException O erro de algum consumidor, se houve.
+     */
+    public void desativarPipeline() throws IOException
+    {
+        if(pipeline != null) {
+            removerObservador(pipeline);
+            PipelinePassos antiga = pipeline;
+            pipeline = null;
+            antiga.fechar();
+        }
+    }
+
+    /**
+     * Passa a manter a pirâmide de contagens por bloco usada para desenhar o mundo
+     * afastado (ver {@link PiramideDensidade}). Se já estava ativa, devolve a mesma.
+     * * @return A pirâmide.
+     */
+    public PiramideDensidade ativarDensidade()
+    {
+        if(densidade == null) {
+            densidade = new PiramideDensidade(depth, width);
+            adicionarObservador(densidade);
+        }
+        return densidade;
+    }
+
+    /**
+     * Deixa de manter a pirâmide de densidade.
+     */
+    public void desativarDensidade()
+    {
+        if(densidade != null) {
+            removerObservador(densidade);
+            densidade = null;
+        }
+    }
+
+    /**
+     * Passa a acumular o histórico compacto da população de cada espécie, uma
+     * amostra por passo (ver {@link HistoricoPopulacao}). Se a simulação for
+     * reiniciada ou restaurada, o histórico recomeça no novo passo. Se já estava
+     * ativo, devolve o mesmo histórico.
+     * * @return O histórico, que continua recebendo amostras a cada passo.
+     */
+    public HistoricoPopulacao ativarHistorico()
+    {
+        if(historico == null) {
+            historico = new HistoricoPopulacao();
+            adicionarObservador(historico);
+        }
+        return historico;
+    }
+
+    /**
+     * Deixa de acumular o histórico (o histórico já devolvido é mantido).
+     */
+    public void desativarHistorico()
+    {
+        if(historico != null) {
+            removerObservador(historico);
+            historico = null;
+        }
+    }
+
+    /**
+     * Marca a pirâmide de densidade para reconstrução, faz a próxima entrega à
+     * janela montar o campo e copiar o terreno do zero e publica uma versão do campo
+     * montada do zero depois de uma mudança do estado inteiro (reinício, checkpoint).
+     */
+    private void invalidarDerivados()
+    {
+        if(densidade != null) {
+            densidade.invalidar();
+        }
+        if(publicadorJanela != null) {
+            publicadorJanela.invalidar();
+        }
+        marcarTerreno(0, depth - 1);
+        if(publicador != null) {
+            publicador.invalidar();
+            publicador.publicar(this);
+        }
+    }
+
+    /**
+     * Passa a publicar, no fim de cada passo, uma versão somente leitura do campo
+     * e da população que pode ser lida de qualquer thread sem travas (ver
+     * {@link PublicadorInstantaneos}). O estado atual é publicado imediatamente.
+     * Se já estava ativo, devolve o mesmo publicador.
+     * * @return O publicador; os leitores chamam getAtual() para obter a última versão.
+     */
+    public PublicadorInstantaneos ativarPublicacao()
+    {
+        if(publicador == null) {
+            publicador = new PublicadorInstantaneos(depth, width);
+            adicionarObservador(publicador);
+            publicador.publicar(this);
+        }
+        return publicador;
+    }
+
+    /**
+     * Deixa de publicar versões do campo (a última publicada continua válida).
+     */
+    public void desativarPublicacao()
+    {
+        if(publicador != null) {
+            removerObservador(publicador);
+            publicador = null;
+        }
+    }
+
+    /**
+     * Passa a acumular o mapa de ocupação de cada espécie (ver {@link MapaOcupacao}).
+     * Se já estava ativo, devolve o mesmo mapa.
+     * * @return O mapa, que continua sendo atualizado a cada passo.
+     */
+    public MapaOcupacao ativarOcupacao()
+    {
+        if(ocupacao == null) {
+            ocupacao = new MapaOcupacao(depth, width);
+        }
+        return ocupacao;
+    }
+
+    /**
+     * Deixa de acumular o mapa de ocupação (o mapa já devolvido é mantido).
+     */
+    public void desativarOcupacao()
+    {
+        ocupacao = null;
+    }
+
+    /**
+     * Passa a medir o motor da simulação e publica as métricas como um MBean
+     * (ver {@link MetricasSimulacao}). Se já estavam ativas, devolve as mesmas.
+     * * @param nome O nome da simulação no JMX (ex: "principal").
+     * @return As métricas, para ajustar o nível de amostragem ou iniciar o relatório periódico.
+     * @throws JMException Se o MBean não puder ser registrado.
+     */
+    public MetricasSimulacao ativarMetricas(String nome) throws JMException
+    {
+        if(metricas == null) {
+            MetricasSimulacao novas = new MetricasSimulacao();
+            novas.registrar(nome);
+            metricas = novas;
+            adicionarObservador(metricas);
+        }
+        return metricas;
+    }
+
+    /**
+     * Deixa de medir o motor e remove o MBean.
+     */
+    public void desativarMetricas()
+    {
+        if(metricas != null) {
+            removerObservador(metricas);
+            metricas.fechar();
+            metricas = null;
+        }
+    }
+
+    /**
+     * Restaura um estado salvo por {@link #salvarCheckpoint(String)}.
+     * A simulação é pausada e continua, a partir do passo salvo, exatamente
+     * como teria continuado a execução original.
+     * * @param fileName O caminho do arquivo de checkpoint.
+     * @throws IOException Se o arquivo não puder ser lido ou for incompatível.
+     */
+    public void carregarCheckpoint(String fileName) throws IOException
+    {
+        timer.stop();
+        contexto.ativar();
+        Checkpoint.restaurar(this, new File(fileName).toPath());
+        invalidarDerivados();
+        mostrarEstado();
+    }
+
+    /**
+     * Conta os atores vivos e as plantas da camada de vegetação por espécie.
+     * A camada mantém suas contagens a cada mudança, então só a lista de atores
+     * é percorrida.
+     * * @param contagens Recebe a população de cada espécie, indexada pelo código.
+     */
+    public void contarPopulacao(int[] contagens)
+    {
+        Arrays.fill(contagens, 0);
+        for(Ator ator : atores) {
+            if(ator.isAlive()) {
+                contagens[Especie.codigoDe(ator)]++;
+            }
+        }
+        if(vegetacao != null) {
+            contagens[Especie.FLOR.getCodigo()] += vegetacao.contar(CamadaVegetacao.FLOR);
+            contagens[Especie.VITORIA_REGIA.getCodigo()] += vegetacao.contar(CamadaVegetacao.VITORIA_REGIA);
+        }
+    }
+
+    /**
+     * Retorna o passo atual da simulação.
+     * * @return O número de passos executados desde o último reset.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Retorna o campo com o estado atual da simulação.
+     * * @return O campo atual.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * @return A lista de atores desta simulação (uso interno do pacote).
+     */
+    List<Ator> getAtores()
+    {
+        return atores;
+    }
+
+    /**
+     * @return A matriz de terrenos desta simulação (uso interno do pacote).
+     */
+    Terreno[][] getTerrenos()
+    {
+        return terrenos;
+    }
+
+    /**
+     * @return O campo onde o próximo estado é construído (uso interno do pacote).
+     */
+    Field getUpdatedField()
+    {
+        return updatedField;
+    }
+
+    /**
+     * Conclui um passo reconstruído a partir do diário: avança a vegetação e troca
+     * os campos, como no final de simulateOneStep, mas sem notificar observadores.
+     * * @param step O número do passo reconstruído.
+     */
+    void concluirPassoReproduzido(int step)
+    {
+        if(vegetacao != null) {
+            vegetacao.avancar();
+        }
+        trocarCampos();
+        this.step = step;
+    }
+
+    /**
+     * @return A camada de vegetação, ou null se estiver desativada.
+     */
+    CamadaVegetacao getCamadaVegetacao()
+    {
+        return vegetacao;
+    }
+
+    /**
+     * @return O contexto (gerador aleatório) desta simulação.
+     */
+    ContextoSimulacao getContexto()
+    {
+        return contexto;
+    }
+
+    /**
+     * Substitui o estado dinâmico da simulação. Usado pela restauração de checkpoints:
+     * os atores já devem estar posicionados no campo atual.
+     * * @param step O passo restaurado.
+     * @param vegetacao A camada de vegetação restaurada, ou null.
+     */
+    void restaurarEstado(int step, CamadaVegetacao vegetacao)
+    {
+        this.step = step;
+        this.vegetacao = vegetacao;
+        if(vegetacao != null) {
+            vegetacao.setParametros(contexto.getParametros());
+            vegetacao.atualizarTerreno(terrenos);
+        }
+        field.setVegetacao(vegetacao);
+        updatedField.setVegetacao(vegetacao);
+        updatedField.clear();
+        newAtores.clear();
+    }
+
+    /**
+     * Retorna o código numérico (o mesmo do arquivo de mapa) de um terreno.
+     * * @param terreno O terreno.
+     * @return O código do terreno, ou -1 se o tipo não estiver mapeado.
+     */
+    static int codigoDoTerreno(Terreno terreno)
+    {
+        for(java.util.Map.Entry<Integer, Terreno> entrada : TERRENO_MAP.entrySet()) {
+            if(entrada.getValue().getClass() == terreno.getClass()) {
+                return entrada.getKey();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retorna o terreno associado a um código do arquivo de mapa.
+     * * @param codigo O código numérico.
+     * @return O terreno correspondente, ou null se o código for desconhecido.
+     */
+    static Terreno terrenoDoCodigo(int codigo)
+    {
+        return TERRENO_MAP.get(codigo);
+    }
+
+    /**
+     * Carrega a configuração do terreno a partir de um arquivo de texto.
+     * O arquivo deve conter números inteiros separados por espaço, onde cada número
+     * corresponde a um tipo de terreno (0=Grama, 1=Água, 2=Pedra).
+     * Se o arquivo não for encontrado ou contiver erros, o terreno padrão é mantido.
+     * * @param fileName O caminho ou nome do arquivo de mapa (ex: "mapa.txt").
+     */
+    public void loadTerrenoFromFile(String fileName)
+    {
+        EventosJfr.CarregarTerreno evento = new EventosJfr.CarregarTerreno();
+        evento.begin();
+
+        // Reseta o terreno para o padrão primeiro
+        garantirTerrenoProprio();
+        initializeTerrenos(); 
+        lerMapa(terrenos, fileName, 0);
+
+        if(evento.shouldCommit()) {
+            evento.arquivo = fileName;
+            evento.depth = depth;
+            evento.width = width;
+            evento.commit();
+        }
+    }
+
+    /**
+     * Cria uma matriz de terrenos a partir de um arquivo de mapa, sem criar simulação.
+     * Usado para carregar o terreno uma única vez e compartilhá-lo entre várias
+     * simulações (ver {@link EnsembleSimulacoes}).
+     * * @param fileName O caminho ou nome do arquivo de mapa.
+     * @param depth A profundidade (altura) do campo.
+     * @param width A largura do campo.
+     * @return A matriz de terrenos; as posições não descritas no arquivo ficam com Grama.
+     */
+    static Terreno[][] carregarTerreno(String fileName, int depth, int width)
+    {
+        return carregarTerreno(fileName, 0, depth, width);
+    }
+
+    /**
+     * Cria a matriz de terrenos de uma faixa de linhas do arquivo de mapa, sem ler
+     * o mapa inteiro para a memória (ver {@link TrabalhadorFaixa}).
+     * * @param fileName O caminho ou nome do arquivo de mapa.
+     * @param primeiraLinha A linha do mapa que vira a linha 0 da matriz.
+     * @param linhas O número de linhas da faixa.
+     * @param width A largura do campo.
+     * @return A matriz de terrenos; as posições não descritas no arquivo ficam com Grama.
+     */
+    static Terreno[][] carregarTerreno(String fileName, int primeiraLinha, int linhas, int width)
+    {
+        Terreno[][] terrenos = new Terreno[linhas][width];
+        for(Terreno[] linha : terrenos) {
+            java.util.Arrays.fill(linha, TERRENO_PADRAO);
+        }
+        lerMapa(terrenos, fileName, primeiraLinha);
+        return terrenos;
+    }
+
+    /**
+     * Preenche a matriz de terrenos com os códigos lidos do arquivo de mapa.
+     * * @param terrenos A matriz a preencher.
+     * @param fileName O caminho ou nome do arquivo de mapa.
+     * @param primeiraLinha A linha do arquivo que vai para a linha 0 da matriz.
+     */
+    private static void lerMapa(Terreno[][] terrenos, String fileName, int primeiraLinha)
+    {
+        int depth = terrenos.length;
+        int width = depth > 0 ? terrenos[0].length : 0;
         File file = new File(fileName);
 
         // Usando "try-with-resources" para garantir que o 'br' será fechado automaticamente.
@@ -321,6 +1910,11 @@ public class Simulator
             
             String linha;
             int row = 0;
+            // Pula as linhas acima da faixa
+            int pular = primeiraLinha;
+            while(pular > 0 && br.readLine() != null) {
+                pular--;
+            }
             
             // Lê uma linha do arquivo 
             // Continua enquanto a linha não for nula e não passamos da altura do mapa
@@ -341,7 +1935,7 @@ public class Simulator
                     } catch (NumberFormatException e) {
                         // Se o texto no arquivo não for um número válido,
                         // apenas ignoramos e mantemos o terreno padrão (Grama).
-                        System.err.println("Formato inválido no mapa em " + row + "," + col);
+                        System.err.println("Formato inválido no mapa em " + (primeiraLinha + row) + "," + col);
                     }
                 }
                 row++;
@@ -1,6 +1,13 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * Uma visualização gráfica da grade de simulação.
@@ -8,6 +15,11 @@ import javax.swing.*;
  * Ela utiliza cores específicas definidas pelos próprios atores e terrenos.
  * * Além da grade, esta classe gerencia os controles da simulação (botões) e
  * exibe as estatísticas populacionais e o contador de passos.
+ * * A janela não lê o estado da simulação: a thread do motor entrega, no fim de
+ * cada quadro, cópias somente leitura do campo, do terreno e (na visão afastada)
+ * da pirâmide de densidade ({@link #entregar}), que são desenhadas na thread de
+ * eventos enquanto o motor calcula o quadro seguinte. Os botões, a caixa da camada
+ * de vegetação e as edições do mouse são pedidos à thread do motor.
  * 
  * @author David J. Barnes and Michael Kolling
  * @version 2002-04-23
@@ -25,6 +37,98 @@ public class SimulatorView extends JFrame
     // Referência ao controlador da simulação para vincular os botões de ação.
     private Simulator simulator;
 
+    // Velocidade real da simulação (passos por segundo medidos).
+    private JLabel velocidadeMedida;
+
+    // Ferramenta de edição do mouse (null na reprodução): navegar, colocar uma
+    // espécie ou apagar.
+    private JComboBox<String> ferramenta;
+    // Liga e desliga a camada de vegetação primitiva (null na reprodução).
+    private JCheckBox camadaVegetacao;
+
+    private static final String[] FERRAMENTAS = {"Navegar", "Raposa", "Coelho", "Flor", "Vitória-régia", "Apagar",
+                                                 "Grama", "Água", "Pedra"};
+    private static final Especie[] ESPECIES_FERRAMENTA = {null, Especie.RAPOSA, Especie.COELHO,
+                                                          Especie.FLOR, Especie.VITORIA_REGIA, null,
+                                                          null, null, null};
+    private static final Terreno[] TERRENOS_FERRAMENTA = {null, null, null, null, null, null,
+                                                          new Grama(), new Agua(), new Pedra()};
+
+    // Raio, em células, da região apagada ou pintada a cada ponto das ferramentas
+    // Apagar e de terreno.
+    private static final int RAIO_PINCEL = 2;
+
+    // No modo de reprodução: a gravação, o timer de reprodução, o controle de
+    // posição e o índice do quadro exibido.
+    private LeitorGravacao gravacao;
+    private Timer reproducao;
+    private JSlider posicao;
+    private int quadroAtual;
+
+    // Quadros por segundo iniciais da reprodução.
+    private static final int QUADROS_POR_SEGUNDO = 25;
+
+    // Gráfico da população, o último passo incluído nele e o buffer das contagens.
+    private GraficoPopulacao grafico;
+    private long ultimoPassoGrafico = -1;
+    private final int[] populacaoGrafico = new int[Especie.values().length + 1];
+
+    // Dimensões do gráfico em pixels e número de passos exibidos.
+    private static final int COLUNAS_GRAFICO = 300;
+    private static final int ALTURA_GRAFICO = 100;
+    private static final int PASSOS_NO_GRAFICO = 1500;
+
+    /**
+     * Um passo entregue pela simulação para ser desenhado. Nada nele muda depois
+     * da entrega.
+     */
+    private static final class QuadroSimulacao
+    {
+        final InstantaneoCampo campo;
+        final Terreno[][] terrenos;
+        // Cópia da pirâmide de densidade, ou null fora da visão afastada.
+        final PiramideDensidade densidade;
+
+        QuadroSimulacao(InstantaneoCampo campo, Terreno[][] terrenos, PiramideDensidade densidade)
+        {
+            this.campo = campo;
+            this.terrenos = terrenos;
+            this.densidade = densidade;
+        }
+    }
+
+    /**
+     * A população de um passo à espera de entrar no gráfico.
+     */
+    private static final class Amostra
+    {
+        final long passo;
+        final int[] populacao;
+
+        Amostra(long passo, int[] populacao)
+        {
+            this.passo = passo;
+            this.populacao = populacao;
+        }
+    }
+
+    // O que está sendo exibido: o quadro da simulação ou o quadro da gravação.
+    private QuadroSimulacao quadroSimulacao;
+    private byte[] quadroExibido;
+
+    // Último quadro entregue pela simulação e ainda não exibido, ou null.
+    private final AtomicReference<QuadroSimulacao> pendente = new AtomicReference<>();
+
+    // População dos passos entregues, à espera do gráfico (a simulação acrescenta,
+    // a thread de eventos retira).
+    private final ConcurrentLinkedQueue<Amostra> amostras = new ConcurrentLinkedQueue<>();
+
+    // Cópias da pirâmide de densidade fora de uso, reaproveitadas nas próximas entregas.
+    private final ConcurrentLinkedQueue<PiramideDensidade> copiasLivres = new ConcurrentLinkedQueue<>();
+
+    // true na visão afastada, quando os quadros precisam trazer a pirâmide.
+    private volatile boolean afastada;
+
     /**
      * Cria uma visualização com a largura e altura fornecidas.
      * Inicializa a interface gráfica, incluindo o painel do campo, 
@@ -36,15 +140,6 @@ public class SimulatorView extends JFrame
     public SimulatorView(Simulator sim, int height, int width)
     {
         this.simulator = sim;
-        stats = new FieldStats();
-
-        setTitle("Simulacão Ecológica");
-        stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
-        population = new JLabel(POPULATION_PREFIX, JLabel.CENTER);
-        
-        setLocation(100, 50);
-        
-        fieldView = new FieldView(height, width);
 
         // Configuração do painel de botões
         JPanel buttonPanel = new JPanel();
@@ -68,19 +163,151 @@ public class SimulatorView extends JFrame
         JButton resetButton = new JButton("Resetar");
         resetButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                simulator.resetSimulation();
+                simulator.naSimulacao(simulator::resetSimulation);
             }
         });
         buttonPanel.add(resetButton);
 
+        // Controle de velocidade: modo e valor (passos por segundo ou por quadro)
+        JComboBox<String> modo = new JComboBox<>(new String[] {"Passos/s", "Máximo", "Passos/quadro"});
+        JSpinner valor = new JSpinner(new SpinnerNumberModel(5, 1, 1000000, 1));
+        ActionListener aplicarVelocidade = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                ControleVelocidade controle = simulator.getControleVelocidade();
+                int n = (Integer) valor.getValue();
+                switch(modo.getSelectedIndex()) {
+                    case 0:
+                        controle.setPassosPorSegundo(n);
+                        break;
+                    case 1:
+                        controle.setMaximo();
+                        break;
+                    default:
+                        controle.setPassosPorQuadro(n);
+                }
+                valor.setEnabled(modo.getSelectedIndex() != 1);
+            }
+        };
+        modo.addActionListener(aplicarVelocidade);
+        valor.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                aplicarVelocidade.actionPerformed(null);
+            }
+        });
+        buttonPanel.add(modo);
+        buttonPanel.add(valor);
+        velocidadeMedida = new JLabel();
+        buttonPanel.add(velocidadeMedida);
+
+        ferramenta = new JComboBox<>(FERRAMENTAS);
+        buttonPanel.add(ferramenta);
+
+        camadaVegetacao = new JCheckBox("Vegetação em camada");
+        camadaVegetacao.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                boolean ativa = camadaVegetacao.isSelected();
+                simulator.naSimulacao(() -> simulator.setCamadaVegetacao(ativa));
+            }
+        });
+        buttonPanel.add(camadaVegetacao);
+
+        montarJanela("Simulacão Ecológica", height, width, buttonPanel);
+    }
+
+    /**
+     * Cria uma visualização no modo de reprodução de uma execução gravada.
+     * Os quadros são lidos do arquivo, sem simular nada: é possível reproduzir,
+     * pausar, ajustar a velocidade e arrastar a barra de posição para qualquer passo.
+     * * @param gravacao A gravação a ser reproduzida.
+     */
+    public SimulatorView(LeitorGravacao gravacao)
+    {
+        this.gravacao = gravacao;
+
+        reproducao = new Timer(1000 / QUADROS_POR_SEGUNDO, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(quadroAtual + 1 < gravacao.getTotal()) {
+                    posicao.setValue(quadroAtual + 1);
+                }
+                else {
+                    reproducao.stop();
+                }
+            }
+        });
+
+        JPanel buttonPanel = new JPanel();
+
+        JButton playButton = new JButton("Reproduzir");
+        playButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                reproducao.start();
+            }
+        });
+        buttonPanel.add(playButton);
+
+        JButton stopButton = new JButton("Pausar");
+        stopButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                reproducao.stop();
+            }
+        });
+        buttonPanel.add(stopButton);
+
+        buttonPanel.add(new JLabel("Quadros/s:"));
+        JSpinner velocidade = new JSpinner(new SpinnerNumberModel(QUADROS_POR_SEGUNDO, 1, 120, 1));
+        velocidade.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                reproducao.setDelay(1000 / (Integer) velocidade.getValue());
+            }
+        });
+        buttonPanel.add(velocidade);
+
+        posicao = new JSlider(0, Math.max(0, gravacao.getTotal() - 1), 0);
+        posicao.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                showQuadro(posicao.getValue());
+            }
+        });
+
+        JPanel controles = new JPanel(new BorderLayout());
+        controles.add(posicao, BorderLayout.NORTH);
+        controles.add(buttonPanel, BorderLayout.SOUTH);
+
+        montarJanela("Simulacão Ecológica - Reprodução", gravacao.getDepth(), gravacao.getWidth(), controles);
+        if(gravacao.getTotal() > 0) {
+            showQuadro(0);
+        }
+    }
+
+    /**
+     * Cria os rótulos e o painel do campo e organiza os componentes na janela.
+     * * @param titulo O título da janela.
+     * @param height A altura (profundidade) da grade.
+     * @param width A largura da grade.
+     * @param controles O painel com os controles exibido abaixo da população.
+     */
+    private void montarJanela(String titulo, int height, int width, JPanel controles)
+    {
+        stats = new FieldStats();
+
+        setTitle(titulo);
+        stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
+        population = new JLabel(POPULATION_PREFIX, JLabel.CENTER);
+        
+        setLocation(100, 50);
+        
+        fieldView = new FieldView(height, width);
+        grafico = new GraficoPopulacao(COLUNAS_GRAFICO, ALTURA_GRAFICO, PASSOS_NO_GRAFICO);
+
         // Organização dos componentes na janela
         Container contents = getContentPane();
         contents.add(stepLabel, BorderLayout.NORTH);
         contents.add(fieldView, BorderLayout.CENTER);
         
         JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(grafico, BorderLayout.NORTH);
         southPanel.add(population, BorderLayout.CENTER);
-        southPanel.add(buttonPanel, BorderLayout.SOUTH);
+        southPanel.add(controles, BorderLayout.SOUTH);
         contents.add(southPanel, BorderLayout.SOUTH);
 
         pack();
@@ -89,45 +316,235 @@ public class SimulatorView extends JFrame
     
 
     /**
-     * Exibe o estado atual do campo na interface gráfica.
-     * Atualiza o contador de passos, redesenha a grade (terrenos e atores)
-     * e atualiza as estatísticas populacionais.
-     * * @param step O passo atual da iteração.
-     * @param field O campo contendo o estado atual a ser representado.
+     * Marca a caixa da camada de vegetação conforme o estado da simulação (sem
+     * avisar a simulação de novo). Pode ser chamado de qualquer thread.
+     * * @param ativa true se a camada de vegetação está ativa.
+     */
+    public void setCamadaVegetacao(boolean ativa)
+    {
+        if(camadaVegetacao != null) {
+            SwingUtilities.invokeLater(() -> camadaVegetacao.setSelected(ativa));
+        }
+    }
+
+    /**
+     * Entrega um passo concluído para ser exibido. Chamado pela thread do motor da
+     * simulação: a janela desenha o quadro na thread de eventos, enquanto o motor
+     * já calcula os passos seguintes. Se a janela ainda não exibiu o quadro
+     * anterior, ele é substituído por este (a população dele vai para o gráfico
+     * assim mesmo).
+     * * @param campo A versão do campo no fim do passo.
+     * @param terrenos A cópia do terreno; as linhas não podem mais ser alteradas.
+     * @param densidade Uma cópia da pirâmide de densidade (ver {@link #copiarDensidade}),
+     * ou null fora da visão afastada.
      */
-    public void showStatus(int step, Field field)
+    public void entregar(InstantaneoCampo campo, Terreno[][] terrenos, PiramideDensidade densidade)
     {
+        int[] populacao = new int[Especie.values().length + 1];
+        campo.populacao(populacao);
+        amostras.add(new Amostra(campo.getPasso(), populacao));
+        QuadroSimulacao anterior = pendente.getAndSet(new QuadroSimulacao(campo, terrenos, densidade));
+        if(anterior == null) {
+            SwingUtilities.invokeLater(this::exibirPendente);
+        }
+        else if(anterior.densidade != null) {
+            copiasLivres.add(anterior.densidade);
+        }
+    }
+
+    /**
+     * @return true se a janela está na visão afastada e os quadros entregues devem
+     * trazer uma cópia da pirâmide de densidade. Pode ser chamado de qualquer thread.
+     */
+    public boolean isAfastada()
+    {
+        return afastada;
+    }
+
+    /**
+     * Copia a pirâmide de densidade para entregá-la com um quadro, reaproveitando
+     * uma cópia que a janela não usa mais. Chamado pela thread da simulação.
+     * * @param densidade A pirâmide mantida pela simulação.
+     * @return A cópia.
+     */
+    PiramideDensidade copiarDensidade(PiramideDensidade densidade)
+    {
+        return densidade.copiarPara(copiasLivres.poll());
+    }
+
+    /**
+     * Exibe o último quadro entregue pela simulação (na thread de eventos).
+     * Acrescenta ao gráfico a população dos passos entregues, atualiza o contador
+     * de passos e as estatísticas e redesenha a parte visível da grade.
+     */
+    private void exibirPendente()
+    {
+        QuadroSimulacao quadro = pendente.getAndSet(null);
+        if(quadro == null) {
+            return;
+        }
+        EventosJfr.ExibicaoEstado evento = new EventosJfr.ExibicaoEstado();
+        evento.begin();
         if(!isVisible())
             setVisible(true);
 
-        stepLabel.setText(STEP_PREFIX + step);
+        Amostra amostra;
+        while((amostra = amostras.poll()) != null) {
+            adicionarAoGrafico(amostra.passo, amostra.populacao);
+        }
+        if(quadroSimulacao != null && quadroSimulacao.densidade != null) {
+            copiasLivres.add(quadroSimulacao.densidade);
+        }
+        quadroSimulacao = quadro;
+
+        InstantaneoCampo campo = quadro.campo;
+        stepLabel.setText(STEP_PREFIX + campo.getPasso());
+        velocidadeMedida.setText(String.format("%.0f passos/s",
+                                               simulator.getControleVelocidade().getPassosPorSegundoMedidos()));
 
         stats.reset();
-        fieldView.preparePaint();
-            
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                
-                // 1. Desenha o Terreno (fundo)
-                Terreno terreno = field.getTerrenoAt(row, col);
-                fieldView.drawMark(col, row, terreno.getCor());
-                
-                // 2. Desenha o Ator (frente), se houver
-                Ator ator = field.getObjectAt(row, col);
-                if(ator != null) {
-                    stats.incrementCount(ator.getClass());
-                    fieldView.drawMark(col, row, ator.getCor());
-                }
-                // Se o ator for null, o terreno que desenhamos no passo 1 já é o correto
-                // (Não precisamos mais do EMPTY_COLOR)
+        for(Especie especie : Especie.values()) {
+            if(campo.getPopulacao(especie) > 0) {
+                stats.incrementCount(especie.getClasse(), campo.getPopulacao(especie));
             }
         }
         stats.countFinished();
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
-        fieldView.repaint();
+        fieldView.desenhar();
+
+        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(null));
+        if(evento.shouldCommit()) {
+            evento.passo = campo.getPasso();
+            evento.depth = campo.getDepth();
+            evento.width = campo.getWidth();
+            evento.commit();
+        }
     }
   
+    /**
+     * Exibe um quadro da gravação (modo de reprodução).
+     * Conta as espécies do quadro e desenha a parte visível.
+     * * @param indice O índice do quadro na gravação.
+     */
+    private void showQuadro(int indice)
+    {
+        byte[] quadro;
+        try {
+            quadro = gravacao.quadro(indice);
+        }
+        catch(IOException e) {
+            reproducao.stop();
+            stepLabel.setText("Erro ao ler a gravação: " + e.getMessage());
+            return;
+        }
+        quadroAtual = indice;
+        stepLabel.setText(STEP_PREFIX + gravacao.getPasso(indice));
+
+        stats.reset();
+        for(byte codigo : quadro) {
+            Especie especie = Especie.doCodigo(codigo);
+            if(especie != null) {
+                stats.incrementCount(especie.getClasse());
+            }
+        }
+        stats.countFinished();
+        for(Especie especie : Especie.values()) {
+            populacaoGrafico[especie.getCodigo()] = stats.getCount(especie.getClasse());
+        }
+        adicionarAoGrafico(gravacao.getPasso(indice), populacaoGrafico);
+
+        quadroExibido = quadro;
+        fieldView.desenhar();
+
+        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(null));
+    }
+
+    /**
+     * Retorna a cor de uma célula do que está sendo exibido: o ator, se houver;
+     * senão a planta da camada de vegetação; senão o terreno.
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return A cor em RGB.
+     */
+    private int corDaCelula(int row, int col)
+    {
+        if(gravacao != null) {
+            Especie especie = Especie.doCodigo(quadroExibido[row * gravacao.getWidth() + col]);
+            return especie != null ? especie.getCor().getRGB() : gravacao.getTerrenoAt(row, col).getCor().getRGB();
+        }
+        Especie especie = quadroSimulacao.campo.getEspecie(row, col);
+        return especie != null ? especie.getCor().getRGB() : quadroSimulacao.terrenos[row][col].getCor().getRGB();
+    }
+
+    /**
+     * @return true se já há um campo ou quadro para desenhar.
+     */
+    private boolean temConteudo()
+    {
+        return gravacao != null ? quadroExibido != null : quadroSimulacao != null;
+    }
+
+    /**
+     * Aplica a ferramenta de edição selecionada em uma célula: coloca um indivíduo
+     * da espécie escolhida, pinta o terreno escolhido na região em volta ou apaga
+     * a região em volta. A edição passa pela fila da
+     * simulação e é aplicada pela thread do motor assim que ela estiver livre (no
+     * início do próximo passo, se a simulação estiver rodando).
+     * * @param row A linha.
+     * @param col A coluna.
+     * @return false se a ferramenta for a de navegação (nada é editado).
+     */
+    private boolean editar(int row, int col)
+    {
+        if(ferramenta == null || ferramenta.getSelectedIndex() == 0) {
+            return false;
+        }
+        Especie especie = ESPECIES_FERRAMENTA[ferramenta.getSelectedIndex()];
+        Terreno terreno = TERRENOS_FERRAMENTA[ferramenta.getSelectedIndex()];
+        if(especie != null) {
+            simulator.editar(ComandoEdicao.colocar(especie, row, col));
+        }
+        else if(terreno != null) {
+            simulator.editar(ComandoEdicao.terreno(terreno, row - RAIO_PINCEL, col - RAIO_PINCEL,
+                                                   row + RAIO_PINCEL, col + RAIO_PINCEL));
+        }
+        else {
+            simulator.editar(ComandoEdicao.apagar(row - RAIO_PINCEL, col - RAIO_PINCEL,
+                                                  row + RAIO_PINCEL, col + RAIO_PINCEL));
+        }
+        simulator.naSimulacao(simulator::aplicarEdicoes);
+        return true;
+    }
+
+    /**
+     * Registra para o gráfico a população de um passo. A simulação chama este
+     * método, na thread do motor, para os passos que não são exibidos (os
+     * intermediários de um quadro no modo turbo), de modo que o gráfico tenha uma
+     * amostra por passo; a amostra entra no gráfico junto com o próximo quadro.
+     * * @param step O passo.
+     * @param populacao A população de cada espécie, indexada pelo código da espécie (é copiada).
+     */
+    public void registrarPasso(long step, int[] populacao)
+    {
+        amostras.add(new Amostra(step, populacao.clone()));
+    }
+
+    /**
+     * Acrescenta ao gráfico a população de um passo (na thread de eventos). Se o
+     * passo não for posterior ao último do gráfico (reinício ou volta na
+     * reprodução), o gráfico recomeça.
+     * * @param step O passo.
+     * @param populacao A população de cada espécie, indexada pelo código da espécie.
+     */
+    private void adicionarAoGrafico(long step, int[] populacao)
+    {
+        if(step <= ultimoPassoGrafico) {
+            grafico.limpar();
+        }
+        ultimoPassoGrafico = step;
+        grafico.adicionar(populacao);
+    }
+
     /**
      * Determina se a simulação ainda é viável e deve continuar.
      * * @param field O campo a ser verificado.
@@ -138,23 +555,72 @@ public class SimulatorView extends JFrame
         return stats.isViable(field);
     }
     
+    
     /**
      * Fornece uma visualização gráfica de um campo retangular.
      * Esta é uma classe interna aninhada que define um componente personalizado
      * para a interface do usuário. Este componente exibe o campo.
+     * * A visualização é uma janela (viewport) sobre o mundo: a roda do mouse muda o
+     * zoom em torno do cursor e arrastar desloca a janela. Só as células visíveis
+     * são percorridas e desenhadas, então o custo de um quadro depende do tamanho
+     * da janela, não do tamanho do mundo. Quando o mundo não cabe na janela, um
+     * minimapa no canto mostra o mundo inteiro (uma célula amostrada por pixel) e a
+     * região visível; clicar nele centraliza a janela no ponto clicado.
+     * * Afastando além de um pixel por célula, cada pixel passa a representar um
+     * bloco de 4, 8, 16... células de lado, colorido pela mistura das espécies do
+     * bloco (ou pela espécie dominante; a tecla D alterna) e mais escuro quanto
+     * menos ocupado ele estiver. As contagens vêm da cópia da {@link PiramideDensidade}
+     * entregue com o quadro, de modo que mesmo o mundo inteiro custa um acesso por
+     * pixel. Sem pirâmide (na reprodução, ou até chegar o primeiro quadro depois de
+     * afastar), é amostrada uma célula por bloco.
+     * * Com uma ferramenta de edição selecionada, clicar e arrastar coloca indivíduos,
+     * pinta o terreno ou apaga regiões em vez de deslocar a janela.
      */
     private class FieldView extends JPanel
     {
         private final int GRID_VIEW_SCALING_FACTOR = 6;
 
+        // Tamanho máximo inicial da janela, em pixels, e limites do zoom (pixels por célula).
+        private final int TAMANHO_MAXIMO = 720;
+        private final int ZOOM_MINIMO = 1;
+        private final int ZOOM_MAXIMO = 32;
+
+        // Lado maior do minimapa, em pixels, e margem em relação à borda.
+        private final int TAMANHO_MINIMAPA = 120;
+        private final int MARGEM_MINIMAPA = 8;
+
+        private final int FUNDO = 0x000000;
+
         private int gridWidth, gridHeight;
-        private int xScale, yScale;
+
+        // Pixels por célula (aproximado) ou células por lado de pixel (afastado; 1 se não).
+        private int tamanhoCelula;
+        private int celulasPorPixel;
+
+        // Posição (em pixels do mundo na escala atual) do canto visível.
+        private int deslocX, deslocY;
+
+        // Na visão afastada: true para a cor da espécie dominante, false para a mistura.
+        private boolean dominante;
+
         Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        private BufferedImage fieldImage;
+        private int[] pixels;
+
+        // Minimapa: imagem, pixels e células do mundo por pixel do minimapa.
+        private BufferedImage minimapa;
+        private int[] pixelsMinimapa;
+        private int passoMinimapa;
+
+        // Última posição do mouse durante um arrasto, ou null.
+        private Point arrasto;
+
+        // true enquanto o botão está pressionado com uma ferramenta de edição.
+        private boolean editando;
 
         /**
-         * Cria um novo componente FieldView.
+         * Cria um novo componente FieldView. O zoom inicial mostra o mundo inteiro
+         * em até TAMANHO_MAXIMO pixels, afastando se for preciso.
          * * @param height A altura da grade.
          * @param width A largura da grade.
          */
@@ -162,62 +628,387 @@ public class SimulatorView extends JFrame
         {
             gridHeight = height;
             gridWidth = width;
+            int maior = Math.max(height, width);
+            tamanhoCelula = Math.max(ZOOM_MINIMO, Math.min(GRID_VIEW_SCALING_FACTOR, TAMANHO_MAXIMO / maior));
+            celulasPorPixel = 1;
+            if(maior > TAMANHO_MAXIMO) {
+                celulasPorPixel = 1 << PiramideDensidade.LADO_LOG;
+                while(maior / celulasPorPixel > TAMANHO_MAXIMO) {
+                    celulasPorPixel *= 2;
+                }
+            }
+            afastada = celulasPorPixel > 1;
             size = new Dimension(0, 0);
+
+            passoMinimapa = Math.max(1, (maior + TAMANHO_MINIMAPA - 1) / TAMANHO_MINIMAPA);
+            minimapa = new BufferedImage((width + passoMinimapa - 1) / passoMinimapa,
+                                         (height + passoMinimapa - 1) / passoMinimapa, BufferedImage.TYPE_INT_RGB);
+            pixelsMinimapa = ((DataBufferInt) minimapa.getRaster().getDataBuffer()).getData();
+
+            MouseAdapter mouse = new MouseAdapter() {
+                public void mousePressed(MouseEvent e) {
+                    if(centralizarPeloMinimapa(e.getPoint())) {
+                        return;
+                    }
+                    editando = editarEm(e.getPoint());
+                    if(!editando) {
+                        arrasto = e.getPoint();
+                    }
+                }
+
+                public void mouseDragged(MouseEvent e) {
+                    if(editando) {
+                        editarEm(e.getPoint());
+                        return;
+                    }
+                    if(arrasto == null) {
+                        centralizarPeloMinimapa(e.getPoint());
+                        return;
+                    }
+                    deslocX -= e.getX() - arrasto.x;
+                    deslocY -= e.getY() - arrasto.y;
+                    arrasto = e.getPoint();
+                    desenhar();
+                }
+
+                public void mouseReleased(MouseEvent e) {
+                    arrasto = null;
+                    editando = false;
+                }
+
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    if(e.getWheelRotation() < 0) {
+                        aproximar(e.getX(), e.getY());
+                    }
+                    else {
+                        afastar(e.getX(), e.getY());
+                    }
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
+
+            getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('d'), "alternarCores");
+            getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('D'), "alternarCores");
+            getActionMap().put("alternarCores", new AbstractAction() {
+                public void actionPerformed(ActionEvent e) {
+                    dominante = !dominante;
+                    desenhar();
+                }
+            });
         }
 
         /**
-         * Informa ao gerenciador de GUI qual o tamanho preferido para este componente.
+         * Informa ao gerenciador de GUI qual o tamanho preferido para este componente:
+         * o mundo inteiro no zoom inicial, limitado a TAMANHO_MAXIMO.
          * * @return A dimensão preferida (largura x altura).
          */
         public Dimension getPreferredSize()
         {
-            return new Dimension(gridWidth * GRID_VIEW_SCALING_FACTOR,
-                                 gridHeight * GRID_VIEW_SCALING_FACTOR);
+            return new Dimension(Math.min(TAMANHO_MAXIMO, extensao(gridWidth)),
+                                 Math.min(TAMANHO_MAXIMO, extensao(gridHeight)));
         }
         
         /**
          * Prepara o componente para uma nova rodada de pintura.
-         * Se o componente foi redimensionado, recalcula o fator de escala.
+         * Se o componente foi redimensionado, recria a imagem interna.
          */
         public void preparePaint()
         {
             if(! size.equals(getSize())) {  // if the size has changed...
                 size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
+                fieldImage = new BufferedImage(Math.max(1, size.width), Math.max(1, size.height),
+                                               BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
+            }
+            limitarDeslocamento();
+        }
 
-                xScale = size.width / gridWidth;
-                if(xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
+        /**
+         * @param celulas Um número de células (linhas ou colunas).
+         * @return Quantos pixels elas ocupam na escala atual.
+         */
+        private int extensao(int celulas)
+        {
+            if(celulasPorPixel > 1) {
+                return (celulas + celulasPorPixel - 1) / celulasPorPixel;
+            }
+            return celulas * tamanhoCelula;
+        }
+
+        /**
+         * Aproxima um nível: menos células por pixel, ou mais pixels por célula.
+         */
+        private void aproximar(int x, int y)
+        {
+            if(celulasPorPixel > 1 << PiramideDensidade.LADO_LOG) {
+                zoom(1, celulasPorPixel / 2, x, y);
+            }
+            else if(celulasPorPixel > 1) {
+                zoom(ZOOM_MINIMO, 1, x, y);
+            }
+            else {
+                zoom(Math.min(ZOOM_MAXIMO, tamanhoCelula * 2), 1, x, y);
+            }
+        }
+
+        /**
+         * Afasta um nível, até o mundo inteiro caber em poucos pixels.
+         */
+        private void afastar(int x, int y)
+        {
+            if(celulasPorPixel == 1 && tamanhoCelula > ZOOM_MINIMO) {
+                zoom(tamanhoCelula / 2, 1, x, y);
+            }
+            else if(celulasPorPixel == 1) {
+                zoom(1, 1 << PiramideDensidade.LADO_LOG, x, y);
+            }
+            else if(celulasPorPixel < Math.max(gridWidth, gridHeight)) {
+                zoom(1, celulasPorPixel * 2, x, y);
+            }
+        }
+
+        /**
+         * Aplica a ferramenta de edição na célula sob um ponto da janela.
+         * * @param ponto O ponto, na janela.
+         * @return false se a ferramenta for a de navegação.
+         */
+        private boolean editarEm(Point ponto)
+        {
+            long col = (long) (deslocX + ponto.x) * celulasPorPixel / tamanhoCelula;
+            long row = (long) (deslocY + ponto.y) * celulasPorPixel / tamanhoCelula;
+            if(row >= gridHeight || col >= gridWidth) {
+                return ferramenta != null && ferramenta.getSelectedIndex() != 0;
+            }
+            return editar((int) row, (int) col);
+        }
+
+        /**
+         * Muda o zoom mantendo sob o ponto dado a mesma posição do mundo.
+         * * @param novoTamanho O novo número de pixels por célula.
+         * @param novasCelulas O novo número de células por lado de pixel.
+         * @param x A coordenada x do ponto fixo, na janela.
+         * @param y A coordenada y do ponto fixo, na janela.
+         */
+        private void zoom(int novoTamanho, int novasCelulas, int x, int y)
+        {
+            if(novoTamanho == tamanhoCelula && novasCelulas == celulasPorPixel) {
+                return;
+            }
+            long celulaX = (long) (deslocX + x) * celulasPorPixel / tamanhoCelula;
+            long celulaY = (long) (deslocY + y) * celulasPorPixel / tamanhoCelula;
+            deslocX = (int) (celulaX * novoTamanho / novasCelulas) - x;
+            deslocY = (int) (celulaY * novoTamanho / novasCelulas) - y;
+            tamanhoCelula = novoTamanho;
+            celulasPorPixel = novasCelulas;
+            if(celulasPorPixel > 1 && !afastada && simulator != null) {
+                // O quadro exibido não trouxe a pirâmide: pede o estado de novo
+                simulator.naSimulacao(simulator::mostrarEstado);
+            }
+            afastada = celulasPorPixel > 1;
+            desenhar();
+        }
+
+        /**
+         * Mantém a janela dentro do mundo (ou o mundo no canto, se ele for menor).
+         */
+        private void limitarDeslocamento()
+        {
+            deslocX = Math.max(0, Math.min(deslocX, extensao(gridWidth) - size.width));
+            deslocY = Math.max(0, Math.min(deslocY, extensao(gridHeight) - size.height));
+        }
+
+        /**
+         * Desenha as células visíveis (e o minimapa, se necessário) e pede a
+         * atualização da tela.
+         */
+        public void desenhar()
+        {
+            preparePaint();
+            if(!temConteudo()) {
+                return;
+            }
+            java.util.Arrays.fill(pixels, FUNDO);
+            if(celulasPorPixel > 1) {
+                desenharAfastado();
+                repaint();
+                return;
+            }
+            int t = tamanhoCelula;
+            // Com células grandes, deixa uma linha de fundo entre elas (como a grade original)
+            int lado = t >= 3 ? t - 1 : t;
+            int primeiraLinha = deslocY / t;
+            int primeiraColuna = deslocX / t;
+            int ultimaLinha = Math.min(gridHeight - 1, (deslocY + size.height - 1) / t);
+            int ultimaColuna = Math.min(gridWidth - 1, (deslocX + size.width - 1) / t);
+            for(int row = primeiraLinha; row <= ultimaLinha; row++) {
+                int y0 = row * t - deslocY;
+                int y1 = Math.min(size.height, y0 + lado);
+                y0 = Math.max(0, y0);
+                for(int col = primeiraColuna; col <= ultimaColuna; col++) {
+                    int x0 = col * t - deslocX;
+                    int x1 = Math.min(size.width, x0 + lado);
+                    x0 = Math.max(0, x0);
+                    int cor = corDaCelula(row, col);
+                    for(int y = y0; y < y1; y++) {
+                        java.util.Arrays.fill(pixels, y * size.width + x0, y * size.width + x1, cor);
+                    }
+                }
+            }
+            repaint();
+        }
+
+        /**
+         * Desenha a visão afastada: um pixel por bloco de celulasPorPixel células.
+         */
+        private void desenharAfastado()
+        {
+            int largura = Math.min(size.width, extensao(gridWidth) - deslocX);
+            int altura = Math.min(size.height, extensao(gridHeight) - deslocY);
+            PiramideDensidade piramide = quadroSimulacao != null ? quadroSimulacao.densidade : null;
+            if(piramide == null) {
+                for(int y = 0; y < altura; y++) {
+                    for(int x = 0; x < largura; x++) {
+                        pixels[y * size.width + x] = corDaCelula((deslocY + y) * celulasPorPixel,
+                                                                 (deslocX + x) * celulasPorPixel);
+                    }
                 }
-                yScale = size.height / gridHeight;
-                if(yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
+                return;
+            }
+            int nivel = Integer.numberOfTrailingZeros(celulasPorPixel) - PiramideDensidade.LADO_LOG;
+            int[] contagens = piramide.nivel(nivel);
+            int blocosPorLinha = piramide.getLargura(nivel);
+            Especie[] especies = Especie.values();
+            int[] cores = new int[especies.length];
+            for(Especie especie : especies) {
+                cores[especie.ordinal()] = especie.getCor().getRGB();
+            }
+            double area = (double) celulasPorPixel * celulasPorPixel;
+            for(int y = 0; y < altura; y++) {
+                int linha = ((deslocY + y) * blocosPorLinha + deslocX) * especies.length;
+                for(int x = 0; x < largura; x++) {
+                    pixels[y * size.width + x] = corDoBloco(contagens, linha + x * especies.length, cores, area);
                 }
             }
         }
-        
+
+        /**
+         * Calcula a cor de um bloco da pirâmide.
+         * * @param contagens As contagens do nível.
+         * @param inicio A posição da primeira espécie do bloco.
+         * @param cores A cor (RGB) de cada espécie, pelo ordinal.
+         * @param area O número de células do bloco.
+         * @return A cor em RGB: a mistura (ou a dominante) das espécies, escurecida
+         * conforme a ocupação; FUNDO se o bloco estiver vazio.
+         */
+        private int corDoBloco(int[] contagens, int inicio, int[] cores, double area)
+        {
+            int total = 0, maior = 0;
+            double r = 0, g = 0, b = 0;
+            int corDominante = FUNDO;
+            for(int e = 0; e < cores.length; e++) {
+                int n = contagens[inicio + e];
+                total += n;
+                r += n * ((cores[e] >> 16) & 0xFF);
+                g += n * ((cores[e] >> 8) & 0xFF);
+                b += n * (cores[e] & 0xFF);
+                if(n > maior) {
+                    maior = n;
+                    corDominante = cores[e];
+                }
+            }
+            if(total == 0) {
+                return FUNDO;
+            }
+            double brilho = 0.3 + 0.7 * Math.min(1.0, total / area);
+            if(dominante) {
+                r = ((corDominante >> 16) & 0xFF) * brilho;
+                g = ((corDominante >> 8) & 0xFF) * brilho;
+                b = (corDominante & 0xFF) * brilho;
+            }
+            else {
+                r = r / total * brilho;
+                g = g / total * brilho;
+                b = b / total * brilho;
+            }
+            return ((int) r << 16) | ((int) g << 8) | (int) b;
+        }
+
         /**
-         * Pinta uma marca na localização da grade neste campo, usando a cor fornecida.
-         * * @param x A coordenada x (coluna) da grade.
-         * @param y A coordenada y (linha) da grade.
-         * @param color A cor a ser usada para o desenho.
+         * @return true se o mundo não cabe inteiro na janela (e o minimapa é exibido).
          */
-        public void drawMark(int x, int y, Color color)
+        private boolean temMinimapa()
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale-1, yScale-1);
+            return extensao(gridWidth) > size.width || extensao(gridHeight) > size.height;
+        }
+
+        /**
+         * Atualiza o minimapa, amostrando uma célula a cada passoMinimapa em cada direção.
+         */
+        private void desenharMinimapa()
+        {
+            int largura = minimapa.getWidth();
+            for(int y = 0; y < minimapa.getHeight(); y++) {
+                for(int x = 0; x < largura; x++) {
+                    pixelsMinimapa[y * largura + x] = corDaCelula(y * passoMinimapa, x * passoMinimapa);
+                }
+            }
+        }
+
+        /**
+         * @return A posição do minimapa na janela (canto inferior direito).
+         */
+        private Rectangle areaMinimapa()
+        {
+            return new Rectangle(size.width - minimapa.getWidth() - MARGEM_MINIMAPA,
+                                 size.height - minimapa.getHeight() - MARGEM_MINIMAPA,
+                                 minimapa.getWidth(), minimapa.getHeight());
+        }
+
+        /**
+         * Se o ponto estiver sobre o minimapa, centraliza a janela na posição
+         * correspondente do mundo.
+         * * @param ponto O ponto clicado.
+         * @return true se o ponto estava sobre o minimapa.
+         */
+        private boolean centralizarPeloMinimapa(Point ponto)
+        {
+            if(!temMinimapa()) {
+                return false;
+            }
+            Rectangle area = areaMinimapa();
+            if(!area.contains(ponto)) {
+                return false;
+            }
+            deslocX = (int) ((long) (ponto.x - area.x) * passoMinimapa * tamanhoCelula / celulasPorPixel) - size.width / 2;
+            deslocY = (int) ((long) (ponto.y - area.y) * passoMinimapa * tamanhoCelula / celulasPorPixel) - size.height / 2;
+            desenhar();
+            return true;
         }
 
         /**
          * O componente de visualização do campo precisa ser redesenhado.
-         * Copia a imagem interna para a tela.
+         * Copia a imagem interna para a tela e, por cima, o minimapa.
          * * @param g O contexto gráfico.
          */
         public void paintComponent(Graphics g)
         {
-            if(fieldImage != null) {
-                g.drawImage(fieldImage, 0, 0, null);
+            if(fieldImage == null) {
+                return;
+            }
+            g.drawImage(fieldImage, 0, 0, null);
+            if(temMinimapa() && temConteudo()) {
+                desenharMinimapa();
+                Rectangle area = areaMinimapa();
+                g.drawImage(minimapa, area.x, area.y, null);
+                g.setColor(Color.WHITE);
+                g.drawRect(area.x - 1, area.y - 1, area.width + 1, area.height + 1);
+                // Pixels da janela por pixel do minimapa
+                double escala = (double) passoMinimapa * tamanhoCelula / celulasPorPixel;
+                g.setColor(Color.YELLOW);
+                g.drawRect(area.x + (int) (deslocX / escala), area.y + (int) (deslocY / escala),
+                           Math.max(1, (int) (size.width / escala)), Math.max(1, (int) (size.height / escala)));
             }
         }
     }
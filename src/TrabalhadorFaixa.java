@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Um processo trabalhador da execução distribuída: simula uma faixa horizontal
+ * do campo (linhas linha0 até linha1 - 1) e troca com o {@link CoordenadorFaixas}
+ * as linhas de borda e os atores que cruzam as bordas (ver {@link CanalFaixa}).
+ * * A simulação local tem, além das linhas da faixa, uma linha de halo de cada lado
+ * que tem vizinha. Antes de cada passo, o halo recebe cópias dos atores da borda
+ * da faixa vizinha; as cópias ocupam as células e podem ser comidas, mas não agem.
+ * Depois do passo:
+ * - uma cópia comida é informada à dona, que mata o original se ele ainda estiver
+ *   na faixa dela;
+ * - um ator que terminou o passo no halo sai desta faixa e é enviado à vizinha, que
+ *   o coloca na mesma célula se ela estiver livre e for habitável (senão ele se perde).
+ * O resultado é uma aproximação da simulação única: as duas faixas decidem o passo
+ * ao mesmo tempo sobre o mesmo estado de borda, com geradores aleatórios próprios.
+ * Só o terreno da faixa e dos halos é lido do mapa; a camada de vegetação não é usada.
+ *
+ * @version 1.0
+ */
+public class TrabalhadorFaixa
+{
+    private final CanalFaixa canal;
+    private Simulator sim;
+    private int width;
+
+    // Linhas locais da faixa (as demais são halo) e deslocamento para o campo inteiro.
+    private int primeiraPropria, ultimaPropria;
+    private int deslocamento;
+    private boolean haloCima, haloBaixo;
+
+    // Atores da borda enviados no último ESTADO, por lado (o k de uma presa é o índice).
+    private final List<List<Ator>> bordas = new ArrayList<>();
+
+    // Cópias colocadas no halo neste passo, por lado.
+    private final List<List<Ator>> copias = new ArrayList<>();
+
+    /**
+     * Conecta ao coordenador.
+     * * @param socket O arquivo do socket de domínio Unix do coordenador.
+     * @throws IOException Se a conexão falhar.
+     */
+    public TrabalhadorFaixa(Path socket) throws IOException
+    {
+        canal = new CanalFaixa(SocketChannel.open(UnixDomainSocketAddress.of(socket)));
+        for(int lado = 0; lado < 2; lado++) {
+            bordas.add(new ArrayList<Ator>());
+            copias.add(new ArrayList<Ator>());
+        }
+    }
+
+    /**
+     * Recebe a faixa, executa os passos pedidos pelo coordenador e fecha a conexão
+     * quando ele mandar terminar.
+     * * @throws IOException Se a conexão falhar ou uma mensagem for inválida.
+     */
+    public void executar() throws IOException
+    {
+        try {
+            iniciar(canal.receber(CanalFaixa.INICIO));
+            enviarEstado();
+            while(true) {
+                ByteBuffer mensagem = canal.receber();
+                byte tipo = mensagem.get();
+                if(tipo == CanalFaixa.FIM) {
+                    break;
+                }
+                if(tipo != CanalFaixa.PASSO) {
+                    throw new IOException("Mensagem inesperada: " + tipo);
+                }
+                passo(mensagem);
+                trocar(canal.receber(CanalFaixa.TROCA));
+                enviarEstado();
+            }
+        }
+        finally {
+            canal.fechar();
+        }
+    }
+
+    /**
+     * Cria a simulação local a partir da mensagem INICIO.
+     */
+    private void iniciar(ByteBuffer mensagem)
+    {
+        int indice = mensagem.getInt();
+        int faixas = mensagem.getInt();
+        mensagem.getInt(); // depth do campo inteiro
+        width = mensagem.getInt();
+        int linha0 = mensagem.getInt();
+        int linha1 = mensagem.getInt();
+        long semente = mensagem.getLong();
+        byte[] mapa = new byte[mensagem.getShort()];
+        mensagem.get(mapa);
+
+        haloCima = indice > 0;
+        haloBaixo = indice < faixas - 1;
+        deslocamento = linha0 - (haloCima ? 1 : 0);
+        primeiraPropria = linha0 - deslocamento;
+        ultimaPropria = linha1 - 1 - deslocamento;
+        int linhas = ultimaPropria + 1 + (haloBaixo ? 1 : 0);
+        sim = new Simulator(Simulator.carregarTerreno(new String(mapa, StandardCharsets.UTF_8), deslocamento,
+                                                      linhas, width), semente);
+        // Os atores criados no halo pertencem às faixas vizinhas
+        for(Ator ator : sim.getAtores()) {
+            if(ator.isAlive() && !propria(ator.getLocation())) {
+                remover(ator);
+            }
+        }
+    }
+
+    /**
+     * Coloca as cópias dos halos e executa um passo; envia SAIDAS.
+     */
+    private void passo(ByteBuffer mensagem) throws IOException
+    {
+        colocarCopias(mensagem, CanalFaixa.CIMA, 0);
+        colocarCopias(mensagem, CanalFaixa.BAIXO, ultimaPropria + 1);
+        sim.simulateOneStep();
+
+        canal.comecar(CanalFaixa.SAIDAS);
+        int comidas = 0;
+        for(List<Ator> lado : copias) {
+            for(Ator copia : lado) {
+                if(!copia.isAlive()) {
+                    comidas++;
+                }
+            }
+        }
+        canal.reservar(4).putInt(comidas);
+        for(byte lado = 0; lado < 2; lado++) {
+            List<Ator> doLado = copias.get(lado);
+            for(int k = 0; k < doLado.size(); k++) {
+                if(!doLado.get(k).isAlive()) {
+                    canal.reservar(5).put(lado).putInt(k);
+                }
+            }
+        }
+
+        List<Ator> saindo = new ArrayList<>();
+        for(Ator ator : sim.getAtores()) {
+            if(ator.isAlive() && ator.getLocation() != null && !propria(ator.getLocation())) {
+                saindo.add(ator);
+            }
+        }
+        canal.reservar(4).putInt(saindo.size());
+        for(Ator ator : saindo) {
+            int row = ator.getLocation().getRow();
+            canal.reservar(1).put(row < primeiraPropria ? CanalFaixa.CIMA : CanalFaixa.BAIXO);
+            canal.escreverAtor(ator, row + deslocamento);
+            remover(ator);
+        }
+        canal.enviar();
+    }
+
+    /**
+     * Aplica a mensagem TROCA: mata os atores da borda comidos na vizinha e coloca
+     * os que chegaram.
+     */
+    private void trocar(ByteBuffer mensagem) throws IOException
+    {
+        for(int n = mensagem.getInt(); n > 0; n--) {
+            byte lado = mensagem.get();
+            int k = mensagem.getInt();
+            List<Ator> borda = bordas.get(lado);
+            if(k < 0 || k >= borda.size()) {
+                throw new IOException("Presa inexistente na borda: " + k);
+            }
+            Ator presa = borda.get(k);
+            if(presa.isAlive() && propria(presa.getLocation())) {
+                remover(presa);
+            }
+        }
+        Field field = sim.getField();
+        for(int n = mensagem.getInt(); n > 0; n--) {
+            Ator ator = CanalFaixa.lerAtor(mensagem);
+            Location onde = new Location(ator.getLocation().getRow() - deslocamento, ator.getLocation().getCol());
+            if(propria(onde) && field.getObjectAt(onde) == null && field.getTerrenoAt(onde).ehHabitavel(ator)) {
+                ator.setLocation(onde);
+                field.place(ator, onde);
+                sim.getAtores().add(ator);
+            }
+        }
+    }
+
+    /**
+     * Envia a população da faixa e as linhas de borda (ESTADO).
+     */
+    private void enviarEstado() throws IOException
+    {
+        int[] populacao = new int[CanalFaixa.ESPECIES];
+        sim.contarPopulacao(populacao);
+        canal.comecar(CanalFaixa.ESTADO);
+        ByteBuffer b = canal.reservar(4 * populacao.length);
+        for(int quantidade : populacao) {
+            b.putInt(quantidade);
+        }
+        escreverBorda(CanalFaixa.CIMA, haloCima ? primeiraPropria : -1);
+        escreverBorda(CanalFaixa.BAIXO, haloBaixo ? ultimaPropria : -1);
+        canal.enviar();
+    }
+
+    /**
+     * Escreve os atores vivos de uma linha da faixa e guarda quem foi enviado.
+     * * @param lado O lado da borda.
+     * @param row A linha local, ou -1 se não houver vizinha desse lado.
+     */
+    private void escreverBorda(byte lado, int row)
+    {
+        List<Ator> borda = bordas.get(lado);
+        borda.clear();
+        if(row >= 0) {
+            Field field = sim.getField();
+            for(int col = 0; col < width; col++) {
+                Ator ator = field.getObjectAt(row, col);
+                if(ator != null && ator.isAlive()) {
+                    borda.add(ator);
+                }
+            }
+        }
+        ByteBuffer b = canal.reservar(4 + 5 * borda.size());
+        b.putInt(borda.size());
+        for(Ator ator : borda) {
+            b.putInt(ator.getLocation().getCol()).put(Especie.codigoDe(ator));
+        }
+    }
+
+    /**
+     * Coloca no halo as cópias da borda da vizinha.
+     */
+    private void colocarCopias(ByteBuffer mensagem, byte lado, int row)
+    {
+        List<Ator> doLado = copias.get(lado);
+        doLado.clear();
+        Field field = sim.getField();
+        for(int n = mensagem.getInt(); n > 0; n--) {
+            int col = mensagem.getInt();
+            Ator copia = Especie.doCodigo(mensagem.get()).criar();
+            copia.setLocation(new Location(row, col));
+            field.place(copia, row, col);
+            doLado.add(copia);
+        }
+    }
+
+    /**
+     * @return true se a posição local pertence à faixa (não é halo).
+     */
+    private boolean propria(Location onde)
+    {
+        return onde.getRow() >= primeiraPropria && onde.getRow() <= ultimaPropria;
+    }
+
+    /**
+     * Tira um ator da faixa: sai do campo e é marcado como morto, para ser retirado
+     * da lista de atores no próximo passo.
+     */
+    private void remover(Ator ator)
+    {
+        Field field = sim.getField();
+        if(field.getObjectAt(ator.getLocation()) == ator) {
+            field.place(null, ator.getLocation());
+        }
+        if(ator instanceof Animal) {
+            ((Animal) ator).setDead();
+        }
+        else if(ator instanceof Vegetacao) {
+            ((Vegetacao) ator).setDead();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Um trabalho do {@link ServicoSimulacoes}: uma simulação sem interface com mapa,
+ * parâmetros, semente e número de passos fixos. Guarda a série de população de
+ * cada passo e, no fim, um instantâneo do campo ({@link InstantaneoCampo}).
+ * * O trabalho é executado por uma única thread do serviço; as demais podem ler o
+ * estado, o progresso e a série a qualquer momento, sem travas: cada linha da série
+ * é escrita antes de o passo atual (volátil) avançar, e só as linhas até ele são lidas.
+ * A série é um único array de inteiros, alocado só quando o trabalho começa a executar,
+ * e {@link #getBytesRetidos()} informa quanto o trabalho ocupa, para que o serviço
+ * limite a memória dos trabalhos guardados.
+ *
+ * @version 1.0
+ */
+public class TrabalhoSimulacao
+{
+    /**
+     * Estado de um trabalho.
+     */
+    public enum Estado
+    {
+        // Aguardando uma thread livre.
+        NA_FILA,
+        // Sendo simulado.
+        EXECUTANDO,
+        // Todos os passos foram simulados.
+        CONCLUIDO,
+        // A simulação lançou uma exceção (ver getErro).
+        FALHOU
+    }
+
+    private final long id;
+    private final String chave;
+    private final String arquivoMapa;
+    private final int depth, width;
+    private final Parametros parametros;
+    private final long semente;
+    private final int passos;
+
+    // Número de contagens gravadas por passo (uma por código de espécie, mais o 0).
+    private static final int CAMPOS = Especie.values().length + 1;
+
+    // Bytes estimados de um trabalho além da série e do instantâneo (objetos e textos).
+    private static final long BYTES_FIXOS = 1024;
+
+    // População de cada passo (a linha 0 é a inicial): serie[passo * CAMPOS + código].
+    // Alocada no início da execução; null enquanto o trabalho está na fila.
+    private int[] serie;
+
+    private volatile Estado estado = Estado.NA_FILA;
+    private volatile int passo = -1;
+    private volatile InstantaneoCampo instantaneo;
+    private volatile String erro;
+
+    /**
+     * Cria um trabalho na fila.
+     * * @param id O identificador dado pelo serviço.
+     * @param chave A chave que identifica trabalhos com o mesmo resultado.
+     * @param arquivoMapa O arquivo de mapa, como informado (lido só na execução).
+     * @param depth A profundidade do campo.
+     * @param width A largura do campo.
+     * @param parametros Os parâmetros das espécies.
+     * @param semente A semente do gerador aleatório.
+     * @param passos O número de passos a simular.
+     */
+    TrabalhoSimulacao(long id, String chave, String arquivoMapa, int depth, int width,
+                      Parametros parametros, long semente, int passos)
+    {
+        this.id = id;
+        this.chave = chave;
+        this.arquivoMapa = arquivoMapa;
+        this.depth = depth;
+        this.width = width;
+        this.parametros = parametros;
+        this.semente = semente;
+        this.passos = passos;
+    }
+
+    /**
+     * Carrega o mapa, simula todos os passos, registrando a população a cada um, e
+     * publica o instantâneo final. Chamado pela thread do serviço. Qualquer erro,
+     * inclusive um {@link Error} (que é relançado para a thread), deixa o trabalho
+     * no estado FALHOU.
+     */
+    void executar()
+    {
+        estado = Estado.EXECUTANDO;
+        try {
+            serie = new int[(passos + 1) * CAMPOS];
+            Terreno[][] terrenos = Simulator.carregarTerreno(arquivoMapa, depth, width);
+            Simulator sim = new Simulator(terrenos, semente, parametros);
+            registrar(sim, 0);
+            for(int i = 1; i <= passos; i++) {
+                sim.simulateOneStep();
+                registrar(sim, i);
+            }
+            instantaneo = new PublicadorInstantaneos(depth, width).publicar(sim);
+            estado = Estado.CONCLUIDO;
+        }
+        catch(Throwable e) {
+            erro = e.toString();
+            estado = Estado.FALHOU;
+            if(e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    /**
+     * Guarda a população do passo e avança o progresso.
+     */
+    private void registrar(Simulator sim, int i)
+    {
+        int[] contagens = new int[CAMPOS];
+        sim.contarPopulacao(contagens);
+        System.arraycopy(contagens, 0, serie, i * CAMPOS, CAMPOS);
+        passo = i;
+    }
+
+    /**
+     * Marca o trabalho como falho sem executá-lo (ex: a fila estava cheia).
+     * * @param motivo A descrição do erro.
+     */
+    void falhar(String motivo)
+    {
+        erro = motivo;
+        estado = Estado.FALHOU;
+    }
+
+    /**
+     * @return O identificador do trabalho.
+     */
+    public long getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return A chave que identifica trabalhos com o mesmo resultado.
+     */
+    public String getChave()
+    {
+        return chave;
+    }
+
+    /**
+     * @return O arquivo de mapa, como informado.
+     */
+    public String getArquivoMapa()
+    {
+        return arquivoMapa;
+    }
+
+    /**
+     * @return Os parâmetros das espécies.
+     */
+    public Parametros getParametros()
+    {
+        return parametros;
+    }
+
+    /**
+     * @return A semente do gerador aleatório.
+     */
+    public long getSemente()
+    {
+        return semente;
+    }
+
+    /**
+     * @return O número de passos a simular.
+     */
+    public int getPassos()
+    {
+        return passos;
+    }
+
+    /**
+     * @return O estado do trabalho.
+     */
+    public Estado getEstado()
+    {
+        return estado;
+    }
+
+    /**
+     * @return O último passo registrado na série, ou -1 se a simulação não começou.
+     */
+    public int getPasso()
+    {
+        return passo;
+    }
+
+    /**
+     * Retorna a população registrada em um passo.
+     * * @param i O passo, de 0 até {@link #getPasso()}.
+     * @return Uma cópia da população de cada espécie, indexada pelo código.
+     */
+    public int[] getPopulacao(int i)
+    {
+        if(i < 0 || i > passo) {
+            throw new IndexOutOfBoundsException("Passo ainda não simulado: " + i);
+        }
+        return java.util.Arrays.copyOfRange(serie, i * CAMPOS, (i + 1) * CAMPOS);
+    }
+
+    /**
+     * @return O instantâneo do campo no fim da simulação, ou null se ela não terminou.
+     */
+    public InstantaneoCampo getInstantaneo()
+    {
+        return instantaneo;
+    }
+
+    /**
+     * Estima a memória ocupada pelo resultado do trabalho: a série (alocada por
+     * inteiro ao começar a execução) e o instantâneo final, um byte por célula.
+     * * @return O número aproximado de bytes.
+     */
+    public long getBytesRetidos()
+    {
+        long bytes = BYTES_FIXOS;
+        if(serie != null) {
+            bytes += 4L * serie.length;
+        }
+        if(instantaneo != null) {
+            bytes += (long) depth * width;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return A descrição do erro, se o trabalho falhou; senão null.
+     */
+    public String getErro()
+    {
+        return erro;
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executa uma varredura sobre uma grade de parâmetros: para cada combinação de
+ * valores e cada semente, roda uma simulação sem interface até que ela colapse,
+ * fique estável ou atinja o número máximo de passos.
+ * * Uma execução colapsa quando alguma espécie animal (raposa ou coelho) se extingue,
+ * mesmo que as plantas continuem, e é considerada estável quando, durante uma janela
+ * de passos, a população de cada espécie varia menos que uma fração do seu máximo.
+ * * Com um {@link CacheResultados}, cada execução concluída é gravada em disco e
+ * as execuções já presentes no cache não são simuladas de novo. O mapa é lido uma
+ * única vez e compartilhado por todas as execuções, como em {@link EnsembleSimulacoes}.
+ *
+ * @version 1.0
+ */
+public class VarreduraParametros
+{
+    private final Terreno[][] terrenos;
+    private final String assinaturaMapa;
+    private final int threads;
+
+    // Valores a testar para cada parâmetro variado; os demais vêm da base.
+    private final Map<Parametro, double[]> grade = new EnumMap<>(Parametro.class);
+    private Parametros base = Parametros.PADRAO;
+    private CacheResultados cache;
+
+    // Critério de estabilidade: janela em passos e variação relativa máxima.
+    private int janelaEstavel = 50;
+    private double toleranciaEstavel = 0.05;
+
+    /**
+     * Cria uma varredura sobre o mapa dado, usando uma thread por processador.
+     * * @param arquivoMapa O arquivo de mapa (ex: "mapa.txt").
+     * @param depth A profundidade (altura) do campo. Deve ser maior que zero.
+     * @param width A largura do campo. Deve ser maior que zero.
+     */
+    public VarreduraParametros(String arquivoMapa, int depth, int width)
+    {
+        this(arquivoMapa, depth, width, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Cria uma varredura sobre o mapa dado.
+     * * @param arquivoMapa O arquivo de mapa (ex: "mapa.txt").
+     * @param depth A profundidade (altura) do campo. Deve ser maior que zero.
+     * @param width A largura do campo. Deve ser maior que zero.
+     * @param threads O número máximo de execuções simultâneas.
+     */
+    public VarreduraParametros(String arquivoMapa, int depth, int width, int threads)
+    {
+        if(depth <= 0 || width <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Dimensões e número de threads devem ser maiores do que zero.");
+        }
+        this.terrenos = Simulator.carregarTerreno(arquivoMapa, depth, width);
+        this.assinaturaMapa = assinatura(terrenos);
+        this.threads = threads;
+    }
+
+    /**
+     * Inclui um parâmetro na grade.
+     * * @param parametro O parâmetro a variar.
+     * @param valores Os valores a testar.
+     */
+    public void variar(Parametro parametro, double... valores)
+    {
+        grade.put(parametro, valores.clone());
+    }
+
+    /**
+     * Define os valores dos parâmetros que não são variados.
+     * * @param base Os parâmetros base.
+     */
+    public void setBase(Parametros base)
+    {
+        this.base = base;
+    }
+
+    /**
+     * Define o cache de resultados (null para não usar cache).
+     * * @param cache O cache.
+     */
+    public void setCache(CacheResultados cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Define o critério de estabilidade.
+     * * @param janela O número de passos observados.
+     * @param tolerancia A variação máxima de cada população na janela, como fração do máximo.
+     */
+    public void setCriterioEstabilidade(int janela, double tolerancia)
+    {
+        this.janelaEstavel = janela;
+        this.toleranciaEstavel = tolerancia;
+    }
+
+    /**
+     * Retorna todas as combinações de valores da grade (produto cartesiano).
+     * * @return Os parâmetros de cada combinação.
+     */
+    public List<Parametros> combinacoes()
+    {
+        List<Parametros> combinacoes = new ArrayList<>();
+        combinacoes.add(base);
+        for(Map.Entry<Parametro, double[]> eixo : grade.entrySet()) {
+            List<Parametros> proximas = new ArrayList<>();
+            for(Parametros parcial : combinacoes) {
+                for(double valor : eixo.getValue()) {
+                    proximas.add(parcial.com(eixo.getKey(), valor));
+                }
+            }
+            combinacoes = proximas;
+        }
+        return combinacoes;
+    }
+
+    /**
+     * Executa todas as combinações com todas as sementes e espera terminarem.
+     * * @param passosMaximos O número máximo de passos de cada execução.
+     * @param sementes As sementes a usar em cada combinação.
+     * @return Os resultados, na ordem (combinação, semente).
+     * @throws InterruptedException Se a thread for interrompida enquanto espera.
+     * @throws IOException Se o cache não puder ser gravado.
+     */
+    public List<ResultadoExecucao> executar(int passosMaximos, long... sementes)
+        throws InterruptedException, IOException
+    {
+        List<Parametros> combinacoes = combinacoes();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<ResultadoExecucao> resultados = new ArrayList<>();
+        try {
+            List<Future<ResultadoExecucao>> tarefas = new ArrayList<>();
+            for(Parametros parametros : combinacoes) {
+                for(long semente : sementes) {
+                    tarefas.add(executor.submit(() -> executarUma(parametros, semente, passosMaximos)));
+                }
+            }
+            for(Future<ResultadoExecucao> tarefa : tarefas) {
+                try {
+                    resultados.add(tarefa.get());
+                }
+                catch(ExecutionException e) {
+                    if(e.getCause() instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    }
+                    throw new IllegalStateException("Falha em uma execução: " + e.getCause(), e.getCause());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return resultados;
+    }
+
+    /**
+     * Executa uma combinação com uma semente, ou devolve o resultado do cache.
+     */
+    private ResultadoExecucao executarUma(Parametros parametros, long semente, int passosMaximos)
+    {
+        String chave = chave(parametros, semente, passosMaximos);
+        if(cache != null) {
+            ResultadoExecucao guardado = cache.buscar(chave, parametros, semente);
+            if(guardado != null) {
+                return guardado;
+            }
+        }
+
+        Simulator sim = new Simulator(terrenos, semente, parametros);
+        int[] contagens = new int[Especie.values().length + 1];
+        int[][] janela = new int[Math.max(1, janelaEstavel)][];
+        ResultadoExecucao.Motivo motivo = ResultadoExecucao.Motivo.LIMITE;
+        int passo = 0;
+        while(passo < passosMaximos) {
+            sim.simulateOneStep();
+            passo++;
+            sim.contarPopulacao(contagens);
+            if(animalExtinto(contagens)) {
+                motivo = ResultadoExecucao.Motivo.COLAPSO;
+                break;
+            }
+            janela[passo % janela.length] = contagens.clone();
+            if(passo >= janela.length && estavel(janela)) {
+                motivo = ResultadoExecucao.Motivo.ESTAVEL;
+                break;
+            }
+        }
+        sim.contarPopulacao(contagens);
+        ResultadoExecucao resultado = new ResultadoExecucao(parametros, semente, passo, motivo, contagens, false);
+
+        if(cache != null) {
+            try {
+                cache.guardar(chave, resultado);
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Verifica se todas as populações variaram pouco dentro da janela.
+     */
+    private boolean estavel(int[][] janela)
+    {
+        for(int especie = 1; especie < janela[0].length; especie++) {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for(int[] contagens : janela) {
+                min = Math.min(min, contagens[especie]);
+                max = Math.max(max, contagens[especie]);
+            }
+            if(max - min > toleranciaEstavel * Math.max(1, max)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true se a população de alguma espécie animal chegou a zero.
+     */
+    private static boolean animalExtinto(int[] contagens)
+    {
+        for(Especie especie : Especie.values()) {
+            if(Animal.class.isAssignableFrom(especie.getClasse()) && contagens[especie.getCodigo()] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Monta a chave de cache de uma execução.
+     */
+    private String chave(Parametros parametros, long semente, int passosMaximos)
+    {
+        return parametros.chave() + "|semente=" + semente + "|mapa=" + assinaturaMapa
+               + "|passos=" + passosMaximos + "|estavel=" + janelaEstavel + "," + toleranciaEstavel
+               + "|colapso=animal";
+    }
+
+    /**
+     * Calcula um resumo (SHA-256) das dimensões e dos códigos de terreno do mapa.
+     * * @param terrenos O terreno.
+     * @return O resumo em hexadecimal.
+     */
+    static String assinatura(Terreno[][] terrenos)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((terrenos.length + "x" + terrenos[0].length).getBytes());
+            for(Terreno[] linha : terrenos) {
+                for(Terreno terreno : linha) {
+                    digest.update((byte) Simulator.codigoDoTerreno(terreno));
+                }
+            }
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
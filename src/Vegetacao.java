@@ -12,9 +12,6 @@ import java.util.Random;
  */
 public abstract class Vegetacao implements Ator
 {
-    // O gerador de números aleatórios compartilhado.
-    protected static final Random rand = new Random();
-    
     // A idade atual da planta em passos da simulação
     protected int age;
 
@@ -81,6 +78,16 @@ public abstract class Vegetacao implements Ator
         return alive;
     }
 
+    /**
+     * Retorna a localização da planta no campo.
+     * * @return A localização atual.
+     */
+    @Override
+    public Location getLocation()
+    {
+        return location;
+    }
+
     /**
      * Define a localização da planta no campo.
      * * @param location A nova localização (objeto Location).
@@ -111,6 +118,42 @@ public abstract class Vegetacao implements Ator
         alive = false;
     }
 
+    /**
+     * Retorna a idade atual da planta.
+     * * @return A idade em passos.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * Define a idade da planta (usado ao restaurar um checkpoint).
+     * * @param age A idade em passos.
+     */
+    void setAge(int age)
+    {
+        this.age = age;
+    }
+
+    /**
+     * Retorna o gerador de números aleatórios da simulação em execução.
+     * * @return O gerador do contexto ativo.
+     */
+    protected static Random rand()
+    {
+        return ContextoSimulacao.random();
+    }
+
+    /**
+     * Retorna os parâmetros da simulação em execução.
+     * * @return Os parâmetros do contexto ativo.
+     */
+    protected static Parametros parametros()
+    {
+        return ContextoSimulacao.atual().getParametros();
+    }
+
     // --- MÉTODOS ABSTRATOS (para subclasses) ---
 
     /**
@@ -10,14 +10,16 @@ import java.util.List;
  */
 public class VitoriaRegia extends Vegetacao
 {
-    // A idade máxima que uma vitória-régia pode atingir em passos da simulação antes de morrer.
-    private static final int MAX_AGE = 20;
+    // A idade máxima que uma vitória-régia pode atingir em passos da simulação antes de morrer
+    // (valor padrão, ver Parametros).
+    static final int MAX_AGE = 20;
 
-    // A probabilidade de uma vitória-régia gerar uma nova planta em um local adjacente a cada passo.
-    private static final double SPREAD_PROBABILITY = 0.05;
+    // A probabilidade de uma vitória-régia gerar uma nova planta em um local adjacente a cada passo
+    // (valor padrão, ver Parametros).
+    static final double SPREAD_PROBABILITY = 0.05;
 
     // A cor da vitória-régia para representação visual na simulação.
-    private static final Color COR = Color.MAGENTA;
+    static final Color COR = Color.MAGENTA;
 
     /**
      * Constrói uma nova instância de Vitória-Régia.
@@ -45,7 +47,7 @@ public class VitoriaRegia extends Vegetacao
     @Override
     protected int getMaxAge()
     {
-        return MAX_AGE;
+        return parametros().getInt(Parametro.VITORIA_REGIA_IDADE_MAXIMA);
     }
 
     /**
@@ -61,7 +63,7 @@ public class VitoriaRegia extends Vegetacao
     @Override
     protected void executarAcao(Field currentField, Field updatedField, List<Ator> newActors)
     {
-        if (rand.nextDouble() <= SPREAD_PROBABILITY) {
+        if (rand().nextDouble() <= parametros().get(Parametro.VITORIA_REGIA_PROBABILIDADE_ESPALHAMENTO)) {
             Iterator<Location> adjacent = currentField.adjacentLocations(location);
             while (adjacent.hasNext()) {
                 Location next = adjacent.next();